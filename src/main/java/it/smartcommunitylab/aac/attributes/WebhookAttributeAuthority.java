@@ -30,6 +30,7 @@ import it.smartcommunitylab.aac.core.authorities.AttributeAuthority;
 import it.smartcommunitylab.aac.core.model.ConfigurableAttributeProvider;
 import it.smartcommunitylab.aac.core.provider.AttributeProvider;
 import it.smartcommunitylab.aac.core.provider.ProviderRepository;
+import it.smartcommunitylab.aac.utils.HttpClientFactory;
 
 @Service
 public class WebhookAttributeAuthority implements AttributeAuthority {
@@ -39,6 +40,9 @@ public class WebhookAttributeAuthority implements AttributeAuthority {
     // system attributes store
     private final AutoJdbcAttributeStore jdbcAttributeStore;
 
+    // shared http pool
+    private final HttpClientFactory httpClientFactory;
+
 //  // attribute providers by id
 //  // TODO move to a registry with cache/db etc
 //  // this class should fetch only configuration from registry, parsed, and handle
@@ -64,6 +68,7 @@ public class WebhookAttributeAuthority implements AttributeAuthority {
                     WebhookAttributeProvider ap = new WebhookAttributeProvider(
                             id,
                             attributeService, attributeStore,
+                            httpClientFactory,
                             config,
                             config.getRealm());
                     return ap;
@@ -74,14 +79,17 @@ public class WebhookAttributeAuthority implements AttributeAuthority {
     public WebhookAttributeAuthority(
             AttributeService attributeService,
             AutoJdbcAttributeStore jdbcAttributeStore,
-            ProviderRepository<WebhookAttributeProviderConfig> registrationRepository) {
+            ProviderRepository<WebhookAttributeProviderConfig> registrationRepository,
+            HttpClientFactory httpClientFactory) {
         Assert.notNull(attributeService, "attribute service is mandatory");
         Assert.notNull(jdbcAttributeStore, "attribute store is mandatory");
         Assert.notNull(registrationRepository, "provider registration repository is mandatory");
+        Assert.notNull(httpClientFactory, "http client factory is mandatory");
 
         this.attributeService = attributeService;
         this.jdbcAttributeStore = jdbcAttributeStore;
         this.registrationRepository = registrationRepository;
+        this.httpClientFactory = httpClientFactory;
     }
 
     @Override
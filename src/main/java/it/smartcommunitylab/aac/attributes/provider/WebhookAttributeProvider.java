@@ -14,11 +14,9 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Map.Entry;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.http.HttpEntity;
@@ -26,12 +24,15 @@ import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
 import com.fasterxml.jackson.core.type.TypeReference;
+import com.google.common.base.Supplier;
+import com.google.common.base.Suppliers;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
 import it.smartcommunitylab.aac.SystemKeys;
@@ -48,12 +49,18 @@ import it.smartcommunitylab.aac.core.model.UserAttributes;
 import it.smartcommunitylab.aac.core.model.UserAuthenticatedPrincipal;
 import it.smartcommunitylab.aac.core.provider.AttributeProvider;
 import it.smartcommunitylab.aac.oauth.flow.FlowExecutionException;
+import it.smartcommunitylab.aac.utils.CircuitBreaker;
+import it.smartcommunitylab.aac.utils.HttpClientFactory;
 
 public class WebhookAttributeProvider extends AbstractProvider implements AttributeProvider {
     private static final Logger logger = LoggerFactory.getLogger(WebhookAttributeProvider.class);
 
     public static final String ATTRIBUTE_MAPPING_FUNCTION = "attributeMapping";
     private static final int DEFAULT_TIMEOUT = 5000;
+    private static final int DEFAULT_CACHE_SIZE = 1000;
+    private static final int MAPPERS_TTL = 300;
+    private static final int BREAKER_THRESHOLD = 5;
+    private static final long BREAKER_OPEN = 30000;
 
     private final ObjectMapper mapper = new ObjectMapper();
     private final TypeReference<HashMap<String, Serializable>> serMapTypeRef = new TypeReference<HashMap<String, Serializable>>() {
@@ -66,14 +73,26 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
     private final WebhookAttributeProviderConfig providerConfig;
 
     private RestTemplate restTemplate;
+    private final int timeout;
+
+    // mappers by attribute set id, rebuilt periodically to follow definitions
+    private final Supplier<Map<String, ExactAttributesMapper>> mappers;
+
+    // webhook results by principal, when enabled
+    private final Cache<String, Map<String, Serializable>> results;
+
+    // on failures serve stored attributes
+    private final CircuitBreaker breaker = new CircuitBreaker(BREAKER_THRESHOLD, BREAKER_OPEN);
 
     public WebhookAttributeProvider(
             String providerId,
             AttributeService attributeService, AttributeStore attributeStore,
+            HttpClientFactory httpClientFactory,
             WebhookAttributeProviderConfig config,
             String realm) {
         super(SystemKeys.AUTHORITY_WEBHOOK, providerId, realm);
         Assert.notNull(config, "provider config is mandatory");
+        Assert.notNull(httpClientFactory, "http client factory is mandatory");
         Assert.notNull(attributeService, "attribute service is mandatory");
         Assert.notNull(attributeStore, "attribute store is mandatory");
 
@@ -103,21 +122,21 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
             throw new IllegalArgumentException("no attribute sets enabled");
         }
 
-        // build client
-        int timeout = config.getConfigMap().getTimeout() != null ? config.getConfigMap().getTimeout() : DEFAULT_TIMEOUT;
-        RequestConfig rconfig = RequestConfig.custom()
-                .setConnectTimeout(timeout)
-                .setConnectionRequestTimeout(timeout)
-                .setSocketTimeout(timeout)
-                .build();
-        CloseableHttpClient client = HttpClientBuilder
-                .create()
-                .setDefaultRequestConfig(rconfig)
-                .build();
-        HttpComponentsClientHttpRequestFactory clientHttpRequestFactory = new HttpComponentsClientHttpRequestFactory(
-                client);
-        restTemplate = new RestTemplate(clientHttpRequestFactory);
+        // build client on shared pool
+        timeout = config.getConfigMap().getTimeout() != null ? config.getConfigMap().getTimeout() : DEFAULT_TIMEOUT;
+        restTemplate = httpClientFactory.createRestTemplate(timeout);
+
+        mappers = Suppliers.memoizeWithExpiration(() -> buildMappers(), MAPPERS_TTL, TimeUnit.SECONDS);
 
+        Integer cacheTtl = config.getConfigMap().getCacheTtl();
+        if (cacheTtl != null && cacheTtl > 0) {
+            results = CacheBuilder.newBuilder()
+                    .expireAfterWrite(cacheTtl, TimeUnit.SECONDS)
+                    .maximumSize(DEFAULT_CACHE_SIZE)
+                    .build();
+        } else {
+            results = null;
+        }
     }
 
     @Override
@@ -135,6 +154,11 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
         return providerConfig.getDescription();
     }
 
+    @Override
+    public Integer getTimeout() {
+        return timeout;
+    }
+
     @Override
     public Collection<UserAttributes> convertPrincipalAttributes(UserAuthenticatedPrincipal principal,
             String subjectId) {
@@ -164,21 +188,71 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
         principalAttributes.put("provider", principal.getProvider());
         principalAttributes.put("realm", principal.getRealm());
 
-        Map<String, ExactAttributesMapper> mappers = new HashMap<>();
+        Map<String, ExactAttributesMapper> mappers = this.mappers.get();
+
+        String key = subjectId + "|" + principal.getProvider() + "|" + principal.getPrincipalId();
+        Map<String, Serializable> customAttributes = (results != null) ? results.getIfPresent(key) : null;
+        if (customAttributes == null) {
+            if (!breaker.allow()) {
+                // webhook is failing, skip the call
+                return fallback(subjectId, new FlowExecutionException("Hook unavailable"));
+            }
 
-        // fetch attribute sets
-        for (String setId : providerConfig.getAttributeSets()) {
             try {
-                AttributeSet as = attributeService.getAttributeSet(setId);
+                customAttributes = callWebhook(configMap, principalAttributes);
+                breaker.success();
+            } catch (FlowExecutionException e) {
+                breaker.failure();
+                return fallback(subjectId, e);
+            }
 
-                // build exact mapper
-                mappers.put(as.getIdentifier(), new ExactAttributesMapper(as));
+            if (results != null && customAttributes != null) {
+                results.put(key, customAttributes);
+            }
+        }
+
+        boolean mapped = false;
+        if (customAttributes != null) {
+            // we'll let each mapper parse the result set if present
+            for (String id : customAttributes.keySet()) {
+                if (mappers.containsKey(id)) {
+                    mapped = true;
+                    ExactAttributesMapper mapper = mappers.get(id);
+                    AttributeSet set = mapper.mapAttributes((Map<String, Serializable>) customAttributes.get(id));
+                    if (set.getAttributes() != null && !set.getAttributes().isEmpty()) {
+                        // build result
+                        result.add(new DefaultUserAttributesImpl(
+                                getAuthority(), getProvider(), getRealm(), subjectId,
+                                set));
+                    }
+                }
+            }
+        }
 
-            } catch (NoSuchAttributeSetException | RuntimeException e) {
+        if (!mapped) {
+            // nothing we could parse, keep stored attributes as is
+            logger.debug("no attribute set mapped from hook result for " + subjectId);
+            return result;
+        }
 
+        // store attributes as flat map from all sets
+        Set<Entry<String, Serializable>> storeAttributes = new HashSet<>();
+        for (UserAttributes ua : result) {
+            for (Attribute a : ua.getAttributes()) {
+                // TODO handle repeatable attributes by enum
+                String k = ua.getIdentifier() + "|" + a.getKey();
+                Entry<String, Serializable> es = new AbstractMap.SimpleEntry<>(k, a.getValue());
+                storeAttributes.add(es);
             }
         }
 
+        attributeStore.setAttributes(subjectId, storeAttributes);
+
+        return result;
+    }
+
+    private Map<String, Serializable> callWebhook(WebhookAttributeProviderConfigMap configMap,
+            Map<String, Serializable> principalAttributes) throws FlowExecutionException {
         // execute call to webhook and parse result
         try {
             String webhook = configMap.getUrl();
@@ -205,44 +279,26 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
                 throw new FlowExecutionException("invalid response from webhook");
             }
 
-            Map<String, Serializable> customAttributes = mapper.readValue(response.getBody(), serMapTypeRef);
-
-            if (customAttributes != null) {
-                // we'll let each mapper parse the result set if present
-                for (String id : customAttributes.keySet()) {
-                    if (mappers.containsKey(id)) {
-                        ExactAttributesMapper mapper = mappers.get(id);
-                        AttributeSet set = mapper.mapAttributes((Map<String, Serializable>) customAttributes.get(id));
-                        if (set.getAttributes() != null && !set.getAttributes().isEmpty()) {
-                            // build result
-                            result.add(new DefaultUserAttributesImpl(
-                                    getAuthority(), getProvider(), getRealm(), subjectId,
-                                    set));
-                        }
-                    }
-                }
-
-            }
+            return mapper.readValue(response.getBody(), serMapTypeRef);
         } catch (MalformedURLException e) {
             throw new FlowExecutionException("Invalid hook URL " + String.valueOf(configMap.getUrl()));
         } catch (Exception e) {
             throw new FlowExecutionException("Hook invocation failure: " + e.getMessage());
         }
+    }
 
-        // store attributes as flat map from all sets
-        Set<Entry<String, Serializable>> storeAttributes = new HashSet<>();
-        for (UserAttributes ua : result) {
-            for (Attribute a : ua.getAttributes()) {
-                // TODO handle repeatable attributes by enum
-                String key = ua.getIdentifier() + "|" + a.getKey();
-                Entry<String, Serializable> es = new AbstractMap.SimpleEntry<>(key, a.getValue());
-                storeAttributes.add(es);
-            }
+    /*
+     * Serve last stored attributes, if any, when the webhook is failing
+     */
+    private Collection<UserAttributes> fallback(String subjectId, FlowExecutionException e)
+            throws FlowExecutionException {
+        Collection<UserAttributes> stored = getUserAttributes(subjectId);
+        if (stored.isEmpty()) {
+            throw e;
         }
 
-        attributeStore.setAttributes(subjectId, storeAttributes);
-
-        return result;
+        logger.debug("serve stored attributes for " + subjectId + " on hook failure: " + e.getMessage());
+        return stored;
     }
 
     @Override
@@ -256,9 +312,14 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
         List<UserAttributes> result = new ArrayList<>();
 
         // build sets from stored values
+        Map<String, ExactAttributesMapper> mappers = this.mappers.get();
         for (String setId : providerConfig.getAttributeSets()) {
             try {
-                AttributeSet as = attributeService.getAttributeSet(setId);
+                ExactAttributesMapper mapper = mappers.get(setId);
+                if (mapper == null) {
+                    continue;
+                }
+
                 String prefix = setId + "|";
                 // TODO handle repeatable attributes by enum
                 Map<String, Serializable> principalAttributes = attributes.entrySet().stream()
@@ -266,7 +327,6 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
                         .collect(Collectors.toMap(e -> e.getKey().substring(prefix.length()), e -> e.getValue()));
 
                 // use exact mapper
-                ExactAttributesMapper mapper = new ExactAttributesMapper(as);
                 AttributeSet set = mapper.mapAttributes(principalAttributes);
                 if (set.getAttributes() != null && !set.getAttributes().isEmpty()) {
                     // build result
@@ -274,13 +334,40 @@ public class WebhookAttributeProvider extends AbstractProvider implements Attrib
                             getAuthority(), getProvider(), getRealm(), subjectId,
                             set));
                 }
-            } catch (NoSuchAttributeSetException | RuntimeException e) {
+            } catch (RuntimeException e) {
             }
         }
 
         return result;
     }
 
+    /*
+     * Build mappers for the enabled sets. Errors other than a missing set are
+     * rethrown, so that the memoized supplier won't keep an incomplete map.
+     */
+    private Map<String, ExactAttributesMapper> buildMappers() {
+        Map<String, ExactAttributesMapper> map = new HashMap<>();
+
+        // fetch attribute sets
+        for (String setId : providerConfig.getAttributeSets()) {
+            try {
+                AttributeSet as = attributeService.getAttributeSet(setId);
+
+                // build exact mapper
+                map.put(as.getIdentifier(), new ExactAttributesMapper(as));
+
+            } catch (NoSuchAttributeSetException e) {
+                logger.warn("attribute set " + setId + " not found for provider " + getProvider());
+            } catch (RuntimeException e) {
+                logger.error("error loading attribute set " + setId + " for provider " + getProvider() + ": "
+                        + e.getMessage());
+                throw e;
+            }
+        }
+
+        return Collections.unmodifiableMap(map);
+    }
+
     @Override
     public void deleteUserAttributes(String subjectId) {
         // cleanup from store
@@ -32,6 +32,9 @@ public class WebhookAttributeProviderConfigMap implements ConfigurableProperties
     private String authentication;
     private Integer timeout;
 
+    // results cache ttl in seconds, disabled when empty
+    private Integer cacheTtl;
+
     public WebhookAttributeProviderConfigMap() {
     }
 
@@ -59,6 +62,14 @@ public class WebhookAttributeProviderConfigMap implements ConfigurableProperties
         this.timeout = timeout;
     }
 
+    public Integer getCacheTtl() {
+        return cacheTtl;
+    }
+
+    public void setCacheTtl(Integer cacheTtl) {
+        this.cacheTtl = cacheTtl;
+    }
+
     @Override
     @JsonIgnore
     public Map<String, Serializable> getConfiguration() {
@@ -78,6 +89,7 @@ public class WebhookAttributeProviderConfigMap implements ConfigurableProperties
         this.url = map.getUrl();
         this.authentication = map.getAuthentication();
         this.timeout = map.getTimeout();
+        this.cacheTtl = map.getCacheTtl();
 
     }
 
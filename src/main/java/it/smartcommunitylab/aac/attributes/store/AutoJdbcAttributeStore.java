@@ -1,28 +1,64 @@
 package it.smartcommunitylab.aac.attributes.store;
 
 import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.TreeMap;
 import java.util.stream.Collectors;
 import java.util.Set;
 
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
 import org.springframework.data.util.Pair;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.support.SqlLobValue;
 import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 
+import it.smartcommunitylab.aac.repository.JdbcSchemaUtils;
+
+/*
+ * Attributes store, with DB table creation on startup.
+ *
+ * Sets are written as a diff against the stored rows, with batch statements
+ * in a single transaction. A digest of each set is kept aside so that
+ * unchanged sets, the common case on login, skip writes entirely.
+ *
+ * The digest row is read for update, so that concurrent writers for the same
+ * entity are serialized. Sets run in their own transaction, so a conflicting
+ * first write can be retried even when called within an outer transaction.
+ */
 public class AutoJdbcAttributeStore {
-
-    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS attributes (entity_id VARCHAR(256), provider_id VARCHAR(256), attr_key VARCHAR(256), attr_value BLOB);";
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS attributes (entity_id VARCHAR(256) NOT NULL, provider_id VARCHAR(256) NOT NULL, attr_key VARCHAR(256) NOT NULL, attr_value BLOB, PRIMARY KEY (provider_id, entity_id, attr_key));";
+    private static final String DEFAULT_ADD_PRIMARY_KEY_STATEMENT = "ALTER TABLE attributes ADD PRIMARY KEY (provider_id, entity_id, attr_key)";
+    private static final String DEFAULT_CREATE_DIGEST_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS attributes_digest (provider_id VARCHAR(256) NOT NULL, entity_id VARCHAR(256) NOT NULL, digest VARCHAR(64) NOT NULL, PRIMARY KEY (provider_id, entity_id));";
+    private static final String DEFAULT_SELECT_DIGEST_STATEMENT = "select digest from attributes_digest where provider_id = ? and entity_id = ? for update";
+    private static final String DEFAULT_UPDATE_DIGEST_STATEMENT = "update attributes_digest set digest = ? where provider_id = ? and entity_id = ?";
+    private static final String DEFAULT_INSERT_DIGEST_STATEMENT = "insert into attributes_digest (digest, provider_id, entity_id) values (?, ?, ?)";
+    private static final String DEFAULT_DELETE_DIGEST_STATEMENT = "delete from attributes_digest where provider_id = ? and entity_id = ?";
     private static final String DEFAULT_SELECT_STATEMENT = "select attr_value from attributes where  provider_id = ? and entity_id = ? and attr_key = ?";
     private static final String DEFAULT_FIND_STATEMENT = "select entity_id, provider_id, attr_key, attr_value from attributes where  provider_id = ? and entity_id = ?";
     private static final String DEFAULT_INSERT_STATEMENT = "insert into attributes (provider_id, entity_id, attr_key, attr_value) values (?, ?, ?, ?)";
@@ -41,6 +77,8 @@ public class AutoJdbcAttributeStore {
     private final JdbcTemplate jdbcTemplate;
     private final RowMapper<Pair<String, Optional<Serializable>>> rowMapper = new AttributeRowMapper();
 
+    private TransactionTemplate transactionTemplate;
+
     public AutoJdbcAttributeStore(DataSource dataSource) {
         Assert.notNull(dataSource, "DataSource required");
         this.jdbcTemplate = new JdbcTemplate(dataSource);
@@ -49,6 +87,28 @@ public class AutoJdbcAttributeStore {
 
     protected void initSchema() {
         jdbcTemplate.execute(createAttributesSql);
+        jdbcTemplate.execute(DEFAULT_CREATE_DIGEST_TABLE_STATEMENT);
+
+        // upgrade tables created without key
+        if (!JdbcSchemaUtils.hasPrimaryKey(jdbcTemplate, "attributes")) {
+            try {
+                jdbcTemplate.execute(DEFAULT_ADD_PRIMARY_KEY_STATEMENT);
+            } catch (DataAccessException e) {
+                // duplicated or null keys in legacy rows
+                logger.warn("unable to add primary key to attributes: " + e.getMessage());
+            }
+        }
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        if (transactionManager == null) {
+            this.transactionTemplate = null;
+            return;
+        }
+
+        // a failed statement aborts the whole transaction on some DBs, do not join
+        this.transactionTemplate = new TransactionTemplate(transactionManager);
+        this.transactionTemplate.setPropagationBehavior(TransactionDefinition.PROPAGATION_REQUIRES_NEW);
     }
 
     public Serializable getAttribute(String providerId, String entityId, String key) {
@@ -73,20 +133,76 @@ public class AutoJdbcAttributeStore {
     }
 
     public void setAttributes(String providerId, String entityId, Set<Entry<String, Serializable>> attributesSet) {
-        jdbcTemplate.update(clearAttributeSql, providerId, entityId);
-
+        // serialize once, keys are unique in store and last value wins
+        Map<String, byte[]> values = new TreeMap<>();
         for (Entry<String, Serializable> entry : attributesSet) {
-            jdbcTemplate.update(insertAttributeSql,
-                    new Object[] {
-                            providerId, entityId, entry.getKey(),
-                            new SqlLobValue(SerializationUtils.serialize(entry.getValue()))
-                    }, new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB });
+            values.put(entry.getKey(), SerializationUtils.serialize(entry.getValue()));
+        }
+
+        String digest = digest(values);
+        try {
+            inTransaction(() -> writeAttributes(providerId, entityId, values, digest));
+        } catch (DuplicateKeyException e) {
+            // concurrent first write for the same entity, the digest row now exists
+            // so a new transaction will wait on it and diff against the winner
+            inTransaction(() -> writeAttributes(providerId, entityId, values, digest));
+        }
+    }
+
+    private void writeAttributes(String providerId, String entityId, Map<String, byte[]> values, String digest) {
+        // lock the digest row, held until commit
+        List<String> digests = jdbcTemplate.queryForList(DEFAULT_SELECT_DIGEST_STATEMENT, String.class,
+                providerId, entityId);
+        if (!digests.isEmpty() && digest.equals(digests.get(0))) {
+            // unchanged
+            return;
+        }
 
+        // read current values as stored
+        Map<String, byte[]> current = new HashMap<>();
+        jdbcTemplate.query(findAttributesSql, rs -> {
+            current.put(rs.getString("attr_key"), rs.getBytes("attr_value"));
+        }, providerId, entityId);
+
+        List<Object[]> inserts = new ArrayList<>();
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+
+        for (Entry<String, byte[]> entry : values.entrySet()) {
+            String key = entry.getKey();
+            if (!current.containsKey(key)) {
+                inserts.add(new Object[] { providerId, entityId, key, new SqlLobValue(entry.getValue()) });
+            } else if (!Arrays.equals(current.get(key), entry.getValue())) {
+                updates.add(new Object[] { new SqlLobValue(entry.getValue()), providerId, entityId, key });
+            }
         }
 
+        for (String key : current.keySet()) {
+            if (!values.containsKey(key)) {
+                deletes.add(new Object[] { providerId, entityId, key });
+            }
+        }
+
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(deleteAttributeSql, deletes,
+                    new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR });
+        }
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(updateAttributeSql, updates,
+                    new int[] { Types.BLOB, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR });
+        }
+        if (!inserts.isEmpty()) {
+            jdbcTemplate.batchUpdate(insertAttributeSql, inserts,
+                    new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB });
+        }
+
+        if (jdbcTemplate.update(DEFAULT_UPDATE_DIGEST_STATEMENT, digest, providerId, entityId) == 0) {
+            jdbcTemplate.update(DEFAULT_INSERT_DIGEST_STATEMENT, digest, providerId, entityId);
+        }
     }
 
     public void addAttribute(String providerId, String entityId, String key, Serializable value) {
+        jdbcTemplate.update(DEFAULT_DELETE_DIGEST_STATEMENT, providerId, entityId);
         jdbcTemplate.update(insertAttributeSql,
                 new Object[] {
                         providerId, entityId, key,
@@ -95,14 +211,21 @@ public class AutoJdbcAttributeStore {
     }
 
     public void updateAttribute(String providerId, String entityId, String key, Serializable value) {
-        jdbcTemplate.update(updateAttributeSql, value, providerId, entityId, key);
+        jdbcTemplate.update(DEFAULT_DELETE_DIGEST_STATEMENT, providerId, entityId);
+        jdbcTemplate.update(updateAttributeSql,
+                new Object[] {
+                        new SqlLobValue(SerializationUtils.serialize(value)),
+                        providerId, entityId, key
+                }, new int[] { Types.BLOB, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR });
     }
 
     public void deleteAttribute(String providerId, String entityId, String key) {
+        jdbcTemplate.update(DEFAULT_DELETE_DIGEST_STATEMENT, providerId, entityId);
         jdbcTemplate.update(deleteAttributeSql, providerId, entityId, key);
     }
 
     public void clearAttributes(String providerId, String entityId) {
+        jdbcTemplate.update(DEFAULT_DELETE_DIGEST_STATEMENT, providerId, entityId);
         jdbcTemplate.update(clearAttributeSql, providerId, entityId);
     }
 
@@ -134,6 +257,35 @@ public class AutoJdbcAttributeStore {
         this.clearAttributeSql = clearAttributeSql;
     }
 
+    private void inTransaction(Runnable task) {
+        if (transactionTemplate == null) {
+            task.run();
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> task.run());
+    }
+
+    /*
+     * Digest over sorted keys and serialized values
+     */
+    private static String digest(Map<String, byte[]> values) {
+        try {
+            MessageDigest md = MessageDigest.getInstance("SHA-256");
+            for (Entry<String, byte[]> entry : values.entrySet()) {
+                byte[] key = entry.getKey().getBytes(StandardCharsets.UTF_8);
+                md.update(ByteBuffer.allocate(4).putInt(key.length).array());
+                md.update(key);
+                md.update(ByteBuffer.allocate(4).putInt(entry.getValue().length).array());
+                md.update(entry.getValue());
+            }
+
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(md.digest());
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
     private static class AttributeRowMapper implements RowMapper<Pair<String, Optional<Serializable>>> {
         @Override
         public Pair<String, Optional<Serializable>> mapRow(ResultSet rs, int rowNum) throws SQLException {
@@ -2,30 +2,43 @@ package it.smartcommunitylab.aac.attributes.store;
 
 import java.io.Serializable;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
 import org.springframework.util.Assert;
 
+import it.smartcommunitylab.aac.core.store.ExpiringStore;
+import it.smartcommunitylab.aac.core.store.ExpiringStore.EvictionPolicy;
+
 import java.util.NoSuchElementException;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 
+/*
+ * In memory attribute store, entities expire after ttl since last write and
+ * the least recently written are evicted when full
+ */
 public class InMemoryAttributeStore implements AttributeStore {
 
-    private final Map<String, Map<String, Serializable>> attributes;
+    public static final long DEFAULT_TTL = 24 * 60 * 60 * 1000L;
+    public static final int DEFAULT_MAX_SIZE = 10000;
+
+    private final ExpiringStore<String, Map<String, Serializable>> attributes;
 
     private final String authority;
     private final String provider;
 
     public InMemoryAttributeStore(String authority, String provider) {
+        this(authority, provider, DEFAULT_TTL, DEFAULT_MAX_SIZE);
+    }
+
+    public InMemoryAttributeStore(String authority, String provider, long ttl, int maxSize) {
         Assert.hasText(authority, "authority can not be null or empty");
         Assert.hasText(provider, "provider can not be null or empty");
         this.authority = authority;
         this.provider = provider;
 
-        this.attributes = new ConcurrentHashMap<>();
+        this.attributes = new ExpiringStore<>("attributes", ttl, maxSize, EvictionPolicy.OLDEST);
     }
 
     public String getAuthority() {
@@ -38,21 +51,27 @@ public class InMemoryAttributeStore implements AttributeStore {
 
     @Override
     public Serializable getAttribute(String entityId, String key) {
-        if (!attributes.containsKey(entityId)) {
+        Map<String, Serializable> map = attributes.get(entityId);
+        if (map == null) {
             return null;
         }
 
-        return attributes.get(entityId).get(key);
+        return map.get(key);
     }
 
     @Override
     public Map<String, Serializable> findAttributes(String entityId) {
-        return Collections.unmodifiableMap(attributes.get(entityId));
+        Map<String, Serializable> map = attributes.get(entityId);
+        if (map == null) {
+            return Collections.emptyMap();
+        }
+
+        return Collections.unmodifiableMap(map);
     }
 
     @Override
     public void setAttributes(String entityId, Set<Entry<String, Serializable>> attributesSet) {
-        Map<String, Serializable> attributesMap = new HashMap<>();
+        Map<String, Serializable> attributesMap = new ConcurrentHashMap<>();
         for (Entry<String, Serializable> entry : attributesSet) {
             attributesMap.put(entry.getKey(), entry.getValue());
         }
@@ -62,40 +81,39 @@ public class InMemoryAttributeStore implements AttributeStore {
 
     @Override
     public void addAttribute(String entityId, String key, Serializable value) {
-        if (!this.attributes.containsKey(entityId)) {
-            this.attributes.put(entityId, new HashMap<>());
-        }
-
-        this.attributes.get(entityId).put(key, value);
+        Map<String, Serializable> map = attributes.computeIfAbsent(entityId, k -> new ConcurrentHashMap<>());
+        map.put(key, value);
 
+        // refresh ttl
+        this.attributes.put(entityId, map);
     }
 
     @Override
     public void updateAttribute(String entityId, String key, Serializable value) throws NoSuchElementException {
-        if (!this.attributes.containsKey(entityId)) {
+        Map<String, Serializable> map = attributes.get(entityId);
+        if (map == null) {
             throw new NoSuchElementException();
         }
 
-        if (this.attributes.get(entityId).get(key) == null) {
+        if (map.get(key) == null) {
             throw new NoSuchElementException();
         }
 
-        this.attributes.get(entityId).put(key, value);
-
+        map.put(key, value);
+        this.attributes.put(entityId, map);
     }
 
     @Override
     public void deleteAttribute(String entityId, String key) {
-        if (this.attributes.containsKey(entityId)) {
-            this.attributes.get(entityId).remove(key);
+        Map<String, Serializable> map = attributes.get(entityId);
+        if (map != null) {
+            map.remove(key);
         }
     }
 
     @Override
     public void deleteAttributes(String entityId) {
-        if (this.attributes.containsKey(entityId)) {
-            this.attributes.remove(entityId);
-        }
+        this.attributes.remove(entityId);
     }
 
 }
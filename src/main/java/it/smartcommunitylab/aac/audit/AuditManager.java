@@ -3,6 +3,7 @@ package it.smartcommunitylab.aac.audit;
 import java.time.Instant;
 import java.util.Date;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -13,6 +14,7 @@ import org.springframework.stereotype.Service;
 import org.springframework.util.StringUtils;
 
 import it.smartcommunitylab.aac.Config;
+import it.smartcommunitylab.aac.audit.store.AuditCursor;
 import it.smartcommunitylab.aac.audit.store.AuditEventStore;
 
 @Service
@@ -55,6 +57,29 @@ public class AuditManager {
         return auditStore.findByRealm(realm, a, b, type);
     }
 
+    public RealmAuditEventPage findRealmEvents(String realm, String type, Date after, Date before,
+            String cursor, int limit) {
+        Instant a = after == null ? null : after.toInstant();
+        Instant b = before == null ? null : before.toInstant();
+        AuditCursor c = AuditCursor.decode(cursor);
+
+        logger.debug("find audit events for realm " + StringUtils.trimAllWhitespace(realm) + " type "
+                + StringUtils.trimAllWhitespace(String.valueOf(type)) + " interval after "
+                + String.valueOf(a) + " before " + String.valueOf(b) + " from " + String.valueOf(c));
+        return auditStore.findByRealm(realm, a, b, type, c, limit);
+    }
+
+    public void exportRealmEvents(String realm, String type, Date after, Date before,
+            Consumer<RealmAuditEvent> consumer) {
+        Instant a = after == null ? null : after.toInstant();
+        Instant b = before == null ? null : before.toInstant();
+
+        logger.debug("export audit events for realm " + StringUtils.trimAllWhitespace(realm) + " type "
+                + StringUtils.trimAllWhitespace(String.valueOf(type)) + " interval after "
+                + String.valueOf(a) + " before " + String.valueOf(b));
+        auditStore.streamByRealm(realm, a, b, type, consumer);
+    }
+
     public List<AuditEvent> findPrincipalEvents(String realm, String principal, String type, Date after, Date before) {
         Instant a = after == null ? null : after.toInstant();
         Instant b = before == null ? null : before.toInstant();
@@ -1,9 +1,14 @@
 package it.smartcommunitylab.aac.audit;
 
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collection;
 import java.util.Date;
 import java.util.Optional;
 
+import javax.servlet.http.HttpServletResponse;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
@@ -13,6 +18,8 @@ import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.format.annotation.DateTimeFormat;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
 import org.springframework.security.access.prepost.PreAuthorize;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
@@ -20,6 +27,10 @@ import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.RequestParam;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
 import io.swagger.v3.oas.annotations.Operation;
 import it.smartcommunitylab.aac.Config;
 import it.smartcommunitylab.aac.SystemKeys;
@@ -33,6 +44,14 @@ import it.smartcommunitylab.aac.common.NoSuchRealmException;
 public class BaseAuditController implements InitializingBean {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    public static final String NEXT_CURSOR_HEADER = "X-Next-Cursor";
+    public static final String MEDIA_TYPE_NDJSON_VALUE = "application/x-ndjson";
+    public static final int DEFAULT_PAGE_SIZE = 100;
+    public static final int MAX_PAGE_SIZE = 1000;
+
+    private final ObjectMapper mapper = new ObjectMapper()
+            .disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
+
     protected AuditManager auditManager;
 
     @Override
@@ -49,19 +68,86 @@ public class BaseAuditController implements InitializingBean {
         return Config.R_USER;
     }
 
+    /*
+     * Events are returned newest first, one page at a time. When more events are
+     * available the cursor for the next page is returned in the response header.
+     */
     @GetMapping("/audit/{realm}")
     @Operation(summary = "find audit events from a given realm")
-    public Collection<RealmAuditEvent> findEvents(
+    public ResponseEntity<Collection<RealmAuditEvent>> findEvents(
             @PathVariable @Valid @NotNull @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm,
             @RequestParam(required = false, name = "type") Optional<String> type,
             @RequestParam(required = false, name = "after") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<Date> after,
-            @RequestParam(required = false, name = "before") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<Date> before)
+            @RequestParam(required = false, name = "before") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<Date> before,
+            @RequestParam(required = false, name = "cursor") Optional<String> cursor,
+            @RequestParam(required = false, name = "limit") Optional<Integer> limit)
             throws NoSuchRealmException {
-        logger.debug("find audit events for realm [}",
+        logger.debug("find audit events for realm {}",
+                StringUtils.trimAllWhitespace(realm));
+
+        int size = Math.max(1, Math.min(limit.orElse(DEFAULT_PAGE_SIZE), MAX_PAGE_SIZE));
+        RealmAuditEventPage page = auditManager.findRealmEvents(realm, type.orElse(null), after.orElse(null),
+                before.orElse(null), cursor.orElse(null), size);
+
+        ResponseEntity.BodyBuilder response = ResponseEntity.ok();
+        if (page.getNext() != null) {
+            response.header(NEXT_CURSOR_HEADER, page.getNext());
+        }
+
+        return response.body(page.getEvents());
+    }
+
+    /*
+     * Bulk export as newline delimited JSON, streamed as events are read
+     */
+    @GetMapping(value = "/audit/{realm}/export", produces = MEDIA_TYPE_NDJSON_VALUE)
+    @Operation(summary = "export audit events from a given realm")
+    public void exportEvents(
+            @PathVariable @Valid @NotNull @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm,
+            @RequestParam(required = false, name = "type") Optional<String> type,
+            @RequestParam(required = false, name = "after") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<Date> after,
+            @RequestParam(required = false, name = "before") @DateTimeFormat(iso = DateTimeFormat.ISO.DATE_TIME) Optional<Date> before,
+            HttpServletResponse res)
+            throws NoSuchRealmException, IOException {
+        logger.debug("export audit events for realm {}",
                 StringUtils.trimAllWhitespace(realm));
 
-        return auditManager.findRealmEvents(realm, type.orElse(null), after.orElse(null), before.orElse(null));
+        res.setContentType(MEDIA_TYPE_NDJSON_VALUE);
+        res.setCharacterEncoding(StandardCharsets.UTF_8.name());
+        res.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment;filename=audit-" + realm + ".ndjson");
+
+        OutputStream out = res.getOutputStream();
+        try {
+            auditManager.exportRealmEvents(realm, type.orElse(null), after.orElse(null), before.orElse(null),
+                    e -> {
+                        try {
+                            out.write(mapper.writeValueAsBytes(toNode(e)));
+                            out.write('\n');
+                        } catch (IOException ex) {
+                            throw new UncheckedIOException(ex);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            // client went away
+            throw e.getCause();
+        }
+
+        out.flush();
+    }
+
+    private ObjectNode toNode(RealmAuditEvent event) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("timestamp", event.getTimestamp().toString());
+        node.put("realm", event.getRealm());
+        node.put("principal", event.getPrincipal());
+        node.put("type", event.getType());
+        try {
+            node.set("data", mapper.valueToTree(event.getData()));
+        } catch (IllegalArgumentException e) {
+            node.put("data", String.valueOf(event.getData()));
+        }
 
+        return node;
     }
 
 }
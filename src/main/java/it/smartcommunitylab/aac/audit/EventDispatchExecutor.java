@@ -0,0 +1,237 @@
+package it.smartcommunitylab.aac.audit;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.core.task.TaskExecutor;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/*
+ * Bounded executor for application events dispatch.
+ *
+ * Events are handed to a fixed pool with a bounded queue; when full the
+ * rejection policy applies:
+ * - CALLER: run in the publishing thread, slowing down producers
+ * - DISCARD: drop the event
+ * - ABORT: throw to the publisher
+ *
+ * When virtual threads are available (and enabled) each event gets its own
+ * virtual thread, with the number of in flight events bounded by the same
+ * capacity.
+ */
+public class EventDispatchExecutor implements TaskExecutor, MeterBinder, InitializingBean, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final int DEFAULT_SHUTDOWN_TIMEOUT = 10;
+
+    public static final String METRIC_QUEUE = "aac.events.queue.size";
+    public static final String METRIC_WAIT = "aac.events.dispatch.wait";
+    public static final String METRIC_LATENCY = "aac.events.dispatch.latency";
+    public static final String METRIC_REJECTED = "aac.events.rejected";
+
+    public enum RejectionPolicy {
+        CALLER, DISCARD, ABORT;
+
+        public static RejectionPolicy parse(String value) {
+            for (RejectionPolicy p : RejectionPolicy.values()) {
+                if (p.name().equalsIgnoreCase(value)) {
+                    return p;
+                }
+            }
+
+            throw new IllegalArgumentException("invalid rejection policy " + String.valueOf(value));
+        }
+    }
+
+    private int poolSize = DEFAULT_POOL_SIZE;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private RejectionPolicy rejectionPolicy = RejectionPolicy.CALLER;
+    private boolean useVirtualThreads = false;
+
+    private ThreadPoolExecutor pool;
+    private ExecutorService virtualExecutor;
+    private Semaphore permits;
+
+    // bound after construction, read by publishing and dispatch threads
+    private volatile Timer waitTimer;
+    private volatile Timer latencyTimer;
+    private volatile Counter rejectedCounter;
+
+    public void setPoolSize(int poolSize) {
+        Assert.isTrue(poolSize > 0, "pool size must be positive");
+        this.poolSize = poolSize;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "queue capacity must be positive");
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setRejectionPolicy(RejectionPolicy rejectionPolicy) {
+        Assert.notNull(rejectionPolicy, "rejection policy can not be null");
+        this.rejectionPolicy = rejectionPolicy;
+    }
+
+    public void setUseVirtualThreads(boolean useVirtualThreads) {
+        this.useVirtualThreads = useVirtualThreads;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (useVirtualThreads) {
+            virtualExecutor = buildVirtualExecutor();
+            if (virtualExecutor != null) {
+                permits = new Semaphore(queueCapacity);
+                logger.debug("dispatch events on virtual threads, max in flight " + String.valueOf(queueCapacity));
+                return;
+            }
+
+            logger.warn("virtual threads not supported by the runtime, fallback to pool");
+        }
+
+        pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), new DispatchThreadFactory(),
+                (r, executor) -> reject(r));
+        logger.debug("dispatch events on pool size " + String.valueOf(poolSize) + " queue "
+                + String.valueOf(queueCapacity));
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        Gauge.builder(METRIC_QUEUE, this, e -> e.getQueueSize()).register(registry);
+        waitTimer = Timer.builder(METRIC_WAIT).register(registry);
+        latencyTimer = Timer.builder(METRIC_LATENCY).register(registry);
+        rejectedCounter = Counter.builder(METRIC_REJECTED).tag("policy", rejectionPolicy.name().toLowerCase())
+                .register(registry);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+        Runnable command = measure(task);
+
+        if (virtualExecutor != null) {
+            if (!permits.tryAcquire()) {
+                reject(command);
+                return;
+            }
+
+            try {
+                virtualExecutor.execute(() -> {
+                    try {
+                        command.run();
+                    } finally {
+                        permits.release();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                permits.release();
+                throw e;
+            }
+
+            return;
+        }
+
+        pool.execute(command);
+    }
+
+    public int getQueueSize() {
+        if (virtualExecutor != null) {
+            return queueCapacity - permits.availablePermits();
+        }
+
+        return pool != null ? pool.getQueue().size() : 0;
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        // let in flight events complete, audit writes included
+        ExecutorService executor = virtualExecutor != null ? virtualExecutor : pool;
+        if (executor != null) {
+            executor.shutdown();
+            if (!executor.awaitTermination(DEFAULT_SHUTDOWN_TIMEOUT, TimeUnit.SECONDS)) {
+                logger.warn("events still pending at shutdown: " + String.valueOf(getQueueSize()));
+                executor.shutdownNow();
+            }
+        }
+    }
+
+    private Runnable measure(Runnable task) {
+        Timer waitTimer = this.waitTimer;
+        Timer latencyTimer = this.latencyTimer;
+        if (waitTimer == null || latencyTimer == null) {
+            return task;
+        }
+
+        long submitted = System.nanoTime();
+        return () -> {
+            long start = System.nanoTime();
+            waitTimer.record(start - submitted, TimeUnit.NANOSECONDS);
+            try {
+                task.run();
+            } finally {
+                latencyTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        };
+    }
+
+    private void reject(Runnable task) {
+        Counter rejectedCounter = this.rejectedCounter;
+        if (rejectedCounter != null) {
+            rejectedCounter.increment();
+        }
+
+        switch (rejectionPolicy) {
+        case CALLER:
+            // back-pressure on the publisher
+            task.run();
+            break;
+        case DISCARD:
+            logger.warn("event dispatch queue is full, event discarded");
+            break;
+        case ABORT:
+            throw new RejectedExecutionException("event dispatch queue is full");
+        default:
+            throw new IllegalStateException("unsupported rejection policy " + String.valueOf(rejectionPolicy));
+        }
+    }
+
+    private ExecutorService buildVirtualExecutor() {
+        // available from jdk 21, resolve at runtime
+        try {
+            Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) m.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static class DispatchThreadFactory implements ThreadFactory {
+        private final AtomicInteger count = new AtomicInteger();
+
+        @Override
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "aac-events-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    }
+}
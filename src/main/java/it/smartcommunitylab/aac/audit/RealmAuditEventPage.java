@@ -0,0 +1,32 @@
+package it.smartcommunitylab.aac.audit;
+
+import java.util.Collections;
+import java.util.List;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+
+/*
+ * A slice of realm events, with the cursor for the next slice when more events
+ * are available
+ */
+@JsonInclude(Include.NON_NULL)
+public class RealmAuditEventPage {
+
+    private final List<RealmAuditEvent> events;
+    private final String next;
+
+    public RealmAuditEventPage(List<RealmAuditEvent> events, String next) {
+        this.events = events != null ? events : Collections.emptyList();
+        this.next = next;
+    }
+
+    public List<RealmAuditEvent> getEvents() {
+        return events;
+    }
+
+    public String getNext() {
+        return next;
+    }
+
+}
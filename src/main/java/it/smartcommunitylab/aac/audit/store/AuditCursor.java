@@ -0,0 +1,69 @@
+package it.smartcommunitylab.aac.audit.store;
+
+import java.nio.charset.StandardCharsets;
+import java.time.DateTimeException;
+import java.time.Instant;
+import java.util.Base64;
+
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+/*
+ * Keyset position in the audit trail, ordered by (time, id) descending.
+ *
+ * Encoded as an opaque url-safe string for clients. Legacy rows have no id, in
+ * that case the cursor carries only the time.
+ */
+public class AuditCursor {
+
+    private static final String SEPARATOR = ":";
+
+    private final Instant time;
+    private final String id;
+
+    public AuditCursor(Instant time, String id) {
+        Assert.notNull(time, "time can not be null");
+        this.time = time;
+        this.id = id;
+    }
+
+    public Instant getTime() {
+        return time;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String encode() {
+        String value = String.valueOf(time.toEpochMilli()) + SEPARATOR + (id != null ? id : "");
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(value.getBytes(StandardCharsets.UTF_8));
+    }
+
+    public static AuditCursor decode(String value) {
+        if (!StringUtils.hasText(value)) {
+            return null;
+        }
+
+        try {
+            String s = new String(Base64.getUrlDecoder().decode(value), StandardCharsets.UTF_8);
+            int i = s.indexOf(SEPARATOR);
+            if (i < 1) {
+                throw new IllegalArgumentException("invalid cursor");
+            }
+
+            Instant time = Instant.ofEpochMilli(Long.parseLong(s.substring(0, i)));
+            String id = s.substring(i + 1);
+            return new AuditCursor(time, StringUtils.hasText(id) ? id : null);
+        } catch (IllegalArgumentException | DateTimeException e) {
+            // malformed base64 or time, do not leak decoder messages
+            throw new IllegalArgumentException("invalid cursor");
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "AuditCursor [time=" + time + ", id=" + id + "]";
+    }
+
+}
@@ -2,11 +2,13 @@ package it.smartcommunitylab.aac.audit.store;
 
 import java.time.Instant;
 import java.util.List;
+import java.util.function.Consumer;
 
 import org.springframework.boot.actuate.audit.AuditEvent;
 import org.springframework.boot.actuate.audit.AuditEventRepository;
 
 import it.smartcommunitylab.aac.audit.RealmAuditEvent;
+import it.smartcommunitylab.aac.audit.RealmAuditEventPage;
 
 public interface AuditEventStore extends AuditEventRepository {
 
@@ -18,6 +20,19 @@ public interface AuditEventStore extends AuditEventRepository {
     public List<RealmAuditEvent> findByRealm(String realm, Instant after, Instant before,
             String type);
 
+    /*
+     * Keyset pagination, events are ordered by time descending. Pass the cursor
+     * from the previous page to continue.
+     */
+    public RealmAuditEventPage findByRealm(String realm, Instant after, Instant before,
+            String type, AuditCursor cursor, int limit);
+
+    /*
+     * Stream events to the consumer without loading the whole result in memory
+     */
+    public void streamByRealm(String realm, Instant after, Instant before, String type,
+            Consumer<RealmAuditEvent> consumer);
+
     public List<AuditEvent> findByPrincipal(String principal, Instant after, Instant before, String type);
 
 }
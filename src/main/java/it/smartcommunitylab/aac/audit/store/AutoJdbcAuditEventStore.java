@@ -1,38 +1,133 @@
 package it.smartcommunitylab.aac.audit.store;
 
+import java.io.IOException;
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.sql.Types;
 import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
 import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.BatchPreparedStatementSetter;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
 import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.fasterxml.jackson.databind.node.TextNode;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.audit.RealmAuditEvent;
+import it.smartcommunitylab.aac.audit.RealmAuditEventPage;
+import it.smartcommunitylab.aac.repository.JdbcSchemaUtils;
 
 import org.springframework.jdbc.core.support.SqlLobValue;
 
-public class AutoJdbcAuditEventStore implements AuditEventStore {
+/*
+ * Audit event store with DB table creation on startup.
+ *
+ * Writes are buffered in a bounded queue and flushed by a background writer
+ * with batch inserts, either when a batch is full or when the flush interval
+ * elapses. When the buffer is full events are written synchronously by the
+ * caller (or dropped, when configured), and counted as overflow. Pending
+ * events are flushed on shutdown, events added afterwards are written
+ * synchronously.
+ *
+ * Batches are inserted atomically: a failed batch is retried row by row, so
+ * that only the offending events are lost, and counted as dropped.
+ *
+ * Event data is stored as JSON, legacy java serialized rows are still readable.
+ */
+public class AutoJdbcAuditEventStore implements AuditEventStore, InitializingBean, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_BUFFER_SIZE = 10000;
+    public static final int DEFAULT_BATCH_SIZE = 100;
+    public static final long DEFAULT_FLUSH_INTERVAL = 1000;
+
+    public static final String METRIC_BUFFER = "aac.audit.buffer.size";
+    public static final String METRIC_OVERFLOW = "aac.audit.buffer.overflow";
+    public static final String METRIC_FLUSH = "aac.audit.flush";
+    public static final String METRIC_BATCH = "aac.audit.flush.batch";
+    public static final String METRIC_DROPPED = "aac.audit.dropped";
+
+    // java serialization stream header
+    private static final byte SERIAL_MAGIC = (byte) 0xAC;
+
     private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
     private final RowMapper<AuditEvent> rowMapper = new AuditEventRowMapper();
+    private final ObjectMapper mapper;
+    private final TypeReference<HashMap<String, Object>> typeRef = new TypeReference<HashMap<String, Object>>() {
+    };
+
+    // buffered writer
+    private boolean async = true;
+    private boolean dropOnOverflow = false;
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private long flushInterval = DEFAULT_FLUSH_INTERVAL;
+
+    private BlockingQueue<AuditEvent> buffer;
+    private Thread writer;
+    private volatile boolean running;
+
+    private MeterRegistry meterRegistry;
+
+    // optional pre-aggregated counters
+    private AutoJdbcAuditRollupStore rollupStore;
 
     private static final String DEFAULT_CREATE_TABLE_STATEMENT = " CREATE TABLE IF NOT EXISTS audit (" +
             "  time TIMESTAMP," +
             "  principal varchar(255)," +
             "  realm varchar(255) DEFAULT NULL," +
             "  type varchar(255)," +
-            "  event BLOB ) ";
+            "  event BLOB," +
+            "  id varchar(64) DEFAULT NULL ) ";
 
-    private static final String DEFAULT_INSERT_STATEMENT = "insert into audit (time, principal, realm , type, event ) values (?, ?, ?, ?, ?)";
+    private static final String DEFAULT_COUNT_MISSING_ID_STATEMENT = "select count(*) from audit where id is null";
+
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into audit (time, principal, realm , type, event, id ) values (?, ?, ?, ?, ?, ?)";
+
+    private static final String DEFAULT_SELECT_REALM_PAGE_STATEMENT = "select id, time, principal, realm , type, event from audit where realm = ?";
+    private static final String TIME_BEFORE_CONDITION = "time <= ?";
+    private static final String TIME_BEFORE_EXCLUSIVE_CONDITION = "time < ?";
+    private static final String KEYSET_CONDITION = "(time < ? OR (time = ? AND id < ?))";
+    private static final String KEYSET_TIME_CONDITION = "time < ?";
+    private static final String DEFAULT_KEYSET_ORDER_BY = "order by time DESC, id DESC";
+
+    public static final int DEFAULT_FETCH_SIZE = 500;
 
     private static final String DEFAULT_SELECT_PRINCIPAL_STATEMENT = "select time, principal, realm , type, event from audit where principal = ?";
     private static final String DEFAULT_SELECT_REALM_STATEMENT = "select time, principal, realm , type, event from audit where realm = ?";
@@ -60,22 +155,161 @@ public class AutoJdbcAuditEventStore implements AuditEventStore {
 
     private String orderBy = DEFAULT_ORDER_BY;
 
+    private int fetchSize = DEFAULT_FETCH_SIZE;
+
     public AutoJdbcAuditEventStore(DataSource dataSource) {
         Assert.notNull(dataSource, "DataSource required");
         this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        this.mapper = new ObjectMapper();
+        mapper.disable(SerializationFeature.FAIL_ON_EMPTY_BEANS);
         initSchema();
     }
 
     protected void initSchema() {
         jdbcTemplate.execute(createAuditTableSql);
+
+        // upgrade from schema without id
+        JdbcSchemaUtils.addColumn(jdbcTemplate, "audit", "id", "varchar(64) DEFAULT NULL");
+        backfillIds();
+
+        // keyset indexes for realm and principal lookups
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "audit", "audit_realm_time_idx", "realm, time, id");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "audit", "audit_realm_type_time_idx", "realm, type, time, id");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "audit", "audit_principal_time_idx", "principal, time");
+
+        // rollup backfill scans by time
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "audit", "audit_time_idx", "time");
+    }
+
+    /*
+     * Assign ids to legacy rows: keyset paging breaks ties on id, rows with a
+     * null id sharing a timestamp would be skipped at page boundaries
+     */
+    private void backfillIds() {
+        Integer missing = jdbcTemplate.queryForObject(DEFAULT_COUNT_MISSING_ID_STATEMENT, Integer.class);
+        if (missing == null || missing == 0) {
+            return;
+        }
+
+        String expression = JdbcSchemaUtils.randomIdExpression(jdbcTemplate);
+        if (expression == null) {
+            logger.warn(String.valueOf(missing) + " legacy audit events without id, "
+                    + "paging may skip events sharing a timestamp");
+            return;
+        }
+
+        int count = jdbcTemplate.update("UPDATE audit SET id = " + expression + " WHERE id IS NULL");
+        logger.info("assigned ids to " + String.valueOf(count) + " legacy audit events");
+    }
+
+    public void setFetchSize(int fetchSize) {
+        Assert.isTrue(fetchSize > 0, "fetch size must be positive");
+        this.fetchSize = fetchSize;
+    }
+
+    public void setAsync(boolean async) {
+        this.async = async;
+    }
+
+    public void setDropOnOverflow(boolean dropOnOverflow) {
+        this.dropOnOverflow = dropOnOverflow;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        Assert.isTrue(bufferSize > 0, "buffer size must be positive");
+        this.bufferSize = bufferSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    public void setFlushInterval(long flushInterval) {
+        Assert.isTrue(flushInterval > 0, "flush interval must be positive");
+        this.flushInterval = flushInterval;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    public void setRollupStore(AutoJdbcAuditRollupStore rollupStore) {
+        this.rollupStore = rollupStore;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        if (!async) {
+            return;
+        }
+
+        buffer = new ArrayBlockingQueue<>(bufferSize);
+        if (meterRegistry != null) {
+            meterRegistry.gaugeCollectionSize(METRIC_BUFFER, Collections.emptyList(), buffer);
+        }
+
+        running = true;
+        writer = new Thread(this::write, "aac-audit-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (writer == null) {
+            return;
+        }
+
+        // stop writer and flush all pending events. The writer notices within a
+        // flush interval: never interrupt it, an interrupt during JDBC work can
+        // abort the write or close the channel of file based DBs
+        running = false;
+        writer.join(flushInterval * 10);
+        if (writer.isAlive()) {
+            logger.warn("audit writer still busy at shutdown, flush pending events concurrently");
+        }
+
+        drain();
     }
 
     @Override
     public void add(AuditEvent event) {
-        // extract data
-        String principal = event.getPrincipal();
-        long time = event.getTimestamp().toEpochMilli();
-        String type = event.getType();
+        if (buffer == null || !running) {
+            // sync or shutting down
+            insert(event);
+            return;
+        }
+
+        if (buffer.offer(event)) {
+            // raced with shutdown after the final drain, flush ourselves
+            if (!running) {
+                drain();
+            }
+        } else {
+            // buffer is full
+            if (meterRegistry != null) {
+                meterRegistry.counter(METRIC_OVERFLOW, "policy", dropOnOverflow ? "drop" : "sync").increment();
+            }
+
+            if (dropOnOverflow) {
+                logger.warn("audit buffer is full, event dropped");
+            } else {
+                insert(event);
+            }
+        }
+    }
+
+    private void insert(AuditEvent event) {
+        // row and rollup commit together
+        transactionTemplate.executeWithoutResult(status -> {
+            insertRow(event);
+            rollup(Collections.singletonList(event), status);
+        });
+    }
+
+    private void insertRow(AuditEvent event) {
         String realm = null;
         if (event instanceof RealmAuditEvent) {
             realm = ((RealmAuditEvent) event).getRealm();
@@ -83,11 +317,183 @@ public class AutoJdbcAuditEventStore implements AuditEventStore {
 
         jdbcTemplate.update(insertAuditEventSql,
                 new Object[] {
-                        new java.sql.Timestamp(time),
-                        principal, realm, type,
-                        new SqlLobValue(SerializationUtils.serialize(event))
-                }, new int[] { Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB });
+                        new Timestamp(event.getTimestamp().toEpochMilli()),
+                        event.getPrincipal(), realm, event.getType(),
+                        new SqlLobValue(encode(event)),
+                        UUID.randomUUID().toString()
+                }, new int[] { Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB,
+                        Types.VARCHAR });
+    }
+
+    /*
+     * Counts are updated within the insert transaction, a failure rolls back the
+     * rows as well so the rollup never drifts from the table
+     */
+    private void rollup(List<AuditEvent> events, TransactionStatus status) {
+        if (rollupStore == null) {
+            return;
+        }
+
+        rollupStore.increment(events, status);
+    }
+
+    /*
+     * Background writer
+     */
+    private void write() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        long lastFlush = System.currentTimeMillis();
+        boolean interrupted = false;
+
+        // stopped via the running flag, polls time out at the flush interval
+        while (running) {
+            try {
+                AuditEvent event = buffer.poll(flushInterval, TimeUnit.MILLISECONDS);
+                if (event != null) {
+                    batch.add(event);
+                    buffer.drainTo(batch, batchSize - batch.size());
+                }
+            } catch (InterruptedException e) {
+                // not expected, flush what we hold before restoring the flag
+                interrupted = true;
+                break;
+            }
+
+            long now = System.currentTimeMillis();
+            if (batch.size() >= batchSize || (!batch.isEmpty() && now - lastFlush >= flushInterval)) {
+                flush(batch);
+                batch.clear();
+                lastFlush = now;
+            }
+        }
+
+        // hand back what we hold
+        if (!batch.isEmpty()) {
+            flush(batch);
+        }
+
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void drain() {
+        List<AuditEvent> batch = new ArrayList<>(batchSize);
+        while (buffer.drainTo(batch, batchSize) > 0) {
+            flush(batch);
+            batch.clear();
+        }
+    }
+
+    private void flush(List<AuditEvent> events) {
+        long start = System.nanoTime();
+        try {
+            // all or nothing, so that the fallback does not duplicate rows
+            transactionTemplate.executeWithoutResult(status -> {
+                jdbcTemplate.batchUpdate(insertAuditEventSql, new BatchPreparedStatementSetter() {
+                    @Override
+                    public void setValues(PreparedStatement ps, int i) throws SQLException {
+                        AuditEvent event = events.get(i);
+                        String realm = null;
+                        if (event instanceof RealmAuditEvent) {
+                            realm = ((RealmAuditEvent) event).getRealm();
+                        }
+
+                        ps.setTimestamp(1, new Timestamp(event.getTimestamp().toEpochMilli()));
+                        ps.setString(2, event.getPrincipal());
+                        ps.setString(3, realm);
+                        ps.setString(4, event.getType());
+                        ps.setBytes(5, encode(event));
+                        ps.setString(6, UUID.randomUUID().toString());
+                    }
+
+                    @Override
+                    public int getBatchSize() {
+                        return events.size();
+                    }
+                });
+
+                rollup(events, status);
+            });
+        } catch (DataAccessException | IllegalArgumentException e) {
+            logger.warn("error writing " + String.valueOf(events.size()) + " audit events, retry one by one: "
+                    + e.getMessage());
+            fallback(events);
+        }
+
+        if (meterRegistry != null) {
+            meterRegistry.timer(METRIC_FLUSH).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            meterRegistry.summary(METRIC_BATCH).record(events.size());
+        }
+    }
+
+    private void fallback(List<AuditEvent> events) {
+        int dropped = 0;
+        for (AuditEvent event : events) {
+            try {
+                insert(event);
+            } catch (DataAccessException | IllegalArgumentException e) {
+                logger.error("error writing audit event " + String.valueOf(event.getType()) + ", dropped: "
+                        + e.getMessage());
+                dropped++;
+            }
+        }
+
+        if (dropped > 0 && meterRegistry != null) {
+            meterRegistry.counter(METRIC_DROPPED).increment(dropped);
+        }
+    }
+
+    /*
+     * Encoding: columns hold time, principal, realm and type, the blob holds
+     * only data as JSON
+     */
+    private byte[] encode(AuditEvent event) {
+        ObjectNode node = mapper.createObjectNode();
+        for (Map.Entry<String, Object> e : event.getData().entrySet()) {
+            JsonNode value;
+            try {
+                value = mapper.valueToTree(e.getValue());
+            } catch (IllegalArgumentException ex) {
+                // not representable, keep a readable form
+                value = new TextNode(String.valueOf(e.getValue()));
+            }
+            node.set(e.getKey(), value);
+        }
+
+        try {
+            return mapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private AuditEvent decode(ResultSet rs) throws SQLException {
+        byte[] bytes = rs.getBytes("event");
+        if (bytes != null && bytes.length > 0 && bytes[0] == SERIAL_MAGIC) {
+            // legacy row
+            return SerializationUtils.deserialize(bytes);
+        }
+
+        Map<String, Object> data = new HashMap<>();
+        if (bytes != null && bytes.length > 0) {
+            try {
+                data = mapper.readValue(bytes, typeRef);
+            } catch (IOException e) {
+                logger.error("error reading audit event data: " + e.getMessage());
+            }
+        }
+
+        Instant time = rs.getTimestamp("time").toInstant();
+        String principal = rs.getString("principal");
+        String realm = rs.getString("realm");
+        String type = rs.getString("type");
+
+        if (realm != null) {
+            return new RealmAuditEvent(realm, time, principal, type, data);
+        }
 
+        return new AuditEvent(time, principal, type, data);
     }
 
     @Override
@@ -115,6 +521,29 @@ public class AutoJdbcAuditEventStore implements AuditEventStore {
 
     @Override
     public long countByRealm(String realm, Instant after, Instant before, String type) {
+        if (rollupStore != null && rollupStore.isReady()) {
+            // full hours from rollup, partial hours at the edges from table
+            Instant upper = before != null ? before : Instant.now();
+            Instant lowerBucket = Instant.EPOCH;
+            if (after != null) {
+                lowerBucket = AutoJdbcAuditRollupStore.bucket(after);
+                if (lowerBucket.isBefore(after)) {
+                    lowerBucket = lowerBucket.plus(1, ChronoUnit.HOURS);
+                }
+            }
+            Instant upperBucket = AutoJdbcAuditRollupStore.bucket(upper);
+
+            if (lowerBucket.isBefore(upperBucket)) {
+                long count = rollupStore.count(realm, lowerBucket, upperBucket, type);
+                if (after != null && after.isBefore(lowerBucket)) {
+                    count += countByRealmRange(realm, type, after, lowerBucket, false);
+                }
+                count += countByRealmRange(realm, type, upperBucket, before, true);
+
+                return count;
+            }
+        }
+
         StringBuilder query = new StringBuilder();
         query.append(countByRealmAuditEvent);
 
@@ -144,6 +573,33 @@ public class AutoJdbcAuditEventStore implements AuditEventStore {
         return count.longValue();
     }
 
+    private long countByRealmRange(String realm, String type, Instant from, Instant to, boolean inclusive) {
+        StringBuilder query = new StringBuilder();
+        query.append(countByRealmAuditEvent);
+
+        List<Object> params = new LinkedList<>();
+        params.add(realm);
+
+        if (StringUtils.hasText(type)) {
+            query.append(" AND ").append(typeCondition);
+            params.add(type);
+        }
+
+        query.append(" AND ").append(timeAfterCondition);
+        params.add(new Timestamp(from.toEpochMilli()));
+
+        if (to != null) {
+            query.append(" AND ").append(inclusive ? TIME_BEFORE_CONDITION : TIME_BEFORE_EXCLUSIVE_CONDITION);
+            params.add(new Timestamp(to.toEpochMilli()));
+        }
+
+        Long count = jdbcTemplate.queryForObject(query.toString(), Long.class, params.toArray(new Object[0]));
+        if (count == null) {
+            return 0;
+        }
+        return count.longValue();
+    }
+
     @Override
     public List<RealmAuditEvent> findByRealm(String realm, Instant after, Instant before,
             String type) {
@@ -172,12 +628,109 @@ public class AutoJdbcAuditEventStore implements AuditEventStore {
         query.append(" ").append(orderBy);
 
         return jdbcTemplate.query(query.toString(), rowMapper, params.toArray(new Object[0])).stream()
-                .filter(e -> (e instanceof RealmAuditEvent))
-                .map(e -> (RealmAuditEvent) e)
+                .map(e -> toRealmEvent(realm, e))
                 .collect(Collectors.toList());
 
     }
 
+    @Override
+    public RealmAuditEventPage findByRealm(String realm, Instant after, Instant before, String type,
+            AuditCursor cursor, int limit) {
+        Assert.isTrue(limit > 0, "limit must be positive");
+
+        StringBuilder query = new StringBuilder();
+        query.append(DEFAULT_SELECT_REALM_PAGE_STATEMENT);
+
+        List<Object> params = new LinkedList<>();
+        params.add(realm);
+        appendConditions(query, params, type, after, before);
+
+        if (cursor != null) {
+            Timestamp t = new Timestamp(cursor.getTime().toEpochMilli());
+            if (cursor.getId() != null) {
+                query.append(" AND ").append(KEYSET_CONDITION);
+                params.add(t);
+                params.add(t);
+                params.add(cursor.getId());
+            } else {
+                query.append(" AND ").append(KEYSET_TIME_CONDITION);
+                params.add(t);
+            }
+        }
+
+        query.append(" ").append(DEFAULT_KEYSET_ORDER_BY);
+
+        // fetch one more row to detect whether a next page exists
+        String sql = query.toString();
+        Object[] args = params.toArray(new Object[0]);
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(sql);
+            ps.setMaxRows(limit + 1);
+            ps.setFetchSize(Math.min(limit + 1, fetchSize));
+            for (int i = 0; i < args.length; i++) {
+                ps.setObject(i + 1, args[i]);
+            }
+            return ps;
+        }, (ResultSetExtractor<RealmAuditEventPage>) rs -> {
+            List<RealmAuditEvent> events = new ArrayList<>(limit);
+            AuditCursor last = null;
+            boolean more = false;
+            while (rs.next()) {
+                if (events.size() == limit) {
+                    more = true;
+                    break;
+                }
+
+                events.add(toRealmEvent(realm, decode(rs)));
+                last = new AuditCursor(rs.getTimestamp("time").toInstant(), rs.getString("id"));
+            }
+
+            return new RealmAuditEventPage(events, more && last != null ? last.encode() : null);
+        });
+    }
+
+    @Override
+    public void streamByRealm(String realm, Instant after, Instant before, String type,
+            Consumer<RealmAuditEvent> consumer) {
+        // page internally by keyset: drivers do not stream a plain query (ie
+        // mysql buffers the whole result, postgres needs a transaction), while
+        // short pages keep memory bounded without holding a connection open
+        AuditCursor cursor = null;
+        do {
+            RealmAuditEventPage page = findByRealm(realm, after, before, type, cursor, fetchSize);
+            page.getEvents().forEach(consumer);
+            cursor = AuditCursor.decode(page.getNext());
+        } while (cursor != null);
+    }
+
+    private void appendConditions(StringBuilder query, List<Object> params, String type, Instant after,
+            Instant before) {
+        if (StringUtils.hasText(type)) {
+            query.append(" AND ").append(typeCondition);
+            params.add(type);
+        }
+
+        if (after != null) {
+            query.append(" AND ").append(timeAfterCondition);
+            params.add(new Timestamp(after.toEpochMilli()));
+        }
+
+        if (before != null) {
+            query.append(" AND ").append(TIME_BEFORE_CONDITION);
+            params.add(new Timestamp(before.toEpochMilli()));
+        }
+    }
+
+    private RealmAuditEvent toRealmEvent(String realm, AuditEvent event) {
+        if (event instanceof RealmAuditEvent) {
+            return (RealmAuditEvent) event;
+        }
+
+        // legacy rows could carry a plain event, realm comes from the column
+        return new RealmAuditEvent(realm, event.getTimestamp(), event.getPrincipal(), event.getType(),
+                event.getData());
+    }
+
     @Override
     public List<AuditEvent> findByPrincipal(String principal, Instant after, Instant before, String type) {
         StringBuilder query = new StringBuilder();
@@ -278,16 +831,11 @@ public class AutoJdbcAuditEventStore implements AuditEventStore {
         this.orderBy = orderBy;
     }
 
-    private static class AuditEventRowMapper implements RowMapper<AuditEvent> {
+    private class AuditEventRowMapper implements RowMapper<AuditEvent> {
 
         @Override
         public AuditEvent mapRow(ResultSet rs, int rowNum) throws SQLException {
-//            long time = rs.getLong("time");
-//            String principal = rs.getString("principal");
-//            String realm = rs.getString("realm");
-//            String type = rs.getString("type");
-            AuditEvent event = SerializationUtils.deserialize(rs.getBytes("event"));
-            return event;
+            return decode(rs);
         }
     }
 
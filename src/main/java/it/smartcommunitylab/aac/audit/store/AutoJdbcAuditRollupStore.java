@@ -0,0 +1,303 @@
+package it.smartcommunitylab.aac.audit.store;
+
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.boot.actuate.audit.AuditEvent;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.datasource.DataSourceTransactionManager;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.transaction.TransactionStatus;
+import org.springframework.transaction.support.TransactionTemplate;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import it.smartcommunitylab.aac.audit.RealmAuditEvent;
+
+/*
+ * Hourly per realm and type event counters, with DB table creation on startup.
+ *
+ * Counters are incremented as events are written, starting from the instant
+ * the rollup was first initialized. Older events are counted by a backfill
+ * which walks the audit table backwards one chunk at a time, persisting its
+ * progress so that restarts resume where they left. Nodes claim a chunk by
+ * advancing the progress with a conditional update, in the same transaction
+ * which adds the counts, so a chunk is never counted twice nor lost.
+ *
+ * Counts are served from the rollup only once the backfill is complete.
+ */
+public class AutoJdbcAuditRollupStore {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String STATE_ID = "audit";
+    public static final int DEFAULT_BACKFILL_CHUNK = 24;
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS audit_rollup ("
+            + "realm varchar(255) NOT NULL, type varchar(255) NOT NULL, bucket TIMESTAMP NOT NULL, cnt BIGINT NOT NULL, "
+            + "PRIMARY KEY (realm, type, bucket) );";
+    private static final String DEFAULT_CREATE_STATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS audit_rollup_state ("
+            + "id varchar(64) NOT NULL PRIMARY KEY, since TIMESTAMP NOT NULL, backfill_to TIMESTAMP NOT NULL, done INT DEFAULT 0 );";
+
+    private static final String DEFAULT_INCREMENT_STATEMENT = "update audit_rollup set cnt = cnt + ? where realm = ? and type = ? and bucket = ?";
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into audit_rollup (realm, type, bucket, cnt) values (?, ?, ?, ?)";
+    private static final String DEFAULT_SUM_STATEMENT = "select sum(cnt) from audit_rollup where realm = ? and bucket >= ? and bucket < ?";
+    private static final String TYPE_CONDITION = "type = ?";
+
+    private static final String DEFAULT_INSERT_STATE_STATEMENT = "insert into audit_rollup_state (id, since, backfill_to, done) values (?, ?, ?, 0)";
+    private static final String DEFAULT_SELECT_STATE_STATEMENT = "select since, backfill_to, done from audit_rollup_state where id = ?";
+    private static final String DEFAULT_CLAIM_STATEMENT = "update audit_rollup_state set backfill_to = ? where id = ? and backfill_to = ?";
+    private static final String DEFAULT_COMPLETE_STATEMENT = "update audit_rollup_state set done = 1 where id = ? and backfill_to = ?";
+
+    private static final String DEFAULT_SELECT_LAST_BEFORE_STATEMENT = "select max(time) from audit where time < ?";
+    private static final String DEFAULT_SELECT_RANGE_STATEMENT = "select time, realm, type from audit where time >= ? and time < ? and realm is not null and type is not null";
+
+    private final JdbcTemplate jdbcTemplate;
+    private final TransactionTemplate transactionTemplate;
+
+    // rollup covers live events from this instant
+    private final Instant since;
+    private volatile boolean ready;
+
+    private int backfillChunk = DEFAULT_BACKFILL_CHUNK;
+
+    public AutoJdbcAuditRollupStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        this.transactionTemplate = new TransactionTemplate(new DataSourceTransactionManager(dataSource));
+        initSchema();
+
+        // first node to start sets the boundary between live and backfill
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+        try {
+            jdbcTemplate.update(DEFAULT_INSERT_STATE_STATEMENT, STATE_ID, now, now);
+        } catch (DuplicateKeyException e) {
+            // already initialized
+        }
+
+        Map<String, Object> state = jdbcTemplate.queryForMap(DEFAULT_SELECT_STATE_STATEMENT, STATE_ID);
+        this.since = ((Timestamp) state.get("since")).toInstant();
+        this.ready = ((Number) state.get("done")).intValue() == 1;
+    }
+
+    protected void initSchema() {
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+        jdbcTemplate.execute(DEFAULT_CREATE_STATE_TABLE_STATEMENT);
+    }
+
+    public void setBackfillChunk(int backfillChunk) {
+        Assert.isTrue(backfillChunk > 0, "chunk must be positive");
+        this.backfillChunk = backfillChunk;
+    }
+
+    public boolean isReady() {
+        return ready;
+    }
+
+    public static Instant bucket(Instant time) {
+        return time.truncatedTo(ChronoUnit.HOURS);
+    }
+
+    /*
+     * Live updates, within the transaction writing the events
+     */
+    public void increment(Collection<? extends AuditEvent> events, TransactionStatus status) {
+        Map<BucketKey, Long> counts = new HashMap<>();
+        for (AuditEvent event : events) {
+            if (!(event instanceof RealmAuditEvent) || event.getTimestamp().isBefore(since)) {
+                // older events are counted by backfill
+                continue;
+            }
+
+            BucketKey key = new BucketKey(((RealmAuditEvent) event).getRealm(), event.getType(),
+                    bucket(event.getTimestamp()));
+            counts.merge(key, 1L, Long::sum);
+        }
+
+        add(counts, status);
+    }
+
+    /*
+     * Sum of full buckets in [from, to), with from and to aligned to buckets
+     */
+    public long count(String realm, Instant from, Instant to, String type) {
+        StringBuilder query = new StringBuilder();
+        query.append(DEFAULT_SUM_STATEMENT);
+
+        List<Object> params = new ArrayList<>();
+        params.add(realm);
+        params.add(new Timestamp(from.toEpochMilli()));
+        params.add(new Timestamp(to.toEpochMilli()));
+
+        if (StringUtils.hasText(type)) {
+            query.append(" AND ").append(TYPE_CONDITION);
+            params.add(type);
+        }
+
+        Long count = jdbcTemplate.queryForObject(query.toString(), Long.class, params.toArray(new Object[0]));
+        if (count == null) {
+            return 0;
+        }
+        return count.longValue();
+    }
+
+    /*
+     * Backfill, one chunk per run
+     */
+    @Scheduled(fixedDelayString = "${audit.rollup.backfillInterval}")
+    public void backfill() {
+        if (ready) {
+            return;
+        }
+
+        try {
+            Map<String, Object> state = jdbcTemplate.queryForMap(DEFAULT_SELECT_STATE_STATEMENT, STATE_ID);
+            if (((Number) state.get("done")).intValue() == 1) {
+                ready = true;
+                return;
+            }
+
+            Timestamp to = (Timestamp) state.get("backfill_to");
+            Timestamp last = jdbcTemplate.queryForObject(DEFAULT_SELECT_LAST_BEFORE_STATEMENT, Timestamp.class, to);
+            if (last == null) {
+                // nothing left
+                jdbcTemplate.update(DEFAULT_COMPLETE_STATEMENT, STATE_ID, to);
+                ready = true;
+                logger.info("audit rollup backfill completed");
+                return;
+            }
+
+            // skip empty ranges by starting from the last event before progress
+            Instant start = bucket(last.toInstant()).minus(Duration.ofHours(backfillChunk - 1));
+            Timestamp from = new Timestamp(start.toEpochMilli());
+
+            // claim and count atomically, a failure rolls back the claim so the
+            // chunk is retried, when another node got it first we'll retry on next run
+            Boolean claimed = transactionTemplate.execute(status -> {
+                if (jdbcTemplate.update(DEFAULT_CLAIM_STATEMENT, from, STATE_ID, to) == 0) {
+                    return false;
+                }
+
+                Map<BucketKey, Long> counts = new HashMap<>();
+                jdbcTemplate.query(DEFAULT_SELECT_RANGE_STATEMENT, rs -> {
+                    BucketKey key = new BucketKey(rs.getString("realm"), rs.getString("type"),
+                            bucket(rs.getTimestamp("time").toInstant()));
+                    counts.merge(key, 1L, Long::sum);
+                }, from, to);
+
+                add(counts, status);
+                return true;
+            });
+            if (!Boolean.TRUE.equals(claimed)) {
+                return;
+            }
+
+            logger.debug("audit rollup backfilled from " + String.valueOf(from) + " to " + String.valueOf(to));
+        } catch (DataAccessException e) {
+            logger.warn("error during audit rollup backfill: " + e.getMessage());
+        }
+    }
+
+    /*
+     * Add counts, within the given transaction when not null
+     */
+    private void add(Map<BucketKey, Long> counts, TransactionStatus status) {
+        if (counts.isEmpty()) {
+            return;
+        }
+
+        List<BucketKey> keys = new ArrayList<>(counts.keySet());
+        List<Object[]> args = new ArrayList<>(keys.size());
+        for (BucketKey key : keys) {
+            args.add(new Object[] { counts.get(key), key.realm, key.type, new Timestamp(key.bucket.toEpochMilli()) });
+        }
+
+        int[] updated = jdbcTemplate.batchUpdate(DEFAULT_INCREMENT_STATEMENT, args,
+                new int[] { Types.BIGINT, Types.VARCHAR, Types.VARCHAR, Types.TIMESTAMP });
+
+        // create missing buckets
+        for (int i = 0; i < keys.size(); i++) {
+            if (updated[i] == 0) {
+                BucketKey key = keys.get(i);
+                Timestamp bucket = new Timestamp(key.bucket.toEpochMilli());
+                long count = counts.get(key);
+                // a failed statement aborts the whole transaction on some DBs
+                Object savepoint = status != null ? status.createSavepoint() : null;
+                try {
+                    jdbcTemplate.update(DEFAULT_INSERT_STATEMENT, key.realm, key.type, bucket, count);
+                    if (savepoint != null) {
+                        status.releaseSavepoint(savepoint);
+                    }
+                } catch (DuplicateKeyException e) {
+                    if (savepoint != null) {
+                        status.rollbackToSavepoint(savepoint);
+                    }
+                    // concurrent insert, add to the existing bucket
+                    jdbcTemplate.update(DEFAULT_INCREMENT_STATEMENT, count, key.realm, key.type, bucket);
+                }
+            }
+        }
+    }
+
+    private static class BucketKey {
+        private final String realm;
+        private final String type;
+        private final Instant bucket;
+
+        public BucketKey(String realm, String type, Instant bucket) {
+            this.realm = realm;
+            this.type = type;
+            this.bucket = bucket;
+        }
+
+        @Override
+        public int hashCode() {
+            final int prime = 31;
+            int result = 1;
+            result = prime * result + ((bucket == null) ? 0 : bucket.hashCode());
+            result = prime * result + ((realm == null) ? 0 : realm.hashCode());
+            result = prime * result + ((type == null) ? 0 : type.hashCode());
+            return result;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj)
+                return true;
+            if (obj == null)
+                return false;
+            if (getClass() != obj.getClass())
+                return false;
+            BucketKey other = (BucketKey) obj;
+            if (bucket == null) {
+                if (other.bucket != null)
+                    return false;
+            } else if (!bucket.equals(other.bucket))
+                return false;
+            if (realm == null) {
+                if (other.realm != null)
+                    return false;
+            } else if (!realm.equals(other.realm))
+                return false;
+            if (type == null) {
+                if (other.type != null)
+                    return false;
+            } else if (!type.equals(other.type))
+                return false;
+            return true;
+        }
+    }
+}
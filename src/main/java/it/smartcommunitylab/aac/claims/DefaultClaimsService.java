@@ -21,6 +21,9 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import com.nimbusds.jwt.JWTClaimsSet;
 import com.nimbusds.openid.connect.sdk.claims.IDTokenClaimsSet;
 
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+
 import it.smartcommunitylab.aac.Config;
 import it.smartcommunitylab.aac.claims.model.SerializableClaim;
 import it.smartcommunitylab.aac.common.InvalidDefinitionException;
@@ -36,6 +39,7 @@ import it.smartcommunitylab.aac.model.User;
 public class DefaultClaimsService implements ClaimsService, InitializingBean {
 
     public static final String CLAIM_MAPPING_FUNCTION = "claimMapping";
+    public static final String METRIC_USER_LOADS = "aac.claims.user.loads";
 
     // claims that should not be overwritten
     private static final Set<String> REGISTERED_CLAIM_NAMES = JWTClaimsSet.getRegisteredNames();
@@ -67,6 +71,9 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
     private ScriptExecutionService executionService;
     private UserService userService;
 
+    // metrics
+    private DistributionSummary userLoadsSummary;
+
     // object mapper
     private final ObjectMapper mapper = new ObjectMapper();
 //    private final TypeReference<HashMap<String, String>> stringMapTypeRef = new TypeReference<HashMap<String, String>>() {
@@ -89,6 +96,16 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
         this.userService = userService;
     }
 
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            this.userLoadsSummary = DistributionSummary.builder(METRIC_USER_LOADS)
+                    .description("user models loaded per claims request")
+                    .register(meterRegistry);
+        } else {
+            this.userLoadsSummary = null;
+        }
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         Assert.notNull(executionService, "an execution service is required");
@@ -110,6 +127,9 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
 
         Map<String, Serializable> claims = new HashMap<>();
 
+        // request-scoped user snapshots, one per realm, shared by all extractors
+        Map<String, User> users = new HashMap<>();
+
         // reset null lists, we support a configuration where we get only clientMapping
         if (scopes == null) {
             scopes = Collections.emptyList();
@@ -137,18 +157,8 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
             Collection<ScopeClaimsExtractor> exts = extractorsRegistry.getScopeExtractors(scope);
             for (ScopeClaimsExtractor ce : exts) {
                 // each extractor can respond, we keep only userClaims
-                User user = userService.getUser(userDetails, ce.getRealm());
-
-                // filter attribute sets according to scopes
-                if (!ce.getResourceId().startsWith("aac.") && !scopes.contains(Config.SCOPE_FULL_PROFILE)) {
-                    user.setAttributes(narrowUserAttributes(user.getAttributes(), scopes));
-                }
-
-                if (!scopes.contains(Config.SCOPE_USER_ROLE)) {
-                    user.setAuthorities(null);
-                    user.setRealmRoles(null);
-                    user.setSpaceRoles(null);
-                }
+                User user = narrowUser(getUserSnapshot(userDetails, ce.getRealm(), users), ce.getResourceId(),
+                        scopes);
 
                 ClaimsSet cs = ce.extractUserClaims(scope, user, client, scopes, extensions);
                 if (cs != null && cs.isUser()) {
@@ -164,18 +174,8 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
             Collection<ResourceClaimsExtractor> exts = extractorsRegistry.getResourceExtractors(resourceId);
             for (ResourceClaimsExtractor ce : exts) {
                 // each extractor can respond, we keep only userClaims
-                User user = userService.getUser(userDetails, ce.getRealm());
-
-                // filter attribute sets according to scopes
-                if (!ce.getResourceId().startsWith("aac.") && !scopes.contains(Config.SCOPE_FULL_PROFILE)) {
-                    user.setAttributes(narrowUserAttributes(user.getAttributes(), scopes));
-                }
-
-                if (!scopes.contains(Config.SCOPE_USER_ROLE)) {
-                    user.setAuthorities(null);
-                    user.setRealmRoles(null);
-                    user.setSpaceRoles(null);
-                }
+                User user = narrowUser(getUserSnapshot(userDetails, ce.getRealm(), users), ce.getResourceId(),
+                        scopes);
 
                 ClaimsSet cs = ce.extractUserClaims(resourceId, user, client, scopes, extensions);
                 if (cs != null && cs.isUser()) {
@@ -185,6 +185,11 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
 
         }
 
+        // track how many user models we had to build for this request
+        if (userLoadsSummary != null) {
+            userLoadsSummary.record(users.size());
+        }
+
 //
 //        // process basic scopes from userDetails
 //        if (scopes.contains(Config.SCOPE_OPENID)) {
@@ -461,6 +466,40 @@ public class DefaultClaimsService implements ClaimsService, InitializingBean {
         contents.get(key).add(value);
     }
 
+    /*
+     * User snapshots
+     * 
+     * the full user model is loaded once per realm and request, extractors receive
+     * a narrowed copy so they can't influence each other
+     */
+    private User getUserSnapshot(UserDetails userDetails, String realm, Map<String, User> users) {
+        String key = realm != null ? realm : userDetails.getRealm();
+        User user = users.get(key);
+        if (user == null) {
+            user = userService.getUser(userDetails, realm);
+            users.put(key, user);
+        }
+
+        return user;
+    }
+
+    private User narrowUser(User snapshot, String resourceId, Collection<String> scopes) {
+        User user = new User(snapshot);
+
+        // filter attribute sets according to scopes
+        if (!resourceId.startsWith("aac.") && !scopes.contains(Config.SCOPE_FULL_PROFILE)) {
+            user.setAttributes(narrowUserAttributes(user.getAttributes(), scopes));
+        }
+
+        if (!scopes.contains(Config.SCOPE_USER_ROLE)) {
+            user.setAuthorities(null);
+            user.setRealmRoles(null);
+            user.setSpaceRoles(null);
+        }
+
+        return user;
+    }
+
     public List<UserAttributes> narrowUserAttributes(Collection<UserAttributes> attributes,
             Collection<String> scopes) {
         return attributes.stream()
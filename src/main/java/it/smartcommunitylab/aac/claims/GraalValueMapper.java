@@ -0,0 +1,329 @@
+package it.smartcommunitylab.aac.claims;
+
+import java.io.Serializable;
+import java.lang.reflect.Array;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.graalvm.polyglot.Value;
+import org.graalvm.polyglot.proxy.ProxyArray;
+import org.graalvm.polyglot.proxy.ProxyObject;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/*
+ * Structural marshalling between java and the graal js guest.
+ *
+ * Maps and collections are exposed to scripts as proxies, resolved lazily on
+ * access, while results are converted back by walking the guest objects. This
+ * avoids encoding the input to JSON and decoding the output from JSON for every
+ * execution.
+ *
+ * Proxies are copy-on-write: scripts can modify their view of the input without
+ * touching the caller's model.
+ */
+public class GraalValueMapper {
+
+    // fallback for values which are not plain collections or primitives
+    private final ObjectMapper mapper;
+
+    public GraalValueMapper(ObjectMapper mapper) {
+        this.mapper = mapper;
+    }
+
+    /*
+     * Java to guest
+     */
+    public Object toGuest(Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        if (value instanceof String || value instanceof Number || value instanceof Boolean
+                || value instanceof Character) {
+            return value;
+        }
+
+        if (value instanceof MapProxy || value instanceof ListProxy) {
+            return value;
+        }
+
+        if (value instanceof Map) {
+            return new MapProxy((Map<?, ?>) value);
+        }
+
+        if (value instanceof Collection) {
+            return new ListProxy((Collection<?>) value);
+        }
+
+        if (value.getClass().isArray()) {
+            int len = Array.getLength(value);
+            List<Object> list = new ArrayList<>(len);
+            for (int i = 0; i < len; i++) {
+                list.add(Array.get(value, i));
+            }
+            return new ListProxy(list);
+        }
+
+        if (value instanceof Enum) {
+            return ((Enum<?>) value).name();
+        }
+
+        // convert via jackson to keep the same representation as json
+        return toGuest(mapper.convertValue(value, Object.class));
+    }
+
+    /*
+     * Guest to java
+     */
+    public HashMap<String, Serializable> fromGuestMap(Object value) {
+        Serializable s = fromGuest(value);
+        if (s == null) {
+            return null;
+        }
+
+        if (!(s instanceof HashMap)) {
+            throw new IllegalArgumentException("result is not an object");
+        }
+
+        @SuppressWarnings("unchecked")
+        HashMap<String, Serializable> map = (HashMap<String, Serializable>) s;
+        return map;
+    }
+
+    public Serializable fromGuest(Object value) {
+        if (value == null) {
+            return null;
+        }
+
+        if (value instanceof Value) {
+            return fromValue((Value) value);
+        }
+
+        if (value instanceof String || value instanceof Boolean) {
+            return (Serializable) value;
+        }
+
+        if (value instanceof Character) {
+            return String.valueOf(value);
+        }
+
+        if (value instanceof Number) {
+            return normalize((Number) value);
+        }
+
+        if (value instanceof MapProxy) {
+            return fromGuest(((MapProxy) value).values);
+        }
+
+        if (value instanceof ListProxy) {
+            return fromGuest(((ListProxy) value).values);
+        }
+
+        // check list first, guest arrays could expose members as well
+        if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            ArrayList<Serializable> result = new ArrayList<>(list.size());
+            for (Object o : list) {
+                result.add(fromGuest(o));
+            }
+            return result;
+        }
+
+        if (value instanceof Map) {
+            Map<?, ?> map = (Map<?, ?>) value;
+            HashMap<String, Serializable> result = new HashMap<>();
+            for (Map.Entry<?, ?> e : map.entrySet()) {
+                Serializable v = fromGuest(e.getValue());
+                // drop undefined/null as JSON.stringify would
+                if (v != null) {
+                    result.put(String.valueOf(e.getKey()), v);
+                }
+            }
+            return result;
+        }
+
+        if (value instanceof Serializable) {
+            return (Serializable) value;
+        }
+
+        return String.valueOf(value);
+    }
+
+    public Serializable fromValue(Value value) {
+        if (value == null || value.isNull()) {
+            return null;
+        }
+
+        if (value.isBoolean()) {
+            return value.asBoolean();
+        }
+
+        if (value.isString()) {
+            return value.asString();
+        }
+
+        if (value.isNumber()) {
+            if (value.fitsInInt()) {
+                return value.asInt();
+            }
+            if (value.fitsInLong()) {
+                return value.asLong();
+            }
+            return value.asDouble();
+        }
+
+        if (value.isProxyObject()) {
+            return fromGuest(value.asProxyObject());
+        }
+
+        if (value.isHostObject()) {
+            return fromGuest(value.asHostObject());
+        }
+
+        if (value.hasArrayElements()) {
+            long size = value.getArraySize();
+            ArrayList<Serializable> result = new ArrayList<>();
+            for (long i = 0; i < size; i++) {
+                result.add(fromValue(value.getArrayElement(i)));
+            }
+            return result;
+        }
+
+        if (value.hasMembers()) {
+            HashMap<String, Serializable> result = new HashMap<>();
+            for (String key : value.getMemberKeys()) {
+                Value member = value.getMember(key);
+                // skip functions as JSON.stringify would
+                if (member != null && !member.canExecute()) {
+                    Serializable v = fromValue(member);
+                    if (v != null) {
+                        result.put(key, v);
+                    }
+                }
+            }
+            return result;
+        }
+
+        return value.toString();
+    }
+
+    // js numbers are doubles, keep integral values as integers as json would
+    private Serializable normalize(Number n) {
+        if (n instanceof Double || n instanceof Float) {
+            double d = n.doubleValue();
+            if (d == Math.rint(d) && !Double.isInfinite(d)) {
+                if (d >= Integer.MIN_VALUE && d <= Integer.MAX_VALUE) {
+                    return Integer.valueOf((int) d);
+                }
+                if (d >= Long.MIN_VALUE && d <= Long.MAX_VALUE) {
+                    return Long.valueOf((long) d);
+                }
+            }
+            return Double.valueOf(d);
+        }
+
+        if (n instanceof Serializable) {
+            return (Serializable) n;
+        }
+
+        return Double.valueOf(n.doubleValue());
+    }
+
+    /*
+     * Proxies
+     */
+    private class MapProxy implements ProxyObject {
+        private final Map<String, Object> values;
+
+        public MapProxy(Map<?, ?> source) {
+            // shallow copy, nested values are wrapped on access
+            this.values = new LinkedHashMap<>();
+            for (Map.Entry<?, ?> e : source.entrySet()) {
+                values.put(String.valueOf(e.getKey()), e.getValue());
+            }
+        }
+
+        @Override
+        public Object getMember(String key) {
+            Object value = values.get(key);
+            Object guest = toGuest(value);
+            if (guest != value) {
+                // keep the wrapped value to preserve identity and modifications
+                values.put(key, guest);
+            }
+            return guest;
+        }
+
+        @Override
+        public Object getMemberKeys() {
+            return ProxyArray.fromArray(values.keySet().toArray());
+        }
+
+        @Override
+        public boolean hasMember(String key) {
+            return values.containsKey(key);
+        }
+
+        @Override
+        public void putMember(String key, Value value) {
+            values.put(key, fromValue(value));
+        }
+
+        @Override
+        public boolean removeMember(String key) {
+            return values.remove(key) != null;
+        }
+    }
+
+    private class ListProxy implements ProxyArray {
+        private final List<Object> values;
+
+        public ListProxy(Collection<?> source) {
+            this.values = new ArrayList<>(source);
+        }
+
+        @Override
+        public Object get(long index) {
+            checkIndex(index);
+            Object value = values.get((int) index);
+            Object guest = toGuest(value);
+            if (guest != value) {
+                values.set((int) index, guest);
+            }
+            return guest;
+        }
+
+        @Override
+        public void set(long index, Value value) {
+            if (index == values.size()) {
+                values.add(fromValue(value));
+            } else {
+                checkIndex(index);
+                values.set((int) index, fromValue(value));
+            }
+        }
+
+        @Override
+        public boolean remove(long index) {
+            checkIndex(index);
+            values.remove((int) index);
+            return true;
+        }
+
+        @Override
+        public long getSize() {
+            return values.size();
+        }
+
+        private void checkIndex(long index) {
+            if (index < 0 || index >= values.size()) {
+                throw new ArrayIndexOutOfBoundsException("invalid index " + String.valueOf(index));
+            }
+        }
+    }
+}
@@ -2,15 +2,34 @@ package it.smartcommunitylab.aac.claims;
 
 import java.io.IOException;
 import java.io.Serializable;
-import java.io.StringWriter;
+import java.lang.reflect.Field;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.FileSystems;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
 
 import javax.script.ScriptException;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+import org.springframework.util.ReflectionUtils;
+import org.springframework.util.StringUtils;
+
 import com.fasterxml.jackson.core.JsonGenerationException;
 import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.JsonMappingException;
@@ -19,25 +38,182 @@ import com.fasterxml.jackson.databind.ObjectMapper;
 import delight.graaljssandbox.GraalSandbox;
 import delight.graaljssandbox.GraalSandboxes;
 import delight.nashornsandbox.exceptions.ScriptCPUAbuseException;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
 import it.smartcommunitylab.aac.common.InvalidDefinitionException;
 import it.smartcommunitylab.aac.common.SystemException;
 
-public class LocalGraalExecutionService implements ScriptExecutionService {
+/*
+ * Graal execution service backed by a bounded pool of pre-initialized sandboxes.
+ *
+ * Sandboxes are created and warmed at startup, then borrowed for a single
+ * execution and reset before being returned. Builtins and the intrinsics behind
+ * them (ie iterator and typed array prototypes) are deep frozen after warm up,
+ * and the reset restores the global object to its warm up snapshot, removing
+ * any global defined by scripts. A sandbox goes back to the pool only when the
+ * reset succeeds and builtins resolved by name still match the snapshot,
+ * otherwise it is closed and replaced. All sandboxes share a single executor,
+ * sized as the pool, since each one runs at most one script at a time.
+ *
+ * Functions are evaluated once per sandbox and kept as factories keyed by the
+ * content hash, with LRU eviction. Every execution builds a fresh closure from
+ * the factory, so no state is shared between executions, and passes the input
+ * as a variable: the program text stays constant and the function source is not
+ * parsed again.
+ *
+ * The registry lives in a closure not reachable by guest code, behind a frozen
+ * accessor which requires a per sandbox secret: scripts can neither read nor
+ * replace cached functions.
+ *
+ * Guest sources are checked to parse as a function body on their own before
+ * being wrapped, so they can not close the wrapper and leave script scoped
+ * declarations behind. Host programs reach globals through the global object
+ * and decode via builtins captured before any guest code runs, so they do not
+ * depend on names guest code could shadow.
+ *
+ * Input and output are marshalled via a JSON round-trip by default. Structural
+ * marshalling via proxies (see GraalValueMapper) is opt-in: on graal 19.2.1
+ * proxy values do not behave as native arrays and objects (ie no map/filter,
+ * partial JSON.stringify and Object.keys support), so existing scripts could
+ * behave differently.
+ */
+public class LocalGraalExecutionService implements ScriptExecutionService, InitializingBean, DisposableBean {
+
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
     public static final int DEFAULT_MAX_CPU_TIME = 100;
     public static final int DEFAULT_MAX_MEMORY = 10485760;
+    public static final int DEFAULT_POOL_SIZE = 4;
+    public static final long DEFAULT_MAX_WAIT_TIME = 5000;
+    public static final int DEFAULT_CACHE_SIZE = 100;
+
+    public static final String METRIC_POOL_WAIT = "aac.execution.pool.wait";
+    public static final String METRIC_EXECUTION = "aac.execution.latency";
+
+    private static final String REGISTRY_VAR = "__aac";
+    private static final String[] BUILTIN_NAMES = { "Object", "Function", "Array", "String", "Number", "Boolean",
+            "Symbol", "Date", "RegExp", "Error", "EvalError", "RangeError", "ReferenceError", "SyntaxError",
+            "TypeError", "URIError", "Math", "JSON", "Reflect", "Proxy", "Promise", "Map", "Set", "WeakMap", "WeakSet",
+            "ArrayBuffer", "DataView", "Int8Array", "Uint8Array", "Uint8ClampedArray", "Int16Array", "Uint16Array",
+            "Int32Array", "Uint32Array", "Float32Array", "Float64Array", "BigInt", "Intl", "console" };
+    private static final String BUILTINS = "['" + String.join("', '", BUILTIN_NAMES) + "']";
+    // globals evaluating sources outside of the wrapper
+    private static final String UNSAFE_GLOBALS = "['Polyglot', 'load', 'loadWithNewGlobal']";
+    private static final String DEFINE_VAR = "__aac_def";
+    private static final String SOURCE_VAR = "__aac_src";
+    private static final Pattern NAME_PATTERN = Pattern.compile("^[A-Za-z_$][A-Za-z0-9_$]*$");
+    // strict mode hides callers and their arguments from guest functions,
+    // builtins are captured before any guest code runs
+    private static final String REGISTRY_SCRIPT = "(function(g) {\n"
+            + "'use strict';\n"
+            + "var secret = '%s';\n"
+            + "var F = Function, J = JSON, O = Object, R = Reflect, M = Map, S = Set;\n"
+            + "var fns = O.create(null);\n"
+            + "function check(t) { if (t !== secret) { throw new Error('access denied'); } }\n"
+            + "O.defineProperty(g, '" + REGISTRY_VAR + "', { value: O.freeze({\n"
+            // parse the body on its own, rejects sources escaping the wrapper
+            + "  compile: function(t, s, n) { check(t); F(s + '\\n;return ' + n + ';'); },\n"
+            + "  define: function(t, h, f) { check(t); if (typeof f !== 'function') { throw new Error('invalid function'); } fns[h] = f; },\n"
+            + "  invoke: function(t, h, d) { check(t); var f = fns[h]; if (!f) { throw new Error('missing function'); } return f()(d); },\n"
+            + "  invokeJson: function(t, h, d) { check(t); var f = fns[h]; if (!f) { throw new Error('missing function'); } return J.stringify(f()(J.parse(d))); },\n"
+            + "  remove: function(t, h) { check(t); delete fns[h]; },\n"
+            + "  seal: function(t) { check(t); seal(); },\n"
+            + "  reset: function(t) { check(t); return reset(); },\n"
+            + "  verify: function(t, v) { check(t); return verify(v); }\n"
+            + "}), writable: false, enumerable: false, configurable: false });\n"
+            // deep freeze builtins and intrinsics, snapshot globals after warm up
+            + "var names = " + BUILTINS + ";\n"
+            + "var baseline = null;\n"
+            + "function harden(roots) {\n"
+            + "  var seen = new S();\n"
+            + "  while (roots.length > 0) {\n"
+            + "    var o = roots.pop();\n"
+            + "    if (o === null || o === g || (typeof o !== 'object' && typeof o !== 'function') || seen.has(o)) { continue; }\n"
+            + "    seen.add(o);\n"
+            + "    try {\n"
+            + "      O.freeze(o);\n"
+            + "      roots.push(O.getPrototypeOf(o));\n"
+            + "      R.ownKeys(o).forEach(function(k) {\n"
+            + "        var d = O.getOwnPropertyDescriptor(o, k);\n"
+            + "        if ('value' in d) { roots.push(d.value); } else { roots.push(d.get, d.set); }\n"
+            + "      });\n"
+            + "    } catch (e) {\n"
+            + "      // host objects\n"
+            + "    }\n"
+            + "  }\n"
+            + "}\n"
+            + "function seal() {\n"
+            + "  " + UNSAFE_GLOBALS + ".forEach(function(n) { try { delete g[n]; } catch (e) {} });\n"
+            + "  var roots = names.map(function(n) { return g[n]; });\n"
+            // intrinsics not reachable from globals
+            + "  roots.push([][Symbol.iterator](), new M().entries(), new S().values(), ''[Symbol.iterator](),\n"
+            + "    function*() {}, (function*() {})(), async function() {});\n"
+            + "  harden(roots);\n"
+            + "  g.data = undefined; g.result = undefined;\n"
+            + "  baseline = new M();\n"
+            + "  R.ownKeys(g).forEach(function(k) { baseline.set(k, O.getOwnPropertyDescriptor(g, k)); });\n"
+            + "}\n"
+            + "function same(a, b) {\n"
+            + "  return a.value === b.value && a.get === b.get && a.set === b.set && a.writable === b.writable\n"
+            + "    && a.enumerable === b.enumerable && a.configurable === b.configurable;\n"
+            + "}\n"
+            + "function reset() {\n"
+            + "  var clean = true;\n"
+            + "  R.ownKeys(g).forEach(function(k) {\n"
+            + "    if (!baseline.has(k)) {\n"
+            + "      try { delete g[k]; } catch (e) { clean = false; }\n"
+            + "      if (O.prototype.hasOwnProperty.call(g, k)) { clean = false; }\n"
+            + "    }\n"
+            + "  });\n"
+            + "  baseline.forEach(function(d, k) {\n"
+            + "    var c = O.getOwnPropertyDescriptor(g, k);\n"
+            + "    if (!c || !same(c, d)) {\n"
+            + "      try { O.defineProperty(g, k, d); } catch (e) { clean = false; }\n"
+            + "    }\n"
+            + "  });\n"
+            + "  return clean;\n"
+            + "}\n"
+            // builtins as resolved by name from a host program, after reset: any
+            // difference comes from a script scoped binding shadowing the global
+            + "function verify(v) {\n"
+            + "  for (var i = 0; i < names.length; i++) {\n"
+            + "    var d = baseline.get(names[i]);\n"
+            + "    if (d ? v[i] !== d.value : v[i] !== undefined) { return false; }\n"
+            + "  }\n"
+            + "  return true;\n"
+            + "}\n"
+            + "})(this);";
+    private static final String WARMUP_SCRIPT = "result = JSON.stringify({})";
 
     private int maxCpuTime;
     private int maxMemory;
+    private int poolSize;
+    private long maxWaitTime;
+    private int cacheSize;
+    private boolean useProxies;
+
+    // pool
+    private BlockingQueue<PooledSandbox> sandboxes;
+    private ExecutorService executor;
+
+    // metrics
+    private Timer waitTimer;
+    private Timer executionTimer;
 
     // custom jackson configuration with typeReference
     private final ObjectMapper mapper = new ObjectMapper();
     private final TypeReference<HashMap<String, Serializable>> typeRef = new TypeReference<HashMap<String, Serializable>>() {
     };
+    private final GraalValueMapper valueMapper = new GraalValueMapper(mapper);
+    private final SecureRandom random = new SecureRandom();
 
     public LocalGraalExecutionService() {
         this.maxCpuTime = DEFAULT_MAX_CPU_TIME;
         this.maxMemory = DEFAULT_MAX_MEMORY;
+        this.poolSize = DEFAULT_POOL_SIZE;
+        this.maxWaitTime = DEFAULT_MAX_WAIT_TIME;
+        this.cacheSize = DEFAULT_CACHE_SIZE;
+        this.useProxies = false;
     }
 
     public int getMaxCpuTime() {
@@ -56,15 +232,60 @@ public class LocalGraalExecutionService implements ScriptExecutionService {
         this.maxMemory = maxMemory;
     }
 
-    // TODO implement a threadPool for sandboxes to avoid bootstrap
-    @Override
-    public Map<String, Serializable> executeFunction(String name, String function, Map<String, Serializable> input)
-            throws InvalidDefinitionException, SystemException {
+    public int getPoolSize() {
+        return poolSize;
+    }
 
-        // TODO evaluate function syntax etc
+    public void setPoolSize(int poolSize) {
+        this.poolSize = poolSize;
+    }
+
+    public long getMaxWaitTime() {
+        return maxWaitTime;
+    }
+
+    public void setMaxWaitTime(long maxWaitTime) {
+        this.maxWaitTime = maxWaitTime;
+    }
+
+    public int getCacheSize() {
+        return cacheSize;
+    }
+
+    public void setCacheSize(int cacheSize) {
+        this.cacheSize = cacheSize;
+    }
+
+    public boolean isUseProxies() {
+        return useProxies;
+    }
+
+    public void setUseProxies(boolean useProxies) {
+        this.useProxies = useProxies;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            this.waitTimer = Timer.builder(METRIC_POOL_WAIT)
+                    .description("time spent waiting for a sandbox")
+                    .register(meterRegistry);
+            this.executionTimer = Timer.builder(METRIC_EXECUTION)
+                    .description("script execution latency")
+                    .register(meterRegistry);
+        } else {
+            this.waitTimer = null;
+            this.executionTimer = null;
+        }
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        Assert.isTrue(poolSize > 0, "pool size must be a positive number");
+        Assert.isTrue(cacheSize > 0, "cache size must be a positive number");
 
         // workaround for graal 19.2.1 and fat jars
         // https://github.com/oracle/graal/issues/1348
+        // needs to run only once, before the first context is built
         try {
             URL res = com.oracle.js.parser.ScriptEnvironment.class.getClassLoader()
                     .getResource("/META-INF/truffle/language");
@@ -74,46 +295,296 @@ public class LocalGraalExecutionService implements ScriptExecutionService {
             // in case of starting without fat jar
         }
 
-        GraalSandbox sandbox = createSandbox();
+        // shared executor, each sandbox uses at most one thread at a time
+        executor = Executors.newFixedThreadPool(poolSize);
+        sandboxes = new ArrayBlockingQueue<>(poolSize);
+
+        // build and warm up the pool
+        logger.debug("warm up execution pool with " + String.valueOf(poolSize) + " sandboxes");
+        for (int i = 0; i < poolSize; i++) {
+            sandboxes.add(createSandbox());
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        if (sandboxes != null) {
+            PooledSandbox sandbox;
+            while ((sandbox = sandboxes.poll()) != null) {
+                sandbox.close();
+            }
+        }
+
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+    }
+
+    @Override
+    public Map<String, Serializable> executeFunction(String name, String function, Map<String, Serializable> input)
+            throws InvalidDefinitionException, SystemException {
+
+        // TODO evaluate function syntax etc
+        if (!StringUtils.hasText(name) || !StringUtils.hasText(function)) {
+            throw new InvalidDefinitionException("invalid function");
+        }
+
+        String hash = hash(name, function);
+
+        PooledSandbox pooled = borrowSandbox();
+        boolean reusable = true;
+        long start = System.nanoTime();
         try {
-            StringWriter writer = new StringWriter();
-            writer.append("data = ");
-            mapper.writeValue(writer, input);
-            writer.append(";");
-            writer.append("\n");
-            writer.append(function);
-            writer.append(";");
-            writer.append("\n");
-            writer.append("result = JSON.stringify("
-                    + name
-                    + "(data))");
-
-            
-            String code = writer.toString();
-            sandbox.eval(code);
+            GraalSandbox sandbox = pooled.sandbox;
+
+            // resolve the compiled function, evaluating source only on miss
+            pooled.resolve(hash, name, function);
+
+            // pass input as variable, program text is constant per function
+            if (useProxies) {
+                // direct marshalling, no json encoding
+                sandbox.inject("data", valueMapper.toGuest(input));
+                sandbox.eval("this.result = " + pooled.call("invoke", hash, "this.data"));
+                return valueMapper.fromGuestMap(sandbox.get("result"));
+            }
+
+            // json codec captured by the registry, guest code can not replace it
+            sandbox.inject("data", mapper.writeValueAsString(input));
+            sandbox.eval("this.result = " + pooled.call("invokeJson", hash, "this.data"));
             String output = (String) sandbox.get("result");
 
             Map<String, Serializable> result = mapper.readValue(output, typeRef);
             return result;
-        } catch (JsonGenerationException | JsonMappingException e) {
+        } catch (IllegalArgumentException | JsonGenerationException | JsonMappingException e) {
             throw new InvalidDefinitionException(e.getMessage());
         } catch (IOException e) {
             throw new SystemException(e.getMessage());
-        } catch (ScriptCPUAbuseException | ScriptException e) {
+        } catch (ScriptCPUAbuseException e) {
+            // context could be in an inconsistent state, discard
+            reusable = false;
+            throw new InvalidDefinitionException(e.getMessage());
+        } catch (ScriptException e) {
             throw new InvalidDefinitionException(e.getMessage());
         } finally {
-            sandbox.getExecutor().shutdown();
+            if (executionTimer != null) {
+                executionTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            releaseSandbox(pooled, reusable);
+        }
+
+    }
+
+    /*
+     * Pool
+     */
+    private PooledSandbox borrowSandbox() throws SystemException {
+        Assert.notNull(sandboxes, "execution pool is not initialized");
+        long start = System.nanoTime();
+        try {
+            PooledSandbox sandbox = sandboxes.poll(maxWaitTime, TimeUnit.MILLISECONDS);
+            if (sandbox == null) {
+                throw new SystemException("no sandbox available for execution");
+            }
+
+            return sandbox;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new SystemException("interrupted while waiting for a sandbox");
+        } finally {
+            if (waitTimer != null) {
+                waitTimer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private void releaseSandbox(PooledSandbox sandbox, boolean reusable) {
+        if (reusable) {
+            // restore globals to the warm up snapshot, keep compiled functions
+            try {
+                sandbox.sandbox.eval("this.result = " + sandbox.reset());
+                reusable = Boolean.TRUE.equals(sandbox.sandbox.get("result"));
+            } catch (ScriptCPUAbuseException | ScriptException | RuntimeException e) {
+                reusable = false;
+            }
+
+            if (!reusable) {
+                logger.debug("sandbox globals could not be restored, discard");
+            }
+        }
+
+        if (!reusable) {
+            // never return a context not proven clean, replace with a fresh sandbox
+            // to keep the pool size stable
+            sandbox.close();
+            try {
+                sandbox = createSandbox();
+            } catch (ScriptCPUAbuseException | ScriptException e) {
+                logger.error("error building a replacement sandbox: " + e.getMessage());
+                return;
+            }
         }
 
+        sandboxes.offer(sandbox);
     }
 
-    private GraalSandbox createSandbox() {
+    private PooledSandbox createSandbox() throws ScriptCPUAbuseException, ScriptException {
         GraalSandbox sandbox;
         sandbox = GraalSandboxes.create();
         sandbox.setMaxCPUTime(maxCpuTime);
         sandbox.setMaxMemory(maxMemory);
         sandbox.setMaxPreparedStatements(30); // because preparing scripts for execution is expensive
-        sandbox.setExecutor(Executors.newSingleThreadExecutor());
-        return sandbox;
+        sandbox.setExecutor(executor);
+
+        // install the function registry, then warm up context
+        String secret = secret();
+        PooledSandbox pooled = new PooledSandbox(sandbox, secret);
+        try {
+            sandbox.eval(String.format(REGISTRY_SCRIPT, secret));
+            sandbox.eval(WARMUP_SCRIPT);
+            sandbox.eval(pooled.call("seal", null, null) + ";");
+        } catch (ScriptCPUAbuseException | ScriptException | RuntimeException e) {
+            pooled.close();
+            throw e;
+        }
+
+        return pooled;
+    }
+
+    private String secret() {
+        byte[] bytes = new byte[32];
+        random.nextBytes(bytes);
+
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+
+    private static String hash(String name, String function) throws SystemException {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(name.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            byte[] bytes = digest.digest(function.getBytes(StandardCharsets.UTF_8));
+
+            StringBuilder sb = new StringBuilder();
+            for (byte b : bytes) {
+                sb.append(String.format("%02x", b));
+            }
+            return sb.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new SystemException(e.getMessage());
+        }
+    }
+
+    /*
+     * A sandbox with its own LRU registry of compiled functions.
+     * 
+     * Not thread safe, a sandbox is used by a single execution at a time.
+     */
+    private class PooledSandbox {
+        private final GraalSandbox sandbox;
+        private final String secret;
+        private final LinkedHashMap<String, Boolean> functions;
+
+        public PooledSandbox(GraalSandbox sandbox, String secret) {
+            this.sandbox = sandbox;
+            this.secret = secret;
+            this.functions = new LinkedHashMap<>(16, 0.75f, true);
+        }
+
+        public void resolve(String hash, String name, String function)
+                throws ScriptCPUAbuseException, ScriptException {
+            if (functions.get(hash) != null) {
+                return;
+            }
+
+            if (!NAME_PATTERN.matcher(name).matches()) {
+                throw new IllegalArgumentException("invalid function name");
+            }
+
+            // check the source parses as a function body on its own, passed as data,
+            // so that it can not close the wrapper and declare script scoped
+            // bindings shadowing globals for later executions
+            sandbox.inject(SOURCE_VAR, function);
+            sandbox.eval(call("compile", null, "this." + SOURCE_VAR + ", '" + name + "'") + "; this." + SOURCE_VAR
+                    + " = undefined;");
+
+            // evaluate the source once as a factory, the secret is never part of a
+            // program containing guest code
+            StringBuilder code = new StringBuilder();
+            code.append("this.").append(DEFINE_VAR).append(" = (function() {\n");
+            code.append(function).append(";\n");
+            code.append("return ").append(name).append(";\n");
+            code.append("});");
+            sandbox.eval(code.toString());
+            sandbox.eval(call("define", hash, "this." + DEFINE_VAR) + "; this." + DEFINE_VAR + " = undefined;");
+            functions.put(hash, Boolean.TRUE);
+
+            // evict least recently used
+            Iterator<Map.Entry<String, Boolean>> iter = functions.entrySet().iterator();
+            while (functions.size() > cacheSize && iter.hasNext()) {
+                Map.Entry<String, Boolean> eldest = iter.next();
+                sandbox.eval(call("remove", eldest.getKey(), null) + ";");
+                iter.remove();
+            }
+        }
+
+        /*
+         * Restore globals, then check builtins resolved by name match the
+         * snapshot
+         */
+        public String reset() {
+            StringBuilder probe = new StringBuilder("[");
+            for (int i = 0; i < BUILTIN_NAMES.length; i++) {
+                String n = BUILTIN_NAMES[i];
+                probe.append(i > 0 ? ", " : "");
+                probe.append("(typeof ").append(n).append(" === 'undefined' ? undefined : ").append(n).append(")");
+            }
+            probe.append("]");
+
+            return call("reset", null, null) + " && " + call("verify", null, probe.toString());
+        }
+
+        public void close() {
+            // the sandbox api exposes no close, release the underlying engine context
+            try {
+                if (sandbox instanceof AutoCloseable) {
+                    ((AutoCloseable) sandbox).close();
+                    return;
+                }
+
+                Field field = ReflectionUtils.findField(sandbox.getClass(), "scriptEngine");
+                if (field != null) {
+                    ReflectionUtils.makeAccessible(field);
+                    Object engine = ReflectionUtils.getField(field, sandbox);
+                    if (engine instanceof AutoCloseable) {
+                        ((AutoCloseable) engine).close();
+                    }
+                }
+            } catch (Exception e) {
+                logger.warn("error closing sandbox: " + e.getMessage());
+            }
+        }
+
+        /*
+         * Registry call, qualified via the global object so that script scoped
+         * bindings can not intercept the secret
+         */
+        public String call(String method, String hash, String arg) {
+            StringBuilder sb = new StringBuilder();
+            sb.append("this.").append(REGISTRY_VAR).append(".").append(method);
+            sb.append("('").append(secret).append("'");
+            if (hash != null) {
+                sb.append(", '").append(hash).append("'");
+            }
+            if (arg != null) {
+                sb.append(", ").append(arg);
+            }
+            sb.append(")");
+            return sb.toString();
+        }
     }
 }
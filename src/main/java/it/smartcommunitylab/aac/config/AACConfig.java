@@ -4,6 +4,9 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
+import org.springframework.scheduling.annotation.EnableScheduling;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.claims.ClaimsService;
 import it.smartcommunitylab.aac.claims.DefaultClaimsService;
 import it.smartcommunitylab.aac.claims.ExtractorsRegistry;
@@ -12,17 +15,32 @@ import it.smartcommunitylab.aac.core.entrypoint.RealmAwarePathUriBuilder;
 import it.smartcommunitylab.aac.core.provider.UserTranslator;
 import it.smartcommunitylab.aac.core.service.CoreUserTranslator;
 import it.smartcommunitylab.aac.core.service.UserService;
+import it.smartcommunitylab.aac.core.store.ExpiringStoreSweeper;
+import it.smartcommunitylab.aac.utils.HttpClientFactory;
 
 /*
  * AAC core config, all services should already be up and running now
  */
 @Configuration
 @Order(10)
+@EnableScheduling
 public class AACConfig {
 
     @Value("${application.url}")
     private String applicationUrl;
 
+    @Value("${http.pool.maxTotal}")
+    private int httpPoolMaxTotal;
+
+    @Value("${http.pool.maxPerRoute}")
+    private int httpPoolMaxPerRoute;
+
+    @Value("${http.pool.idleTimeout}")
+    private long httpPoolIdleTimeout;
+
+    @Value("${http.pool.keepAlive}")
+    private long httpPoolKeepAlive;
+
     /*
      * Core aac should be bootstrapped before services, security etc
      */
@@ -66,14 +84,35 @@ public class AACConfig {
     @Bean
     public ClaimsService claimsService(ExtractorsRegistry extractorsRegistry,
             ScriptExecutionService executionService,
-            UserService userService) {
+            UserService userService,
+            MeterRegistry meterRegistry) {
         DefaultClaimsService service = new DefaultClaimsService(extractorsRegistry);
         service.setExecutionService(executionService);
         service.setUserService(userService);
+        service.setMeterRegistry(meterRegistry);
         return service;
 
     }
 
+    /*
+     * Shared connection pool for all outbound http
+     */
+    @Bean
+    public HttpClientFactory httpClientFactory(MeterRegistry meterRegistry) {
+        HttpClientFactory factory = new HttpClientFactory(httpPoolMaxTotal, httpPoolMaxPerRoute,
+                httpPoolIdleTimeout, httpPoolKeepAlive);
+        factory.setMeterRegistry(meterRegistry);
+        return factory;
+    }
+
+    /*
+     * Shared expiration wheel for in-memory stores, exposed to bind metrics
+     */
+    @Bean
+    public ExpiringStoreSweeper expiringStoreSweeper() {
+        return ExpiringStoreSweeper.getDefault();
+    }
+
     /*
      * Cross realm user translator
      */
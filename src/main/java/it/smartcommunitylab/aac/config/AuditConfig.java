@@ -1,19 +1,28 @@
 package it.smartcommunitylab.aac.config;
 
+import java.util.Optional;
+
 import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.ApplicationEventPublisher;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.event.ApplicationEventMulticaster;
 import org.springframework.context.event.SimpleApplicationEventMulticaster;
 import org.springframework.core.annotation.Order;
-import org.springframework.core.task.SimpleAsyncTaskExecutor;
+import org.springframework.scheduling.support.TaskUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.audit.AuthenticationEventListener;
 import it.smartcommunitylab.aac.audit.AuthorizationEventListener;
+import it.smartcommunitylab.aac.audit.EventDispatchExecutor;
+import it.smartcommunitylab.aac.audit.EventDispatchExecutor.RejectionPolicy;
 import it.smartcommunitylab.aac.audit.ExtendedAuthenticationEventPublisher;
 import it.smartcommunitylab.aac.audit.store.AutoJdbcAuditEventStore;
+import it.smartcommunitylab.aac.audit.store.AutoJdbcAuditRollupStore;
 import it.smartcommunitylab.aac.core.service.IdentityProviderService;
 import it.smartcommunitylab.aac.oauth.event.OAuth2EventPublisher;
 
@@ -26,14 +35,58 @@ import it.smartcommunitylab.aac.oauth.event.OAuth2EventPublisher;
 @Order(5)
 public class AuditConfig {
 
+    @Value("${events.executor.poolSize}")
+    private int eventsPoolSize;
+
+    @Value("${events.executor.queueCapacity}")
+    private int eventsQueueCapacity;
+
+    @Value("${events.executor.rejectionPolicy}")
+    private String eventsRejectionPolicy;
+
+    @Value("${events.executor.virtualThreads}")
+    private boolean eventsVirtualThreads;
+
+    @Value("${audit.writer.async}")
+    private boolean auditAsync;
+
+    @Value("${audit.writer.bufferSize}")
+    private int auditBufferSize;
+
+    @Value("${audit.writer.batchSize}")
+    private int auditBatchSize;
+
+    @Value("${audit.writer.flushInterval}")
+    private long auditFlushInterval;
+
+    @Value("${audit.writer.dropOnOverflow}")
+    private boolean auditDropOnOverflow;
+
+    @Value("${audit.rollup.backfillChunk}")
+    private int auditRollupBackfillChunk;
+
     @Autowired
     private DataSource dataSource;
 
+    @Bean
+    public EventDispatchExecutor eventDispatchExecutor() {
+        EventDispatchExecutor executor = new EventDispatchExecutor();
+        executor.setPoolSize(eventsPoolSize);
+        executor.setQueueCapacity(eventsQueueCapacity);
+        // fail on unknown values instead of silently keeping the default
+        executor.setRejectionPolicy(RejectionPolicy.parse(eventsRejectionPolicy));
+        executor.setUseVirtualThreads(eventsVirtualThreads);
+
+        return executor;
+    }
+
     @Bean(name = "applicationEventMulticaster")
-    public ApplicationEventMulticaster simpleApplicationEventMulticaster() {
+    public ApplicationEventMulticaster simpleApplicationEventMulticaster(EventDispatchExecutor executor) {
         SimpleApplicationEventMulticaster eventMulticaster = new SimpleApplicationEventMulticaster();
 
-        eventMulticaster.setTaskExecutor(new SimpleAsyncTaskExecutor());
+        // bounded dispatch, listener errors are logged and suppressed
+        eventMulticaster.setTaskExecutor(executor);
+        eventMulticaster.setErrorHandler(TaskUtils.LOG_AND_SUPPRESS_ERROR_HANDLER);
         return eventMulticaster;
     }
 
@@ -59,8 +112,27 @@ public class AuditConfig {
 //    }
 
     @Bean
-    public AutoJdbcAuditEventStore auditEventRepository() {
-        return new AutoJdbcAuditEventStore(dataSource);
+    public AutoJdbcAuditEventStore auditEventRepository(MeterRegistry meterRegistry,
+            Optional<AutoJdbcAuditRollupStore> rollupStore) {
+        AutoJdbcAuditEventStore store = new AutoJdbcAuditEventStore(dataSource);
+        store.setAsync(auditAsync);
+        store.setBufferSize(auditBufferSize);
+        store.setBatchSize(auditBatchSize);
+        store.setFlushInterval(auditFlushInterval);
+        store.setDropOnOverflow(auditDropOnOverflow);
+        store.setMeterRegistry(meterRegistry);
+        rollupStore.ifPresent(store::setRollupStore);
+
+        return store;
+    }
+
+    @Bean
+    @ConditionalOnProperty(name = "audit.rollup.enabled", havingValue = "true")
+    public AutoJdbcAuditRollupStore auditRollupStore() {
+        AutoJdbcAuditRollupStore store = new AutoJdbcAuditRollupStore(dataSource);
+        store.setBackfillChunk(auditRollupBackfillChunk);
+
+        return store;
     }
 
     @Bean
@@ -6,6 +6,8 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 import org.springframework.util.StringUtils;
+
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.attributes.store.AutoJdbcAttributeStore;
 import it.smartcommunitylab.aac.claims.ScriptExecutionService;
 import it.smartcommunitylab.aac.core.authorities.IdentityProviderAuthority;
@@ -44,6 +46,9 @@ public class AuthoritiesConfig {
     @Autowired
     private ScriptExecutionService executionService;
 
+    @Autowired
+    private MeterRegistry meterRegistry;
+
     @Bean
     public IdentityProviderAuthorityService identityProviderAuthorityService(
             Collection<? extends IdentityProviderAuthority<?, ?, ?, ?>> authorities,
@@ -85,6 +90,7 @@ public class AuthoritiesConfig {
 
                         auth.setConfigProvider(configProvider);
                         auth.setExecutionService(executionService);
+                        auth.setMeterRegistry(meterRegistry);
 
                         // register for manager
                         service.registerAuthority(auth);
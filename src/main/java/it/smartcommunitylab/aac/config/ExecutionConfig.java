@@ -1,18 +1,46 @@
 package it.smartcommunitylab.aac.config;
 
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.claims.LocalGraalExecutionService;
 
 @Configuration
 @Order(9)
 public class ExecutionConfig {
 
+    @Value("${execution.graal.poolSize}")
+    private int poolSize;
+
+    @Value("${execution.graal.maxWaitTime}")
+    private long maxWaitTime;
+
+    @Value("${execution.graal.cacheSize}")
+    private int cacheSize;
+
+    @Value("${execution.graal.useProxies}")
+    private boolean useProxies;
+
+    @Value("${execution.graal.maxCpuTime}")
+    private int maxCpuTime;
+
+    @Value("${execution.graal.maxMemory}")
+    private int maxMemory;
+
     @Bean
-    public LocalGraalExecutionService localGraalExecutionService() {
-        return new LocalGraalExecutionService();
+    public LocalGraalExecutionService localGraalExecutionService(MeterRegistry meterRegistry) {
+        LocalGraalExecutionService service = new LocalGraalExecutionService();
+        service.setPoolSize(poolSize);
+        service.setMaxWaitTime(maxWaitTime);
+        service.setCacheSize(cacheSize);
+        service.setUseProxies(useProxies);
+        service.setMaxCpuTime(maxCpuTime);
+        service.setMaxMemory(maxMemory);
+        service.setMeterRegistry(meterRegistry);
+        return service;
     }
 
 }
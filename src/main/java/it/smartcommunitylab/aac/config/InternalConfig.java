@@ -1,5 +1,7 @@
 package it.smartcommunitylab.aac.config;
 
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
@@ -7,8 +9,11 @@ import org.springframework.context.annotation.ScopedProxyMode;
 import org.springframework.core.annotation.Order;
 import org.springframework.web.context.WebApplicationContext;
 
+import it.smartcommunitylab.aac.core.store.jdbc.AutoJdbcStateStore;
 import it.smartcommunitylab.aac.webauthn.store.InMemoryWebAuthnAssertionRequestStore;
 import it.smartcommunitylab.aac.webauthn.store.InMemoryWebAuthnRegistrationRequestStore;
+import it.smartcommunitylab.aac.webauthn.store.SharedWebAuthnAssertionRequestStore;
+import it.smartcommunitylab.aac.webauthn.store.SharedWebAuthnRegistrationRequestStore;
 import it.smartcommunitylab.aac.webauthn.store.WebAuthnAssertionRequestStore;
 import it.smartcommunitylab.aac.webauthn.store.WebAuthnRegistrationRequestStore;
 
@@ -16,17 +21,44 @@ import it.smartcommunitylab.aac.webauthn.store.WebAuthnRegistrationRequestStore;
 @Order(6)
 public class InternalConfig {
 
+    @Value("${stores.webauthn.ttl}")
+    private int webauthnStoreTtl;
+
+    @Value("${stores.webauthn.maxSize}")
+    private int webauthnStoreMaxSize;
+
+    @Value("${stores.shared.nearCacheSize}")
+    private int sharedStoreNearCacheSize;
+
     @Bean
+    @ConditionalOnProperty(name = "stores.shared.enabled", havingValue = "false", matchIfMissing = true)
     @Scope(value = WebApplicationContext.SCOPE_SESSION, proxyMode = ScopedProxyMode.TARGET_CLASS)
     public WebAuthnAssertionRequestStore webAuthnAssertionRequestStore() {
         // used as session scoped proxy, we need this for in flight requests
-        return new InMemoryWebAuthnAssertionRequestStore();
+        return new InMemoryWebAuthnAssertionRequestStore(webauthnStoreTtl * 1000L, webauthnStoreMaxSize);
     }
 
     @Bean
+    @ConditionalOnProperty(name = "stores.shared.enabled", havingValue = "false", matchIfMissing = true)
     @Scope(value = WebApplicationContext.SCOPE_SESSION, proxyMode = ScopedProxyMode.TARGET_CLASS)
     public WebAuthnRegistrationRequestStore webAuthnRegistrationRequestStore() {
         // used as session scoped proxy, we need this for in flight requests
-        return new InMemoryWebAuthnRegistrationRequestStore();
+        return new InMemoryWebAuthnRegistrationRequestStore(webauthnStoreTtl * 1000L, webauthnStoreMaxSize);
+    }
+
+    @Bean(name = "webAuthnAssertionRequestStore")
+    @ConditionalOnProperty(name = "stores.shared.enabled", havingValue = "true")
+    public WebAuthnAssertionRequestStore sharedWebAuthnAssertionRequestStore(AutoJdbcStateStore stateStore) {
+        // shared between nodes, no session affinity required
+        return new SharedWebAuthnAssertionRequestStore(stateStore, webauthnStoreTtl * 1000L,
+                sharedStoreNearCacheSize);
+    }
+
+    @Bean(name = "webAuthnRegistrationRequestStore")
+    @ConditionalOnProperty(name = "stores.shared.enabled", havingValue = "true")
+    public WebAuthnRegistrationRequestStore sharedWebAuthnRegistrationRequestStore(AutoJdbcStateStore stateStore) {
+        // shared between nodes, no session affinity required
+        return new SharedWebAuthnRegistrationRequestStore(stateStore, webauthnStoreTtl * 1000L,
+                sharedStoreNearCacheSize);
     }
 }
@@ -30,11 +30,15 @@ import com.nimbusds.jose.JWEAlgorithm;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.KeyUse;
 
+import io.micrometer.core.instrument.MeterRegistry;
+
 import it.smartcommunitylab.aac.jose.JWKSetKeyStore;
 import it.smartcommunitylab.aac.jwt.DefaultJWTEncryptionAndDecryptionService;
 import it.smartcommunitylab.aac.jwt.DefaultJWTSigningAndValidationService;
+import it.smartcommunitylab.aac.jwt.JWKSetCacheService;
 import it.smartcommunitylab.aac.jwt.JWTEncryptionAndDecryptionService;
 import it.smartcommunitylab.aac.jwt.JWTSigningAndValidationService;
+import it.smartcommunitylab.aac.utils.HttpClientFactory;
 
 /**
  * @author raman
@@ -50,9 +54,39 @@ public class JWTConfig {
     @Value("${jwt.kid.enc}")
     private String encKid;
 
+    @Value("${jwt.jwks.minRefresh}")
+    private int jwksMinRefresh;
+
+    @Value("${jwt.jwks.refresh}")
+    private int jwksRefresh;
+
+    @Value("${jwt.jwks.maxRefresh}")
+    private int jwksMaxRefresh;
+
+    @Value("${jwt.jwks.maxStale}")
+    private int jwksMaxStale;
+
+    @Value("${jwt.jwks.forceInterval}")
+    private int jwksForceInterval;
+
+    @Value("${jwt.jwks.timeout}")
+    private int jwksTimeout;
+
+    @Value("${jwt.jwks.poolSize}")
+    private int jwksPoolSize;
+
     @Autowired
     private JWKSetKeyStore jwtKeyStore;
 
+    @Bean
+    public JWKSetCacheService getJWKSetCacheService(HttpClientFactory httpClientFactory,
+            MeterRegistry meterRegistry) {
+        JWKSetCacheService service = new JWKSetCacheService(httpClientFactory, jwksMinRefresh, jwksRefresh, jwksMaxRefresh,
+                jwksMaxStale, jwksForceInterval, jwksTimeout, jwksPoolSize);
+        service.setMeterRegistry(meterRegistry);
+        return service;
+    }
+
     @Bean
     public JWTSigningAndValidationService getJWTSigningAndValidationService()
             throws NoSuchAlgorithmException, InvalidKeySpecException {
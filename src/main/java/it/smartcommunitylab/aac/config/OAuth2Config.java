@@ -7,6 +7,7 @@ import javax.sql.DataSource;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Scope;
@@ -21,9 +22,11 @@ import org.springframework.security.oauth2.provider.approval.ApprovalStore;
 import org.springframework.security.oauth2.provider.code.AuthorizationCodeServices;
 import org.springframework.security.oauth2.provider.endpoint.RedirectResolver;
 import org.springframework.security.oauth2.provider.token.AuthorizationServerTokenServices;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.springframework.web.bind.support.DefaultSessionAttributeStore;
 import org.springframework.web.bind.support.SessionAttributeStore;
 import org.springframework.web.context.WebApplicationContext;
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.audit.OAuth2EventListener;
 import it.smartcommunitylab.aac.claims.ClaimsService;
 import it.smartcommunitylab.aac.core.auth.DefaultSecurityContextAuthenticationHelper;
@@ -31,6 +34,8 @@ import it.smartcommunitylab.aac.core.service.ClientEntityService;
 import it.smartcommunitylab.aac.core.service.IdentityProviderService;
 import it.smartcommunitylab.aac.core.service.SubjectService;
 import it.smartcommunitylab.aac.core.service.UserService;
+import it.smartcommunitylab.aac.core.store.jdbc.AutoJdbcStateStore;
+import it.smartcommunitylab.aac.jose.JWKSetKeyStore;
 import it.smartcommunitylab.aac.jwt.JWTService;
 import it.smartcommunitylab.aac.oauth.AACApprovalHandler;
 import it.smartcommunitylab.aac.oauth.OAuth2TokenServices;
@@ -41,18 +46,27 @@ import it.smartcommunitylab.aac.oauth.auth.InternalOpaqueTokenIntrospector;
 import it.smartcommunitylab.aac.oauth.event.OAuth2EventPublisher;
 import it.smartcommunitylab.aac.oauth.flow.FlowExtensionsService;
 import it.smartcommunitylab.aac.oauth.flow.OAuthFlowExtensionsHandler;
+import it.smartcommunitylab.aac.oauth.flow.WebhookDeliveryService;
 import it.smartcommunitylab.aac.oauth.persistence.OAuth2ClientEntityRepository;
 import it.smartcommunitylab.aac.oauth.provider.ClientRegistrationServices;
 import it.smartcommunitylab.aac.oauth.request.ExtRedirectResolver;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientRegistrationServices;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientService;
+import it.smartcommunitylab.aac.oauth.store.ExpiredStoreSweeper;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
 import it.smartcommunitylab.aac.oauth.store.InMemoryAuthorizationRequestStore;
+import it.smartcommunitylab.aac.oauth.store.SharedAuthorizationRequestStore;
 import it.smartcommunitylab.aac.oauth.store.AuthorizationRequestStore;
+import it.smartcommunitylab.aac.oauth.store.PurgeableStore;
+import it.smartcommunitylab.aac.oauth.store.RevokedTokenStore;
+import it.smartcommunitylab.aac.oauth.store.StatelessTokenStore;
 import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcApprovalStore;
 import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcAuthorizationCodeServices;
+import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcClientVersionStore;
+import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcRevokedTokenStore;
 import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcTokenStore;
+import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcWebhookOutboxStore;
 import it.smartcommunitylab.aac.oauth.token.AACTokenEnhancer;
 import it.smartcommunitylab.aac.oauth.token.AbstractTokenGranter;
 import it.smartcommunitylab.aac.oauth.token.AuthorizationCodeTokenGranter;
@@ -68,6 +82,7 @@ import it.smartcommunitylab.aac.openid.service.OIDCTokenServices;
 import it.smartcommunitylab.aac.openid.token.IdTokenServices;
 import it.smartcommunitylab.aac.profiles.claims.OpenIdClaimsExtractorProvider;
 import it.smartcommunitylab.aac.scope.ScopeRegistry;
+import it.smartcommunitylab.aac.utils.HttpClientFactory;
 
 /*
  * OAuth2 services configuration
@@ -94,6 +109,72 @@ public class OAuth2Config {
     @Value("${oauth2.refreshtoken.validity}")
     private int refreshTokenValidity;
 
+    @Value("${oauth2.refreshtoken.lockStripes}")
+    private int refreshTokenLockStripes;
+
+    @Value("${oauth2.refreshtoken.rowLock}")
+    private boolean refreshTokenRowLock;
+
+    @Value("${oauth2.tokenstore.compactEncoding}")
+    private boolean tokenStoreCompactEncoding;
+
+    @Value("${oauth2.tokenstore.migrateOnRead}")
+    private boolean tokenStoreMigrateOnRead;
+
+    @Value("${oauth2.sweeper.enabled}")
+    private boolean sweeperEnabled;
+
+    @Value("${oauth2.sweeper.batchSize}")
+    private int sweeperBatchSize;
+
+    @Value("${oauth2.sweeper.maxBatches}")
+    private int sweeperMaxBatches;
+
+    @Value("${oauth2.clients.cache.size}")
+    private int clientsCacheSize;
+
+    @Value("${oauth2.clients.cache.ttl}")
+    private int clientsCacheTtl;
+
+    @Value("${stores.requests.ttl}")
+    private int requestsStoreTtl;
+
+    @Value("${stores.requests.maxSize}")
+    private int requestsStoreMaxSize;
+
+    @Value("${stores.shared.nearCacheSize}")
+    private int sharedStoreNearCacheSize;
+
+    @Value("${hook.timeout}")
+    private int hookTimeout;
+
+    @Value("${hook.delivery.poolSize}")
+    private int hookPoolSize;
+
+    @Value("${hook.delivery.queueCapacity}")
+    private int hookQueueCapacity;
+
+    @Value("${hook.delivery.maxAttempts}")
+    private int hookMaxAttempts;
+
+    @Value("${hook.delivery.backoff}")
+    private long hookBackoff;
+
+    @Value("${hook.delivery.maxBackoff}")
+    private long hookMaxBackoff;
+
+    @Value("${hook.delivery.breakerThreshold}")
+    private int hookBreakerThreshold;
+
+    @Value("${hook.delivery.breakerOpen}")
+    private long hookBreakerOpen;
+
+    @Value("${hook.delivery.maxAge}")
+    private long hookMaxAge;
+
+    @Value("${hook.delivery.payloadKey}")
+    private String hookPayloadKey;
+
     @Value("${oauth2.redirects.matchports}")
     private boolean redirectMatchPorts;
 
@@ -157,8 +238,34 @@ public class OAuth2Config {
 
     @Bean
     public OAuth2ClientDetailsService getClientDetailsService(ClientEntityService clientService,
-            OAuth2ClientEntityRepository clientRepository) throws PropertyVetoException {
-        return new OAuth2ClientDetailsService(clientService, clientRepository);
+            OAuth2ClientEntityRepository clientRepository,
+            MeterRegistry meterRegistry, PlatformTransactionManager transactionManager) throws PropertyVetoException {
+        OAuth2ClientDetailsService service = new OAuth2ClientDetailsService(clientService, clientRepository,
+                clientsCacheSize, clientsCacheTtl);
+        service.setVersionStore(new AutoJdbcClientVersionStore(dataSource));
+        service.setTransactionManager(transactionManager);
+        service.setMeterRegistry(meterRegistry);
+        return service;
+    }
+
+    @Bean
+    public WebhookDeliveryService getWebhookDeliveryService(OAuth2ClientDetailsService clientDetailsService,
+            HttpClientFactory httpClientFactory, JWKSetKeyStore keyStore, MeterRegistry meterRegistry) {
+        WebhookDeliveryService service = new WebhookDeliveryService(new AutoJdbcWebhookOutboxStore(dataSource),
+                clientDetailsService, httpClientFactory);
+        service.setTimeout(hookTimeout);
+        service.setPoolSize(hookPoolSize);
+        service.setQueueCapacity(hookQueueCapacity);
+        service.setMaxAttempts(hookMaxAttempts);
+        service.setBackoff(hookBackoff);
+        service.setMaxBackoff(hookMaxBackoff);
+        service.setBreakerThreshold(hookBreakerThreshold);
+        service.setBreakerOpen(hookBreakerOpen);
+        service.setMaxAge(hookMaxAge);
+        service.setPayloadKey(hookPayloadKey);
+        service.setKeyStore(keyStore);
+        service.setMeterRegistry(meterRegistry);
+        return service;
     }
 
     @Bean
@@ -168,8 +275,23 @@ public class OAuth2Config {
     }
 
     @Bean
-    public ExtTokenStore getJDBCTokenStore() throws PropertyVetoException {
-        return new AutoJdbcTokenStore(dataSource);
+    public ExtTokenStore getJDBCTokenStore(
+            JWTService jwtService,
+            OAuth2ClientDetailsService clientDetailsService,
+            RevokedTokenStore revokedTokenStore,
+            MeterRegistry meterRegistry) throws PropertyVetoException {
+        AutoJdbcTokenStore tokenStore = new AutoJdbcTokenStore(dataSource);
+        tokenStore.setCompactEncoding(tokenStoreCompactEncoding);
+        tokenStore.setMigrateOnRead(tokenStoreMigrateOnRead);
+        tokenStore.setMeterRegistry(meterRegistry);
+
+        // stateless jwt access tokens are never persisted
+        return new StatelessTokenStore(tokenStore, issuer, jwtService, clientDetailsService, revokedTokenStore);
+    }
+
+    @Bean
+    public AutoJdbcRevokedTokenStore getRevokedTokenStore() {
+        return new AutoJdbcRevokedTokenStore(dataSource);
     }
 
     @Bean
@@ -177,6 +299,36 @@ public class OAuth2Config {
         return new AutoJdbcApprovalStore(dataSource);
     }
 
+    @Bean
+    public AutoJdbcStateStore getStateStore() {
+        return new AutoJdbcStateStore(dataSource);
+    }
+
+    @Bean
+    public ExpiredStoreSweeper getExpiredStoreSweeper(
+            ExtTokenStore tokenStore,
+            AutoJdbcAuthorizationCodeServices authCodeServices,
+            AutoJdbcApprovalStore approvalStore,
+            AutoJdbcRevokedTokenStore revokedTokenStore,
+            AutoJdbcStateStore stateStore,
+            MeterRegistry meterRegistry) {
+        List<PurgeableStore> stores = new ArrayList<>();
+        if (tokenStore instanceof PurgeableStore) {
+            stores.add((PurgeableStore) tokenStore);
+        }
+        stores.add(authCodeServices);
+        stores.add(approvalStore);
+        stores.add(revokedTokenStore);
+        stores.add(stateStore);
+
+        ExpiredStoreSweeper sweeper = new ExpiredStoreSweeper(stores);
+        sweeper.setEnabled(sweeperEnabled);
+        sweeper.setBatchSize(sweeperBatchSize);
+        sweeper.setMaxBatches(sweeperMaxBatches);
+        sweeper.setMeterRegistry(meterRegistry);
+        return sweeper;
+    }
+
     public ApprovalStoreUserApprovalHandler userApprovalHandler(
             ApprovalStore approvalStore,
             OAuth2ClientDetailsService oauthClientDetailsService,
@@ -267,7 +419,8 @@ public class OAuth2Config {
     public OAuth2TokenServices getTokenServices(
             OAuth2ClientDetailsService clientDetailsService,
             ExtTokenStore tokenStore, ApprovalStore approvalStore,
-            AACTokenEnhancer tokenEnhancer) throws PropertyVetoException {
+            AACTokenEnhancer tokenEnhancer,
+            PlatformTransactionManager transactionManager) throws PropertyVetoException {
         OAuth2TokenServices tokenServices = new OAuth2TokenServices(tokenStore);
         tokenServices.setClientDetailsService(clientDetailsService);
         tokenServices.setApprovalStore(approvalStore);
@@ -275,6 +428,9 @@ public class OAuth2Config {
         tokenServices.setAccessTokenValiditySeconds(accessTokenValidity);
         tokenServices.setRefreshTokenValiditySeconds(refreshTokenValidity);
         tokenServices.setRemoveExpired(true);
+        tokenServices.setRefreshLockStripes(refreshTokenLockStripes);
+        tokenServices.setRefreshRowLock(refreshTokenRowLock);
+        tokenServices.setTransactionManager(transactionManager);
         return tokenServices;
     }
 
@@ -357,10 +513,18 @@ public class OAuth2Config {
     }
 
     @Bean
+    @ConditionalOnProperty(name = "stores.shared.enabled", havingValue = "false", matchIfMissing = true)
     @Scope(value = WebApplicationContext.SCOPE_SESSION, proxyMode = ScopedProxyMode.TARGET_CLASS)
     public AuthorizationRequestStore authorizationRequestRepository() {
         // used as session scoped proxy, we need this for in flight requests
-        return new InMemoryAuthorizationRequestStore();
+        return new InMemoryAuthorizationRequestStore(requestsStoreTtl * 1000L, requestsStoreMaxSize);
+    }
+
+    @Bean(name = "authorizationRequestRepository")
+    @ConditionalOnProperty(name = "stores.shared.enabled", havingValue = "true")
+    public AuthorizationRequestStore sharedAuthorizationRequestRepository(AutoJdbcStateStore stateStore) {
+        // shared between nodes, no session affinity required
+        return new SharedAuthorizationRequestStore(stateStore, requestsStoreTtl * 1000L, sharedStoreNearCacheSize);
     }
 
     @Bean
@@ -30,6 +30,7 @@ import org.springframework.web.filter.CompositeFilter;
 import it.smartcommunitylab.aac.Config;
 import it.smartcommunitylab.aac.core.ClientAuthenticationManager;
 import it.smartcommunitylab.aac.core.service.ClientDetailsService;
+import it.smartcommunitylab.aac.jwt.JWKSetCacheService;
 import it.smartcommunitylab.aac.oauth.auth.OAuth2ClientAuthFilter;
 import it.smartcommunitylab.aac.oauth.auth.OAuth2ClientJwtAssertionAuthenticationProvider;
 import it.smartcommunitylab.aac.oauth.auth.OAuth2ClientPKCEAuthenticationProvider;
@@ -64,6 +65,9 @@ public class OAuth2SecurityConfig {
     @Autowired
     private PeekableAuthorizationCodeServices authCodeServices;
 
+    @Autowired
+    private JWKSetCacheService jwksCacheService;
+
     @Autowired
     private ExtTokenStore tokenStore;
 
@@ -127,6 +131,7 @@ public class OAuth2SecurityConfig {
         OAuth2ClientJwtAssertionAuthenticationProvider jwtAssertionProvider = new OAuth2ClientJwtAssertionAuthenticationProvider(
                 clientDetailsService, audience);
         jwtAssertionProvider.setClientService(clientService);
+        jwtAssertionProvider.setJwksCacheService(jwksCacheService);
 
         ClientAuthenticationManager authManager = new ClientAuthenticationManager(secretAuthProvider,
                 jwtAssertionProvider);
@@ -11,6 +11,7 @@ import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.context.annotation.Primary;
 import org.springframework.core.annotation.Order;
+import org.springframework.transaction.PlatformTransactionManager;
 import org.yaml.snakeyaml.DumperOptions;
 import org.yaml.snakeyaml.DumperOptions.FlowStyle;
 import org.yaml.snakeyaml.DumperOptions.ScalarStyle;
@@ -163,8 +164,10 @@ public class PersistenceConfig {
     }
 
     @Bean
-    public AutoJdbcAttributeStore attributeStore() {
-        return new AutoJdbcAttributeStore(dataSource);
+    public AutoJdbcAttributeStore attributeStore(PlatformTransactionManager transactionManager) {
+        AutoJdbcAttributeStore store = new AutoJdbcAttributeStore(dataSource);
+        store.setTransactionManager(transactionManager);
+        return store;
     }
 
     @Bean(name = "scopeRegistry")
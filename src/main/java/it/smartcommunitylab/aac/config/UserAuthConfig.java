@@ -1,20 +1,49 @@
 package it.smartcommunitylab.aac.config;
 
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.core.annotation.Order;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import it.smartcommunitylab.aac.core.AttributeProvidersExecutor;
+import it.smartcommunitylab.aac.core.AttributeProvidersExecutor.PartialResultPolicy;
 import it.smartcommunitylab.aac.core.AuthorityManager;
 import it.smartcommunitylab.aac.core.ExtendedUserAuthenticationManager;
 import it.smartcommunitylab.aac.core.service.IdentityProviderAuthorityService;
 import it.smartcommunitylab.aac.core.service.SubjectService;
 import it.smartcommunitylab.aac.core.service.UserEntityService;
+import it.smartcommunitylab.aac.core.service.UserLoginBuffer;
 
 @Configuration
 @Order(15)
 public class UserAuthConfig {
 
+    @Value("${login.writeBehind}")
+    private boolean loginWriteBehind;
+
+    @Value("${login.bufferSize}")
+    private int loginBufferSize;
+
+    @Value("${login.attributes.parallel}")
+    private boolean attributesParallel;
+
+    @Value("${login.attributes.poolSize}")
+    private int attributesPoolSize;
+
+    @Value("${login.attributes.queueCapacity}")
+    private int attributesQueueCapacity;
+
+    @Value("${login.attributes.deadline}")
+    private long attributesDeadline;
+
+    @Value("${login.attributes.timeout}")
+    private long attributesTimeout;
+
+    @Value("${login.attributes.policy}")
+    private String attributesPolicy;
+
     @Autowired
     private AuthorityManager authorityManager;
 
@@ -28,9 +57,41 @@ public class UserAuthConfig {
     private UserEntityService userService;
 
     @Bean
-    public ExtendedUserAuthenticationManager extendedAuthenticationManager() throws Exception {
-        return new ExtendedUserAuthenticationManager(authorityManager, identityProviderAuthorityService, userService,
-                subjectService);
+    public UserLoginBuffer userLoginBuffer() {
+        UserLoginBuffer buffer = new UserLoginBuffer(userService);
+        buffer.setBufferSize(loginBufferSize);
+        return buffer;
+    }
+
+    @Bean
+    public AttributeProvidersExecutor attributeProvidersExecutor(MeterRegistry meterRegistry) {
+        AttributeProvidersExecutor executor = new AttributeProvidersExecutor();
+        executor.setPoolSize(attributesPoolSize);
+        executor.setQueueCapacity(attributesQueueCapacity);
+        executor.setDeadline(attributesDeadline);
+        executor.setTimeout(attributesTimeout);
+
+        PartialResultPolicy policy = PartialResultPolicy.parse(attributesPolicy);
+        if (policy != null) {
+            executor.setPolicy(policy);
+        }
+
+        executor.setMeterRegistry(meterRegistry);
+        return executor;
+    }
+
+    @Bean
+    public ExtendedUserAuthenticationManager extendedAuthenticationManager(UserLoginBuffer loginBuffer,
+            AttributeProvidersExecutor attributeProvidersExecutor) throws Exception {
+        ExtendedUserAuthenticationManager manager = new ExtendedUserAuthenticationManager(authorityManager,
+                identityProviderAuthorityService, userService, subjectService);
+        if (loginWriteBehind) {
+            manager.setLoginBuffer(loginBuffer);
+        }
+        if (attributesParallel) {
+            manager.setAttributeProvidersExecutor(attributeProvidersExecutor);
+        }
+        return manager;
     }
 
 }
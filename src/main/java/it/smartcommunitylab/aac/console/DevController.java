@@ -205,8 +205,7 @@ public class DevController {
 
             bean.setLoginCount(auditManager.countRealmEvents(realm, "USER_AUTHENTICATION_SUCCESS", after, null));
             List<RealmAuditEvent> loginEvents = auditManager
-                    .findRealmEvents(realm, "USER_AUTHENTICATION_SUCCESS", after, null).stream()
-                    .limit(5)
+                    .findRealmEvents(realm, "USER_AUTHENTICATION_SUCCESS", after, null, null, 5).getEvents().stream()
                     .map(e -> {
                         // clear event details
                         Map<String, Object> d = new HashMap<>(e.getData());
@@ -220,8 +219,7 @@ public class DevController {
 
             bean.setRegistrationCount(auditManager.countRealmEvents(realm, "USER_REGISTRATION", after, null));
             List<RealmAuditEvent> registrationEvents = auditManager
-                    .findRealmEvents(realm, "USER_REGISTRATION", after, null).stream()
-                    .limit(5)
+                    .findRealmEvents(realm, "USER_REGISTRATION", after, null, null, 5).getEvents().stream()
                     .map(e -> {
                         // clear event details
                         Map<String, Object> d = new HashMap<>(e.getData());
@@ -1,6 +1,7 @@
 package it.smartcommunitylab.aac.controller;
 
 import java.util.Collection;
+import java.util.Set;
 import javax.validation.Valid;
 import javax.validation.constraints.NotNull;
 import javax.validation.constraints.Pattern;
@@ -37,6 +38,7 @@ import it.smartcommunitylab.aac.dto.UserEmail;
 import it.smartcommunitylab.aac.dto.UserStatus;
 import it.smartcommunitylab.aac.dto.UserSubject;
 import it.smartcommunitylab.aac.model.User;
+import it.smartcommunitylab.aac.model.UserField;
 import it.smartcommunitylab.aac.model.SubjectStatus;
 
 /*
@@ -70,13 +72,14 @@ public class BaseUserController implements InitializingBean {
     @Operation(summary = "list users from realm")
     public Page<User> listUser(
             @PathVariable @Valid @NotNull @Pattern(regexp = SystemKeys.SLUG_PATTERN) String realm,
-            @RequestParam(required = false) String q, Pageable pageRequest)
+            @RequestParam(required = false) String q,
+            @RequestParam(required = false) Set<String> fields, Pageable pageRequest)
             throws NoSuchRealmException {
         logger.debug("list users for realm {}",
                 StringUtils.trimAllWhitespace(realm));
 
-        // list users owned or accessible by this realm
-        return userManager.searchUsers(realm, q, pageRequest);
+        // list users owned or accessible by this realm, loading only requested fields
+        return userManager.searchUsers(realm, q, pageRequest, UserField.parse(fields));
     }
 
     @GetMapping("/users/{realm}/{userId}")
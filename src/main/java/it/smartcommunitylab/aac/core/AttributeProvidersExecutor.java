@@ -0,0 +1,230 @@
+package it.smartcommunitylab.aac.core;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.smartcommunitylab.aac.common.SystemException;
+import it.smartcommunitylab.aac.core.model.UserAttributes;
+import it.smartcommunitylab.aac.core.model.UserAuthenticatedPrincipal;
+import it.smartcommunitylab.aac.core.provider.AttributeProvider;
+
+/*
+ * Concurrent fetch of login attributes from a realm providers.
+ *
+ * Providers run on a bounded pool, each within its own timeout (as declared by
+ * the provider, or the default one) and all within the total deadline. When a
+ * provider fails or times out the partial result policy applies:
+ * - FAIL: abort the fetch
+ * - SKIP: ignore the provider
+ * - STORED: use the attributes last stored by the provider
+ *
+ * When the pool is full providers run in the calling thread.
+ */
+public class AttributeProvidersExecutor implements InitializingBean, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_POOL_SIZE = 8;
+    public static final int DEFAULT_QUEUE_CAPACITY = 100;
+    public static final long DEFAULT_DEADLINE = 5000;
+    public static final long DEFAULT_TIMEOUT = 3000;
+
+    public static final String METRIC_LATENCY = "aac.attributes.provider.latency";
+
+    public enum PartialResultPolicy {
+        FAIL, SKIP, STORED;
+
+        public static PartialResultPolicy parse(String value) {
+            for (PartialResultPolicy p : PartialResultPolicy.values()) {
+                if (p.name().equalsIgnoreCase(value)) {
+                    return p;
+                }
+            }
+
+            return null;
+        }
+    }
+
+    private int poolSize = DEFAULT_POOL_SIZE;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private long deadline = DEFAULT_DEADLINE;
+    private long timeout = DEFAULT_TIMEOUT;
+    private PartialResultPolicy policy = PartialResultPolicy.SKIP;
+
+    private ThreadPoolExecutor pool;
+    private MeterRegistry meterRegistry;
+
+    public void setPoolSize(int poolSize) {
+        Assert.isTrue(poolSize > 0, "pool size must be positive");
+        this.poolSize = poolSize;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "queue capacity must be positive");
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setDeadline(long deadline) {
+        Assert.isTrue(deadline > 0, "deadline must be positive");
+        this.deadline = deadline;
+    }
+
+    public void setTimeout(long timeout) {
+        Assert.isTrue(timeout > 0, "timeout must be positive");
+        this.timeout = timeout;
+    }
+
+    public void setPolicy(PartialResultPolicy policy) {
+        Assert.notNull(policy, "policy can not be null");
+        this.policy = policy;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "aac-attributes-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                }, new ThreadPoolExecutor.CallerRunsPolicy());
+        pool.allowCoreThreadTimeOut(true);
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        pool.shutdownNow();
+    }
+
+    public Collection<UserAttributes> fetchAttributes(Collection<AttributeProvider> providers,
+            UserAuthenticatedPrincipal principal, String subjectId) throws SystemException {
+        if (providers == null || providers.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        long start = System.currentTimeMillis();
+        long end = start + deadline;
+
+        List<AttributeProvider> aps = new ArrayList<>(providers);
+        List<Future<Collection<UserAttributes>>> futures = new ArrayList<>(aps.size());
+        List<AtomicBoolean> outcomes = new ArrayList<>(aps.size());
+        for (AttributeProvider ap : aps) {
+            AtomicBoolean outcome = new AtomicBoolean();
+            outcomes.add(outcome);
+            futures.add(pool.submit(() -> convert(ap, principal, subjectId, outcome)));
+        }
+
+        List<UserAttributes> result = new ArrayList<>();
+        try {
+            for (int i = 0; i < aps.size(); i++) {
+                AttributeProvider ap = aps.get(i);
+                Future<Collection<UserAttributes>> future = futures.get(i);
+
+                // all providers started together, wait up to the first bound
+                long wait = Math.min(start + timeout(ap), end) - System.currentTimeMillis();
+                try {
+                    Collection<UserAttributes> attrs = future.get(Math.max(wait, 0), TimeUnit.MILLISECONDS);
+                    if (attrs != null) {
+                        result.addAll(attrs);
+                    }
+                } catch (TimeoutException e) {
+                    // record only if the task did not complete meanwhile
+                    if (outcomes.get(i).compareAndSet(false, true)) {
+                        record(ap, "timeout", System.currentTimeMillis() - start);
+                    }
+                    // don't interrupt, providers may be in the middle of JDBC work
+                    future.cancel(false);
+                    result.addAll(partial(ap, subjectId, "timeout"));
+                } catch (ExecutionException e) {
+                    String message = e.getCause() != null ? e.getCause().getMessage() : e.getMessage();
+                    result.addAll(partial(ap, subjectId, message));
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new SystemException("interrupted while loading attributes");
+                }
+            }
+        } catch (SystemException e) {
+            // stop pending providers before failing, without interrupting them
+            futures.forEach(f -> f.cancel(false));
+            throw e;
+        }
+
+        return result;
+    }
+
+    private long timeout(AttributeProvider ap) {
+        Integer t = ap.getTimeout();
+        return t != null && t > 0 ? t.longValue() : timeout;
+    }
+
+    /*
+     * Outcome is recorded once, either here or by the caller on timeout
+     */
+    private Collection<UserAttributes> convert(AttributeProvider ap, UserAuthenticatedPrincipal principal,
+            String subjectId, AtomicBoolean outcome) {
+        long start = System.currentTimeMillis();
+        try {
+            Collection<UserAttributes> attrs = ap.convertPrincipalAttributes(principal, subjectId);
+            if (outcome.compareAndSet(false, true)) {
+                record(ap, "success", System.currentTimeMillis() - start);
+            }
+            return attrs;
+        } catch (RuntimeException e) {
+            if (outcome.compareAndSet(false, true)) {
+                record(ap, "failure", System.currentTimeMillis() - start);
+            }
+            throw e;
+        }
+    }
+
+    private Collection<UserAttributes> partial(AttributeProvider ap, String subjectId, String message) {
+        logger.error("error loading attributes with provider " + ap.getProvider() + ": " + message);
+
+        switch (policy) {
+        case FAIL:
+            throw new SystemException("error loading attributes with provider " + ap.getProvider());
+        case STORED:
+            try {
+                Collection<UserAttributes> attrs = ap.getUserAttributes(subjectId);
+                return attrs != null ? attrs : Collections.emptyList();
+            } catch (RuntimeException e) {
+                return Collections.emptyList();
+            }
+        default:
+            return Collections.emptyList();
+        }
+    }
+
+    private void record(AttributeProvider ap, String result, long millis) {
+        if (meterRegistry != null) {
+            Timer.builder(METRIC_LATENCY)
+                    .tag("authority", ap.getAuthority())
+                    .tag("provider", ap.getProvider())
+                    .tag("result", result)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry)
+                    .record(millis, TimeUnit.MILLISECONDS);
+        }
+    }
+}
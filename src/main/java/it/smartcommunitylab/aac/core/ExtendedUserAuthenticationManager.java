@@ -29,12 +29,15 @@ import org.springframework.security.core.authority.SimpleGrantedAuthority;
 import org.springframework.security.core.context.SecurityContextHolder;
 import org.springframework.security.core.userdetails.UsernameNotFoundException;
 import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import it.smartcommunitylab.aac.Config;
+import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.common.NoSuchProviderException;
 import it.smartcommunitylab.aac.common.NoSuchRealmException;
 import it.smartcommunitylab.aac.common.NoSuchSubjectException;
+import it.smartcommunitylab.aac.common.SystemException;
 import it.smartcommunitylab.aac.common.NoSuchUserException;
 import it.smartcommunitylab.aac.core.auth.DefaultUserAuthenticationToken;
 import it.smartcommunitylab.aac.core.auth.ExtendedAuthenticationProvider;
@@ -56,6 +59,7 @@ import it.smartcommunitylab.aac.core.provider.SubjectResolver;
 import it.smartcommunitylab.aac.core.service.IdentityProviderAuthorityService;
 import it.smartcommunitylab.aac.core.service.SubjectService;
 import it.smartcommunitylab.aac.core.service.UserEntityService;
+import it.smartcommunitylab.aac.core.service.UserLoginBuffer;
 import it.smartcommunitylab.aac.model.Subject;
 
 /*
@@ -79,6 +83,12 @@ public class ExtendedUserAuthenticationManager implements AuthenticationManager
 
     private AuthenticationEventPublisher eventPublisher;
 
+    // optional write-behind for login info
+    private UserLoginBuffer loginBuffer;
+
+    // optional concurrent fetch of attributes
+    private AttributeProvidersExecutor attributeProvidersExecutor;
+
     public ExtendedUserAuthenticationManager(
             AuthorityManager authorityManager, IdentityProviderAuthorityService identityProviderAuthorityService,
             UserEntityService userService, SubjectService subjectService) {
@@ -101,6 +111,14 @@ public class ExtendedUserAuthenticationManager implements AuthenticationManager
         this.eventPublisher = eventPublisher;
     }
 
+    public void setLoginBuffer(UserLoginBuffer loginBuffer) {
+        this.loginBuffer = loginBuffer;
+    }
+
+    public void setAttributeProvidersExecutor(AttributeProvidersExecutor attributeProvidersExecutor) {
+        this.attributeProvidersExecutor = attributeProvidersExecutor;
+    }
+
     public Authentication authenticate(Authentication authentication) throws AuthenticationException {
         try {
             logger.debug("process authentication for " + authentication.getName());
@@ -451,17 +469,6 @@ public class ExtendedUserAuthenticationManager implements AuthenticationManager
              * we got a login identity, update subject
              */
 
-            // always override username with last login
-            if (StringUtils.hasText(identity.getAccount().getUsername())) {
-                user = userService.updateUser(subjectId,
-                        identity.getAccount().getUsername(),
-                        identity.getAccount().getEmailAddress());
-            }
-
-            if (identity.getAccount().isEmailVerified() && !user.isEmailVerified()) {
-                user = userService.verifyEmail(subjectId, identity.getAccount().getEmailAddress());
-            }
-
             // set login date
             // register additional audit info from request
             Date now = Calendar.getInstance().getTime();
@@ -472,7 +479,14 @@ public class ExtendedUserAuthenticationManager implements AuthenticationManager
                 ipAddr = webAuthDetails.getRemoteAddress();
             }
 
-            user = userService.updateLogin(subjectId, providerId, now, ipAddr);
+            // single write for account and login info, when changed
+            // login info can be deferred to write-behind
+            boolean deferLogin = loginBuffer != null && loginBuffer.add(subjectId, providerId, now, ipAddr);
+            user = userService.updateLogin(subjectId,
+                    identity.getAccount().getUsername(),
+                    identity.getAccount().getEmailAddress(),
+                    identity.getAccount().isEmailVerified(),
+                    providerId, deferLogin ? null : now, ipAddr);
 
             // TODO add audit trail for subjects with login list, keep track of active
             // sessions. Should be event based
@@ -482,9 +496,13 @@ public class ExtendedUserAuthenticationManager implements AuthenticationManager
             // convert to subject
             // fetch subject from service
 //            Subject subject = new Subject(subjectId, realm, user.getUsername(), SystemKeys.RESOURCE_USER);
-            Subject subject = subjectService.getSubject(subjectId);
-            // update
-            subject = subjectService.updateSubject(subjectId, user.getUsername());
+            Subject subject = subjectService.findSubject(subjectId);
+            if (subject == null) {
+                subject = subjectService.addSubject(subjectId, realm, SystemKeys.RESOURCE_USER, user.getUsername());
+            } else if (!ObjectUtils.nullSafeEquals(user.getUsername(), subject.getName())) {
+                // update only on change
+                subject = subjectService.updateSubject(subjectId, user.getUsername());
+            }
 
             // fetch global and realm authorities for subject
             List<GrantedAuthority> userAuthorities = subjectService.getAuthorities(subjectId);
@@ -518,16 +536,29 @@ public class ExtendedUserAuthenticationManager implements AuthenticationManager
             // load additional attributes from providers
             UserDetails userDetails = userAuth.getUser();
             Collection<AttributeProvider> attributeProviders = authorityManager.fetchAttributeProviders(realm);
-            for (AttributeProvider ap : attributeProviders) {
-                // try to fetch attributes, don't stop authentication on errors
-                // attributes from aps are optional by definition
+            if (attributeProvidersExecutor != null) {
+                // concurrent fetch, errors handled according to policy
                 try {
-                    Collection<UserAttributes> attrs = ap.convertPrincipalAttributes(principal, subjectId);
-                    if (attrs != null) {
-                        attrs.forEach(a -> userDetails.addAttributeSet(a));
+                    Collection<UserAttributes> attrs = attributeProvidersExecutor.fetchAttributes(attributeProviders,
+                            principal, subjectId);
+                    attrs.forEach(a -> userDetails.addAttributeSet(a));
+                } catch (SystemException e) {
+                    logger.error("error loading attributes: " + e.getMessage());
+                    throw new AuthenticationServiceException("error processing request");
+                }
+            } else {
+                for (AttributeProvider ap : attributeProviders) {
+                    // try to fetch attributes, don't stop authentication on errors
+                    // attributes from aps are optional by definition
+                    try {
+                        Collection<UserAttributes> attrs = ap.convertPrincipalAttributes(principal, subjectId);
+                        if (attrs != null) {
+                            attrs.forEach(a -> userDetails.addAttributeSet(a));
+                        }
+                    } catch (RuntimeException e) {
+                        logger.error(
+                                "error loading attributes with provider " + ap.getProvider() + ": " + e.getMessage());
                     }
-                } catch (RuntimeException e) {
-                    logger.error("error loading attributes with provider " + ap.getProvider() + ": " + e.getMessage());
                 }
             }
 
@@ -10,6 +10,7 @@ import java.util.Date;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -64,6 +65,7 @@ import it.smartcommunitylab.aac.model.Group;
 import it.smartcommunitylab.aac.model.Realm;
 import it.smartcommunitylab.aac.model.RealmRole;
 import it.smartcommunitylab.aac.model.User;
+import it.smartcommunitylab.aac.model.UserField;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
 import it.smartcommunitylab.aac.oauth.store.SearchableApprovalStore;
 import it.smartcommunitylab.aac.scope.Scope;
@@ -172,11 +174,17 @@ public class UserManager {
 
     @Transactional(readOnly = true)
     public Page<User> searchUsers(String realm, String keywords, Pageable pageRequest) throws NoSuchRealmException {
+        return searchUsers(realm, keywords, pageRequest, UserField.all());
+    }
+
+    @Transactional(readOnly = true)
+    public Page<User> searchUsers(String realm, String keywords, Pageable pageRequest, Set<UserField> fields)
+            throws NoSuchRealmException {
         logger.debug("search users for realm {} with keywords {}", StringUtils.trimAllWhitespace(realm),
                 StringUtils.trimAllWhitespace(realm));
         String query = StringUtils.trimAllWhitespace(keywords);
         Realm r = realmService.getRealm(realm);
-        return userService.searchUsers(r.getSlug(), query, pageRequest);
+        return userService.searchUsers(r.getSlug(), query, pageRequest, fields);
     }
 
     @Transactional(readOnly = true)
@@ -0,0 +1,90 @@
+package it.smartcommunitylab.aac.core.auth;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Set;
+
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.annotation.JsonIgnore;
+
+import it.smartcommunitylab.aac.SystemKeys;
+import it.smartcommunitylab.aac.core.UserDetails;
+import it.smartcommunitylab.aac.model.Subject;
+
+/*
+ * A user authentication restored from a persisted representation.
+ *
+ * Carries the subject, the user details and the web details captured at login,
+ * but no provider tokens: those are bound to the login session and are not
+ * persisted. Validity is governed by the owner (ie the access token).
+ */
+public class StoredUserAuthenticationToken extends UserAuthentication {
+
+    private static final long serialVersionUID = SystemKeys.AAC_CORE_SERIAL_VERSION;
+
+    private final UserDetails details;
+
+    private final WebAuthenticationDetails webAuthenticationDetails;
+
+    public StoredUserAuthenticationToken(
+            Subject principal, String realm,
+            Collection<? extends GrantedAuthority> authorities,
+            boolean isAuthenticated, Instant createdAt,
+            UserDetails details, WebAuthenticationDetails webAuthenticationDetails) {
+        super(principal, realm, authorities, isAuthenticated, createdAt);
+        Assert.notNull(details, "user details are required");
+
+        this.details = details;
+        this.webAuthenticationDetails = webAuthenticationDetails;
+    }
+
+    @Override
+    public Object getDetails() {
+        return details;
+    }
+
+    @JsonIgnore
+    public UserDetails getUser() {
+        return details;
+    }
+
+    /*
+     * Auth tokens are not persisted
+     */
+
+    public ExtendedAuthenticationToken getAuthentication(
+            String authority,
+            String provider,
+            String userId) {
+        return null;
+    }
+
+    public void eraseAuthentication(ExtendedAuthenticationToken auth) {
+        // nothing to erase
+    }
+
+    public Set<ExtendedAuthenticationToken> getAuthentications() {
+        return Collections.emptySet();
+    }
+
+    @Override
+    public boolean isExpired() {
+        // no provider tokens to check, owner handles expiration
+        return false;
+    }
+
+    /*
+     * web auth details
+     */
+    public WebAuthenticationDetails getWebAuthenticationDetails() {
+        return webAuthenticationDetails;
+    }
+
+    @Override
+    public String toString() {
+        return "StoredUserAuthenticationToken [principal=" + principal + ", details=" + details + "]";
+    }
+}
@@ -51,6 +51,27 @@ public abstract class UserAuthentication extends AbstractAuthenticationToken {
         super.setAuthenticated(isAuthenticated); // must use super, as we override
     }
 
+    /*
+     * Rebuild a token created at the given time, ie when restored from a store
+     */
+    protected UserAuthentication(
+            Subject principal, String realm,
+            Collection<? extends GrantedAuthority> authorities,
+            boolean isAuthenticated, Instant createdAt) {
+        super(authorities);
+
+        Assert.notEmpty(authorities, "authorities can not be empty");
+        Assert.notNull(principal, "principal is required");
+        Assert.notNull(realm, "realm is required");
+
+        this.principal = principal;
+        this.realm = realm;
+
+        this.createdAt = createdAt != null ? createdAt : Instant.now();
+
+        super.setAuthenticated(isAuthenticated);
+    }
+
     /**
      * Private constructor for JPA and other serialization tools.
      * 
@@ -31,6 +31,16 @@ public class WebAuthenticationDetails extends org.springframework.security.web.a
         this.userAgent = request.getHeader(HttpHeaders.USER_AGENT);
     }
 
+    public WebAuthenticationDetails(String remoteAddress, String sessionId, long timestamp,
+            String scheme, String protocol, Locale locale, String userAgent) {
+        super(remoteAddress, sessionId);
+        this.timestamp = timestamp;
+        this.scheme = scheme;
+        this.protocol = protocol;
+        this.locale = locale;
+        this.userAgent = userAgent;
+    }
+
     public long getTimestamp() {
         return timestamp;
     }
@@ -9,6 +9,7 @@ import java.util.stream.Collectors;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.util.Assert;
 
 import com.google.common.cache.CacheBuilder;
@@ -16,6 +17,9 @@ import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
 import it.smartcommunitylab.aac.SystemKeys;
 import it.smartcommunitylab.aac.common.RegistrationException;
 import it.smartcommunitylab.aac.core.authorities.IdentityProviderAuthority;
@@ -51,9 +55,11 @@ public abstract class AbstractIdentityAuthority<I extends UserIdentity, S extend
     // loading cache for idps
     // TODO replace with external loadableProviderRepository for
     // ProviderRepository<InternalIdentityProvider>
+    // size is bounded by registrations: only registered configs are loaded and
+    // entries are invalidated on unregister. Idle providers are released.
     protected final LoadingCache<String, S> providers = CacheBuilder.newBuilder()
-            .expireAfterWrite(1, TimeUnit.HOURS) // expires 1 hour after fetch
-            .maximumSize(100)
+            .expireAfterAccess(1, TimeUnit.HOURS) // expires 1 hour after last use
+            .recordStats()
             .build(new CacheLoader<String, S>() {
                 @Override
                 public S load(final String id) throws Exception {
@@ -100,6 +106,15 @@ public abstract class AbstractIdentityAuthority<I extends UserIdentity, S extend
 
     protected abstract S buildProvider(C config);
 
+    @Autowired
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            // exposes hits, misses and loads per authority
+            GuavaCacheMetrics.monitor(meterRegistry, providers, "aac.authority.providers", "authority",
+                    authorityId);
+        }
+    }
+
     public void setConfigProvider(IdentityConfigurationProvider<C, P> configProvider) {
         Assert.notNull(configProvider, "config provider is mandatory");
         this.configProvider = configProvider;
@@ -3,7 +3,9 @@ package it.smartcommunitylab.aac.core.base;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -361,6 +363,32 @@ public abstract class AbstractIdentityProvider<I extends UserIdentity, U extends
         return identities;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public Map<String, Collection<I>> listIdentities(Collection<String> userIds, boolean fetchAttributes) {
+        logger.debug("list identities for {} users attributes {}", String.valueOf(userIds.size()),
+                String.valueOf(fetchAttributes));
+
+        // lookup for matching accounts in a single pass
+        Collection<U> accounts = getAccountProvider().listAccounts(userIds);
+        if (accounts.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        Map<String, Collection<I>> identities = new HashMap<>();
+        for (U account : accounts) {
+            Collection<UserAttributes> attributes = null;
+            if (fetchAttributes) {
+                attributes = getAttributeProvider().getAccountAttributes(account);
+            }
+
+            I identity = buildIdentity(account, attributes);
+            identities.computeIfAbsent(account.getUserId(), k -> new ArrayList<>()).add(identity);
+        }
+
+        return identities;
+    }
+
     @Override
     @Transactional(readOnly = false)
     public I linkIdentity(String userId, String accountId) throws NoSuchUserException {
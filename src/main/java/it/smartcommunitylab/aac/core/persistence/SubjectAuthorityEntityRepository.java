@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.core.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.stereotype.Repository;
@@ -11,6 +12,8 @@ public interface SubjectAuthorityEntityRepository extends CustomJpaRepository<Su
 
     List<SubjectAuthorityEntity> findBySubject(String subject);
 
+    List<SubjectAuthorityEntity> findBySubjectIn(Collection<String> subjects);
+
     List<SubjectAuthorityEntity> findBySubjectAndRealm(String subject, String realm);
     
     List<SubjectAuthorityEntity> findByRealm(String realm);
@@ -1,10 +1,14 @@
 package it.smartcommunitylab.aac.core.persistence;
 
+import java.util.Collection;
+import java.util.Date;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaSpecificationExecutor;
+import org.springframework.data.jpa.repository.Modifying;
+import org.springframework.data.jpa.repository.Query;
 import org.springframework.stereotype.Repository;
 
 import it.smartcommunitylab.aac.repository.CustomJpaRepository;
@@ -17,6 +21,8 @@ public interface UserEntityRepository
 
     UserEntity findByUuid(String uuid);
 
+    List<UserEntity> findByUuidIn(Collection<String> uuids);
+
     List<UserEntity> findByRealm(String realm);
 
     List<UserEntity> findByRealmAndUsername(String realm, String username);
@@ -41,4 +47,9 @@ public interface UserEntityRepository
 
     long countByRealm(String realm);
 
+    // login info only, never goes back in time
+    @Modifying
+    @Query("update UserEntity u set u.loginDate = ?2, u.loginIp = ?3, u.loginProvider = ?4 where u.uuid = ?1 and (u.loginDate is null or u.loginDate < ?2)")
+    int updateLogin(String uuid, Date loginDate, String loginIp, String loginProvider);
+
 }
@@ -1,6 +1,8 @@
 package it.smartcommunitylab.aac.core.provider;
 
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.List;
 
 import it.smartcommunitylab.aac.common.NoSuchUserException;
 import it.smartcommunitylab.aac.common.RegistrationException;
@@ -26,6 +28,16 @@ public interface AccountProvider<U extends UserAccount> extends ResourceProvider
     // userId is globally addressable
     public Collection<U> listAccounts(String userId);
 
+    // bulk lookup, implementations should override with a single query
+    default Collection<U> listAccounts(Collection<String> userIds) {
+        List<U> accounts = new ArrayList<>();
+        for (String userId : userIds) {
+            accounts.addAll(listAccounts(userId));
+        }
+
+        return accounts;
+    }
+
     /*
      * Build account from principal attributes
      */
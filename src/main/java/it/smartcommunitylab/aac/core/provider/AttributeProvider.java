@@ -81,6 +81,13 @@ public interface AttributeProvider extends ResourceProvider {
 
     public Collection<UserAttributes> convertPrincipalAttributes(UserAuthenticatedPrincipal principal, String userId);
 
+    /*
+     * Max time in millis for attribute conversion, null to use the default
+     */
+    default Integer getTimeout() {
+        return null;
+    }
+
 //    public Collection<UserAttributes> convertAttributes(Map<String, Serializable> attributes);
 
 //    public UserAttributes convertAttributes(UserAttributes attributes);
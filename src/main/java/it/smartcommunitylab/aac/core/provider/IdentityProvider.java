@@ -1,6 +1,8 @@
 package it.smartcommunitylab.aac.core.provider;
 
 import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
 
 import it.smartcommunitylab.aac.common.NoSuchUserException;
 import it.smartcommunitylab.aac.core.auth.ExtendedAuthenticationProvider;
@@ -112,6 +114,16 @@ public interface IdentityProvider<I extends UserIdentity>
 
     public Collection<I> listIdentities(String userId, boolean fetchAttributes);
 
+    // bulk lookup, userId -> identities
+    default Map<String, Collection<I>> listIdentities(Collection<String> userIds, boolean fetchAttributes) {
+        Map<String, Collection<I>> identities = new HashMap<>();
+        for (String userId : userIds) {
+            identities.put(userId, listIdentities(userId, fetchAttributes));
+        }
+
+        return identities;
+    }
+
     /*
      * Link account
      * 
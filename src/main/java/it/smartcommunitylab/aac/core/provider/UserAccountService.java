@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.core.provider;
 
+import java.util.Collection;
 import java.util.List;
 import it.smartcommunitylab.aac.common.NoSuchUserException;
 import it.smartcommunitylab.aac.common.RegistrationException;
@@ -17,6 +18,8 @@ public interface UserAccountService<U extends UserAccount> {
 
     public List<U> findAccountByUser(String repository, String userId);
 
+    public List<U> findAccountByUsers(String repository, Collection<String> userIds);
+
     public U addAccount(String repository, String id, U reg) throws RegistrationException;
 
     public U updateAccount(String repository, String id, U reg) throws NoSuchUserException, RegistrationException;
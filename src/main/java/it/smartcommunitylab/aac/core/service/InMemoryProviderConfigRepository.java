@@ -1,21 +1,31 @@
 package it.smartcommunitylab.aac.core.service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Map;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.stream.Collectors;
 
 import org.springframework.util.Assert;
 
 import it.smartcommunitylab.aac.core.base.AbstractProviderConfig;
 import it.smartcommunitylab.aac.core.provider.ProviderConfigRepository;
 
+/*
+ * In-memory provider config repository
+ *
+ * Registrations are indexed by provider and by realm. Writes update both maps
+ * under a single lock, while reads are lock free.
+ */
 public class InMemoryProviderConfigRepository<U extends AbstractProviderConfig> implements ProviderConfigRepository<U> {
 
     private final Map<String, U> registrations;
 
+    // realm index, values are keyed by provider
+    private final Map<String, Map<String, U>> realms;
+
     public InMemoryProviderConfigRepository() {
         this.registrations = new ConcurrentHashMap<>();
+        this.realms = new ConcurrentHashMap<>();
     }
 
     @Override
@@ -26,17 +36,31 @@ public class InMemoryProviderConfigRepository<U extends AbstractProviderConfig>
 
     @Override
     public void addRegistration(U registration) {
-        registrations.put(registration.getProvider(), registration);
+        String providerId = registration.getProvider();
+        synchronized (realms) {
+            U old = registrations.put(providerId, registration);
+            if (old != null) {
+                unindex(old);
+            }
+
+            realms.computeIfAbsent(registration.getRealm(), k -> new ConcurrentHashMap<>())
+                    .put(providerId, registration);
+        }
     }
 
     @Override
     public void removeRegistration(String providerId) {
-        registrations.remove(providerId);
+        synchronized (realms) {
+            U old = registrations.remove(providerId);
+            if (old != null) {
+                unindex(old);
+            }
+        }
     }
 
     @Override
     public void removeRegistration(U registration) {
-        registrations.remove(registration.getProvider());
+        removeRegistration(registration.getProvider());
     }
 
     @Override
@@ -46,7 +70,22 @@ public class InMemoryProviderConfigRepository<U extends AbstractProviderConfig>
 
     @Override
     public Collection<U> findByRealm(String realm) {
-        return registrations.values().stream().filter(p -> p.getRealm().equals(realm)).collect(Collectors.toList());
+        Map<String, U> map = realms.get(realm);
+        if (map == null) {
+            return Collections.emptyList();
+        }
+
+        return Collections.unmodifiableCollection(map.values());
+    }
+
+    private void unindex(U registration) {
+        Map<String, U> map = realms.get(registration.getRealm());
+        if (map != null) {
+            map.remove(registration.getProvider());
+            if (map.isEmpty()) {
+                realms.remove(registration.getRealm());
+            }
+        }
     }
 
 }
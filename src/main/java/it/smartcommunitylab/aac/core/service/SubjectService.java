@@ -29,6 +29,7 @@ import it.smartcommunitylab.aac.groups.persistence.GroupEntity;
 import it.smartcommunitylab.aac.model.Subject;
 import it.smartcommunitylab.aac.roles.persistence.RealmRoleEntity;
 import it.smartcommunitylab.aac.services.persistence.ServiceEntity;
+import it.smartcommunitylab.aac.repository.QueryUtils;
 
 @Service
 @Transactional
@@ -203,6 +204,20 @@ public class SubjectService {
                 .collect(Collectors.toList());
     }
 
+    /*
+     * Bulk lookup, subjectId -> authorities
+     */
+    @Transactional(readOnly = true)
+    public Map<String, List<GrantedAuthority>> getAuthorities(Collection<String> subjectIds) {
+        if (subjectIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return QueryUtils.findIn(subjectIds, ids -> authorityRepository.findBySubjectIn(ids)).stream()
+                .collect(Collectors.groupingBy(a -> a.getSubject(),
+                        Collectors.mapping(a -> toAuthority(a), Collectors.toList())));
+    }
+
     @Transactional(readOnly = true)
     public List<GrantedAuthority> getAuthorities(String subjectId, String realm) {
         return authorityRepository.findBySubjectAndRealm(subjectId, realm).stream().map(a -> toAuthority(a))
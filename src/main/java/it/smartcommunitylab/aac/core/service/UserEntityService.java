@@ -1,5 +1,7 @@
 package it.smartcommunitylab.aac.core.service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.Date;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -10,6 +12,7 @@ import org.springframework.data.jpa.domain.Specification;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 import org.springframework.util.Assert;
+import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
 
 import it.smartcommunitylab.aac.SystemKeys;
@@ -20,6 +23,7 @@ import it.smartcommunitylab.aac.core.persistence.UserEntity;
 import it.smartcommunitylab.aac.core.persistence.UserEntityRepository;
 import it.smartcommunitylab.aac.model.Subject;
 import it.smartcommunitylab.aac.model.SubjectStatus;
+import it.smartcommunitylab.aac.repository.QueryUtils;
 
 /*
  * Manage persistence for user entities and authorities (roles) 
@@ -77,6 +81,15 @@ public class UserEntityService {
         return userRepository.findByUuid(uuid);
     }
 
+    @Transactional(readOnly = true)
+    public List<UserEntity> findUsers(Collection<String> uuids) {
+        if (uuids.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        return QueryUtils.findIn(uuids, ids -> userRepository.findByUuidIn(ids));
+    }
+
     @Transactional(readOnly = true)
     public UserEntity getUser(String uuid) throws NoSuchUserException {
         UserEntity u = userRepository.findByUuid(uuid);
@@ -166,6 +179,66 @@ public class UserEntityService {
 
     }
 
+    /*
+     * Coalesced update on login: account fields are compared in memory and the
+     * user is written at most once, and only when changed. Login info is
+     * skipped when loginDate is null.
+     */
+    public UserEntity updateLogin(String uuid, String username, String emailAddress, boolean emailVerified,
+            String provider, Date loginDate, String loginIp) throws NoSuchUserException {
+        UserEntity u = getUser(uuid);
+        boolean dirty = false;
+
+        // always override username with last login
+        if (StringUtils.hasText(username)) {
+            if (!username.equals(u.getUsername())) {
+                u.setUsername(username);
+                dirty = true;
+            }
+            if (!ObjectUtils.nullSafeEquals(emailAddress, u.getEmailAddress())) {
+                u.setEmailAddress(emailAddress);
+                dirty = true;
+            }
+        }
+
+        if (emailVerified && !u.isEmailVerified()) {
+            if (!StringUtils.hasText(emailAddress)) {
+                throw new IllegalArgumentException("null or empty email");
+            }
+            if (u.getEmailAddress() == null) {
+                u.setEmailAddress(emailAddress);
+            }
+            if (!emailAddress.equals(u.getEmailAddress())) {
+                throw new IllegalArgumentException("email address mismatch");
+            }
+
+            u.setEmailVerified(true);
+            dirty = true;
+        }
+
+        if (loginDate != null) {
+            u.setLoginProvider(provider);
+            u.setLoginDate(loginDate);
+            u.setLoginIp(loginIp);
+            dirty = true;
+        }
+
+        if (dirty) {
+            u = userRepository.save(u);
+        }
+
+        return u;
+    }
+
+    /*
+     * Batch update of login info, in a single transaction
+     */
+    public void updateLogins(Collection<UserLoginBuffer.Login> logins) {
+        for (UserLoginBuffer.Login l : logins) {
+            userRepository.updateLogin(l.getUuid(), l.getLoginDate(), l.getLoginIp(), l.getProvider());
+        }
+    }
+
     public UserEntity activateUser(String uuid) throws NoSuchUserException {
         return updateStatus(uuid, SubjectStatus.ACTIVE);
     }
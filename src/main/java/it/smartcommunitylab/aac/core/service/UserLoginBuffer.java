@@ -0,0 +1,118 @@
+package it.smartcommunitylab.aac.core.service;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.Assert;
+
+/*
+ * Write-behind buffer for last login info.
+ *
+ * Logins are kept in memory, one per user with the latest winning, and
+ * written in a single transaction at every flush, so persisted values are at
+ * most one flush interval stale. When the buffer is full callers should
+ * write through.
+ */
+public class UserLoginBuffer implements DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_BUFFER_SIZE = 10000;
+
+    private final UserEntityService userService;
+    private final Map<String, Login> pending = new ConcurrentHashMap<>();
+
+    private int bufferSize = DEFAULT_BUFFER_SIZE;
+
+    public UserLoginBuffer(UserEntityService userService) {
+        Assert.notNull(userService, "user service is required");
+        this.userService = userService;
+    }
+
+    public void setBufferSize(int bufferSize) {
+        Assert.isTrue(bufferSize > 0, "buffer size must be positive");
+        this.bufferSize = bufferSize;
+    }
+
+    /*
+     * Queue a login, returns false when the buffer is full
+     */
+    public boolean add(String uuid, String provider, Date loginDate, String loginIp) {
+        Assert.hasText(uuid, "uuid can not be null or empty");
+        Assert.notNull(loginDate, "login date can not be null");
+
+        if (pending.size() >= bufferSize && !pending.containsKey(uuid)) {
+            return false;
+        }
+
+        Login login = new Login(uuid, provider, loginDate, loginIp);
+        pending.merge(uuid, login, (o, n) -> n.loginDate.before(o.loginDate) ? o : n);
+        return true;
+    }
+
+    @Scheduled(fixedDelayString = "${login.maxStaleness}")
+    public void flush() {
+        if (pending.isEmpty()) {
+            return;
+        }
+
+        List<Login> logins = new ArrayList<>();
+        for (String uuid : pending.keySet()) {
+            Login login = pending.remove(uuid);
+            if (login != null) {
+                logins.add(login);
+            }
+        }
+
+        try {
+            userService.updateLogins(logins);
+            logger.debug("flushed " + logins.size() + " logins");
+        } catch (DataAccessException e) {
+            // put back unless a newer login arrived meanwhile
+            logger.warn("error flushing logins: " + e.getMessage());
+            logins.forEach(l -> pending.merge(l.uuid, l, (p, f) -> p.loginDate.before(f.loginDate) ? f : p));
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        flush();
+    }
+
+    public static class Login {
+        private final String uuid;
+        private final String provider;
+        private final Date loginDate;
+        private final String loginIp;
+
+        public Login(String uuid, String provider, Date loginDate, String loginIp) {
+            this.uuid = uuid;
+            this.provider = provider;
+            this.loginDate = loginDate;
+            this.loginIp = loginIp;
+        }
+
+        public String getUuid() {
+            return uuid;
+        }
+
+        public String getProvider() {
+            return provider;
+        }
+
+        public Date getLoginDate() {
+            return loginDate;
+        }
+
+        public String getLoginIp() {
+            return loginIp;
+        }
+    }
+}
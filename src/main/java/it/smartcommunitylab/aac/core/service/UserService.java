@@ -3,8 +3,10 @@ package it.smartcommunitylab.aac.core.service;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -41,6 +43,7 @@ import it.smartcommunitylab.aac.model.RealmRole;
 import it.smartcommunitylab.aac.model.SpaceRole;
 import it.smartcommunitylab.aac.model.Subject;
 import it.smartcommunitylab.aac.model.User;
+import it.smartcommunitylab.aac.model.UserField;
 import it.smartcommunitylab.aac.model.SubjectStatus;
 import it.smartcommunitylab.aac.roles.service.SpaceRoleService;
 import it.smartcommunitylab.aac.roles.service.SubjectRoleService;
@@ -394,9 +397,13 @@ public class UserService {
      */
 
     public List<User> listUsers(String realm) {
+        return listUsers(realm, UserField.all());
+    }
+
+    public List<User> listUsers(String realm, Set<UserField> fields) {
         // owned by realm
         List<UserEntity> users = userService.listUsers(realm);
-        return convertUsers(realm, users);
+        return convertUsers(realm, users, fields);
 
     }
 
@@ -406,42 +413,162 @@ public class UserService {
     }
 
     public Page<User> searchUsers(String realm, String q, Pageable pageRequest) {
+        return searchUsers(realm, q, pageRequest, UserField.all());
+    }
+
+    public Page<User> searchUsers(String realm, String q, Pageable pageRequest, Set<UserField> fields) {
         Page<UserEntity> page = userService.searchUsers(realm, q, pageRequest);
         return PageableExecutionUtils.getPage(
-                convertUsers(realm, page.getContent()),
+                convertUsers(realm, page.getContent(), fields),
                 pageRequest,
                 () -> page.getTotalElements());
     }
 
     public Page<User> searchUsersWithSpec(String realm, Specification<UserEntity> spec, Pageable pageRequest) {
+        return searchUsersWithSpec(realm, spec, pageRequest, UserField.all());
+    }
+
+    public Page<User> searchUsersWithSpec(String realm, Specification<UserEntity> spec, Pageable pageRequest,
+            Set<UserField> fields) {
         Page<UserEntity> page = userService.searchUsersWithSpec(spec, pageRequest);
         return PageableExecutionUtils.getPage(
-                convertUsers(realm, page.getContent()),
+                convertUsers(realm, page.getContent(), fields),
                 pageRequest,
                 () -> page.getTotalElements());
     }
 
     protected List<User> convertUsers(String realm, List<UserEntity> users) {
-        List<User> realmUsers = users.stream()
-                .map(u -> {
-                    try {
-                        return getUser(u.getUuid(), realm);
-                    } catch (NoSuchUserException e) {
-                        return null;
-                    }
-                })
-                .filter(u -> u != null)
-                .collect(Collectors.toList());
+        return convertUsers(realm, users, UserField.all());
+    }
+
+    /*
+     * Bulk conversion: related data is fetched for the whole list with one lookup
+     * per kind (and per provider for identities), instead of one per user. Only
+     * the selected fields are loaded.
+     */
+    protected List<User> convertUsers(String realm, List<UserEntity> users, Set<UserField> fields) {
+        if (users.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<String> subjectIds = users.stream().map(u -> u.getUuid()).collect(Collectors.toList());
+
+        // fetch all identities from realm providers
+        Map<String, List<UserIdentity>> identities = new HashMap<>();
+        if (fields.contains(UserField.IDENTITIES)) {
+            boolean fetchAttributes = fields.contains(UserField.ATTRIBUTES);
+            for (IdentityProvider<UserIdentity> idp : authorityManager.fetchIdentityProviders(realm)) {
+                idp.listIdentities(subjectIds, fetchAttributes).forEach((subjectId, ids) -> identities
+                        .computeIfAbsent(subjectId, k -> new ArrayList<>()).addAll(ids));
+            }
+        }
+
+        Map<String, List<GrantedAuthority>> authorities = fields.contains(UserField.AUTHORITIES)
+                ? subjectService.getAuthorities(subjectIds)
+                : Collections.emptyMap();
+
+        // groups are needed to resolve roles assigned to groups
+        Map<String, List<Group>> groups = fields.contains(UserField.GROUPS) || fields.contains(UserField.ROLES)
+                ? groupService.getSubjectGroups(subjectIds, realm)
+                : Collections.emptyMap();
+
+        Map<String, List<RealmRole>> roles = Collections.emptyMap();
+        if (fields.contains(UserField.ROLES)) {
+            Set<String> subjects = new HashSet<>(subjectIds);
+            groups.values().forEach(gs -> gs.forEach(g -> subjects.add(g.getGroupId())));
+            roles = roleService.getRoles(subjects, realm);
+        }
+
+        Map<String, Set<SpaceRole>> spaceRoles = fields.contains(UserField.SPACE_ROLES)
+                ? spaceRoleService.getRoles(subjectIds)
+                : Collections.emptyMap();
+
+        List<User> realmUsers = new ArrayList<>(users.size());
+        for (UserEntity ue : users) {
+            String subjectId = ue.getUuid();
+            User u = toUser(ue);
+
+            for (UserIdentity identity : identities.getOrDefault(subjectId, Collections.emptyList())) {
+                u.addIdentity(identity);
+            }
+
+            if (!ue.getRealm().equals(realm)) {
+                // let translator filter content according to policy
+                u = translator.translate(u, realm);
+            }
+
+            if (fields.contains(UserField.AUTHORITIES)) {
+                Set<GrantedAuthority> ga = new HashSet<>();
+                ga.add(new SimpleGrantedAuthority(Config.R_USER));
+                ga.addAll(authorities.getOrDefault(subjectId, Collections.emptyList()));
+                u.setAuthorities(ga);
+            }
+
+            if (fields.contains(UserField.ATTRIBUTES)) {
+                try {
+                    u.setAttributes(fetchUserAttributes(subjectId, realm));
+                } catch (NoSuchUserException e) {
+                    // ignore
+                }
+            } else {
+                u.setAttributes(Collections.emptyList());
+            }
+
+            List<Group> userGroups = groups.getOrDefault(subjectId, Collections.emptyList());
+            if (fields.contains(UserField.GROUPS)) {
+                u.setGroups(userGroups);
+            }
+
+            if (fields.contains(UserField.ROLES)) {
+                // merge directly assigned roles with those assigned to groups
+                Set<RealmRole> rr = new HashSet<>(roles.getOrDefault(subjectId, Collections.emptyList()));
+                for (Group g : userGroups) {
+                    rr.addAll(roles.getOrDefault(g.getGroupId(), Collections.emptyList()));
+                }
+                u.setRealmRoles(rr);
+            }
+
+            if (fields.contains(UserField.SPACE_ROLES)) {
+                u.setSpaceRoles(spaceRoles.getOrDefault(subjectId, Collections.emptySet()));
+            }
+
+            realmUsers.add(u);
+        }
 
         // accessible from this realm
         // TODO
 
-        // TODO translate resulting users
         return realmUsers;
     }
 
+    private User toUser(UserEntity ue) {
+        User u = new User(ue.getUuid(), ue.getRealm());
+        u.setUsername(ue.getUsername());
+        u.setEmail(ue.getEmailAddress());
+        boolean emailVerified = ue.getEmailVerified() != null ? ue.getEmailVerified().booleanValue() : false;
+        u.setEmailVerified(emailVerified);
+
+        // status
+        SubjectStatus status = SubjectStatus.parse(ue.getStatus());
+        u.setStatus(status);
+
+        // fetch attributes
+        u.setExpirationDate(ue.getExpirationDate());
+        u.setCreateDate(ue.getCreateDate());
+        u.setModifiedDate(ue.getModifiedDate());
+        u.setLoginDate(ue.getLoginDate());
+        u.setLoginIp(ue.getLoginIp());
+        u.setLoginProvider(ue.getLoginProvider());
+
+        return u;
+    }
+
     public List<User> findUsersByUsername(String realm, String username) {
-        return convertUsers(realm, userService.findUsersByUsername(realm, username));
+        return findUsersByUsername(realm, username, UserField.all());
+    }
+
+    public List<User> findUsersByUsername(String realm, String username, Set<UserField> fields) {
+        return convertUsers(realm, userService.findUsersByUsername(realm, username), fields);
     }
 
     public List<User> findUsersByEmailAddress(String realm, String emailAddress) {
@@ -449,12 +576,17 @@ public class UserService {
     }
 
     public List<User> listUsersByAuthority(String realm, String role) {
+        return listUsersByAuthority(realm, role, UserField.all());
+    }
+
+    public List<User> listUsersByAuthority(String realm, String role, Set<UserField> fields) {
         // with authority in realm
         List<Subject> subjects = subjectService.listSubjectsByAuthorities(realm, role);
 
-        List<UserEntity> users = subjects.stream().filter(s -> SystemKeys.RESOURCE_USER.equals(s.getType()))
-                .map(s -> userService.findUser(s.getSubjectId())).filter(s -> s != null).collect(Collectors.toList());
-        return convertUsers(realm, users);
+        Set<String> ids = subjects.stream().filter(s -> SystemKeys.RESOURCE_USER.equals(s.getType()))
+                .map(s -> s.getSubjectId()).collect(Collectors.toSet());
+        List<UserEntity> users = userService.findUsers(ids);
+        return convertUsers(realm, users, fields);
 
     }
 
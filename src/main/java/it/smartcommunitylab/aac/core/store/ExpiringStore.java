@@ -0,0 +1,215 @@
+package it.smartcommunitylab.aac.core.store;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.util.Assert;
+
+/*
+ * Bounded in-memory map with per entry time to live.
+ *
+ * Entries expire ttl millis after the last write: reads check the deadline
+ * while the sweeper removes expired entries in background, so unused entries
+ * do not linger. When full, the eviction policy either drops a batch of the
+ * entries closest to expiry (OLDEST) or rejects the write (REJECT).
+ *
+ * Each entry holds a single sweeper timeout, rewrites extend the deadline and
+ * reuse it while removals cancel it.
+ *
+ * Note that the max size bounds each instance: session scoped stores can hold
+ * up to max size entries per session, the overall occupancy is reported by
+ * the sweeper gauge for the store name.
+ */
+public class ExpiringStore<K, V> {
+
+    public static final int EVICTION_BATCH_RATIO = 10;
+
+    public enum EvictionPolicy {
+        OLDEST, REJECT;
+    }
+
+    private final String name;
+    private final long ttl;
+    private final int maxSize;
+    private final EvictionPolicy policy;
+
+    private final Map<K, Item<V>> items = new ConcurrentHashMap<>();
+    private final ExpiringStoreSweeper sweeper;
+    private final ExpiringStoreSweeper.Stats stats;
+
+    public ExpiringStore(String name, long ttl, int maxSize, EvictionPolicy policy) {
+        this(name, ttl, maxSize, policy, ExpiringStoreSweeper.getDefault());
+    }
+
+    public ExpiringStore(String name, long ttl, int maxSize, EvictionPolicy policy, ExpiringStoreSweeper sweeper) {
+        Assert.hasText(name, "name can not be null or empty");
+        Assert.isTrue(ttl > 0, "ttl must be positive");
+        Assert.isTrue(maxSize > 0, "max size must be positive");
+        Assert.notNull(policy, "eviction policy is required");
+        Assert.notNull(sweeper, "sweeper is required");
+
+        this.name = name;
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+        this.policy = policy;
+        this.sweeper = sweeper;
+        this.stats = sweeper.stats(name);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public V get(K key) {
+        Item<V> item = items.get(key);
+        if (item == null) {
+            return null;
+        }
+
+        if (item.isExpired(System.currentTimeMillis())) {
+            if (items.remove(key, item)) {
+                item.timeout.cancel();
+                stats.expired();
+            }
+            return null;
+        }
+
+        return item.value;
+    }
+
+    public void put(K key, V value) {
+        Assert.notNull(key, "key can not be null");
+        Assert.notNull(value, "value can not be null");
+
+        if (!items.containsKey(key)) {
+            ensureCapacity();
+        }
+
+        long expiresAt = System.currentTimeMillis() + ttl;
+        boolean[] added = new boolean[1];
+        items.compute(key, (k, i) -> {
+            if (i != null) {
+                // extend deadline and keep the timeout, the sweeper checks again when reached
+                return new Item<>(value, expiresAt, i.timeout);
+            }
+
+            added[0] = true;
+            return new Item<>(value, expiresAt, sweeper.schedule(this, k, expiresAt));
+        });
+
+        if (added[0]) {
+            stats.added(1);
+        }
+    }
+
+    public V remove(K key) {
+        Item<V> item = items.remove(key);
+        if (item == null) {
+            return null;
+        }
+
+        item.timeout.cancel();
+        stats.added(-1);
+        return item.isExpired(System.currentTimeMillis()) ? null : item.value;
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+        V value = get(key);
+        if (value == null) {
+            value = mappingFunction.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+
+        return value;
+    }
+
+    public Collection<V> values() {
+        long now = System.currentTimeMillis();
+        return items.values().stream()
+                .filter(i -> !i.isExpired(now))
+                .map(i -> i.value)
+                .collect(Collectors.toList());
+    }
+
+    public int size() {
+        return items.size();
+    }
+
+    public void clear() {
+        int size = items.size();
+        items.values().forEach(i -> i.timeout.cancel());
+        items.clear();
+        stats.added(-size);
+    }
+
+    /*
+     * Called by the sweeper when the timeout is reached: remove the entry when
+     * expired, or return the extended deadline to check again at. Zero when
+     * the timeout is done.
+     */
+    long expire(Object key, ExpiringStoreSweeper.Timeout timeout, long now) {
+        while (true) {
+            Item<V> item = items.get(key);
+            if (item == null || item.timeout != timeout) {
+                // removed, or replaced after removal
+                return 0;
+            }
+
+            if (!item.isExpired(now)) {
+                return item.expiresAt;
+            }
+
+            // retry when concurrently rewritten
+            if (items.remove(key, item)) {
+                stats.expired();
+                return 0;
+            }
+        }
+    }
+
+    private void ensureCapacity() {
+        if (items.size() < maxSize) {
+            return;
+        }
+
+        if (policy == EvictionPolicy.REJECT) {
+            throw new IllegalStateException("store " + name + " is full");
+        }
+
+        // evict a batch to amortize the scan
+        int batch = Math.max(1, maxSize / EVICTION_BATCH_RATIO);
+        List<Map.Entry<K, Item<V>>> entries = new ArrayList<>(items.entrySet());
+        entries.sort(Comparator.comparingLong(e -> e.getValue().expiresAt));
+        for (int i = 0; i < batch && i < entries.size(); i++) {
+            Map.Entry<K, Item<V>> e = entries.get(i);
+            if (items.remove(e.getKey(), e.getValue())) {
+                e.getValue().timeout.cancel();
+                stats.evicted();
+            }
+        }
+    }
+
+    private static class Item<V> {
+        private final V value;
+        private final long expiresAt;
+        private final ExpiringStoreSweeper.Timeout timeout;
+
+        public Item(V value, long expiresAt, ExpiringStoreSweeper.Timeout timeout) {
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.timeout = timeout;
+        }
+
+        public boolean isExpired(long now) {
+            return expiresAt <= now;
+        }
+    }
+}
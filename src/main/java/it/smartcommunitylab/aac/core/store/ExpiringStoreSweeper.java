@@ -0,0 +1,231 @@
+package it.smartcommunitylab.aac.core.store;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.MeterBinder;
+
+/*
+ * Hashed timer wheel for expiring stores.
+ *
+ * Expirations are hashed into a fixed ring of slots by deadline, and a single
+ * daemon thread advances one slot per tick. Each timeout carries the number of
+ * full rounds left before it is due, so later rounds are counted down in place
+ * and never requeued.
+ * Scheduling is O(1) and there are no per entry timers, so any number of
+ * stores (ie session scoped) can share it.
+ *
+ * Stores keep one timeout per entry: writes extending a deadline reuse it, and
+ * when reached the owning store tells whether to expire the entry or to hash
+ * the timeout again for the new deadline.
+ *
+ * Occupancy and evictions are tracked per store name.
+ */
+public class ExpiringStoreSweeper implements MeterBinder {
+    private static final Logger logger = LoggerFactory.getLogger(ExpiringStoreSweeper.class);
+
+    public static final long DEFAULT_TICK = 1000;
+    public static final int DEFAULT_WHEEL_SIZE = 512;
+
+    public static final String METRIC_SIZE = "aac.store.size";
+    public static final String METRIC_EVICTED = "aac.store.evicted";
+
+    private static final ExpiringStoreSweeper DEFAULT = new ExpiringStoreSweeper(DEFAULT_TICK, DEFAULT_WHEEL_SIZE);
+
+    public static ExpiringStoreSweeper getDefault() {
+        return DEFAULT;
+    }
+
+    private final long tick;
+    private final Queue<Timeout>[] wheel;
+
+    // next tick to process
+    private volatile long cursor;
+
+    private final Map<String, Stats> stats = new ConcurrentHashMap<>();
+    private volatile MeterRegistry meterRegistry;
+
+    private final ScheduledExecutorService executor;
+
+    @SuppressWarnings("unchecked")
+    public ExpiringStoreSweeper(long tick, int wheelSize) {
+        Assert.isTrue(tick > 0, "tick must be positive");
+        Assert.isTrue(wheelSize > 0, "wheel size must be positive");
+        this.tick = tick;
+        this.wheel = new Queue[wheelSize];
+        for (int i = 0; i < wheelSize; i++) {
+            wheel[i] = new ConcurrentLinkedQueue<>();
+        }
+
+        this.cursor = System.currentTimeMillis() / tick;
+
+        this.executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread t = new Thread(r, "aac-store-sweeper");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.scheduleWithFixedDelay(this::advance, tick, tick, TimeUnit.MILLISECONDS);
+    }
+
+    @Override
+    public void bindTo(MeterRegistry registry) {
+        this.meterRegistry = registry;
+        stats.values().forEach(s -> s.bindTo(registry));
+    }
+
+    /*
+     * Schedule an expiration check for key at deadline
+     */
+    Timeout schedule(ExpiringStore<?, ?> store, Object key, long expiresAt) {
+        Timeout timeout = new Timeout(store, key);
+        long c = cursor;
+        schedule(timeout, expiresAt, c, c);
+        return timeout;
+    }
+
+    /*
+     * Hash into the slot for deadline, counting rounds from the next tick which
+     * will visit the wheel
+     */
+    private void schedule(Timeout timeout, long expiresAt, long current, long next) {
+        // never hash into a slot already processed in this round
+        long t = Math.max(expiresAt / tick, current + 1);
+        timeout.rounds = (t - next) / wheel.length;
+        wheel[(int) (t % wheel.length)].add(timeout);
+    }
+
+    Stats stats(String name) {
+        return stats.computeIfAbsent(name, n -> {
+            Stats s = new Stats(n);
+            MeterRegistry registry = meterRegistry;
+            if (registry != null) {
+                s.bindTo(registry);
+            }
+            return s;
+        });
+    }
+
+    private void advance() {
+        try {
+            long now = System.currentTimeMillis();
+            long target = now / tick;
+            while (cursor <= target) {
+                Queue<Timeout> slot = wheel[(int) (cursor % wheel.length)];
+
+                // later rounds stay in place, due timeouts are unlinked
+                List<Timeout> due = new ArrayList<>();
+                Iterator<Timeout> iter = slot.iterator();
+                while (iter.hasNext()) {
+                    Timeout timeout = iter.next();
+                    if (timeout.cancelled) {
+                        iter.remove();
+                    } else if (timeout.rounds > 0) {
+                        timeout.rounds--;
+                    } else {
+                        iter.remove();
+                        due.add(timeout);
+                    }
+                }
+
+                for (Timeout timeout : due) {
+                    // store either expires the entry or returns the extended deadline
+                    long next = timeout.store.expire(timeout.key, timeout, now);
+                    if (next > 0) {
+                        schedule(timeout, next, cursor, cursor + 1);
+                    }
+                }
+
+                cursor++;
+            }
+        } catch (RuntimeException e) {
+            // keep the wheel running
+            logger.error("error sweeping expired entries: " + e.getMessage());
+        }
+    }
+
+    static class Timeout {
+        private final ExpiringStore<?, ?> store;
+        private final Object key;
+
+        // full rounds left, only touched by the wheel thread once queued
+        private long rounds;
+
+        private volatile boolean cancelled;
+
+        private Timeout(ExpiringStore<?, ?> store, Object key) {
+            this.store = store;
+            this.key = key;
+        }
+
+        /*
+         * Drop when reached, the entry is gone or owns another timeout
+         */
+        void cancel() {
+            cancelled = true;
+        }
+    }
+
+    static class Stats {
+        private final String name;
+        private final AtomicLong size = new AtomicLong();
+        private final AtomicLong expired = new AtomicLong();
+        private final AtomicLong evicted = new AtomicLong();
+
+        private Counter expiredCounter;
+        private Counter evictedCounter;
+
+        public Stats(String name) {
+            this.name = name;
+        }
+
+        void bindTo(MeterRegistry registry) {
+            Gauge.builder(METRIC_SIZE, size, s -> s.get()).tag("store", name).register(registry);
+            expiredCounter = Counter.builder(METRIC_EVICTED).tag("store", name).tag("cause", "expired")
+                    .register(registry);
+            evictedCounter = Counter.builder(METRIC_EVICTED).tag("store", name).tag("cause", "size")
+                    .register(registry);
+
+            // carry over counts before binding
+            expiredCounter.increment(expired.getAndSet(0));
+            evictedCounter.increment(evicted.getAndSet(0));
+        }
+
+        void added(long delta) {
+            size.addAndGet(delta);
+        }
+
+        void expired() {
+            size.decrementAndGet();
+            if (expiredCounter != null) {
+                expiredCounter.increment();
+            } else {
+                expired.incrementAndGet();
+            }
+        }
+
+        void evicted() {
+            size.decrementAndGet();
+            if (evictedCounter != null) {
+                evictedCounter.increment();
+            } else {
+                evicted.incrementAndGet();
+            }
+        }
+    }
+}
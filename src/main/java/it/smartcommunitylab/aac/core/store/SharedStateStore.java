@@ -0,0 +1,133 @@
+package it.smartcommunitylab.aac.core.store;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.core.store.ExpiringStore.EvictionPolicy;
+import it.smartcommunitylab.aac.core.store.StateStore.StoredState;
+
+/*
+ * Typed view over a namespace of a shared state store, with a node local
+ * near-cache.
+ *
+ * Entries written on this node are kept decoded in memory along with their
+ * version: reads only check the current version in the shared store and skip
+ * payload transfer and decoding when unchanged. Consumption always goes to the
+ * shared store, so single use holds across nodes.
+ */
+public class SharedStateStore<V> {
+
+    public static final int DEFAULT_NEAR_CACHE_SIZE = 1000;
+
+    private final String namespace;
+    private final StateStore store;
+    private final long ttl;
+    private final Function<V, byte[]> encoder;
+    private final Function<byte[], V> decoder;
+
+    private final ExpiringStore<String, Versioned<V>> nearCache;
+
+    public SharedStateStore(String namespace, StateStore store, long ttl,
+            Function<V, byte[]> encoder, Function<byte[], V> decoder) {
+        this(namespace, store, ttl, encoder, decoder, DEFAULT_NEAR_CACHE_SIZE);
+    }
+
+    public SharedStateStore(String namespace, StateStore store, long ttl,
+            Function<V, byte[]> encoder, Function<byte[], V> decoder, int nearCacheSize) {
+        Assert.hasText(namespace, "namespace can not be null or empty");
+        Assert.notNull(store, "state store is required");
+        Assert.isTrue(ttl > 0, "ttl must be positive");
+        Assert.notNull(encoder, "encoder is required");
+        Assert.notNull(decoder, "decoder is required");
+
+        this.namespace = namespace;
+        this.store = store;
+        this.ttl = ttl;
+        this.encoder = encoder;
+        this.decoder = decoder;
+
+        // disabled when size is not positive
+        this.nearCache = nearCacheSize > 0
+                ? new ExpiringStore<>("shared." + namespace, ttl, nearCacheSize, EvictionPolicy.OLDEST)
+                : null;
+    }
+
+    public V find(String key) {
+        Assert.hasText(key, "key can not be null or empty");
+
+        Versioned<V> local = nearCache != null ? nearCache.get(key) : null;
+        if (local != null) {
+            Long version = store.findVersion(namespace, key);
+            if (version == null) {
+                nearCache.remove(key);
+                return null;
+            }
+
+            if (version.longValue() == local.version) {
+                return local.value;
+            }
+        }
+
+        StoredState state = store.find(namespace, key);
+        if (state == null) {
+            return null;
+        }
+
+        V value = decoder.apply(state.getValue());
+        if (nearCache != null) {
+            nearCache.put(key, new Versioned<>(state.getVersion(), value));
+        }
+
+        return value;
+    }
+
+    public V consume(String key) {
+        Assert.hasText(key, "key can not be null or empty");
+
+        if (nearCache != null) {
+            nearCache.remove(key);
+        }
+
+        byte[] bytes = store.consume(namespace, key);
+        return bytes != null ? decoder.apply(bytes) : null;
+    }
+
+    public Collection<V> findAll() {
+        return store.findAll(namespace).stream().map(decoder).collect(Collectors.toList());
+    }
+
+    public void store(String key, V value) {
+        Assert.hasText(key, "key can not be null or empty");
+        Assert.notNull(value, "value can not be null");
+
+        long version = ThreadLocalRandom.current().nextLong();
+        store.save(namespace, key, encoder.apply(value), version, new Date(System.currentTimeMillis() + ttl));
+
+        if (nearCache != null) {
+            nearCache.put(key, new Versioned<>(version, value));
+        }
+    }
+
+    public void remove(String key) {
+        if (nearCache != null) {
+            nearCache.remove(key);
+        }
+
+        store.remove(namespace, key);
+    }
+
+    private static class Versioned<V> {
+        private final long version;
+        private final V value;
+
+        public Versioned(long version, V value) {
+            this.version = version;
+            this.value = value;
+        }
+    }
+}
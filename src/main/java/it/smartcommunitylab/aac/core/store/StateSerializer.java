@@ -0,0 +1,113 @@
+package it.smartcommunitylab.aac.core.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.springframework.util.SerializationUtils;
+
+/*
+ * Compact encoding for shared state payloads.
+ *
+ * Every payload starts with a 3 bytes header (magic, version, codec):
+ * - text (ie JSON) is stored as UTF-8, deflated when larger than a threshold
+ * - objects are stored as deflated java serialization
+ */
+public class StateSerializer {
+
+    public static final byte MAGIC = 0x53;
+    public static final byte VERSION = 1;
+
+    public static final byte CODEC_TEXT = 1;
+    public static final byte CODEC_DEFLATE_TEXT = 2;
+    public static final byte CODEC_DEFLATE_JAVA = 3;
+
+    public static final int DEFLATE_THRESHOLD = 512;
+
+    private static final int HEADER_LENGTH = 3;
+
+    public byte[] serializeText(String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length < DEFLATE_THRESHOLD) {
+            return withHeader(CODEC_TEXT, bytes);
+        }
+
+        return withHeader(CODEC_DEFLATE_TEXT, deflate(bytes));
+    }
+
+    public String deserializeText(byte[] bytes) {
+        checkHeader(bytes);
+        if (bytes[2] == CODEC_TEXT) {
+            return new String(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH, StandardCharsets.UTF_8);
+        }
+        if (bytes[2] == CODEC_DEFLATE_TEXT) {
+            return new String(inflate(bytes), StandardCharsets.UTF_8);
+        }
+
+        throw new IllegalArgumentException("unsupported codec " + String.valueOf(bytes[2]));
+    }
+
+    public byte[] serializeObject(Serializable object) {
+        return withHeader(CODEC_DEFLATE_JAVA, deflate(SerializationUtils.serialize(object)));
+    }
+
+    @SuppressWarnings("unchecked")
+    public <T> T deserializeObject(byte[] bytes) {
+        checkHeader(bytes);
+        if (bytes[2] != CODEC_DEFLATE_JAVA) {
+            throw new IllegalArgumentException("unsupported codec " + String.valueOf(bytes[2]));
+        }
+
+        return (T) SerializationUtils.deserialize(inflate(bytes));
+    }
+
+    /*
+     * Helpers
+     */
+    private byte[] deflate(byte[] bytes) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length / 2);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(bos, deflater)) {
+            dos.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            deflater.end();
+        }
+
+        return bos.toByteArray();
+    }
+
+    private byte[] inflate(byte[] bytes) {
+        InputStream is = new ByteArrayInputStream(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        try (InflaterInputStream iis = new InflaterInputStream(is)) {
+            return iis.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private byte[] withHeader(byte codec, byte[] payload) {
+        byte[] bytes = new byte[payload.length + HEADER_LENGTH];
+        bytes[0] = MAGIC;
+        bytes[1] = VERSION;
+        bytes[2] = codec;
+        System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+        return bytes;
+    }
+
+    private void checkHeader(byte[] bytes) {
+        if (bytes == null || bytes.length < HEADER_LENGTH || bytes[0] != MAGIC) {
+            throw new IllegalArgumentException("invalid payload");
+        }
+        if (bytes[1] != VERSION) {
+            throw new IllegalArgumentException("unsupported version " + String.valueOf(bytes[1]));
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package it.smartcommunitylab.aac.core.store;
+
+import java.util.Collection;
+import java.util.Date;
+
+/*
+ * Shared store for short lived ceremony state (pending requests), visible to
+ * all nodes.
+ *
+ * Entries are opaque payloads grouped by namespace, each with a version which
+ * changes on every write and an expiration after which it is not returned.
+ */
+public interface StateStore {
+
+    public StoredState find(String namespace, String key);
+
+    /*
+     * Current version of an entry, or null when missing or expired
+     */
+    public Long findVersion(String namespace, String key);
+
+    public Collection<byte[]> findAll(String namespace);
+
+    public void save(String namespace, String key, byte[] value, long version, Date expiresAt);
+
+    /*
+     * Remove and return an entry, only one caller across all nodes obtains it
+     */
+    public byte[] consume(String namespace, String key);
+
+    public void remove(String namespace, String key);
+
+    public class StoredState {
+        private final byte[] value;
+        private final long version;
+
+        public StoredState(byte[] value, long version) {
+            this.value = value;
+            this.version = version;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package it.smartcommunitylab.aac.core.store.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.core.store.StateStore;
+import it.smartcommunitylab.aac.oauth.store.PurgeableStore;
+import it.smartcommunitylab.aac.repository.JdbcSchemaUtils;
+
+/*
+ * Shared state store with DB table creation on startup.
+ *
+ * Rows carry their expiration, reads ignore expired entries and the sweeper
+ * purges them in batches. Consume deletes by version, so that only one node
+ * can obtain a given entry.
+ */
+public class AutoJdbcStateStore implements StateStore, PurgeableStore {
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS shared_state (store_ns VARCHAR(64) NOT NULL, state_key VARCHAR(256) NOT NULL, state_value BLOB NOT NULL, version BIGINT NOT NULL, expires_at TIMESTAMP NOT NULL, PRIMARY KEY (store_ns, state_key));";
+    private static final String DEFAULT_SELECT_STATEMENT = "select state_value, version from shared_state where store_ns = ? and state_key = ? and expires_at > ?";
+    private static final String DEFAULT_SELECT_VERSION_STATEMENT = "select version from shared_state where store_ns = ? and state_key = ? and expires_at > ?";
+    private static final String DEFAULT_SELECT_ALL_STATEMENT = "select state_value from shared_state where store_ns = ? and expires_at > ?";
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into shared_state (store_ns, state_key, state_value, version, expires_at) values (?, ?, ?, ?, ?)";
+    private static final String DEFAULT_UPDATE_STATEMENT = "update shared_state set state_value = ?, version = ?, expires_at = ? where store_ns = ? and state_key = ?";
+    private static final String DEFAULT_DELETE_STATEMENT = "delete from shared_state where store_ns = ? and state_key = ?";
+    private static final String DEFAULT_DELETE_VERSION_STATEMENT = "delete from shared_state where store_ns = ? and state_key = ? and version = ?";
+    private static final String DEFAULT_SELECT_EXPIRED_STATEMENT = "select store_ns, state_key from shared_state where expires_at < ?";
+    private static final String DEFAULT_DELETE_EXPIRED_STATEMENT = "delete from shared_state where store_ns = ? and state_key = ? and expires_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    public AutoJdbcStateStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initSchema();
+    }
+
+    protected void initSchema() {
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "shared_state", "shared_state_expires_at_idx", "expires_at");
+    }
+
+    @Override
+    public StoredState find(String namespace, String key) {
+        List<StoredState> states = jdbcTemplate.query(DEFAULT_SELECT_STATEMENT,
+                (rs, rowNum) -> new StoredState(rs.getBytes(1), rs.getLong(2)),
+                namespace, key, now());
+        return states.isEmpty() ? null : states.get(0);
+    }
+
+    @Override
+    public Long findVersion(String namespace, String key) {
+        List<Long> versions = jdbcTemplate.query(DEFAULT_SELECT_VERSION_STATEMENT,
+                (rs, rowNum) -> rs.getLong(1),
+                namespace, key, now());
+        return versions.isEmpty() ? null : versions.get(0);
+    }
+
+    @Override
+    public Collection<byte[]> findAll(String namespace) {
+        return jdbcTemplate.query(DEFAULT_SELECT_ALL_STATEMENT, (rs, rowNum) -> rs.getBytes(1), namespace, now());
+    }
+
+    @Override
+    public void save(String namespace, String key, byte[] value, long version, Date expiresAt) {
+        Assert.hasText(namespace, "namespace can not be null or empty");
+        Assert.hasText(key, "key can not be null or empty");
+        Assert.notNull(value, "value can not be null");
+        Assert.notNull(expiresAt, "expiration can not be null");
+
+        Object[] updateArgs = new Object[] { new SqlLobValue(value), version, new Timestamp(expiresAt.getTime()), namespace, key };
+        int[] updateTypes = new int[] { Types.BLOB, Types.BIGINT, Types.TIMESTAMP, Types.VARCHAR, Types.VARCHAR };
+
+        if (jdbcTemplate.update(DEFAULT_UPDATE_STATEMENT, updateArgs, updateTypes) > 0) {
+            return;
+        }
+
+        try {
+            jdbcTemplate.update(DEFAULT_INSERT_STATEMENT,
+                    new Object[] { namespace, key, new SqlLobValue(value), version, new Timestamp(expiresAt.getTime()) },
+                    new int[] { Types.VARCHAR, Types.VARCHAR, Types.BLOB, Types.BIGINT, Types.TIMESTAMP });
+        } catch (DuplicateKeyException e) {
+            // concurrent insert, last write wins
+            jdbcTemplate.update(DEFAULT_UPDATE_STATEMENT, updateArgs, updateTypes);
+        }
+    }
+
+    @Override
+    public byte[] consume(String namespace, String key) {
+        StoredState state = find(namespace, key);
+        if (state == null) {
+            return null;
+        }
+
+        // only the caller deleting the row obtains the value
+        int count = jdbcTemplate.update(DEFAULT_DELETE_VERSION_STATEMENT, namespace, key, state.getVersion());
+        return count == 1 ? state.getValue() : null;
+    }
+
+    @Override
+    public void remove(String namespace, String key) {
+        jdbcTemplate.update(DEFAULT_DELETE_STATEMENT, namespace, key);
+    }
+
+    @Override
+    public int purgeExpired(Date now, int limit) {
+        Timestamp ts = new Timestamp(now.getTime());
+        List<Object[]> keys = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(DEFAULT_SELECT_EXPIRED_STATEMENT);
+            ps.setMaxRows(limit);
+            ps.setTimestamp(1, ts);
+            return ps;
+        }, (rs, rowNum) -> new Object[] { rs.getString(1), rs.getString(2), ts });
+
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        // check expiration again, other nodes could be sweeping concurrently
+        int[] results = jdbcTemplate.batchUpdate(DEFAULT_DELETE_EXPIRED_STATEMENT, keys);
+        return Arrays.stream(results).map(r -> Math.max(r, 0)).sum();
+    }
+
+    private Timestamp now() {
+        return new Timestamp(System.currentTimeMillis());
+    }
+
+}
@@ -16,6 +16,7 @@
 
 package it.smartcommunitylab.aac.groups.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
@@ -37,6 +38,8 @@ public interface GroupEntityRepository
 
     List<GroupEntity> findByRealm(String realm);
 
+    List<GroupEntity> findByRealmAndGroupIn(String realm, Collection<String> groups);
+
     Page<GroupEntity> findByRealm(String realm, Pageable pageRequest);
 
     List<GroupEntity> findByRealmAndParentGroup(String realm, String parentGroup);
@@ -16,6 +16,7 @@
 
 package it.smartcommunitylab.aac.groups.persistence;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -49,6 +50,8 @@ public interface GroupMemberEntityRepository
 
     List<GroupMemberEntity> findBySubjectAndRealm(String subject, String realm);
 
+    List<GroupMemberEntity> findBySubjectInAndRealm(Collection<String> subjects, String realm);
+
 //    @Query("select g from GroupMemberEntity gm inner join GroupEntity g on gm.group = g.uuid where gm.subject = ?1")
 //    List<GroupEntity> findGroupsBySubject(String subject);
 
@@ -17,6 +17,7 @@
 package it.smartcommunitylab.aac.groups.service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -40,6 +41,7 @@ import it.smartcommunitylab.aac.groups.persistence.GroupMemberEntity;
 import it.smartcommunitylab.aac.groups.persistence.GroupMemberEntityRepository;
 import it.smartcommunitylab.aac.model.Group;
 import it.smartcommunitylab.aac.model.Subject;
+import it.smartcommunitylab.aac.repository.QueryUtils;
 
 /**
  * @author raman
@@ -512,6 +514,33 @@ public class GroupService {
         return groups.stream().map(g -> toGroup(g, null)).collect(Collectors.toList());
     }
 
+    /*
+     * Bulk lookup, subject -> groups
+     */
+    @Transactional(readOnly = true)
+    public Map<String, List<Group>> getSubjectGroups(Collection<String> subjects, String realm) {
+        if (subjects.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        List<GroupMemberEntity> memberships = QueryUtils.findIn(subjects,
+                ids -> groupMemberRepository.findBySubjectInAndRealm(ids, realm));
+        if (memberships.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        // resolve each group once
+        Set<String> names = memberships.stream().map(gm -> gm.getGroup()).collect(Collectors.toSet());
+        Map<String, Group> groups = QueryUtils.findIn(names, ns -> groupRepository.findByRealmAndGroupIn(realm, ns))
+                .stream()
+                .collect(Collectors.toMap(g -> g.getGroup(), g -> toGroup(g, null)));
+
+        return memberships.stream()
+                .filter(gm -> groups.containsKey(gm.getGroup()))
+                .collect(Collectors.groupingBy(gm -> gm.getSubject(),
+                        Collectors.mapping(gm -> groups.get(gm.getGroup()), Collectors.toList())));
+    }
+
     public Collection<Group> setSubjectGroups(String subject, String realm, List<String> groups) {
         // fetch current
         List<GroupMemberEntity> oldMemberships = groupMemberRepository.findBySubjectAndRealm(subject, realm);
@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.internal.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.stereotype.Repository;
@@ -28,4 +29,6 @@ public interface InternalUserAccountRepository
 
     List<InternalUserAccount> findByUserIdAndProvider(String userId, String provider);
 
+    List<InternalUserAccount> findByUserIdInAndProvider(Collection<String> userIds, String provider);
+
 }
@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.internal.provider;
 
+import java.util.Collection;
 import java.util.List;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -92,6 +93,19 @@ public class InternalAccountProvider extends AbstractProvider implements Account
         return accounts;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<InternalUserAccount> listAccounts(Collection<String> userIds) {
+        List<InternalUserAccount> accounts = accountService.findAccountByUsers(repositoryId, userIds);
+
+        // map to our authority
+        accounts.forEach(a -> {
+            a.setAuthority(getAuthority());
+            a.setProvider(getProvider());
+        });
+        return accounts;
+    }
+
     @Transactional(readOnly = true)
     public InternalUserAccount getAccount(String username) throws NoSuchUserException {
         InternalUserAccount account = findAccountByUsername(username);
@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.internal.service;
 
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
@@ -17,6 +18,7 @@ import it.smartcommunitylab.aac.core.provider.UserAccountService;
 import it.smartcommunitylab.aac.internal.persistence.InternalUserAccount;
 import it.smartcommunitylab.aac.internal.persistence.InternalUserAccountId;
 import it.smartcommunitylab.aac.internal.persistence.InternalUserAccountRepository;
+import it.smartcommunitylab.aac.repository.QueryUtils;
 
 /*
  * An internal service which handles persistence for internal user accounts, via JPA
@@ -113,6 +115,22 @@ public class InternalUserAccountService
         }).collect(Collectors.toList());
     }
 
+    @Transactional(readOnly = true)
+    public List<InternalUserAccount> findAccountByUsers(String repository, Collection<String> userIds) {
+        logger.debug("find account for {} users in repository {}", String.valueOf(userIds.size()),
+                String.valueOf(repository));
+
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<InternalUserAccount> accounts = QueryUtils.findIn(userIds,
+                ids -> accountRepository.findByUserIdInAndProvider(ids, repository));
+        return accounts.stream().map(a -> {
+            return accountRepository.detach(a);
+        }).collect(Collectors.toList());
+    }
+
     /*
      * CRUD
      */
@@ -8,6 +8,7 @@ import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
 import com.google.common.cache.CacheBuilder;
@@ -38,7 +39,7 @@ public class ClientKeyCacheService {
 
     private static final Logger logger = LoggerFactory.getLogger(ClientKeyCacheService.class);
 
-    private final JWKSetCacheService jwksUriCache = new JWKSetCacheService();
+    private final JWKSetCacheService jwksUriCache;
 
     // cache of validators for by-value JWKs
     private final LoadingCache<JWKSet, JWTSigningAndValidationService> jwksValidators = CacheBuilder.newBuilder()
@@ -52,6 +53,15 @@ public class ClientKeyCacheService {
             .maximumSize(100)
             .build(new JWKSetEncryptorBuilder());
 
+    public ClientKeyCacheService() {
+        this(new JWKSetCacheService());
+    }
+
+    public ClientKeyCacheService(JWKSetCacheService jwksUriCache) {
+        Assert.notNull(jwksUriCache, "jwks cache is required");
+        this.jwksUriCache = jwksUriCache;
+    }
+
     /*
      * Get client specific signer
      */
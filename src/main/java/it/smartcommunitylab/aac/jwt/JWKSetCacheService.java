@@ -18,14 +18,23 @@
 package it.smartcommunitylab.aac.jwt;
 
 import java.text.ParseException;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import org.apache.http.client.HttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
@@ -33,27 +42,122 @@ import org.springframework.web.client.RestTemplate;
 import com.google.common.cache.CacheBuilder;
 import com.google.common.cache.CacheLoader;
 import com.google.common.cache.LoadingCache;
+import com.google.common.util.concurrent.Futures;
+import com.google.common.util.concurrent.ListenableFuture;
+import com.google.common.util.concurrent.ListenableFutureTask;
 import com.google.common.util.concurrent.UncheckedExecutionException;
 import com.nimbusds.jose.jwk.JWKSet;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import it.smartcommunitylab.aac.utils.HttpClientFactory;
+
 /**
  *
  * Creates a caching map of JOSE signers/validators and encrypters/decryptors
  * keyed on the JWK Set URI. Dynamically loads JWK Sets to create the services.
  *
+ * Sets are refreshed ahead of expiration in background, on a bounded
+ * executor, while callers keep being served the current copy. Refresh time
+ * follows the Cache-Control max-age sent by the remote, within bounds. When a
+ * refresh fails the stale copy is served until the max stale age is reached,
+ * and retries back off exponentially from the min refresh up to the max
+ * refresh. Failed initial loads back off the same way.
+ *
+ * Lookups for a key id missing from the cached set force a synchronous
+ * refresh, at most once per interval for each uri.
+ *
  * @author jricher
  * @author mat
  *
  */
 
-public class JWKSetCacheService {
+public class JWKSetCacheService implements DisposableBean {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
+    public static final int DEFAULT_MIN_REFRESH = 60;
+    public static final int DEFAULT_REFRESH = 3600;
+    public static final int DEFAULT_MAX_REFRESH = 86400;
+    public static final int DEFAULT_MAX_STALE = 86400;
+    public static final int DEFAULT_FORCE_INTERVAL = 60;
+    public static final int DEFAULT_TIMEOUT = 5000;
+    public static final int DEFAULT_POOL_SIZE = 2;
+
+    public static final String METRIC_FETCH = "aac.jwks.fetch";
+
+    private static final Pattern MAX_AGE_PATTERN = Pattern.compile("max-age\\s*=\\s*(\\d+)");
+
+    // refresh bounds in seconds
+    private final int minRefresh;
+    private final int defaultRefresh;
+    private final int maxRefresh;
+    private final int maxStale;
+    private final int forceInterval;
+
     // loading cache for external url
-    private final LoadingCache<String, JWKSet> jwksets = CacheBuilder.newBuilder()
-            .expireAfterWrite(1, TimeUnit.HOURS) // expires 1 hour after fetch
-            .maximumSize(100)
-            .build(new JWKSetFetcher(HttpClientBuilder.create().useSystemProperties().build()));
+    private final LoadingCache<String, JWKSetEntry> jwksets;
+
+    private final ThreadPoolExecutor executor;
+    private final RestTemplate restTemplate;
+
+    // last forced refresh per uri
+    private final Map<String, Long> forced = new ConcurrentHashMap<>();
+
+    // failed loads per uri, for uris without a cached set
+    private final Map<String, LoadFailure> failures = new ConcurrentHashMap<>();
+
+    private Timer successTimer;
+    private Timer failureTimer;
+
+    public JWKSetCacheService() {
+        this(new HttpClientFactory(), DEFAULT_MIN_REFRESH, DEFAULT_REFRESH, DEFAULT_MAX_REFRESH, DEFAULT_MAX_STALE, DEFAULT_FORCE_INTERVAL,
+                DEFAULT_TIMEOUT, DEFAULT_POOL_SIZE);
+    }
+
+    public JWKSetCacheService(HttpClientFactory httpClientFactory,
+            int minRefresh, int defaultRefresh, int maxRefresh, int maxStale, int forceInterval,
+            int timeout, int poolSize) {
+        Assert.notNull(httpClientFactory, "http client factory is required");
+        Assert.isTrue(minRefresh > 0, "min refresh must be positive");
+        Assert.isTrue(minRefresh <= maxRefresh, "min refresh must not exceed max refresh");
+        Assert.isTrue(poolSize > 0, "pool size must be positive");
+
+        this.minRefresh = minRefresh;
+        this.defaultRefresh = Math.max(minRefresh, Math.min(defaultRefresh, maxRefresh));
+        this.maxRefresh = maxRefresh;
+        this.maxStale = Math.max(maxStale, maxRefresh);
+        this.forceInterval = forceInterval;
+
+        AtomicInteger count = new AtomicInteger();
+        this.executor = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(100), r -> {
+                    Thread t = new Thread(r, "aac-jwks-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+
+        this.restTemplate = httpClientFactory.createRestTemplate(timeout);
+
+        // cache checks entries for refresh at the min interval, loader decides
+        // according to the entry refresh time
+        this.jwksets = CacheBuilder.newBuilder()
+                .refreshAfterWrite(minRefresh, TimeUnit.SECONDS)
+                .maximumSize(100)
+                .build(new JWKSetFetcher());
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            this.successTimer = Timer.builder(METRIC_FETCH).tag("result", "success").register(meterRegistry);
+            this.failureTimer = Timer.builder(METRIC_FETCH).tag("result", "failure").register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        executor.shutdownNow();
+    }
 
     public JWKSet getJWKSet(String jwksUri) {
         if (!StringUtils.hasText(jwksUri)) {
@@ -61,32 +165,204 @@ public class JWKSetCacheService {
         }
 
         try {
-            return jwksets.get(jwksUri);
+            JWKSetEntry entry = jwksets.get(jwksUri);
+            if (entry.isExpired(System.currentTimeMillis())) {
+                // stale for too long, refresh failed repeatedly
+                jwksets.invalidate(jwksUri);
+                entry = jwksets.get(jwksUri);
+            }
+
+            return entry.set;
         } catch (UncheckedExecutionException | ExecutionException e) {
             logger.warn("Couldn't load JWK Set from " + jwksUri + ": " + e.getMessage());
             return null;
         }
     }
 
-    private class JWKSetFetcher extends CacheLoader<String, JWKSet> {
-        private HttpComponentsClientHttpRequestFactory httpFactory;
-        private RestTemplate restTemplate;
+    /*
+     * Fetch set ensuring the given key is present when possible, keys could have
+     * been rotated since the last refresh
+     */
+    public JWKSet getJWKSet(String jwksUri, String kid) {
+        JWKSet set = getJWKSet(jwksUri);
+        if (set == null || !StringUtils.hasText(kid) || set.getKeyByKeyId(kid) != null) {
+            return set;
+        }
+
+        // rate limit forced refresh per uri
+        long now = System.currentTimeMillis();
+        long limit = now - TimeUnit.SECONDS.toMillis(forceInterval);
+        boolean[] allowed = new boolean[1];
+        forced.compute(jwksUri, (k, last) -> {
+            if (last == null || last < limit) {
+                allowed[0] = true;
+                return now;
+            }
+            return last;
+        });
+
+        if (!allowed[0]) {
+            return set;
+        }
+
+        logger.debug("unknown kid " + kid + " for " + jwksUri + ", force refresh");
+        try {
+            JWKSetEntry entry = fetch(jwksUri);
+            jwksets.put(jwksUri, entry);
+            return entry.set;
+        } catch (IllegalArgumentException e) {
+            logger.warn("Couldn't refresh JWK Set from " + jwksUri + ": " + e.getMessage());
+            return set;
+        }
+    }
+
+    private JWKSetEntry fetch(String uri) {
+        long start = System.nanoTime();
+        try {
+            ResponseEntity<String> response = restTemplate.getForEntity(uri, String.class);
+            if (response.getBody() == null) {
+                throw new ParseException("empty response", 0);
+            }
+
+            JWKSet set = JWKSet.parse(response.getBody());
 
-        JWKSetFetcher(HttpClient httpClient) {
-            this.httpFactory = new HttpComponentsClientHttpRequestFactory(httpClient);
-            this.restTemplate = new RestTemplate(httpFactory);
+            long now = System.currentTimeMillis();
+            int refresh = refreshSeconds(response.getHeaders());
+            record(successTimer, start);
+            return new JWKSetEntry(set, now + TimeUnit.SECONDS.toMillis(refresh),
+                    now + TimeUnit.SECONDS.toMillis(maxStale));
+        } catch (ParseException | RestClientException e) {
+            record(failureTimer, start);
+            throw new IllegalArgumentException("Unable to load JWK Set");
         }
+    }
+
+    /*
+     * Retry delay after the given number of consecutive failures
+     */
+    private long backoffMillis(int attempts) {
+        long seconds = (long) minRefresh << Math.min(attempts - 1, 20);
+        return TimeUnit.SECONDS.toMillis(Math.min(seconds, maxRefresh));
+    }
+
+    private int refreshSeconds(HttpHeaders headers) {
+        String cacheControl = headers.getCacheControl();
+        if (!StringUtils.hasText(cacheControl)) {
+            return defaultRefresh;
+        }
+
+        String value = cacheControl.toLowerCase();
+        if (value.contains("no-cache") || value.contains("no-store")) {
+            return minRefresh;
+        }
+
+        Matcher m = MAX_AGE_PATTERN.matcher(value);
+        if (m.find()) {
+            try {
+                int maxAge = Integer.parseInt(m.group(1));
+                return Math.max(minRefresh, Math.min(maxAge, maxRefresh));
+            } catch (NumberFormatException e) {
+                // ignore
+            }
+        }
+
+        return defaultRefresh;
+    }
+
+    private void record(Timer timer, long start) {
+        if (timer != null) {
+            timer.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    private static class JWKSetEntry {
+        private final JWKSet set;
+        private final long refreshAt;
+        private final long expiresAt;
+
+        // consecutive failed refreshes
+        private final int failures;
+
+        public JWKSetEntry(JWKSet set, long refreshAt, long expiresAt) {
+            this(set, refreshAt, expiresAt, 0);
+        }
+
+        private JWKSetEntry(JWKSet set, long refreshAt, long expiresAt, int failures) {
+            this.set = set;
+            this.refreshAt = refreshAt;
+            this.expiresAt = expiresAt;
+            this.failures = failures;
+        }
+
+        public boolean isExpired(long now) {
+            return now > expiresAt;
+        }
+
+        /*
+         * Keep serving this set, retry refresh after the given delay
+         */
+        public JWKSetEntry retryAfter(long now, long delay) {
+            return new JWKSetEntry(set, now + delay, expiresAt, failures + 1);
+        }
+    }
+
+    private static class LoadFailure {
+        private final int attempts;
+        private final long retryAt;
+
+        public LoadFailure(int attempts, long retryAt) {
+            this.attempts = attempts;
+            this.retryAt = retryAt;
+        }
+    }
+
+    private class JWKSetFetcher extends CacheLoader<String, JWKSetEntry> {
 
         /**
          * Load the JWK Set from URI
          */
         @Override
-        public JWKSet load(String uri) throws Exception {
+        public JWKSetEntry load(String uri) throws Exception {
+            long now = System.currentTimeMillis();
+            LoadFailure failure = failures.get(uri);
+            if (failure != null && now < failure.retryAt) {
+                throw new IllegalArgumentException("Unable to load JWK Set, retry later");
+            }
+
+            try {
+                JWKSetEntry entry = fetch(uri);
+                failures.remove(uri);
+                return entry;
+            } catch (IllegalArgumentException e) {
+                int attempts = failure != null ? failure.attempts + 1 : 1;
+                failures.put(uri, new LoadFailure(attempts, now + backoffMillis(attempts)));
+                throw e;
+            }
+        }
+
+        @Override
+        public ListenableFuture<JWKSetEntry> reload(String uri, JWKSetEntry old) throws Exception {
+            if (System.currentTimeMillis() < old.refreshAt) {
+                // not due yet
+                return Futures.immediateFuture(old);
+            }
+
+            // fetch in background, on failure keep the old entry and back off
+            ListenableFutureTask<JWKSetEntry> task = ListenableFutureTask.create(() -> {
+                try {
+                    return fetch(uri);
+                } catch (IllegalArgumentException e) {
+                    long delay = backoffMillis(old.failures + 1);
+                    logger.warn("Couldn't refresh JWK Set from " + uri + ", retry in " + String.valueOf(delay) + "ms");
+                    return old.retryAfter(System.currentTimeMillis(), delay);
+                }
+            });
             try {
-                String jsonString = restTemplate.getForObject(uri, String.class);
-                return JWKSet.parse(jsonString);
-            } catch (ParseException | RestClientException e) {
-                throw new IllegalArgumentException("Unable to load JWK Set");
+                executor.execute(task);
+                return task;
+            } catch (RejectedExecutionException e) {
+                // busy, retry on next access
+                return Futures.immediateFuture(old);
             }
         }
 
@@ -1,5 +1,11 @@
 package it.smartcommunitylab.aac.jwt;
 
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
 import java.util.UUID;
 
 import org.slf4j.Logger;
@@ -13,6 +19,7 @@ import com.nimbusds.jose.jwk.KeyUse;
 import com.nimbusds.jose.jwk.gen.ECKeyGenerator;
 import com.nimbusds.jose.jwk.gen.OctetSequenceKeyGenerator;
 import com.nimbusds.jose.jwk.gen.RSAKeyGenerator;
+import com.nimbusds.jose.util.Base64URL;
 
 public class JWKUtils {
     private static final Logger logger = LoggerFactory.getLogger(JWKUtils.class);
@@ -88,4 +95,37 @@ public class JWKUtils {
 
     }
 
+    /*
+     * Derive a secret from the private material of the given keys, bound to the
+     * label. Returns null when no private key is available.
+     */
+    public static String deriveSecret(List<JWK> keys, String label) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(label.getBytes(StandardCharsets.UTF_8));
+
+            boolean found = false;
+            for (JWK jwk : keys) {
+                if (!jwk.isPrivate()) {
+                    continue;
+                }
+
+                // sorted params for a stable digest across nodes
+                for (Map.Entry<String, Object> e : new TreeMap<>(jwk.toJSONObject()).entrySet()) {
+                    digest.update((e.getKey() + "=" + String.valueOf(e.getValue()) + ";")
+                            .getBytes(StandardCharsets.UTF_8));
+                }
+                found = true;
+            }
+
+            if (!found) {
+                return null;
+            }
+
+            return Base64URL.encode(digest.digest()).toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e.getMessage());
+        }
+    }
+
 }
@@ -1,5 +1,7 @@
 package it.smartcommunitylab.aac.jwt;
 
+import java.text.ParseException;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.InitializingBean;
@@ -17,6 +19,7 @@ import com.nimbusds.jose.util.Base64URL;
 import com.nimbusds.jwt.EncryptedJWT;
 import com.nimbusds.jwt.JWT;
 import com.nimbusds.jwt.JWTClaimsSet;
+import com.nimbusds.jwt.JWTParser;
 import com.nimbusds.jwt.PlainJWT;
 import com.nimbusds.jwt.SignedJWT;
 
@@ -27,13 +30,15 @@ import it.smartcommunitylab.aac.openid.utils.IdTokenHashUtils;
 public class JWTService implements InitializingBean {
     private static final Logger logger = LoggerFactory.getLogger(JWTService.class);
 
-    private final ClientKeyCacheService keyCacheService = new ClientKeyCacheService();
+    private final ClientKeyCacheService keyCacheService;
 
     private JWTSigningAndValidationService defaultSignService;
 
-    public JWTService(JWTSigningAndValidationService signService) {
+    public JWTService(JWTSigningAndValidationService signService, JWKSetCacheService jwksCacheService) {
         Assert.notNull(signService, "a default sign service is mandatory");
+        Assert.notNull(jwksCacheService, "a jwks cache service is mandatory");
         this.defaultSignService = signService;
+        this.keyCacheService = new ClientKeyCacheService(jwksCacheService);
     }
 
     @Override
@@ -127,6 +132,39 @@ public class JWTService implements InitializingBean {
 
     }
 
+    /*
+     * Exported methods: validate
+     */
+
+    /*
+     * Parse and validate a jwt signed with the default signer, returns null when
+     * the value is not a valid jwt. Claims are not validated here.
+     */
+    public JWTClaimsSet validateAndParseJWT(String value) {
+        // cheap check to discard opaque values
+        if (!StringUtils.hasText(value) || value.indexOf('.') == -1) {
+            return null;
+        }
+
+        try {
+            JWT jwt = JWTParser.parse(value);
+            if (!(jwt instanceof SignedJWT)) {
+                // only signed tokens can be validated locally
+                return null;
+            }
+
+            SignedJWT signedJwt = (SignedJWT) jwt;
+            if (!defaultSignService.validateSignature(signedJwt)) {
+                logger.debug("invalid signature for jwt");
+                return null;
+            }
+
+            return signedJwt.getJWTClaimsSet();
+        } catch (ParseException e) {
+            return null;
+        }
+    }
+
     /*
      * Exported methods: hash
      */
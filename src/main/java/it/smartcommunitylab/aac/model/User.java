@@ -134,6 +134,36 @@ public class User {
 
     }
 
+    /*
+     * Shallow copy: collections are duplicated but elements are shared, so the
+     * copy can be narrowed (via setters) without touching the source model
+     */
+    public User(User user) {
+        Assert.notNull(user, "user can not be null");
+        this.subjectId = user.subjectId;
+        this.source = user.source;
+        this.realm = user.realm;
+
+        this.username = user.username;
+        this.email = user.email;
+        this.emailVerified = user.emailVerified;
+        this.status = user.status;
+
+        this.expirationDate = user.expirationDate;
+        this.createDate = user.createDate;
+        this.modifiedDate = user.modifiedDate;
+        this.loginDate = user.loginDate;
+        this.loginIp = user.loginIp;
+        this.loginProvider = user.loginProvider;
+
+        this.authorities = user.authorities != null ? new HashSet<>(user.authorities) : null;
+        this.identities = new HashSet<>(user.identities);
+        this.attributes = new ArrayList<>(user.attributes);
+        this.realmRoles = user.realmRoles != null ? new HashSet<>(user.realmRoles) : null;
+        this.spaceRoles = user.spaceRoles != null ? new HashSet<>(user.spaceRoles) : null;
+        this.groups = user.groups != null ? new HashSet<>(user.groups) : null;
+    }
+
     public String getSubjectId() {
         return subjectId;
     }
@@ -0,0 +1,74 @@
+package it.smartcommunitylab.aac.model;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.EnumSet;
+import java.util.Set;
+
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.annotation.JsonValue;
+
+/*
+ * Optional sections of the user model, used to select what to load when
+ * building users. Basic profile and status are always included.
+ */
+public enum UserField {
+
+    IDENTITIES("identities"),
+    ATTRIBUTES("attributes"),
+    AUTHORITIES("authorities"),
+    GROUPS("groups"),
+    ROLES("roles"),
+    SPACE_ROLES("spaceRoles");
+
+    private final String value;
+
+    UserField(String value) {
+        Assert.hasText(value, "value cannot be empty");
+        this.value = value;
+    }
+
+    @JsonValue
+    public String getValue() {
+        return value;
+    }
+
+    public String toString() {
+        return value;
+    }
+
+    public static UserField parse(String value) {
+        for (UserField f : UserField.values()) {
+            if (f.value.equalsIgnoreCase(value)) {
+                return f;
+            }
+        }
+
+        return null;
+    }
+
+    public static Set<UserField> all() {
+        return EnumSet.allOf(UserField.class);
+    }
+
+    /*
+     * Parse a selection, empty or missing means all fields
+     */
+    public static Set<UserField> parse(Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return all();
+        }
+
+        Set<UserField> fields = EnumSet.noneOf(UserField.class);
+        for (String v : values) {
+            UserField f = parse(v);
+            if (f == null) {
+                throw new IllegalArgumentException("invalid field " + String.valueOf(v));
+            }
+            fields.add(f);
+        }
+
+        return Collections.unmodifiableSet(fields);
+    }
+}
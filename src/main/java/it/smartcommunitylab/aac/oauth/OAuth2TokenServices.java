@@ -5,6 +5,7 @@ import java.util.Collection;
 import java.util.Date;
 import java.util.HashSet;
 import java.util.Set;
+import java.util.concurrent.locks.Lock;
 import java.util.stream.Collectors;
 
 import org.slf4j.Logger;
@@ -31,11 +32,13 @@ import org.springframework.security.oauth2.provider.approval.Approval.ApprovalSt
 import org.springframework.security.oauth2.provider.token.AuthorizationServerTokenServices;
 import org.springframework.security.oauth2.provider.token.ConsumerTokenServices;
 import org.springframework.security.oauth2.provider.token.ResourceServerTokenServices;
-import org.springframework.transaction.annotation.Isolation;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.TransactionDefinition;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.google.common.util.concurrent.Striped;
 import com.nimbusds.oauth2.sdk.GrantType;
 import com.nimbusds.oauth2.sdk.ParseException;
 
@@ -70,6 +73,7 @@ public class OAuth2TokenServices
     public static final int DEFAULT_ACCESS_TOKEN_VALIDITY = 60 * 60 * 6; // 6 hours
     public static final int DEFAULT_REFRESH_TOKEN_VALIDITY = 60 * 60 * 24 * 30; // 30 days
     public static final int DEFAULT_REFRESH_TOKEN_RENEWAL_WINDOW = 60 * 60 * 24 * 3; // 3 days
+    public static final int DEFAULT_REFRESH_LOCK_STRIPES = 1024;
 
     // services
     private final ExtTokenStore tokenStore;
@@ -85,7 +89,10 @@ public class OAuth2TokenServices
     private int refreshTokenRenewalWindowSeconds;
     private boolean removeExpired = true;
 
-    private Object refreshLock = new Object();
+    // refresh locks striped by token, optionally backed by a row lock in the store
+    private Striped<Lock> refreshLocks = Striped.lazyWeakLock(DEFAULT_REFRESH_LOCK_STRIPES);
+    private boolean refreshRowLock = false;
+    private TransactionTemplate transactionTemplate;
 
     // TODO implement a refresh for stale user authentication on refreshtokens
     // at minimum we need to validate user existence, but we should really recover
@@ -112,7 +119,6 @@ public class OAuth2TokenServices
     }
 
     @Override
-    @Transactional(isolation = Isolation.SERIALIZABLE)
     public OAuth2AccessToken createAccessToken(OAuth2Authentication authentication) throws AuthenticationException {
         logger.debug("create access token for authentication " + authentication.getName());
         OAuth2Request request = authentication.getOAuth2Request();
@@ -139,12 +145,14 @@ public class OAuth2TokenServices
         accessToken.setRealm(clientDetails.getRealm());
 
         // if supported generate a new refresh token
+        OAuth2RefreshToken refreshToken = null;
         if (supportsRefreshToken(authentication)
                 && clientDetails.getAuthorizedGrantTypes().contains(AuthorizationGrantType.REFRESH_TOKEN.getValue())) {
-            OAuth2RefreshToken refreshToken = createRefreshToken(authentication, refreshValiditySeconds);
+            refreshToken = createRefreshToken(authentication, refreshValiditySeconds);
             if (refreshToken != null && StringUtils.hasText(refreshToken.getValue())) {
-                tokenStore.storeRefreshToken(refreshToken, authentication);
                 accessToken.setRefreshToken(refreshToken);
+            } else {
+                refreshToken = null;
             }
         }
 
@@ -153,7 +161,18 @@ public class OAuth2TokenServices
             accessToken = tokenEnhancer.enhance(accessToken, authentication);
         }
 
-        tokenStore.storeAccessToken(accessToken, authentication);
+        // persist in a single transaction, only when there is something to write:
+        // stateless access tokens without refresh don't touch the store
+        final OAuth2AccessToken token = accessToken;
+        final OAuth2RefreshToken newRefreshToken = refreshToken;
+        if (newRefreshToken != null) {
+            executeInTransaction(() -> {
+                tokenStore.storeRefreshToken(newRefreshToken, authentication);
+                tokenStore.storeAccessToken(token, authentication);
+            });
+        } else {
+            tokenStore.storeAccessToken(token, authentication);
+        }
 
 //        traceUserLogger.info(String.format("'type':'new','user':'%s','scope':'%s','token':'%s'",
 //                authentication.getName(), String.join(" ", accessToken.getScope()), accessToken.getValue()));
@@ -161,7 +180,6 @@ public class OAuth2TokenServices
     }
 
     @Override
-    @Transactional(isolation = Isolation.SERIALIZABLE)
     public OAuth2AccessToken refreshAccessToken(String refreshTokenValue, TokenRequest tokenRequest)
             throws AuthenticationException {
         logger.debug("refresh access token for token " + refreshTokenValue);
@@ -211,79 +229,80 @@ public class OAuth2TokenServices
         // avoid those and return only those authorized, we could return an error and
         // avoid removing other tokens
 
-        // lock to make this call atomic, otherwise we could concurrently delete the
-        // newly created access tokens
-        // TODO rework with a keyed lock (per client/per user?) to improve performance
-        // also note that AuthorizationEndpoint has a similar approach
-        AACOAuth2AccessToken accessToken;
-
-        synchronized (this.refreshLock) {
-            // remove old access tokens, we enforce a single refresh -> accessToken
-            // this way clients will be able to invalidate old tokens by asking refresh
-            // for the same reason we build each time a new accessToken
-            tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
-
-            boolean renewToken = false;
-            if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
-                // check if expired
-                ExpiringOAuth2RefreshToken expiringToken = (ExpiringOAuth2RefreshToken) refreshToken;
-                boolean isExpired = (expiringToken.getExpiration() == null
-                        || System.currentTimeMillis() > expiringToken.getExpiration().getTime());
+        boolean renewToken = false;
+        if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+            // check if expired
+            ExpiringOAuth2RefreshToken expiringToken = (ExpiringOAuth2RefreshToken) refreshToken;
+            boolean isExpired = (expiringToken.getExpiration() == null
+                    || System.currentTimeMillis() > expiringToken.getExpiration().getTime());
+
+            if (isExpired) {
+                tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+                tokenStore.removeRefreshToken(refreshToken);
+                throw new InvalidTokenException("Invalid refresh token (expired): " + refreshToken);
+            }
 
-                if (isExpired) {
-                    tokenStore.removeRefreshToken(refreshToken);
-                    throw new InvalidTokenException("Invalid refresh token (expired): " + refreshToken);
-                }
+            // renew if within window
+            renewToken = (!isExpired
+                    && System.currentTimeMillis() > (expiringToken.getExpiration().getTime()
+                            - refreshRenewalSeconds));
 
-                // renew if within window
-                renewToken = (!isExpired
-                        && System.currentTimeMillis() > (expiringToken.getExpiration().getTime()
-                                - refreshRenewalSeconds));
+        }
 
-            }
+        // check if client has rotate to always configured
+        if (clientDetails.isRefreshTokenRotation()) {
+            // renew regardless of expiration
+            renewToken = true;
+        }
 
-            // check if client has rotate to always configured
-            if (clientDetails.isRefreshTokenRotation()) {
-                // renew regardless of expiration
-                renewToken = true;
-            }
+        // build a new oauthAuthentication matching tokenRequest
+        OAuth2Authentication refreshedAuthentication = refreshAuthentication(authentication, tokenRequest);
 
-            // build a new oauthAuthentication matching tokenRequest
-            OAuth2Authentication refreshedAuthentication = refreshAuthentication(authentication, tokenRequest);
+        // build a new accessToken
+        logger.debug("create access token for authentication " + refreshedAuthentication.getName());
 
-            // build a new accessToken
-            logger.debug("create access token for authentication " + refreshedAuthentication.getName());
+        AACOAuth2AccessToken accessToken = createAccessToken(refreshedAuthentication, accessValiditySeconds);
+        if (accessToken == null || !StringUtils.hasText(accessToken.getValue())) {
+            throw new OAuth2Exception("token error");
+        }
 
-            accessToken = createAccessToken(refreshedAuthentication, accessValiditySeconds);
-            if (accessToken == null || !StringUtils.hasText(accessToken.getValue())) {
-                throw new OAuth2Exception("token error");
-            }
+        // additional params
+        // TODO evaluate additional params
+        accessToken.setRealm(clientDetails.getRealm());
 
-            // additional params
-            // TODO evaluate additional params
-            accessToken.setRealm(clientDetails.getRealm());
-
-            // make sure we return the same refresh token
-            accessToken.setRefreshToken(refreshToken);
-
-            // if needed build a new refresh token and replace in response
-            // TODO keep old refresh token valid for a small window to account delays
-            if (renewToken) {
-                // if we renew use the original authentication, not the refreshed
-                OAuth2RefreshToken refreshedToken = createRefreshToken(authentication, refreshValiditySeconds);
-                if (refreshedToken != null && StringUtils.hasText(refreshedToken.getValue())) {
-                    tokenStore.removeRefreshToken(refreshToken);
-                    tokenStore.storeRefreshToken(refreshedToken, authentication);
-                    accessToken.setRefreshToken(refreshedToken);
-                }
+        // make sure we return the same refresh token
+        accessToken.setRefreshToken(refreshToken);
+
+        // if needed build a new refresh token and replace in response
+        // TODO keep old refresh token valid for a small window to account delays
+        OAuth2RefreshToken refreshedToken = null;
+        if (renewToken) {
+            // if we renew use the original authentication, not the refreshed
+            refreshedToken = createRefreshToken(authentication, refreshValiditySeconds);
+            if (refreshedToken != null && StringUtils.hasText(refreshedToken.getValue())) {
+                accessToken.setRefreshToken(refreshedToken);
+            } else {
+                refreshedToken = null;
             }
+        }
 
-            // call enhancer
-            if (tokenEnhancer != null) {
-                accessToken = tokenEnhancer.enhance(accessToken, refreshedAuthentication);
-            }
+        // call enhancer outside the critical section, claims mapping can be slow
+        if (tokenEnhancer != null) {
+            accessToken = tokenEnhancer.enhance(accessToken, refreshedAuthentication);
+        }
 
-            tokenStore.storeAccessToken(accessToken, refreshedAuthentication);
+        // lock on this refresh token to make the swap atomic, otherwise we could
+        // concurrently delete the newly created access tokens
+        // also note that AuthorizationEndpoint has a similar approach
+        Lock lock = refreshLocks.get(refreshToken.getValue());
+        lock.lock();
+        try {
+            final OAuth2AccessToken token = accessToken;
+            final OAuth2RefreshToken newRefreshToken = refreshedToken;
+            executeInTransaction(() -> storeRefreshedToken(refreshToken, newRefreshToken, authentication, token,
+                    refreshedAuthentication));
+        } finally {
+            lock.unlock();
         }
 
 //        traceUserLogger.info(String.format("'type':'new','user':'%s','scope':'%s','token':'%s'",
@@ -292,6 +311,45 @@ public class OAuth2TokenServices
 
     }
 
+    /*
+     * Swap tokens for a refresh: must be called while holding the lock for the
+     * refresh token
+     */
+    private void storeRefreshedToken(OAuth2RefreshToken refreshToken, OAuth2RefreshToken refreshedToken,
+            OAuth2Authentication authentication,
+            OAuth2AccessToken accessToken, OAuth2Authentication refreshedAuthentication) {
+        // optionally lock the row to serialize refresh across nodes
+        if (refreshRowLock) {
+            if (!tokenStore.lockRefreshToken(refreshToken.getValue())) {
+                throw new InvalidGrantException("Invalid refresh token: " + refreshToken.getValue());
+            }
+        } else if (tokenStore.readRefreshToken(refreshToken.getValue()) == null) {
+            // concurrently rotated or revoked
+            throw new InvalidGrantException("Invalid refresh token: " + refreshToken.getValue());
+        }
+
+        // remove old access tokens, we enforce a single refresh -> accessToken
+        // this way clients will be able to invalidate old tokens by asking refresh
+        // for the same reason we build each time a new accessToken
+        tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+
+        if (refreshedToken != null) {
+            tokenStore.removeRefreshToken(refreshToken);
+            tokenStore.storeRefreshToken(refreshedToken, authentication);
+        }
+
+        tokenStore.storeAccessToken(accessToken, refreshedAuthentication);
+    }
+
+    private void executeInTransaction(Runnable runnable) {
+        if (transactionTemplate == null) {
+            runnable.run();
+            return;
+        }
+
+        transactionTemplate.executeWithoutResult(status -> runnable.run());
+    }
+
 //    @Override
 //    @Transactional(isolation = Isolation.SERIALIZABLE)
 //    public OAuth2RefreshToken createRefreshToken(OAuth2Authentication authentication) {
@@ -575,4 +633,22 @@ public class OAuth2TokenServices
         this.approvalStore = approvalStore;
     }
 
+    public void setRefreshLockStripes(int stripes) {
+        Assert.isTrue(stripes > 0, "stripes must be a positive number");
+        this.refreshLocks = Striped.lazyWeakLock(stripes);
+    }
+
+    public void setRefreshRowLock(boolean refreshRowLock) {
+        this.refreshRowLock = refreshRowLock;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        if (transactionManager != null) {
+            this.transactionTemplate = new TransactionTemplate(transactionManager);
+            this.transactionTemplate.setIsolationLevel(TransactionDefinition.ISOLATION_SERIALIZABLE);
+        } else {
+            this.transactionTemplate = null;
+        }
+    }
+
 }
@@ -5,6 +5,8 @@ import java.security.interfaces.RSAPublicKey;
 import java.text.ParseException;
 import java.util.Arrays;
 import java.util.Collection;
+import java.util.List;
+import java.util.stream.Collectors;
 import javax.crypto.spec.SecretKeySpec;
 
 import org.slf4j.Logger;
@@ -23,8 +25,10 @@ import org.springframework.util.StringUtils;
 
 import com.nimbusds.jose.JOSEException;
 import com.nimbusds.jose.JWSAlgorithm;
+import com.nimbusds.jose.JWSHeader;
 import com.nimbusds.jose.jwk.JWK;
 import com.nimbusds.jose.jwk.JWKSet;
+import com.nimbusds.jose.jwk.KeyType;
 import com.nimbusds.jwt.JWT;
 import com.nimbusds.jwt.JWTParser;
 
@@ -32,6 +36,7 @@ import it.smartcommunitylab.aac.common.NoSuchClientException;
 import it.smartcommunitylab.aac.core.ClientDetails;
 import it.smartcommunitylab.aac.core.auth.ClientAuthentication;
 import it.smartcommunitylab.aac.core.auth.ClientAuthenticationProvider;
+import it.smartcommunitylab.aac.jwt.JWKSetCacheService;
 import it.smartcommunitylab.aac.oauth.model.AuthenticationMethod;
 import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
 import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
@@ -43,6 +48,9 @@ public class OAuth2ClientJwtAssertionAuthenticationProvider extends ClientAuthen
     private final Collection<String> audience;
     private final OAuth2ClientDetailsService clientDetailsService;
 
+    // remote keys for clients registering a jwks uri
+    private JWKSetCacheService jwksCacheService;
+
     public OAuth2ClientJwtAssertionAuthenticationProvider(OAuth2ClientDetailsService clientDetailsService,
             String... audience) {
         this(clientDetailsService, Arrays.asList(audience));
@@ -57,6 +65,10 @@ public class OAuth2ClientJwtAssertionAuthenticationProvider extends ClientAuthen
         this.clientDetailsService = clientDetailsService;
     }
 
+    public void setJwksCacheService(JWKSetCacheService jwksCacheService) {
+        this.jwksCacheService = jwksCacheService;
+    }
+
     @Override
     public void afterPropertiesSet() throws Exception {
         Assert.notNull(clientService, "client service is required");
@@ -114,11 +126,23 @@ public class OAuth2ClientJwtAssertionAuthenticationProvider extends ClientAuthen
                 jwtDecoder = NimbusJwtDecoder.withSecretKey(secretKey).build();
             }
             if (AuthenticationMethod.PRIVATE_KEY_JWT == authMethod) {
-                // load first RSA key from jwks
-                JWKSet jwks = JWKSet.parse(client.getJwks());
-                JWK jwk = jwks.getKeys().stream()
-                        .filter(k -> JWSAlgorithm.Family.RSA.contains(k.getAlgorithm()))
-                        .findFirst().orElse(null);
+                // load keys from registration or remote uri
+                JWT jwt = JWTParser.parse(clientAssertion);
+                String kid = jwt.getHeader() instanceof JWSHeader ? ((JWSHeader) jwt.getHeader()).getKeyID()
+                        : null;
+                JWKSet jwks = null;
+                if (StringUtils.hasText(client.getJwks())) {
+                    jwks = JWKSet.parse(client.getJwks());
+                } else if (StringUtils.hasText(client.getJwksUri()) && jwksCacheService != null) {
+                    // refreshes the set when kid is unknown, keys could have been rotated
+                    jwks = jwksCacheService.getJWKSet(client.getJwksUri(), kid);
+                }
+                if (jwks == null) {
+                    this.logger.debug("Failed to authenticate since client has no jwks");
+                    throw new BadCredentialsException("invalid authentication");
+                }
+
+                JWK jwk = selectKey(jwks, kid);
                 if (jwk == null) {
                     this.logger.debug("Failed to authenticate since jwks does not contain a valid key");
                     throw new BadCredentialsException("invalid authentication");
@@ -174,6 +198,34 @@ public class OAuth2ClientJwtAssertionAuthenticationProvider extends ClientAuthen
         }
     }
 
+    /*
+     * Pick the RSA key matching kid. Registered sets may hold keys without kid,
+     * so when none matches fall back to keys without kid, or to the only key.
+     */
+    private JWK selectKey(JWKSet jwks, String kid) {
+        List<JWK> keys = jwks.getKeys().stream()
+                .filter(k -> KeyType.RSA.equals(k.getKeyType()))
+                .filter(k -> k.getAlgorithm() == null || JWSAlgorithm.Family.RSA.contains(k.getAlgorithm()))
+                .collect(Collectors.toList());
+        if (keys.isEmpty()) {
+            return null;
+        }
+
+        if (kid == null) {
+            return keys.get(0);
+        }
+
+        JWK jwk = keys.stream().filter(k -> kid.equals(k.getKeyID())).findFirst().orElse(null);
+        if (jwk == null) {
+            jwk = keys.stream().filter(k -> k.getKeyID() == null).findFirst().orElse(null);
+        }
+        if (jwk == null && keys.size() == 1) {
+            jwk = keys.get(0);
+        }
+
+        return jwk;
+    }
+
     @Override
     public boolean supports(Class<?> authentication) {
         return (OAuth2ClientJwtAssertionAuthenticationToken.class.isAssignableFrom(authentication));
@@ -53,6 +53,10 @@ public class OAuth2ClientAdditionalConfig implements Serializable {
     @JsonProperty("refresh_token_rotation")
     private Boolean refreshTokenRotation;
 
+    // access token config
+    @JsonProperty("stateless_access_tokens")
+    private Boolean statelessAccessTokens;
+
     // userinfo jwt config
     @JsonProperty("userinfo_signed_response_alg")
     private JWSAlgorithm userinfoSignAlgorithm;
@@ -249,4 +253,12 @@ public class OAuth2ClientAdditionalConfig implements Serializable {
         this.refreshTokenRotation = refreshTokenRotation;
     }
 
+    public Boolean getStatelessAccessTokens() {
+        return statelessAccessTokens;
+    }
+
+    public void setStatelessAccessTokens(Boolean statelessAccessTokens) {
+        this.statelessAccessTokens = statelessAccessTokens;
+    }
+
 }
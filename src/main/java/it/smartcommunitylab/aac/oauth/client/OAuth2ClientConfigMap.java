@@ -155,6 +155,16 @@ public class OAuth2ClientConfigMap implements ConfigurableProperties, Serializab
                 : false;
     }
 
+    public boolean isStatelessAccessTokens() {
+        if (additionalConfig == null) {
+            return false;
+        }
+
+        return additionalConfig.getStatelessAccessTokens() != null
+                ? additionalConfig.getStatelessAccessTokens().booleanValue()
+                : false;
+    }
+
     public Integer getAccessTokenValidity() {
         return accessTokenValidity;
     }
@@ -361,13 +361,14 @@ public class AuthorizationEndpoint implements InitializingBean {
             return redirectView;
         }
 
-        // ensure single use
-        try {
-            AuthorizationRequest authorizationRequest = oauth2AuthorizationRequestRepository.find(key);
-            if (authorizationRequest == null) {
-                throw new IllegalArgumentException("Missing or invalid request");
-            }
+        // ensure single use, response is final
+        // note: consume is atomic, only one request can obtain the entry
+        AuthorizationRequest authorizationRequest = oauth2AuthorizationRequestRepository.consume(key);
+        if (authorizationRequest == null) {
+            throw new IllegalArgumentException("Missing or invalid request");
+        }
 
+        try {
             boolean asFragment = isFragmentResponse(authorizationRequest);
 
             // evaluate if approved
@@ -412,12 +413,7 @@ public class AuthorizationEndpoint implements InitializingBean {
 
             }
         } catch (OAuth2Exception e) {
-            // try to build a error response
-            AuthorizationRequest authorizationRequest = oauth2AuthorizationRequestRepository.find(key);
-            if (authorizationRequest == null) {
-                throw new IllegalArgumentException("Missing or invalid request");
-            }
-
+            // build a error response from the consumed request
             // send redirect with error
             String errorRedirect = buildErrorRedirect(authorizationRequest, e,
                     isFragmentResponse(authorizationRequest));
@@ -427,9 +423,6 @@ public class AuthorizationEndpoint implements InitializingBean {
             // as per security BP use 303 to ensure POST are rewritten as GET
             redirectView.setStatusCode(HttpStatus.SEE_OTHER);
             return redirectView;
-        } finally {
-            // remove from repo, response is final
-            oauth2AuthorizationRequestRepository.remove(key);
         }
     }
 
@@ -449,13 +442,14 @@ public class AuthorizationEndpoint implements InitializingBean {
             return new ModelAndView(errorView, model);
         }
 
-        // ensure single use
-        try {
-            AuthorizationRequest authorizationRequest = oauth2AuthorizationRequestRepository.find(key);
-            if (authorizationRequest == null) {
-                throw new IllegalArgumentException("Missing or invalid request");
-            }
+        // ensure single use, response is final
+        // note: consume is atomic, only one request can obtain the entry
+        AuthorizationRequest authorizationRequest = oauth2AuthorizationRequestRepository.consume(key);
+        if (authorizationRequest == null) {
+            throw new IllegalArgumentException("Missing or invalid request");
+        }
 
+        try {
             // check if response is requested via post
             String responseMode = (String) authorizationRequest.getExtensions().get("response_mode");
             if (!ResponseMode.FORM_POST.getValue().equals(responseMode)) {
@@ -501,20 +495,12 @@ public class AuthorizationEndpoint implements InitializingBean {
 
             }
         } catch (OAuth2Exception e) {
-            // try to build a error response
-            AuthorizationRequest authorizationRequest = oauth2AuthorizationRequestRepository.find(key);
-            if (authorizationRequest == null) {
-                throw new IllegalArgumentException("Missing or invalid request");
-            }
-
+            // build a error response from the consumed request
             // send form with error
             Map<String, Object> model = buildErrorPost(authorizationRequest, e);
 
             logger.trace("send error post to " + String.valueOf(authorizationRequest.getRedirectUri()));
             return new ModelAndView(formPage, model);
-        } finally {
-            // remove from repo, response is final
-            oauth2AuthorizationRequestRepository.remove(key);
         }
     }
 
@@ -122,36 +122,59 @@ public class TokenIntrospectionEndpoint {
         }
         // as per spec this is a suggestion, if we don't find the token we need to
         // extend the search to all token types
-        // as such we ignore hint for now, we can distinguish tokens by looking them up
-
-        // load refresh token if present
-        OAuth2RefreshToken refreshToken = tokenStore.readRefreshToken(tokenValue);
-        if (refreshToken != null) {
-            logger.trace("load auth for refresh token " + refreshToken.getValue());
-
-            // load authentication
-            OAuth2Authentication auth = tokenStore.readAuthenticationForRefreshToken(refreshToken);
+        // we use the hint only to pick the lookup order: access tokens first, since
+        // stateless ones are resolved without hitting the store
+        boolean refreshFirst = tokenTypeHint.isPresent() && "refresh_token".equals(tokenTypeHint.get());
+
+        TokenIntrospection result = null;
+        if (refreshFirst) {
+            result = introspectRefreshToken(introspectClientId, tokenValue);
+            if (result == null) {
+                result = introspectAccessToken(introspectClientId, tokenValue);
+            }
+        } else {
+            result = introspectAccessToken(introspectClientId, tokenValue);
+            if (result == null) {
+                result = introspectRefreshToken(introspectClientId, tokenValue);
+            }
+        }
 
-            TokenIntrospection result = introspectRefreshToken(introspectClientId, auth, refreshToken);
+        if (result != null) {
             return ResponseEntity.ok(result);
         }
 
-        // as per spec, try as access_token independently of hint
+        // no token found
+        // as per spec return a response with active=false
+        return ResponseEntity.ok(new TokenIntrospection(false));
+
+    }
+
+    private TokenIntrospection introspectAccessToken(String introspectClientId, String tokenValue) {
         OAuth2AccessToken accessToken = tokenStore.readAccessToken(tokenValue);
-        if (accessToken != null) {
-            logger.trace("load auth for access token " + accessToken.getValue());
+        if (accessToken == null) {
+            return null;
+        }
 
-            // load authentication
-            OAuth2Authentication auth = tokenStore.readAuthentication(accessToken);
+        logger.trace("load auth for access token " + accessToken.getValue());
 
-            TokenIntrospection result = introspectAccessToken(introspectClientId, auth, accessToken);
-            return ResponseEntity.ok(result);
+        // load authentication
+        OAuth2Authentication auth = tokenStore.readAuthentication(accessToken);
+
+        return introspectAccessToken(introspectClientId, auth, accessToken);
+    }
+
+    private TokenIntrospection introspectRefreshToken(String introspectClientId, String tokenValue) {
+        OAuth2RefreshToken refreshToken = tokenStore.readRefreshToken(tokenValue);
+        if (refreshToken == null) {
+            return null;
         }
 
-        // no token found
-        // as per spec return a response with active=false
-        return ResponseEntity.ok(new TokenIntrospection(false));
+        logger.trace("load auth for refresh token " + refreshToken.getValue());
+
+        // load authentication
+        OAuth2Authentication auth = tokenStore.readAuthenticationForRefreshToken(refreshToken);
 
+        return introspectRefreshToken(introspectClientId, auth, refreshToken);
     }
 
     private TokenIntrospection introspectAccessToken(String introspectClientId,
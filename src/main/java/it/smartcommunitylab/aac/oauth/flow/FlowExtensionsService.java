@@ -5,10 +5,12 @@ import java.util.List;
 
 import org.springframework.beans.factory.InitializingBean;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
 import it.smartcommunitylab.aac.claims.ScriptExecutionService;
 import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+import it.smartcommunitylab.aac.utils.HttpClientFactory;
 
 @Service
 public class FlowExtensionsService implements InitializingBean {
@@ -16,6 +18,15 @@ public class FlowExtensionsService implements InitializingBean {
     @Autowired
     private ScriptExecutionService executionService;
 
+    @Autowired
+    private WebhookDeliveryService deliveryService;
+
+    @Autowired
+    private HttpClientFactory httpClientFactory;
+
+    @Value("${hook.timeout}")
+    private int hookTimeout;
+
     private ScriptOAuthFlowExtensions scriptFlowExtensions;
     private WebhookOAuthFlowExtensions webhookFlowExtensions;
 
@@ -45,7 +56,8 @@ public class FlowExtensionsService implements InitializingBean {
 
     @Override
     public void afterPropertiesSet() throws Exception {
-        webhookFlowExtensions = new WebhookOAuthFlowExtensions();
+        webhookFlowExtensions = new WebhookOAuthFlowExtensions(httpClientFactory, hookTimeout);
+        webhookFlowExtensions.setDeliveryService(deliveryService);
         if (executionService != null) {
             scriptFlowExtensions = new ScriptOAuthFlowExtensions();
             scriptFlowExtensions.setExecutionService(executionService);
@@ -0,0 +1,78 @@
+package it.smartcommunitylab.aac.oauth.flow;
+
+/*
+ * A pending webhook notification, as persisted in the outbox.
+ *
+ * Credentials are not stored: they are resolved from the client at delivery.
+ * The payload is kept encrypted, since it carries tokens.
+ */
+public class WebhookDelivery {
+
+    private String id;
+    private String clientId;
+    private String url;
+    private byte[] payload;
+    private int attempts;
+    private long createdAt;
+
+    public WebhookDelivery() {
+    }
+
+    public WebhookDelivery(String id, String clientId, String url, byte[] payload, int attempts, long createdAt) {
+        this.id = id;
+        this.clientId = clientId;
+        this.url = url;
+        this.payload = payload;
+        this.attempts = attempts;
+        this.createdAt = createdAt;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public String getClientId() {
+        return clientId;
+    }
+
+    public void setClientId(String clientId) {
+        this.clientId = clientId;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public void setPayload(byte[] payload) {
+        this.payload = payload;
+    }
+
+    public int getAttempts() {
+        return attempts;
+    }
+
+    public void setAttempts(int attempts) {
+        this.attempts = attempts;
+    }
+
+    public long getCreatedAt() {
+        return createdAt;
+    }
+
+    public void setCreatedAt(long createdAt) {
+        this.createdAt = createdAt;
+    }
+
+}
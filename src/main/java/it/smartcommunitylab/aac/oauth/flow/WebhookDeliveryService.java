@@ -0,0 +1,379 @@
+package it.smartcommunitylab.aac.oauth.flow;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.beans.factory.InitializingBean;
+import org.springframework.dao.DataAccessException;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.security.crypto.encrypt.BytesEncryptor;
+import org.springframework.security.crypto.encrypt.Encryptors;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+
+import it.smartcommunitylab.aac.jose.JWKSetKeyStore;
+import it.smartcommunitylab.aac.jwt.JWKUtils;
+import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
+import it.smartcommunitylab.aac.oauth.store.jdbc.AutoJdbcWebhookOutboxStore;
+import it.smartcommunitylab.aac.utils.CircuitBreaker;
+import it.smartcommunitylab.aac.utils.HttpClientFactory;
+
+/*
+ * Asynchronous delivery for notification webhooks.
+ *
+ * Notifications are persisted in an outbox and handed to a bounded pool, so
+ * that callers never wait for the remote endpoint. Failed deliveries are
+ * retried with exponential backoff until the max number of attempts, then
+ * dropped. Each endpoint has a circuit breaker: after consecutive failures
+ * deliveries are postponed until the breaker lets a probe through. Postponed
+ * deliveries do not consume attempts, so entries older than max age are
+ * dropped regardless.
+ *
+ * Payloads carry tokens and are encrypted in the outbox (AES-GCM). The key
+ * must be shared by all nodes polling the outbox: when not configured it is
+ * derived from the JWK keystore, which nodes share as well, otherwise startup
+ * fails.
+ *
+ * Entries left behind (pool full, node restart) are picked up by the poller.
+ */
+public class WebhookDeliveryService implements InitializingBean, DisposableBean {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_POOL_SIZE = 4;
+    public static final int DEFAULT_QUEUE_CAPACITY = 1000;
+    public static final int DEFAULT_TIMEOUT = 10000;
+    public static final int DEFAULT_MAX_ATTEMPTS = 8;
+    public static final long DEFAULT_BACKOFF = 1000;
+    public static final long DEFAULT_MAX_BACKOFF = 600000;
+    public static final int DEFAULT_BREAKER_THRESHOLD = 5;
+    public static final long DEFAULT_BREAKER_OPEN = 60000;
+    public static final long DEFAULT_MAX_AGE = 24 * 60 * 60 * 1000L;
+
+    // fixed salt, the key is expected to be high entropy
+    private static final String PAYLOAD_SALT = "6161632d776562686f6f6b2d6f7574626f78";
+    private static final String PAYLOAD_LABEL = "aac-webhook-outbox";
+
+    public static final String METRIC_DELIVERY = "aac.webhook.delivery";
+    public static final String METRIC_LATENCY = "aac.webhook.delivery.latency";
+    public static final String METRIC_QUEUE = "aac.webhook.queue.size";
+
+    private final AutoJdbcWebhookOutboxStore outboxStore;
+    private final OAuth2ClientDetailsService clientDetailsService;
+    private final HttpClientFactory httpClientFactory;
+
+    private int poolSize = DEFAULT_POOL_SIZE;
+    private int queueCapacity = DEFAULT_QUEUE_CAPACITY;
+    private int timeout = DEFAULT_TIMEOUT;
+    private int maxAttempts = DEFAULT_MAX_ATTEMPTS;
+    private long backoff = DEFAULT_BACKOFF;
+    private long maxBackoff = DEFAULT_MAX_BACKOFF;
+    private int breakerThreshold = DEFAULT_BREAKER_THRESHOLD;
+    private long breakerOpen = DEFAULT_BREAKER_OPEN;
+    private long maxAge = DEFAULT_MAX_AGE;
+    private String payloadKey;
+    private JWKSetKeyStore keyStore;
+
+    private ThreadPoolExecutor pool;
+    private RestTemplate restTemplate;
+    private BytesEncryptor encryptor;
+
+    // breakers by endpoint url
+    private final Map<String, CircuitBreaker> breakers = new ConcurrentHashMap<>();
+
+    private MeterRegistry meterRegistry;
+
+    public WebhookDeliveryService(AutoJdbcWebhookOutboxStore outboxStore,
+            OAuth2ClientDetailsService clientDetailsService, HttpClientFactory httpClientFactory) {
+        Assert.notNull(outboxStore, "outbox store is required");
+        Assert.notNull(clientDetailsService, "client details service is required");
+        Assert.notNull(httpClientFactory, "http client factory is required");
+        this.outboxStore = outboxStore;
+        this.clientDetailsService = clientDetailsService;
+        this.httpClientFactory = httpClientFactory;
+    }
+
+    public void setPoolSize(int poolSize) {
+        Assert.isTrue(poolSize > 0, "pool size must be positive");
+        this.poolSize = poolSize;
+    }
+
+    public void setQueueCapacity(int queueCapacity) {
+        Assert.isTrue(queueCapacity > 0, "queue capacity must be positive");
+        this.queueCapacity = queueCapacity;
+    }
+
+    public void setTimeout(int timeout) {
+        this.timeout = timeout;
+    }
+
+    public void setMaxAttempts(int maxAttempts) {
+        Assert.isTrue(maxAttempts > 0, "max attempts must be positive");
+        this.maxAttempts = maxAttempts;
+    }
+
+    public void setBackoff(long backoff) {
+        this.backoff = backoff;
+    }
+
+    public void setMaxBackoff(long maxBackoff) {
+        this.maxBackoff = maxBackoff;
+    }
+
+    public void setBreakerThreshold(int breakerThreshold) {
+        Assert.isTrue(breakerThreshold > 0, "breaker threshold must be positive");
+        this.breakerThreshold = breakerThreshold;
+    }
+
+    public void setBreakerOpen(long breakerOpen) {
+        this.breakerOpen = breakerOpen;
+    }
+
+    public void setMaxAge(long maxAge) {
+        Assert.isTrue(maxAge > 0, "max age must be positive");
+        this.maxAge = maxAge;
+    }
+
+    public void setPayloadKey(String payloadKey) {
+        this.payloadKey = payloadKey;
+    }
+
+    public void setKeyStore(JWKSetKeyStore keyStore) {
+        this.keyStore = keyStore;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Override
+    public void afterPropertiesSet() throws Exception {
+        restTemplate = httpClientFactory.createRestTemplate(timeout);
+
+        String key = payloadKey;
+        if (!StringUtils.hasText(key) && keyStore != null) {
+            key = JWKUtils.deriveSecret(keyStore.getKeys(), PAYLOAD_LABEL);
+            if (key != null) {
+                logger.warn("webhook payload key not configured, derived from the JWK keystore");
+                if (keyStore.getLocation() == null) {
+                    // generated at startup
+                    logger.warn("JWK keystore is not persisted, outbox entries are bound to this node");
+                }
+            }
+        }
+        if (!StringUtils.hasText(key)) {
+            throw new IllegalStateException("webhook payload key is required, shared by all nodes");
+        }
+        encryptor = Encryptors.stronger(key, PAYLOAD_SALT);
+
+        AtomicInteger count = new AtomicInteger();
+        pool = new ThreadPoolExecutor(poolSize, poolSize, 60, TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueCapacity), r -> {
+                    Thread t = new Thread(r, "aac-webhook-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+
+        if (meterRegistry != null) {
+            Gauge.builder(METRIC_QUEUE, pool, p -> p.getQueue().size()).register(meterRegistry);
+        }
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        // pending entries stay in the outbox
+        pool.shutdownNow();
+    }
+
+    /*
+     * Persist and schedule a notification, does not wait for delivery
+     */
+    public void enqueue(String clientId, String url, byte[] payload) {
+        WebhookDelivery delivery = outboxStore.add(clientId, url, encryptor.encrypt(payload), leaseMillis());
+        submit(delivery);
+    }
+
+    @Scheduled(fixedDelayString = "${hook.delivery.pollInterval}")
+    public void poll() {
+        int available = pool.getQueue().remainingCapacity();
+        if (available <= 0) {
+            return;
+        }
+
+        try {
+            List<WebhookDelivery> deliveries = outboxStore.claim(available, leaseMillis());
+            deliveries.forEach(d -> submit(d));
+        } catch (DataAccessException e) {
+            logger.warn("error polling webhook outbox: " + e.getMessage());
+        }
+    }
+
+    private void submit(WebhookDelivery delivery) {
+        try {
+            pool.execute(() -> deliver(delivery));
+        } catch (RejectedExecutionException e) {
+            // left in outbox, picked up by poller once the lease expires
+            logger.debug("webhook pool full, defer delivery " + delivery.getId());
+        }
+    }
+
+    private void deliver(WebhookDelivery delivery) {
+        String clientId = delivery.getClientId();
+        String url = delivery.getUrl();
+
+        if (System.currentTimeMillis() - delivery.getCreatedAt() > maxAge) {
+            logger.warn("drop expired webhook delivery to " + url + " for client " + clientId);
+            drop(delivery);
+            return;
+        }
+
+        CircuitBreaker breaker = breakers.computeIfAbsent(url,
+                k -> new CircuitBreaker(breakerThreshold, breakerOpen));
+        if (!breaker.allow()) {
+            // postpone without consuming an attempt, age is still bounded
+            reschedule(delivery, delivery.getAttempts(), breaker.getOpenUntil());
+            return;
+        }
+
+        // any exit without reaching the endpoint gives the call back, so that
+        // a half open breaker can let another probe through
+        boolean reported = false;
+        try {
+            OAuth2ClientDetails client;
+            try {
+                client = clientDetailsService.loadClientByClientId(clientId);
+            } catch (ClientRegistrationException e) {
+                // client removed, nothing to notify
+                drop(delivery);
+                return;
+            }
+
+            byte[] payload;
+            try {
+                payload = encryptor.decrypt(delivery.getPayload());
+            } catch (IllegalStateException | IllegalArgumentException e) {
+                // written with another key, leave it to the other nodes until expired
+                logger.debug("unable to decrypt webhook delivery " + delivery.getId());
+                reschedule(delivery, delivery.getAttempts() + 1,
+                        System.currentTimeMillis() + delay(delivery.getAttempts() + 1));
+                return;
+            }
+
+            long start = System.nanoTime();
+            boolean success = false;
+            try {
+                HttpHeaders headers = new HttpHeaders();
+                headers.setAccept(Arrays.asList(MediaType.APPLICATION_JSON));
+                headers.setContentType(MediaType.APPLICATION_JSON);
+                headers.set("Authorization", buildBasicAuth(client.getClientId(), client.getClientSecret()));
+                HttpEntity<byte[]> entity = new HttpEntity<>(payload, headers);
+
+                ResponseEntity<String> response = restTemplate.exchange(url, HttpMethod.POST, entity, String.class);
+                logger.debug("Hook response code: " + response.getStatusCodeValue());
+                success = response.getStatusCode().is2xxSuccessful();
+            } catch (Exception e) {
+                logger.debug("Hook invocation failure: " + e.getMessage());
+            }
+
+            if (meterRegistry != null) {
+                Timer.builder(METRIC_LATENCY).tag("client", clientId).register(meterRegistry)
+                        .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            }
+
+            reported = true;
+            if (success) {
+                breaker.success();
+                outboxStore.remove(delivery.getId());
+                count(clientId, "success");
+                return;
+            }
+
+            breaker.failure();
+            int attempts = delivery.getAttempts() + 1;
+            if (attempts >= maxAttempts) {
+                logger.warn("drop webhook delivery to " + url + " for client " + clientId + " after "
+                        + String.valueOf(attempts) + " attempts");
+                drop(delivery);
+                return;
+            }
+
+            reschedule(delivery, attempts, System.currentTimeMillis() + delay(attempts));
+            count(clientId, "failure");
+        } catch (DataAccessException e) {
+            // lease expires and the poller retries
+            logger.warn("error updating webhook outbox: " + e.getMessage());
+        } finally {
+            if (!reported) {
+                breaker.release();
+            }
+        }
+    }
+
+    private void drop(WebhookDelivery delivery) {
+        try {
+            outboxStore.remove(delivery.getId());
+            count(delivery.getClientId(), "dropped");
+        } catch (DataAccessException e) {
+            logger.warn("error updating webhook outbox: " + e.getMessage());
+        }
+    }
+
+    private void reschedule(WebhookDelivery delivery, int attempts, long nextAttempt) {
+        try {
+            outboxStore.reschedule(delivery.getId(), attempts, nextAttempt);
+        } catch (DataAccessException e) {
+            // lease expires and the poller retries
+            logger.warn("error updating webhook outbox: " + e.getMessage());
+        }
+    }
+
+    // exponential backoff with jitter
+    private long delay(int attempts) {
+        long d = backoff << Math.min(attempts - 1, 30);
+        d = Math.min(d, maxBackoff);
+        return d + ThreadLocalRandom.current().nextLong(Math.max(d / 10, 1));
+    }
+
+    private long leaseMillis() {
+        return 2L * timeout + 30000;
+    }
+
+    private void count(String clientId, String result) {
+        if (meterRegistry != null) {
+            Counter.builder(METRIC_DELIVERY).tag("client", clientId).tag("result", result)
+                    .register(meterRegistry).increment();
+        }
+    }
+
+    private String buildBasicAuth(String username, String password) {
+        String auth = username + ":" + password;
+        byte[] encodedAuth = Base64.getEncoder().encode(auth.getBytes(StandardCharsets.US_ASCII));
+        return "Basic " + new String(encodedAuth);
+    }
+
+}
@@ -28,20 +28,16 @@ import java.util.HashMap;
 import java.util.Map;
 import java.util.Optional;
 
-import org.apache.http.client.config.RequestConfig;
-import org.apache.http.impl.client.CloseableHttpClient;
-import org.apache.http.impl.client.HttpClientBuilder;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
-import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 import org.springframework.web.client.RestTemplate;
 
@@ -49,6 +45,7 @@ import com.fasterxml.jackson.core.type.TypeReference;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import it.smartcommunitylab.aac.model.User;
 import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+import it.smartcommunitylab.aac.utils.HttpClientFactory;
 
 /**
  * Implementation of the {@link OAuthFlowExtensions} with the Web hook
@@ -70,28 +67,18 @@ public class WebhookOAuthFlowExtensions implements OAuthFlowExtensions {
     private final TypeReference<HashMap<String, String>> stringMapTypeRef = new TypeReference<HashMap<String, String>>() {
     };
 
-    @Value("${hook.timeout:10000}")
-    private int timeout;
+    private final RestTemplate restTemplate;
 
-    private RestTemplate restTemplate;
+    // async delivery for notifications, when set
+    private WebhookDeliveryService deliveryService;
 
-    public WebhookOAuthFlowExtensions() {
-        init();
+    public WebhookOAuthFlowExtensions(HttpClientFactory httpClientFactory, int timeout) {
+        Assert.notNull(httpClientFactory, "http client factory is required");
+        restTemplate = httpClientFactory.createRestTemplate(timeout);
     }
 
-    public void init() {
-        RequestConfig config = RequestConfig.custom()
-                .setConnectTimeout(timeout)
-                .setConnectionRequestTimeout(timeout)
-                .setSocketTimeout(timeout)
-                .build();
-        CloseableHttpClient client = HttpClientBuilder
-                .create()
-                .setDefaultRequestConfig(config)
-                .build();
-        HttpComponentsClientHttpRequestFactory clientHttpRequestFactory = new HttpComponentsClientHttpRequestFactory(
-                client);
-        restTemplate = new RestTemplate(clientHttpRequestFactory);
+    public void setDeliveryService(WebhookDeliveryService deliveryService) {
+        this.deliveryService = deliveryService;
     }
 
     @Override
@@ -251,7 +238,18 @@ public class WebhookOAuthFlowExtensions implements OAuthFlowExtensions {
 
             String webhook = client.getHookWebUrls().get(OAuthFlowExtensions.AFTER_TOKEN_GRANT);
 
-            if (StringUtils.hasText(webhook)) {
+            if (StringUtils.hasText(webhook) && deliveryService != null) {
+                // notification only, deliver in background and never fail the grant
+                try {
+                    URL url = new URL(webhook);
+                    byte[] payload = mapper.writeValueAsBytes(accessToken);
+                    deliveryService.enqueue(client.getClientId(), url.toString(), payload);
+                } catch (MalformedURLException e) {
+                    logger.error("Invalid hook URL: " + webhook);
+                } catch (Exception e) {
+                    logger.error("Hook enqueue failure: " + e.getMessage());
+                }
+            } else if (StringUtils.hasText(webhook)) {
 
                 try {
                     URL url = new URL(webhook);
@@ -133,6 +133,9 @@ public class OAuth2ClientDetails implements ClientDetails {
     @JsonIgnore
     private boolean refreshTokenRotation = false;
 
+    @JsonIgnore
+    private boolean statelessAccessTokens = false;
+
     @JsonIgnore
     private Map<String, Object> additionalInformation = new LinkedHashMap<String, Object>();
 
@@ -337,6 +340,14 @@ public class OAuth2ClientDetails implements ClientDetails {
         this.refreshTokenRotation = refreshTokenRotation;
     }
 
+    public boolean isStatelessAccessTokens() {
+        return statelessAccessTokens;
+    }
+
+    public void setStatelessAccessTokens(boolean statelessAccessTokens) {
+        this.statelessAccessTokens = statelessAccessTokens;
+    }
+
     public Set<String> getResponseTypes() {
         return responseTypes;
     }
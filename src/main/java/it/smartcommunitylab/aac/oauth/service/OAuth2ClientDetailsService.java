@@ -1,25 +1,60 @@
 package it.smartcommunitylab.aac.oauth.service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
 import java.util.stream.Collectors;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.security.oauth2.provider.ClientDetailsService;
 import org.springframework.security.oauth2.provider.ClientRegistrationException;
 import org.springframework.security.oauth2.provider.NoSuchClientException;
-import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionSynchronization;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.transaction.support.TransactionTemplate;
 import org.springframework.util.Assert;
 import org.springframework.util.StringUtils;
 
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.cache.GuavaCacheMetrics;
+
 import it.smartcommunitylab.aac.core.persistence.ClientEntity;
 import it.smartcommunitylab.aac.core.service.ClientEntityService;
 import it.smartcommunitylab.aac.oauth.client.OAuth2ClientAdditionalConfig;
 import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
 import it.smartcommunitylab.aac.oauth.persistence.OAuth2ClientEntity;
 import it.smartcommunitylab.aac.oauth.persistence.OAuth2ClientEntityRepository;
+import it.smartcommunitylab.aac.oauth.store.ClientVersionStore;
 
-@Transactional
+/*
+ * Client details service backed by a local cache.
+ *
+ * Details are built once and shared between callers, so collections are
+ * exposed as read only views. Changes evict the local entry and, when a
+ * version store is configured, are recorded for other nodes which evict their
+ * copy on the next poll. The expiry bounds staleness for changes made outside
+ * the client services.
+ *
+ * Cache hits do not touch the DB, so only the loader runs in a (read only)
+ * transaction.
+ */
 public class OAuth2ClientDetailsService implements ClientDetailsService {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_CACHE_SIZE = 1000;
+    public static final int DEFAULT_CACHE_TTL = 300;
 
     // TODO evaluate direct repo access VS service
     // we lose validation but reduce complexity
@@ -29,19 +64,114 @@ public class OAuth2ClientDetailsService implements ClientDetailsService {
     // we need access to client roles, we use service since we are outside core
     private final ClientEntityService clientService;
 
+    private Cache<String, OAuth2ClientDetails> clients;
+
+    // cross node invalidation, optional
+    private ClientVersionStore versionStore;
+
+    // optional, wraps cache loads
+    private TransactionTemplate transactionTemplate;
+
     public OAuth2ClientDetailsService(ClientEntityService clientService,
             OAuth2ClientEntityRepository clientRepository) {
+        this(clientService, clientRepository, DEFAULT_CACHE_SIZE, DEFAULT_CACHE_TTL);
+    }
+
+    public OAuth2ClientDetailsService(ClientEntityService clientService,
+            OAuth2ClientEntityRepository clientRepository, int cacheSize, int cacheTtl) {
         Assert.notNull(clientService, "client service is mandatory");
         Assert.notNull(clientRepository, "oauth client repository is mandatory");
         this.clientRepository = clientRepository;
         this.clientService = clientService;
+
+        this.clients = CacheBuilder.newBuilder()
+                .expireAfterWrite(cacheTtl, TimeUnit.SECONDS)
+                .maximumSize(cacheSize)
+                .recordStats()
+                .build();
+    }
+
+    public void setVersionStore(ClientVersionStore versionStore) {
+        this.versionStore = versionStore;
+    }
+
+    public void setTransactionManager(PlatformTransactionManager transactionManager) {
+        if (transactionManager != null) {
+            this.transactionTemplate = new TransactionTemplate(transactionManager);
+            this.transactionTemplate.setReadOnly(true);
+        } else {
+            this.transactionTemplate = null;
+        }
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            GuavaCacheMetrics.monitor(meterRegistry, clients, "aac.oauth2.clients");
+        }
     }
 
-    // TODO add a local cache, client definitions don't change frequently
-    // even short window (30s) could cover a whole request
     @Override
-    @Transactional(readOnly = true)
     public OAuth2ClientDetails loadClientByClientId(String clientId) throws ClientRegistrationException {
+        try {
+            return clients.get(clientId, () -> loadClientDetails(clientId));
+        } catch (ExecutionException | UncheckedExecutionException e) {
+            if (e.getCause() instanceof ClientRegistrationException) {
+                throw (ClientRegistrationException) e.getCause();
+            }
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw new ClientRegistrationException(e.getMessage(), e.getCause());
+        }
+    }
+
+    /*
+     * Invalidation
+     */
+    public void evictClient(String clientId) {
+        clients.invalidate(clientId);
+
+        if (TransactionSynchronizationManager.isSynchronizationActive()) {
+            // evict again once committed, concurrent loads could see the old state
+            TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronization() {
+                @Override
+                public void afterCommit() {
+                    clients.invalidate(clientId);
+                }
+            });
+        }
+
+        if (versionStore != null) {
+            versionStore.increment(clientId);
+        }
+    }
+
+    @Scheduled(fixedDelayString = "${oauth2.clients.cache.sync}")
+    public void sync() {
+        if (versionStore == null) {
+            return;
+        }
+
+        try {
+            Collection<String> changed = versionStore.pollChanges();
+            if (!changed.isEmpty()) {
+                logger.debug("evict {} changed clients", changed.size());
+                clients.invalidateAll(changed);
+            }
+        } catch (DataAccessException e) {
+            logger.warn("error syncing client versions: " + e.getMessage());
+        }
+    }
+
+    private OAuth2ClientDetails loadClientDetails(String clientId) throws ClientRegistrationException {
+        if (transactionTemplate == null) {
+            return buildClientDetails(clientId);
+        }
+
+        return transactionTemplate.execute(status -> buildClientDetails(clientId));
+    }
+
+    private OAuth2ClientDetails buildClientDetails(String clientId) throws ClientRegistrationException {
         ClientEntity client = clientService.findClient(clientId);
         OAuth2ClientEntity oauth = clientRepository.findByClientId(clientId);
         if (client == null || oauth == null) {
@@ -54,12 +184,12 @@ public class OAuth2ClientDetailsService implements ClientDetailsService {
         clientDetails.setName(client.getName());
         clientDetails.setClientId(clientId);
         clientDetails.setClientSecret(oauth.getClientSecret());
-        clientDetails.setScope(StringUtils.commaDelimitedListToSet(client.getScopes()));
-        clientDetails.setResourceIds(StringUtils.commaDelimitedListToSet(client.getResourceIds()));
+        clientDetails.setScope(readOnlySet(client.getScopes()));
+        clientDetails.setResourceIds(readOnlySet(client.getResourceIds()));
 
-        clientDetails.setAuthorizedGrantTypes(StringUtils.commaDelimitedListToSet(oauth.getAuthorizedGrantTypes()));
-        clientDetails.setRegisteredRedirectUris(StringUtils.commaDelimitedListToSet(oauth.getRedirectUris()));
-        clientDetails.setAuthenticationMethods(StringUtils.commaDelimitedListToSet(oauth.getAuthenticationMethods()));
+        clientDetails.setAuthorizedGrantTypes(readOnlySet(oauth.getAuthorizedGrantTypes()));
+        clientDetails.setRegisteredRedirectUris(readOnlySet(oauth.getRedirectUris()));
+        clientDetails.setAuthenticationMethods(readOnlySet(oauth.getAuthenticationMethods()));
 
         clientDetails.setIdTokenClaims(oauth.isIdTokenClaims());
         clientDetails.setFirstParty(oauth.isFirstParty());
@@ -84,8 +214,8 @@ public class OAuth2ClientDetailsService implements ClientDetailsService {
                         .convert(oauth.getAdditionalConfiguration());
 
                 if (config.getResponseTypes() != null) {
-                    clientDetails.setResponseTypes(
-                            config.getResponseTypes().stream().map(t -> t.getValue()).collect(Collectors.toSet()));
+                    clientDetails.setResponseTypes(Collections.unmodifiableSet(
+                            config.getResponseTypes().stream().map(t -> t.getValue()).collect(Collectors.toSet())));
                 }
 
                 // TODO handle all response config as per openid DCR
@@ -104,6 +234,11 @@ public class OAuth2ClientDetailsService implements ClientDetailsService {
                         : false;
                 clientDetails.setRefreshTokenRotation(isRefreshTokenRotation);
 
+                boolean isStatelessAccessTokens = config.getStatelessAccessTokens() != null
+                        ? config.getStatelessAccessTokens().booleanValue()
+                        : false;
+                clientDetails.setStatelessAccessTokens(isStatelessAccessTokens);
+
             } catch (Exception e) {
                 // ignore additional config
             }
@@ -112,7 +247,7 @@ public class OAuth2ClientDetailsService implements ClientDetailsService {
         // map additional info
         if (oauth.getAdditionalInformation() != null) {
             Map<String, Object> additionalInfo = new HashMap<>(oauth.getAdditionalInformation());
-            clientDetails.setAdditionalInformation(additionalInfo);
+            clientDetails.setAdditionalInformation(Collections.unmodifiableMap(additionalInfo));
         }
 
         // map hooks
@@ -145,4 +280,8 @@ public class OAuth2ClientDetailsService implements ClientDetailsService {
         return clientDetails;
     }
 
+    private Set<String> readOnlySet(String value) {
+        return Collections.unmodifiableSet(StringUtils.commaDelimitedListToSet(value));
+    }
+
 }
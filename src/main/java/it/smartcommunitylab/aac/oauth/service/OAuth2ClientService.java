@@ -14,6 +14,7 @@ import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 
 import org.apache.commons.lang.ArrayUtils;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.domain.Page;
 import org.springframework.data.domain.Pageable;
 import org.springframework.data.support.PageableExecutionUtils;
@@ -89,6 +90,9 @@ public class OAuth2ClientService implements ClientService {
     // our client repo
     private final OAuth2ClientEntityRepository oauthClientRepository;
 
+    // client details cache, evicted on every change
+    private OAuth2ClientDetailsService clientDetailsService;
+
     public OAuth2ClientService(ClientEntityService clientService,
             OAuth2ClientEntityRepository oauthClientRepository) {
         Assert.notNull(clientService, "client service is mandatory");
@@ -98,6 +102,11 @@ public class OAuth2ClientService implements ClientService {
 
     }
 
+    @Autowired
+    public void setClientDetailsService(OAuth2ClientDetailsService clientDetailsService) {
+        this.clientDetailsService = clientDetailsService;
+    }
+
     @Transactional(readOnly = true)
     public OAuth2Client findClient(String clientId) {
         ClientEntity client = clientService.findClient(clientId);
@@ -267,7 +276,7 @@ public class OAuth2ClientService implements ClientService {
             String secret = generateClientSecret();
 
             oauth.setClientSecret(secret);
-            oauth = oauthClientRepository.save(oauth);
+            oauth = save(oauth);
 
             return new ClientSecret(client.getRealm(), clientId, oauth.getClientSecret());
         }
@@ -276,7 +285,7 @@ public class OAuth2ClientService implements ClientService {
             String jwks = generateClientJwks();
 
             oauth.setJwks(jwks);
-            oauth = oauthClientRepository.save(oauth);
+            oauth = save(oauth);
 
             return new ClientJwks(client.getRealm(), clientId, oauth.getJwks());
         }
@@ -307,12 +316,12 @@ public class OAuth2ClientService implements ClientService {
         String type = credentialsId.substring(prefix.length());
         if (SystemKeys.RESOURCE_CREDENTIALS_SECRET.equals(type) && StringUtils.hasText(oauth.getClientSecret())) {
             oauth.setClientSecret(null);
-            oauth = oauthClientRepository.save(oauth);
+            oauth = save(oauth);
         }
 
         if (SystemKeys.RESOURCE_CREDENTIALS_JWKS.equals(type) && StringUtils.hasText(oauth.getJwks())) {
             oauth.setJwks(null);
-            oauth = oauthClientRepository.save(oauth);
+            oauth = save(oauth);
         }
     }
 
@@ -352,7 +361,7 @@ public class OAuth2ClientService implements ClientService {
             }
 
             oauth.setClientSecret(secret);
-            oauth = oauthClientRepository.save(oauth);
+            oauth = save(oauth);
 
             return new ClientSecret(client.getRealm(), clientId, oauth.getClientSecret());
         }
@@ -372,7 +381,7 @@ public class OAuth2ClientService implements ClientService {
             }
 
             oauth.setJwks(jwks);
-            oauth = oauthClientRepository.save(oauth);
+            oauth = save(oauth);
 
             return new ClientJwks(client.getRealm(), clientId, oauth.getJwks());
         }
@@ -584,7 +593,7 @@ public class OAuth2ClientService implements ClientService {
         if (additionalInfo != null) {
             oauth.setAdditionalInformation(additionalInfo.toMap());
         }
-        oauth = oauthClientRepository.save(oauth);
+        oauth = save(oauth);
 
         return OAuth2Client.from(client, oauth);
     }
@@ -704,7 +713,7 @@ public class OAuth2ClientService implements ClientService {
         if (additionalInfo != null) {
             oauth.setAdditionalInformation(additionalInfo.toMap());
         }
-        oauth = oauthClientRepository.save(oauth);
+        oauth = save(oauth);
 
         return OAuth2Client.from(client, oauth);
     }
@@ -720,6 +729,20 @@ public class OAuth2ClientService implements ClientService {
         if (client != null) {
             clientService.deleteClient(clientId);
         }
+
+        evict(clientId);
+    }
+
+    private OAuth2ClientEntity save(OAuth2ClientEntity oauth) {
+        oauth = oauthClientRepository.save(oauth);
+        evict(oauth.getClientId());
+        return oauth;
+    }
+
+    private void evict(String clientId) {
+        if (clientDetailsService != null) {
+            clientDetailsService.evictClient(clientId);
+        }
     }
 
     /*
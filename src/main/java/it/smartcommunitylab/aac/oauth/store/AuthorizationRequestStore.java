@@ -16,4 +16,9 @@ public interface AuthorizationRequestStore {
 
     public void remove(String key);
 
+    /*
+     * Find and remove in a single step, only one caller obtains the request
+     */
+    public AuthorizationRequest consume(String key);
+
 }
@@ -0,0 +1,20 @@
+package it.smartcommunitylab.aac.oauth.store;
+
+import java.util.Collection;
+
+/*
+ * A store tracking changes to client definitions, shared between nodes.
+ *
+ * Nodes caching client details record every change here, and periodically
+ * poll for changes recorded by others to invalidate their local copies.
+ */
+public interface ClientVersionStore {
+
+    public void increment(String clientId);
+
+    /*
+     * Clients changed since the previous poll on this node
+     */
+    public Collection<String> pollChanges();
+
+}
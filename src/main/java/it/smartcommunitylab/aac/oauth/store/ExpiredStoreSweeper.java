@@ -0,0 +1,114 @@
+package it.smartcommunitylab.aac.oauth.store;
+
+import java.util.Collections;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.Assert;
+
+import io.micrometer.core.instrument.MeterRegistry;
+
+/*
+ * Background sweeper for expired tokens, codes and approvals.
+ *
+ * Every run removes entries in bounded batches, up to a maximum number of
+ * batches per store, so that a single run never holds long locks or large
+ * transactions. Stores recheck expiration on delete, so every node can run the
+ * sweeper concurrently without coordination.
+ */
+public class ExpiredStoreSweeper {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+    public static final int DEFAULT_MAX_BATCHES = 20;
+
+    public static final String METRIC_REMOVED = "aac.oauth.sweeper.removed";
+    public static final String METRIC_DURATION = "aac.oauth.sweeper.duration";
+
+    private final List<PurgeableStore> stores;
+
+    private boolean enabled = true;
+    private int batchSize = DEFAULT_BATCH_SIZE;
+    private int maxBatches = DEFAULT_MAX_BATCHES;
+
+    private MeterRegistry meterRegistry;
+
+    public ExpiredStoreSweeper(List<PurgeableStore> stores) {
+        Assert.notNull(stores, "stores can not be null");
+        this.stores = Collections.unmodifiableList(stores);
+    }
+
+    public void setEnabled(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    public void setBatchSize(int batchSize) {
+        Assert.isTrue(batchSize > 0, "batch size must be positive");
+        this.batchSize = batchSize;
+    }
+
+    public void setMaxBatches(int maxBatches) {
+        Assert.isTrue(maxBatches > 0, "max batches must be positive");
+        this.maxBatches = maxBatches;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
+    @Scheduled(fixedDelayString = "${oauth2.sweeper.interval}", initialDelayString = "${oauth2.sweeper.interval}")
+    public void sweep() {
+        if (!enabled) {
+            return;
+        }
+
+        for (PurgeableStore store : stores) {
+            sweep(store);
+        }
+    }
+
+    public int sweep(PurgeableStore store) {
+        String name = store.getClass().getSimpleName();
+        long start = System.nanoTime();
+        Date now = new Date();
+        int total = 0;
+
+        try {
+            // give legacy entries an expiration first, so they become purgeable
+            for (int i = 0; i < maxBatches; i++) {
+                if (store.backfillExpiration(batchSize) < batchSize) {
+                    break;
+                }
+            }
+
+            for (int i = 0; i < maxBatches; i++) {
+                int count = store.purgeExpired(now, batchSize);
+                total += count;
+                if (count < batchSize) {
+                    // drained
+                    break;
+                }
+            }
+        } catch (DataAccessException e) {
+            // next run will pick up where we left
+            logger.warn("error sweeping expired entries from " + name + ": " + e.getMessage());
+        }
+
+        if (total > 0) {
+            logger.debug("removed " + String.valueOf(total) + " expired entries from " + name);
+        }
+
+        if (meterRegistry != null) {
+            meterRegistry.counter(METRIC_REMOVED, "store", name).increment(total);
+            meterRegistry.timer(METRIC_DURATION, "store", name).record(System.nanoTime() - start,
+                    TimeUnit.NANOSECONDS);
+        }
+
+        return total;
+    }
+}
@@ -50,4 +50,13 @@ public interface ExtTokenStore extends TokenStore {
      */
     Collection<OAuth2AccessToken> findTokensByUserName(String userName);
 
+    /**
+     * Acquire an exclusive lock on the given refresh token, bound to the current
+     * transaction
+     * 
+     * @param tokenValue
+     * @return false if the token does not exist
+     */
+    public boolean lockRefreshToken(String tokenValue);
+
 }
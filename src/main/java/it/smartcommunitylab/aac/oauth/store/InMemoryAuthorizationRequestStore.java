@@ -6,19 +6,32 @@ import java.util.Collections;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.TreeSet;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.security.oauth2.provider.AuthorizationRequest;
 import org.springframework.util.Assert;
 import org.springframework.util.DigestUtils;
 import org.springframework.util.StringUtils;
 
+import it.smartcommunitylab.aac.core.store.ExpiringStore;
+import it.smartcommunitylab.aac.core.store.ExpiringStore.EvictionPolicy;
+
+/*
+ * In memory request store, pending requests expire after ttl and when full the
+ * oldest are evicted
+ */
 public class InMemoryAuthorizationRequestStore implements AuthorizationRequestStore {
 
-    private final Map<String, AuthorizationRequest> requests;
+    public static final long DEFAULT_TTL = 30 * 60 * 1000L;
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private final ExpiringStore<String, AuthorizationRequest> requests;
 
     public InMemoryAuthorizationRequestStore() {
-        this.requests = new ConcurrentHashMap<>();
+        this(DEFAULT_TTL, DEFAULT_MAX_SIZE);
+    }
+
+    public InMemoryAuthorizationRequestStore(long ttl, int maxSize) {
+        this.requests = new ExpiringStore<>("oauth2.requests", ttl, maxSize, EvictionPolicy.OLDEST);
     }
 
     @Override
@@ -50,6 +63,12 @@ public class InMemoryAuthorizationRequestStore implements AuthorizationRequestSt
         requests.remove(key);
     }
 
+    @Override
+    public AuthorizationRequest consume(String key) {
+        Assert.hasText(key, "key can not be null or empty");
+        return requests.remove(key);
+    }
+
     private String extractKey(AuthorizationRequest request) {
         // use a sorted map as source to ensure consistency
         Map<String, String> values = new TreeMap<String, String>();
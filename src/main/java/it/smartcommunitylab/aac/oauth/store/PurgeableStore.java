@@ -0,0 +1,28 @@
+package it.smartcommunitylab.aac.oauth.store;
+
+import java.util.Date;
+
+/*
+ * A store holding entries with an expiration, which can be removed in bounded
+ * batches by a background sweeper.
+ *
+ * Implementations must recheck the expiration on delete, so that concurrent
+ * sweepers (ie on multiple nodes) are safe.
+ */
+public interface PurgeableStore {
+
+    /*
+     * Remove up to limit entries expired before now, returns the number of
+     * entries removed
+     */
+    public int purgeExpired(Date now, int limit);
+
+    /*
+     * Set the expiration of up to limit entries stored without one (ie legacy
+     * rows), returns the number of entries examined: 0 when none are left
+     */
+    public default int backfillExpiration(int limit) {
+        return 0;
+    }
+
+}
@@ -0,0 +1,17 @@
+package it.smartcommunitylab.aac.oauth.store;
+
+import java.util.Date;
+
+/*
+ * A store for revoked self-contained tokens, identified by their id.
+ *
+ * Entries are needed only until the token expires, after that the token is
+ * rejected anyway and the entry can be purged.
+ */
+public interface RevokedTokenStore {
+
+    public void revokeToken(String tokenId, Date expiresAt);
+
+    public boolean isRevoked(String tokenId);
+
+}
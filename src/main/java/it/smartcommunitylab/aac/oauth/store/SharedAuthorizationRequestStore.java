@@ -0,0 +1,122 @@
+package it.smartcommunitylab.aac.oauth.store;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.UUID;
+import java.util.stream.Collectors;
+
+import org.springframework.security.authentication.InsufficientAuthenticationException;
+import org.springframework.security.oauth2.provider.AuthorizationRequest;
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.SystemKeys;
+import it.smartcommunitylab.aac.core.auth.DefaultSecurityContextAuthenticationHelper;
+import it.smartcommunitylab.aac.core.auth.UserAuthentication;
+import it.smartcommunitylab.aac.core.store.SharedStateStore;
+import it.smartcommunitylab.aac.core.store.StateSerializer;
+import it.smartcommunitylab.aac.core.store.StateStore;
+
+/*
+ * Request store shared between nodes, for deployments without session
+ * affinity.
+ *
+ * Keys are random: the store is not bound to a session, so keys derived from
+ * request parameters could collide between users. Entries are bound to the
+ * subject which stored them, and are visible only to the same subject, so a
+ * key alone does not grant access to a request.
+ */
+public class SharedAuthorizationRequestStore implements AuthorizationRequestStore {
+
+    public static final String NAMESPACE = "oauth2.requests";
+
+    private final SharedStateStore<OwnedRequest> requests;
+    private final DefaultSecurityContextAuthenticationHelper authHelper = new DefaultSecurityContextAuthenticationHelper();
+
+    public SharedAuthorizationRequestStore(StateStore store, long ttl, int nearCacheSize) {
+        StateSerializer serializer = new StateSerializer();
+        this.requests = new SharedStateStore<>(NAMESPACE, store, ttl,
+                r -> serializer.serializeObject(r),
+                b -> serializer.deserializeObject(b),
+                nearCacheSize);
+    }
+
+    @Override
+    public AuthorizationRequest find(String key) {
+        Assert.hasText(key, "key can not be null or empty");
+        OwnedRequest r = requests.find(key);
+        return r != null && r.isOwnedBy(currentOwner()) ? r.request : null;
+    }
+
+    @Override
+    public Collection<AuthorizationRequest> findAll() {
+        String owner = currentOwner();
+        return requests.findAll().stream()
+                .filter(r -> r.isOwnedBy(owner))
+                .map(r -> r.request)
+                .collect(Collectors.toList());
+    }
+
+    @Override
+    public String store(AuthorizationRequest request) {
+        String key = UUID.randomUUID().toString();
+        store(request, key);
+
+        return key;
+    }
+
+    @Override
+    public void store(AuthorizationRequest request, String key) {
+        String owner = currentOwner();
+        if (owner == null) {
+            throw new InsufficientAuthenticationException("Invalid user authentication");
+        }
+
+        // do not let a subject overwrite requests owned by others
+        OwnedRequest r = requests.find(key);
+        if (r != null && !r.isOwnedBy(owner)) {
+            throw new IllegalArgumentException("Missing or invalid request");
+        }
+
+        requests.store(key, new OwnedRequest(owner, request));
+    }
+
+    @Override
+    public void remove(String key) {
+        if (find(key) != null) {
+            requests.remove(key);
+        }
+    }
+
+    @Override
+    public AuthorizationRequest consume(String key) {
+        // check ownership before consuming, a mismatch leaves the entry in place
+        if (find(key) == null) {
+            return null;
+        }
+
+        OwnedRequest r = requests.consume(key);
+        return r != null && r.isOwnedBy(currentOwner()) ? r.request : null;
+    }
+
+    private String currentOwner() {
+        UserAuthentication userAuth = authHelper.getUserAuthentication();
+        return userAuth != null ? userAuth.getSubjectId() : null;
+    }
+
+    private static class OwnedRequest implements Serializable {
+        private static final long serialVersionUID = SystemKeys.AAC_OAUTH2_SERIAL_VERSION;
+
+        private final String owner;
+        private final AuthorizationRequest request;
+
+        public OwnedRequest(String owner, AuthorizationRequest request) {
+            this.owner = owner;
+            this.request = request;
+        }
+
+        public boolean isOwnedBy(String subjectId) {
+            return owner != null && owner.equals(subjectId);
+        }
+    }
+
+}
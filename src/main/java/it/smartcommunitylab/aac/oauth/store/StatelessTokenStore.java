@@ -0,0 +1,335 @@
+package it.smartcommunitylab.aac.oauth.store;
+
+import java.io.Serializable;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.OAuth2Utils;
+import org.springframework.security.oauth2.provider.ClientRegistrationException;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.util.Assert;
+import org.springframework.util.StringUtils;
+
+import com.nimbusds.jwt.JWTClaimsSet;
+
+import it.smartcommunitylab.aac.jwt.JWTService;
+import it.smartcommunitylab.aac.oauth.AACOAuth2AccessToken;
+import it.smartcommunitylab.aac.oauth.model.AuthorizationGrantType;
+import it.smartcommunitylab.aac.oauth.model.OAuth2ClientDetails;
+import it.smartcommunitylab.aac.oauth.model.TokenType;
+import it.smartcommunitylab.aac.oauth.service.OAuth2ClientDetailsService;
+
+/*
+ * Token store supporting self-contained JWT access tokens.
+ *
+ * For clients configured as stateless, client-only JWT access tokens signed by
+ * the default signer are not persisted: reads validate signature, issuer and
+ * expiration locally and rebuild token and authentication from the claims.
+ * Revocation is handled via a list of revoked token ids, kept until the token
+ * expires.
+ *
+ * Every other token is handled by the delegate store.
+ */
+public class StatelessTokenStore implements ExtTokenStore, PurgeableStore {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private static final String CLAIM_AZP = "azp";
+    private static final String CLAIM_SCOPE = "scope";
+
+    private final ExtTokenStore tokenStore;
+    private final String issuer;
+    private final JWTService jwtService;
+    private final OAuth2ClientDetailsService clientDetailsService;
+    private final RevokedTokenStore revokedTokenStore;
+
+    public StatelessTokenStore(ExtTokenStore tokenStore, String issuer, JWTService jwtService,
+            OAuth2ClientDetailsService clientDetailsService, RevokedTokenStore revokedTokenStore) {
+        Assert.notNull(tokenStore, "token store is mandatory");
+        Assert.hasText(issuer, "a valid issuer is required");
+        Assert.notNull(jwtService, "jwt service is mandatory");
+        Assert.notNull(clientDetailsService, "client details service is mandatory");
+        Assert.notNull(revokedTokenStore, "revoked token store is mandatory");
+
+        this.tokenStore = tokenStore;
+        this.issuer = issuer;
+        this.jwtService = jwtService;
+        this.clientDetailsService = clientDetailsService;
+        this.revokedTokenStore = revokedTokenStore;
+    }
+
+    /*
+     * Access tokens
+     */
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        if (isStateless(token, authentication)) {
+            logger.trace("skip persisting stateless token " + ((AACOAuth2AccessToken) token).getToken());
+            return;
+        }
+
+        tokenStore.storeAccessToken(token, authentication);
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessToken(String tokenValue) {
+        AACOAuth2AccessToken token = readStatelessToken(tokenValue);
+        if (token != null) {
+            return token;
+        }
+
+        return tokenStore.readAccessToken(tokenValue);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(OAuth2AccessToken token) {
+        return readAuthentication(token.getValue());
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String tokenValue) {
+        AACOAuth2AccessToken token = readStatelessToken(tokenValue);
+        if (token != null) {
+            return buildAuthentication(token);
+        }
+
+        return tokenStore.readAuthentication(tokenValue);
+    }
+
+    @Override
+    public void removeAccessToken(OAuth2AccessToken token) {
+        AACOAuth2AccessToken stateless = readStatelessToken(token.getValue());
+        if (stateless != null) {
+            logger.debug("revoke stateless token " + stateless.getToken());
+            revokedTokenStore.revokeToken(stateless.getToken(), stateless.getExpiration());
+            return;
+        }
+
+        tokenStore.removeAccessToken(token);
+    }
+
+    /*
+     * Stateless tokens
+     */
+    private boolean isStateless(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        // only client tokens, we can not rebuild user authentications from claims
+        if (!(token instanceof AACOAuth2AccessToken) || !authentication.isClientOnly()) {
+            return false;
+        }
+
+        AACOAuth2AccessToken accessToken = (AACOAuth2AccessToken) token;
+        if (!TokenType.JWT.getValue().equals(accessToken.getResponseType())) {
+            return false;
+        }
+
+        try {
+            OAuth2ClientDetails clientDetails = clientDetailsService
+                    .loadClientByClientId(authentication.getOAuth2Request().getClientId());
+            return isStateless(clientDetails);
+        } catch (ClientRegistrationException e) {
+            return false;
+        }
+    }
+
+    private boolean isStateless(OAuth2ClientDetails clientDetails) {
+        // tokens must be signed by the default signer to be validated locally
+        return clientDetails.isStatelessAccessTokens()
+                && !StringUtils.hasText(clientDetails.getJwtSignAlgorithm())
+                && !StringUtils.hasText(clientDetails.getJwtEncAlgorithm())
+                && !StringUtils.hasText(clientDetails.getJwtEncMethod());
+    }
+
+    private AACOAuth2AccessToken readStatelessToken(String tokenValue) {
+        JWTClaimsSet claims = jwtService.validateAndParseJWT(tokenValue);
+        if (claims == null) {
+            return null;
+        }
+
+        try {
+            if (!issuer.equals(claims.getIssuer())) {
+                return null;
+            }
+
+            // client is azp when set, otherwise the single audience
+            String clientId = claims.getStringClaim(CLAIM_AZP);
+            List<String> audience = claims.getAudience();
+            if (clientId == null && audience != null && audience.size() == 1) {
+                clientId = audience.get(0);
+            }
+            if (clientId == null) {
+                return null;
+            }
+
+            // token is stateless only if the client is still configured as such
+            OAuth2ClientDetails clientDetails = clientDetailsService.loadClientByClientId(clientId);
+            if (!isStateless(clientDetails)) {
+                return null;
+            }
+
+            // client only tokens have the client as subject
+            if (!clientId.equals(claims.getSubject())) {
+                return null;
+            }
+
+            String tokenId = claims.getJWTID();
+            Date exp = claims.getExpirationTime();
+            if (!StringUtils.hasText(tokenId) || exp == null) {
+                return null;
+            }
+
+            if (revokedTokenStore.isRevoked(tokenId)) {
+                logger.debug("token " + tokenId + " is revoked");
+                return null;
+            }
+
+            AACOAuth2AccessToken token = new AACOAuth2AccessToken(tokenValue, tokenId);
+            token.setSubject(claims.getSubject());
+            token.setAuthorizedParty(clientId);
+            token.setRealm(clientDetails.getRealm());
+            token.setResponseType(TokenType.JWT.getValue());
+            token.setExpiration(exp);
+            if (claims.getIssueTime() != null) {
+                token.setIssuedAt(claims.getIssueTime());
+            }
+            if (claims.getNotBeforeTime() != null) {
+                token.setNotBeforeTime(claims.getNotBeforeTime());
+            }
+            if (audience != null) {
+                token.setAudience(audience.toArray(new String[0]));
+            }
+
+            token.setScope(OAuth2Utils.parseParameterList(claims.getStringClaim(CLAIM_SCOPE)));
+
+            // custom claims
+            Map<String, Serializable> tokenClaims = new HashMap<>();
+            for (Map.Entry<String, Object> e : claims.getClaims().entrySet()) {
+                String key = e.getKey();
+                if (!JWTClaimsSet.getRegisteredNames().contains(key) && !CLAIM_AZP.equals(key)
+                        && !CLAIM_SCOPE.equals(key) && e.getValue() instanceof Serializable) {
+                    tokenClaims.put(key, (Serializable) e.getValue());
+                }
+            }
+            token.setClaims(tokenClaims);
+
+            // note: expired tokens are returned, callers validate expiration
+            return token;
+        } catch (java.text.ParseException | ClientRegistrationException e) {
+            return null;
+        }
+    }
+
+    private OAuth2Authentication buildAuthentication(AACOAuth2AccessToken token) {
+        String clientId = token.getAuthorizedParty();
+
+        Set<String> resourceIds = new HashSet<>();
+        if (token.getAudience() != null) {
+            for (String aud : token.getAudience()) {
+                if (!clientId.equals(aud)) {
+                    resourceIds.add(aud);
+                }
+            }
+        }
+
+        Map<String, String> parameters = new HashMap<>();
+        parameters.put(OAuth2Utils.CLIENT_ID, clientId);
+        parameters.put(OAuth2Utils.GRANT_TYPE, AuthorizationGrantType.CLIENT_CREDENTIALS.getValue());
+        parameters.put(OAuth2Utils.SCOPE, String.join(" ", token.getScope()));
+
+        OAuth2Request request = new OAuth2Request(parameters, clientId, Collections.emptyList(), true,
+                token.getScope(), resourceIds, null, null, null);
+
+        // client only authentication
+        return new OAuth2Authentication(request, null);
+    }
+
+    /*
+     * Delegate
+     */
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        tokenStore.storeRefreshToken(refreshToken, authentication);
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshToken(String tokenValue) {
+        return tokenStore.readRefreshToken(tokenValue);
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(OAuth2RefreshToken token) {
+        return tokenStore.readAuthenticationForRefreshToken(token);
+    }
+
+    @Override
+    public void removeRefreshToken(OAuth2RefreshToken token) {
+        tokenStore.removeRefreshToken(token);
+    }
+
+    @Override
+    public void removeAccessTokenUsingRefreshToken(OAuth2RefreshToken refreshToken) {
+        tokenStore.removeAccessTokenUsingRefreshToken(refreshToken);
+    }
+
+    @Override
+    public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
+        return tokenStore.getAccessToken(authentication);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientIdAndUserName(String clientId, String userName) {
+        return tokenStore.findTokensByClientIdAndUserName(clientId, userName);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByClientId(String clientId) {
+        return tokenStore.findTokensByClientId(clientId);
+    }
+
+    @Override
+    public OAuth2AccessToken readAccessTokenForRefreshToken(String tokenValue) {
+        return tokenStore.readAccessTokenForRefreshToken(tokenValue);
+    }
+
+    @Override
+    public OAuth2RefreshToken readRefreshTokenForAccessToken(String tokenValue) {
+        return tokenStore.readRefreshTokenForAccessToken(tokenValue);
+    }
+
+    @Override
+    public Collection<OAuth2AccessToken> findTokensByUserName(String userName) {
+        return tokenStore.findTokensByUserName(userName);
+    }
+
+    @Override
+    public boolean lockRefreshToken(String tokenValue) {
+        return tokenStore.lockRefreshToken(tokenValue);
+    }
+
+    @Override
+    public int purgeExpired(Date now, int limit) {
+        if (tokenStore instanceof PurgeableStore) {
+            return ((PurgeableStore) tokenStore).purgeExpired(now, limit);
+        }
+
+        return 0;
+    }
+
+    @Override
+    public int backfillExpiration(int limit) {
+        if (tokenStore instanceof PurgeableStore) {
+            return ((PurgeableStore) tokenStore).backfillExpiration(limit);
+        }
+
+        return 0;
+    }
+}
@@ -1,9 +1,13 @@
 package it.smartcommunitylab.aac.oauth.store.jdbc;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.Arrays;
 import java.util.Collection;
 import java.util.Date;
+import java.util.List;
 
 import javax.sql.DataSource;
 
@@ -14,9 +18,11 @@ import org.springframework.security.oauth2.provider.approval.Approval;
 import org.springframework.security.oauth2.provider.approval.JdbcApprovalStore;
 import org.springframework.security.oauth2.provider.approval.Approval.ApprovalStatus;
 
+import it.smartcommunitylab.aac.oauth.store.PurgeableStore;
 import it.smartcommunitylab.aac.oauth.store.SearchableApprovalStore;
+import it.smartcommunitylab.aac.repository.JdbcSchemaUtils;
 
-public class AutoJdbcApprovalStore extends JdbcApprovalStore implements SearchableApprovalStore {
+public class AutoJdbcApprovalStore extends JdbcApprovalStore implements SearchableApprovalStore, PurgeableStore {
 
     private JdbcTemplate jdbcTemplate;
     private final RowMapper<Approval> rowMapper = new AuthorizationRowMapper();
@@ -34,6 +40,8 @@ public class AutoJdbcApprovalStore extends JdbcApprovalStore implements Searchab
     private static final String DEFAULT_GET_CLIENT_APPROVAL_SQL = "SELECT expiresAt,status,lastModifiedAt,userId,clientId,scope FROM oauth_approvals WHERE clientId=?";
     private static final String DEFAULT_GET_SCOPE_APPROVAL_SQL = "SELECT expiresAt,status,lastModifiedAt,userId,clientId,scope FROM oauth_approvals WHERE scope=?";
     private static final String DEFAULT_GET_USER_SCOPE_APPROVAL_SQL = "SELECT expiresAt,status,lastModifiedAt,userId,clientId,scope FROM oauth_approvals WHERE userId=? and scope=?";
+    private static final String DEFAULT_GET_EXPIRED_APPROVAL_SQL = "SELECT userId,clientId,scope FROM oauth_approvals WHERE expiresAt < ?";
+    private static final String DEFAULT_DELETE_EXPIRED_APPROVAL_SQL = "DELETE FROM oauth_approvals WHERE userId=? AND clientId=? AND scope=? AND expiresAt < ?";
 
     private String createTableStatement = DEFAULT_CREATE_TABLE_STATEMENT;
     private String findSingleApprovalStatement = DEFAULT_FIND_SINGLE_APPROVAL_SQL;
@@ -51,6 +59,12 @@ public class AutoJdbcApprovalStore extends JdbcApprovalStore implements Searchab
     protected void initSchema(DataSource dataSource) {
         this.jdbcTemplate = new JdbcTemplate(dataSource);
         jdbcTemplate.execute(createTableStatement);
+
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_approvals", "oauth_approvals_user_client_scope_idx",
+                "userId, clientId, scope");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_approvals", "oauth_approvals_client_idx", "clientId");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_approvals", "oauth_approvals_scope_idx", "scope");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_approvals", "oauth_approvals_expires_at_idx", "expiresAt");
     }
 
     @Override
@@ -83,6 +97,25 @@ public class AutoJdbcApprovalStore extends JdbcApprovalStore implements Searchab
     }
 
 
+    @Override
+    public int purgeExpired(Date now, int limit) {
+        Timestamp ts = new Timestamp(now.getTime());
+        List<Object[]> keys = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(DEFAULT_GET_EXPIRED_APPROVAL_SQL);
+            ps.setMaxRows(limit);
+            ps.setTimestamp(1, ts);
+            return ps;
+        }, (rs, rowNum) -> new Object[] { rs.getString(1), rs.getString(2), rs.getString(3), ts });
+
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        // check expiration again, other nodes could be sweeping concurrently
+        int[] results = jdbcTemplate.batchUpdate(DEFAULT_DELETE_EXPIRED_APPROVAL_SQL, keys);
+        return Arrays.stream(results).map(r -> Math.max(r, 0)).sum();
+    }
+
     private static class AuthorizationRowMapper implements RowMapper<Approval> {
 
         @Override
@@ -16,12 +16,21 @@
 
 package it.smartcommunitylab.aac.oauth.store.jdbc;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
 import java.sql.Types;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.data.util.Pair;
 import org.springframework.jdbc.core.JdbcTemplate;
@@ -37,6 +46,8 @@ import org.springframework.util.Assert;
 
 import it.smartcommunitylab.aac.oauth.common.SecureStringKeyGenerator;
 import it.smartcommunitylab.aac.oauth.provider.PeekableAuthorizationCodeServices;
+import it.smartcommunitylab.aac.oauth.store.PurgeableStore;
+import it.smartcommunitylab.aac.repository.JdbcSchemaUtils;
 
 /**
  * Authorization code services with DB table creation on startup. Also supports
@@ -48,17 +59,21 @@ import it.smartcommunitylab.aac.oauth.provider.PeekableAuthorizationCodeServices
  *
  */
 public class AutoJdbcAuthorizationCodeServices
-        implements AuthorizationCodeServices, PeekableAuthorizationCodeServices {
+        implements AuthorizationCodeServices, PeekableAuthorizationCodeServices, PurgeableStore {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
 
 //    private static final StringKeyGenerator TOKEN_GENERATOR = new HumanStringKeyGenerator(6);
     private static final StringKeyGenerator TOKEN_GENERATOR = new SecureStringKeyGenerator(16);
 
     private static final int DEFAULT_CODE_VALIDITY_SECONDS = 10 * 60;
 
-    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_code (code VARCHAR(256), client_id VARCHAR(256), expiresAt TIMESTAMP, authentication BLOB);";
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_code (code VARCHAR(256) NOT NULL PRIMARY KEY, client_id VARCHAR(256), expiresAt TIMESTAMP, authentication BLOB);";
     private static final String DEFAULT_SELECT_STATEMENT = "select code, client_id, expiresAt, authentication from oauth_code where code = ?";
     private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_code (code, client_id, expiresAt, authentication) values (?, ?, ?, ?)";
     private static final String DEFAULT_DELETE_STATEMENT = "delete from oauth_code where code = ?";
+    private static final String DEFAULT_SELECT_EXPIRED_STATEMENT = "select code from oauth_code where expiresAt < ?";
+    private static final String DEFAULT_DELETE_EXPIRED_STATEMENT = "delete from oauth_code where code = ? and expiresAt < ?";
+    private static final String DEFAULT_BACKFILL_EXPIRATION_STATEMENT = "update oauth_code set expiresAt = ? where expiresAt is null";
 
     private String createAuthenticationSql = DEFAULT_CREATE_TABLE_STATEMENT;
     private String selectAuthenticationSql = DEFAULT_SELECT_STATEMENT;
@@ -204,7 +219,40 @@ public class AutoJdbcAuthorizationCodeServices
         this.tokenGenerator = tokenGenerator;
     }
 
+    @Override
+    public int purgeExpired(Date now, int limit) {
+        Timestamp ts = new Timestamp(now.getTime());
+        List<String> codes = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(DEFAULT_SELECT_EXPIRED_STATEMENT);
+            ps.setMaxRows(limit);
+            ps.setTimestamp(1, ts);
+            return ps;
+        }, (rs, rowNum) -> rs.getString(1));
+
+        if (codes.isEmpty()) {
+            return 0;
+        }
+
+        // check expiration again, other nodes could be sweeping concurrently
+        List<Object[]> args = codes.stream().map(c -> new Object[] { c, ts }).collect(Collectors.toList());
+        int[] results = jdbcTemplate.batchUpdate(DEFAULT_DELETE_EXPIRED_STATEMENT, args);
+        return Arrays.stream(results).map(r -> Math.max(r, 0)).sum();
+    }
+
     protected void initSchema() {
         jdbcTemplate.execute(createAuthenticationSql);
+
+        // legacy tables have no primary key
+        try {
+            JdbcSchemaUtils.addPrimaryKey(jdbcTemplate, "oauth_code", "code");
+        } catch (DataAccessException e) {
+            logger.warn("unable to add primary key to oauth_code: " + e.getMessage());
+            JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_code", "oauth_code_code_idx", "code");
+        }
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_code", "oauth_code_expires_at_idx", "expiresAt");
+
+        // legacy codes without expiration are purged once past the validity window
+        jdbcTemplate.update(DEFAULT_BACKFILL_EXPIRATION_STATEMENT,
+                new Timestamp(System.currentTimeMillis() + codeValidityMillis));
     }
 }
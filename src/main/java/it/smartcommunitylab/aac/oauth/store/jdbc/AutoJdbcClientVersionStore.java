@@ -0,0 +1,96 @@
+package it.smartcommunitylab.aac.oauth.store.jdbc;
+
+import java.sql.Timestamp;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+import javax.sql.DataSource;
+
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.oauth.store.ClientVersionStore;
+import it.smartcommunitylab.aac.repository.JdbcSchemaUtils;
+
+/*
+ * Client versions store with DB table creation on startup.
+ *
+ * Every change bumps the client version and its modification time. Polls read
+ * rows modified within the last window (plus an overlap for clock drift and
+ * commit delays) and report those whose version differs from the one seen by
+ * this node.
+ */
+public class AutoJdbcClientVersionStore implements ClientVersionStore {
+
+    // account for clock drift between nodes and commit delays
+    private static final long SYNC_OVERLAP_MILLIS = 30 * 1000;
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_client_version (client_id VARCHAR(256) NOT NULL PRIMARY KEY, version BIGINT NOT NULL, modified TIMESTAMP NOT NULL);";
+    private static final String DEFAULT_INCREMENT_STATEMENT = "update oauth_client_version set version = version + 1, modified = ? where client_id = ?";
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_client_version (client_id, version, modified) values (?, 1, ?)";
+    private static final String DEFAULT_SELECT_SINCE_STATEMENT = "select client_id, version from oauth_client_version where modified > ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // versions seen in the last window, clientId -> version
+    private Map<String, Long> seen = new HashMap<>();
+    private long lastSync;
+
+    public AutoJdbcClientVersionStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initSchema();
+
+        this.lastSync = System.currentTimeMillis();
+    }
+
+    protected void initSchema() {
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_client_version", "oauth_client_version_modified_idx",
+                "modified");
+    }
+
+    @Override
+    public void increment(String clientId) {
+        Assert.hasText(clientId, "client id can not be null or empty");
+        Timestamp now = new Timestamp(System.currentTimeMillis());
+
+        if (jdbcTemplate.update(DEFAULT_INCREMENT_STATEMENT, now, clientId) == 0) {
+            try {
+                jdbcTemplate.update(DEFAULT_INSERT_STATEMENT, clientId, now);
+            } catch (DuplicateKeyException e) {
+                // concurrent insert
+                jdbcTemplate.update(DEFAULT_INCREMENT_STATEMENT, now, clientId);
+            }
+        }
+    }
+
+    @Override
+    public synchronized Collection<String> pollChanges() {
+        long now = System.currentTimeMillis();
+        long since = lastSync - SYNC_OVERLAP_MILLIS;
+
+        Map<String, Long> versions = new HashMap<>();
+        jdbcTemplate.query(DEFAULT_SELECT_SINCE_STATEMENT, rs -> {
+            versions.put(rs.getString(1), rs.getLong(2));
+        }, new Timestamp(since));
+
+        Set<String> changed = new HashSet<>();
+        versions.forEach((clientId, version) -> {
+            if (!version.equals(seen.get(clientId))) {
+                changed.add(clientId);
+            }
+        });
+
+        // keep only the current window, older rows won't be read again
+        this.seen = versions;
+        this.lastSync = now;
+
+        return changed;
+    }
+
+}
@@ -0,0 +1,143 @@
+package it.smartcommunitylab.aac.oauth.store.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Collectors;
+
+import javax.sql.DataSource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
+import org.springframework.dao.DuplicateKeyException;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.scheduling.annotation.Scheduled;
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.oauth.store.PurgeableStore;
+import it.smartcommunitylab.aac.oauth.store.RevokedTokenStore;
+import it.smartcommunitylab.aac.repository.JdbcSchemaUtils;
+
+/*
+ * Revoked token ids store with DB table creation on startup.
+ *
+ * Lookups are served from a local copy of the (not yet expired) revoked ids,
+ * kept in sync by polling for new revocations: checks never hit the DB. Nodes
+ * see revocations issued elsewhere within the sync interval.
+ */
+public class AutoJdbcRevokedTokenStore implements RevokedTokenStore, PurgeableStore {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    // account for clock drift between nodes and commit delays
+    private static final long SYNC_OVERLAP_MILLIS = 30 * 1000;
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_revoked_token (token_id VARCHAR(256) NOT NULL PRIMARY KEY, expires_at TIMESTAMP NOT NULL, revoked_at TIMESTAMP NOT NULL);";
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_revoked_token (token_id, expires_at, revoked_at) values (?, ?, ?)";
+    private static final String DEFAULT_SELECT_ACTIVE_STATEMENT = "select token_id, expires_at from oauth_revoked_token where expires_at > ?";
+    private static final String DEFAULT_SELECT_SINCE_STATEMENT = "select token_id, expires_at from oauth_revoked_token where revoked_at > ? and expires_at > ?";
+    private static final String DEFAULT_SELECT_EXPIRED_STATEMENT = "select token_id from oauth_revoked_token where expires_at < ?";
+    private static final String DEFAULT_DELETE_EXPIRED_STATEMENT = "delete from oauth_revoked_token where token_id = ? and expires_at < ?";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    // local copy, tokenId -> expiration
+    private final Map<String, Long> revoked = new ConcurrentHashMap<>();
+    private volatile long lastSync;
+
+    public AutoJdbcRevokedTokenStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initSchema();
+
+        // load all active entries
+        long now = System.currentTimeMillis();
+        jdbcTemplate.query(DEFAULT_SELECT_ACTIVE_STATEMENT, rs -> {
+            revoked.put(rs.getString(1), rs.getTimestamp(2).getTime());
+        }, new Timestamp(now));
+        this.lastSync = now;
+    }
+
+    protected void initSchema() {
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_revoked_token", "oauth_revoked_revoked_at_idx",
+                "revoked_at");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_revoked_token", "oauth_revoked_expires_at_idx",
+                "expires_at");
+    }
+
+    @Override
+    public void revokeToken(String tokenId, Date expiresAt) {
+        Assert.hasText(tokenId, "token id can not be null or empty");
+        Assert.notNull(expiresAt, "expiration can not be null");
+
+        if (expiresAt.getTime() < System.currentTimeMillis()) {
+            // already expired, nothing to do
+            return;
+        }
+
+        try {
+            jdbcTemplate.update(DEFAULT_INSERT_STATEMENT,
+                    new Object[] { tokenId, new Timestamp(expiresAt.getTime()),
+                            new Timestamp(System.currentTimeMillis()) },
+                    new int[] { Types.VARCHAR, Types.TIMESTAMP, Types.TIMESTAMP });
+        } catch (DuplicateKeyException e) {
+            // already revoked
+        }
+
+        revoked.put(tokenId, expiresAt.getTime());
+    }
+
+    @Override
+    public boolean isRevoked(String tokenId) {
+        return revoked.containsKey(tokenId);
+    }
+
+    /*
+     * Sync local copy with revocations issued by other nodes
+     */
+    @Scheduled(fixedDelayString = "${oauth2.stateless.revocationSync}")
+    public void sync() {
+        long now = System.currentTimeMillis();
+        long since = lastSync - SYNC_OVERLAP_MILLIS;
+
+        try {
+            jdbcTemplate.query(DEFAULT_SELECT_SINCE_STATEMENT, rs -> {
+                revoked.put(rs.getString(1), rs.getTimestamp(2).getTime());
+            }, new Timestamp(since), new Timestamp(now));
+            this.lastSync = now;
+        } catch (DataAccessException e) {
+            // keep last sync, we'll retry the same window
+            logger.warn("error syncing revoked tokens: " + e.getMessage());
+        }
+
+        // drop expired from local copy
+        revoked.values().removeIf(exp -> exp < now);
+    }
+
+    @Override
+    public int purgeExpired(Date now, int limit) {
+        Timestamp ts = new Timestamp(now.getTime());
+        List<String> keys = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(DEFAULT_SELECT_EXPIRED_STATEMENT);
+            ps.setMaxRows(limit);
+            ps.setTimestamp(1, ts);
+            return ps;
+        }, (rs, rowNum) -> rs.getString(1));
+
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        // check expiration again, other nodes could be sweeping concurrently
+        List<Object[]> args = keys.stream().map(k -> new Object[] { k, ts }).collect(Collectors.toList());
+        int[] results = jdbcTemplate.batchUpdate(DEFAULT_DELETE_EXPIRED_STATEMENT, args);
+        return Arrays.stream(results).map(r -> Math.max(r, 0)).sum();
+    }
+
+}
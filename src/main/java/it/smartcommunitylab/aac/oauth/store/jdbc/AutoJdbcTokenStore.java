@@ -16,23 +16,40 @@
 
 package it.smartcommunitylab.aac.oauth.store.jdbc;
 
+import java.sql.PreparedStatement;
 import java.sql.ResultSet;
 import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+import java.util.stream.Collectors;
 
 import javax.sql.DataSource;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.dao.DataAccessException;
 import org.springframework.dao.EmptyResultDataAccessException;
 import org.springframework.jdbc.core.JdbcTemplate;
 import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.support.SqlLobValue;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
 import org.springframework.security.oauth2.common.OAuth2AccessToken;
 import org.springframework.security.oauth2.common.OAuth2RefreshToken;
 import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.token.AuthenticationKeyGenerator;
 import org.springframework.security.oauth2.provider.token.store.JdbcTokenStore;
 
+import io.micrometer.core.instrument.MeterRegistry;
 import it.smartcommunitylab.aac.oauth.store.ExtTokenStore;
 import it.smartcommunitylab.aac.oauth.store.ExtendedAuthenticationKeyGenerator;
+import it.smartcommunitylab.aac.oauth.store.PurgeableStore;
+import it.smartcommunitylab.aac.repository.JdbcSchemaUtils;
 
 /**
  * Token store with DB tables creation on startup.
@@ -41,20 +58,68 @@ import it.smartcommunitylab.aac.oauth.store.ExtendedAuthenticationKeyGenerator;
  * @author raman
  *
  */
-public class AutoJdbcTokenStore extends JdbcTokenStore implements ExtTokenStore {
+public class AutoJdbcTokenStore extends JdbcTokenStore implements ExtTokenStore, PurgeableStore {
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     private JdbcTemplate jdbcTemplate;
 
-    private static final String DEFAULT_CREATE_RT_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_refresh_token ( token_id VARCHAR(64) NOT NULL PRIMARY KEY, token BLOB NOT NULL, authentication BLOB NOT NULL);";
-    private static final String DEFAULT_CREATE_AT_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_access_token (token_id VARCHAR(256),  token BLOB, authentication_id VARCHAR(256), user_name VARCHAR(256), client_id VARCHAR(256), authentication BLOB, refresh_token VARCHAR(256));";
+    private static final String DEFAULT_CREATE_RT_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_refresh_token ( token_id VARCHAR(64) NOT NULL PRIMARY KEY, token BLOB NOT NULL, authentication BLOB NOT NULL, expires_at TIMESTAMP NULL);";
+    private static final String DEFAULT_CREATE_AT_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_access_token (token_id VARCHAR(256) NOT NULL PRIMARY KEY,  token BLOB, authentication_id VARCHAR(256), user_name VARCHAR(256), client_id VARCHAR(256), authentication BLOB, refresh_token VARCHAR(256), expires_at TIMESTAMP NULL);";
 
+    private static final String DEFAULT_INSERT_ACCESS_TOKEN = "insert into oauth_access_token (token_id, token, authentication_id, user_name, client_id, authentication, refresh_token, expires_at) values (?, ?, ?, ?, ?, ?, ?, ?)";
+    private static final String DEFAULT_INSERT_REFRESH_TOKEN = "insert into oauth_refresh_token (token_id, token, authentication, expires_at) values (?, ?, ?, ?)";
     private static final String DEFAULT_SELECT_ACCESS_TOKEN_FROM_REFRESH_TOKEN = "select token_id, token from oauth_access_token where refresh_token = ?";
+    private static final String DEFAULT_LOCK_REFRESH_TOKEN = "select token_id from oauth_refresh_token where token_id = ? for update";
+    private static final String DEFAULT_SELECT_ACCESS_TOKEN_AUTHENTICATION = "select token_id, authentication from oauth_access_token where token_id = ?";
+    private static final String DEFAULT_SELECT_REFRESH_TOKEN_AUTHENTICATION = "select token_id, authentication from oauth_refresh_token where token_id = ?";
+    private static final String DEFAULT_UPDATE_ACCESS_TOKEN = "update oauth_access_token set token = ?, expires_at = ? where token_id = ?";
+    private static final String DEFAULT_UPDATE_ACCESS_TOKEN_AUTHENTICATION = "update oauth_access_token set authentication = ? where token_id = ?";
+    private static final String DEFAULT_UPDATE_REFRESH_TOKEN = "update oauth_refresh_token set token = ?, expires_at = ? where token_id = ?";
+    private static final String DEFAULT_UPDATE_REFRESH_TOKEN_AUTHENTICATION = "update oauth_refresh_token set authentication = ? where token_id = ?";
+
+    private static final String DEFAULT_SELECT_EXPIRED_ACCESS_TOKENS = "select token_id from oauth_access_token where expires_at < ?";
+    private static final String DEFAULT_DELETE_EXPIRED_ACCESS_TOKEN = "delete from oauth_access_token where token_id = ? and expires_at < ?";
+    private static final String DEFAULT_SELECT_EXPIRED_REFRESH_TOKENS = "select token_id from oauth_refresh_token where expires_at < ?";
+    private static final String DEFAULT_DELETE_EXPIRED_REFRESH_TOKEN = "delete from oauth_refresh_token where token_id = ? and expires_at < ?";
+
+    private static final String DEFAULT_SELECT_UNSET_ACCESS_TOKENS = "select token_id, token from oauth_access_token where expires_at is null and token_id > ? order by token_id";
+    private static final String DEFAULT_BACKFILL_ACCESS_TOKEN = "update oauth_access_token set expires_at = ? where token_id = ? and expires_at is null";
+    private static final String DEFAULT_DELETE_ACCESS_TOKEN = "delete from oauth_access_token where token_id = ?";
+    private static final String DEFAULT_SELECT_UNSET_REFRESH_TOKENS = "select token_id, token from oauth_refresh_token where expires_at is null and token_id > ? order by token_id";
+    private static final String DEFAULT_BACKFILL_REFRESH_TOKEN = "update oauth_refresh_token set expires_at = ? where token_id = ? and expires_at is null";
+    private static final String DEFAULT_DELETE_REFRESH_TOKEN = "delete from oauth_refresh_token where token_id = ?";
+
+    public static final String METRIC_SIZE = "aac.oauth.tokenstore.size";
+    public static final String METRIC_DECODE = "aac.oauth.tokenstore.decode";
+    public static final String METRIC_SAVED = "aac.oauth.tokenstore.migration.saved";
+
+    private static final String KIND_ACCESS = "access_token";
+    private static final String KIND_REFRESH = "refresh_token";
+    private static final String KIND_AUTHENTICATION = "authentication";
+    private static final String FORMAT_COMPACT = "compact";
+    private static final String FORMAT_LEGACY = "legacy";
 
     private String createRefreshTokenStatement = DEFAULT_CREATE_RT_TABLE_STATEMENT;
     private String createAccessTokenStatement = DEFAULT_CREATE_AT_TABLE_STATEMENT;
 
+    private String insertAccessTokenSql = DEFAULT_INSERT_ACCESS_TOKEN;
+    private String insertRefreshTokenSql = DEFAULT_INSERT_REFRESH_TOKEN;
     private String selectAccessTokenFromRefreshTokenSql = DEFAULT_SELECT_ACCESS_TOKEN_FROM_REFRESH_TOKEN;
+    private String lockRefreshTokenSql = DEFAULT_LOCK_REFRESH_TOKEN;
+
+    // keep a reference, super does not expose it
+    private AuthenticationKeyGenerator authenticationKeyGenerator;
+
+    // compact encoding, legacy rows are migrated on read
+    private final CompactTokenSerializer serializer = new CompactTokenSerializer();
+    private boolean compactEncoding = true;
+    private boolean migrateOnRead = true;
+
+    private MeterRegistry meterRegistry;
+
+    // backfill progress, non expiring tokens keep a null expiration
+    private String accessBackfillCursor = "";
+    private String refreshBackfillCursor = "";
 
     /**
      * @param dataSource
@@ -72,6 +137,30 @@ public class AutoJdbcTokenStore extends JdbcTokenStore implements ExtTokenStore
         this.jdbcTemplate = new JdbcTemplate(dataSource);
         jdbcTemplate.execute(createAccessTokenStatement);
         jdbcTemplate.execute(createRefreshTokenStatement);
+
+        // upgrade tables created by previous versions
+        JdbcSchemaUtils.addColumn(jdbcTemplate, "oauth_access_token", "expires_at", "TIMESTAMP NULL");
+        JdbcSchemaUtils.addColumn(jdbcTemplate, "oauth_refresh_token", "expires_at", "TIMESTAMP NULL");
+
+        // legacy access token tables have no primary key
+        try {
+            JdbcSchemaUtils.addPrimaryKey(jdbcTemplate, "oauth_access_token", "token_id");
+        } catch (DataAccessException e) {
+            logger.warn("unable to add primary key to oauth_access_token: " + e.getMessage());
+            JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_access_token", "oauth_at_token_id_idx", "token_id");
+        }
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_access_token", "oauth_at_refresh_token_idx",
+                "refresh_token");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_access_token", "oauth_at_client_id_idx", "client_id");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_access_token", "oauth_at_user_name_idx", "user_name");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_access_token", "oauth_at_expires_at_idx", "expires_at");
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_refresh_token", "oauth_rt_expires_at_idx", "expires_at");
+    }
+
+    @Override
+    public void setAuthenticationKeyGenerator(AuthenticationKeyGenerator authenticationKeyGenerator) {
+        super.setAuthenticationKeyGenerator(authenticationKeyGenerator);
+        this.authenticationKeyGenerator = authenticationKeyGenerator;
     }
 
 //    /**
@@ -87,12 +176,180 @@ public class AutoJdbcTokenStore extends JdbcTokenStore implements ExtTokenStore
 //        initSchema(dataSource);
 //    }
 
+    public void setCompactEncoding(boolean compactEncoding) {
+        this.compactEncoding = compactEncoding;
+    }
+
+    public void setMigrateOnRead(boolean migrateOnRead) {
+        this.migrateOnRead = migrateOnRead;
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        this.meterRegistry = meterRegistry;
+    }
+
     @Override
     public OAuth2AccessToken getAccessToken(OAuth2Authentication authentication) {
         // we don't want to read a token from an authentication, it's a bad design
         return null;
     }
 
+    @Override
+    public void storeAccessToken(OAuth2AccessToken token, OAuth2Authentication authentication) {
+        String refreshToken = null;
+        if (token.getRefreshToken() != null) {
+            refreshToken = token.getRefreshToken().getValue();
+        }
+
+        // replace if present, a plain delete avoids reading back the row
+        removeAccessToken(token.getValue());
+
+        jdbcTemplate.update(insertAccessTokenSql,
+                new Object[] {
+                        extractTokenKey(token.getValue()),
+                        new SqlLobValue(serializeAccessToken(token)),
+                        authenticationKeyGenerator.extractKey(authentication),
+                        authentication.isClientOnly() ? null : authentication.getName(),
+                        authentication.getOAuth2Request().getClientId(),
+                        new SqlLobValue(serializeAuthentication(authentication)),
+                        extractTokenKey(refreshToken),
+                        toTimestamp(token.getExpiration())
+                },
+                new int[] { Types.VARCHAR, Types.BLOB, Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB,
+                        Types.VARCHAR, Types.TIMESTAMP });
+    }
+
+    @Override
+    public void storeRefreshToken(OAuth2RefreshToken refreshToken, OAuth2Authentication authentication) {
+        Date expiration = null;
+        if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+            expiration = ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration();
+        }
+
+        jdbcTemplate.update(insertRefreshTokenSql,
+                new Object[] {
+                        extractTokenKey(refreshToken.getValue()),
+                        new SqlLobValue(serializeRefreshToken(refreshToken)),
+                        new SqlLobValue(serializeAuthentication(authentication)),
+                        toTimestamp(expiration)
+                },
+                new int[] { Types.VARCHAR, Types.BLOB, Types.BLOB, Types.TIMESTAMP });
+    }
+
+    /*
+     * Expiry
+     */
+    @Override
+    public int purgeExpired(Date now, int limit) {
+        int count = purge(DEFAULT_SELECT_EXPIRED_ACCESS_TOKENS, DEFAULT_DELETE_EXPIRED_ACCESS_TOKEN, now, limit);
+        if (count < limit) {
+            count += purge(DEFAULT_SELECT_EXPIRED_REFRESH_TOKENS, DEFAULT_DELETE_EXPIRED_REFRESH_TOKEN, now,
+                    limit - count);
+        }
+
+        return count;
+    }
+
+    @Override
+    public synchronized int backfillExpiration(int limit) {
+        int count = 0;
+        if (accessBackfillCursor != null) {
+            List<Object[]> rows = fetchUnset(DEFAULT_SELECT_UNSET_ACCESS_TOKENS, accessBackfillCursor, limit);
+            accessBackfillCursor = backfill(rows, DEFAULT_BACKFILL_ACCESS_TOKEN, DEFAULT_DELETE_ACCESS_TOKEN,
+                    bytes -> {
+                        OAuth2AccessToken token = serializer.isCompact(bytes)
+                                ? serializer.deserializeAccessToken(bytes)
+                                : super.deserializeAccessToken(bytes);
+                        return token.getExpiration();
+                    }, limit);
+            count += rows.size();
+        }
+
+        if (count < limit && refreshBackfillCursor != null) {
+            List<Object[]> rows = fetchUnset(DEFAULT_SELECT_UNSET_REFRESH_TOKENS, refreshBackfillCursor,
+                    limit - count);
+            refreshBackfillCursor = backfill(rows, DEFAULT_BACKFILL_REFRESH_TOKEN, DEFAULT_DELETE_REFRESH_TOKEN,
+                    bytes -> {
+                        OAuth2RefreshToken token = serializer.isCompact(bytes)
+                                ? serializer.deserializeRefreshToken(bytes)
+                                : super.deserializeRefreshToken(bytes);
+                        return (token instanceof ExpiringOAuth2RefreshToken)
+                                ? ((ExpiringOAuth2RefreshToken) token).getExpiration()
+                                : null;
+                    }, limit - count);
+            count += rows.size();
+        }
+
+        return count;
+    }
+
+    private List<Object[]> fetchUnset(String selectSql, String cursor, int limit) {
+        return jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(selectSql);
+            ps.setMaxRows(limit);
+            ps.setString(1, cursor);
+            return ps;
+        }, (rs, rowNum) -> new Object[] { rs.getString(1), rs.getBytes(2) });
+    }
+
+    /*
+     * Decode expiration from the token payload, returns the next cursor or null
+     * when the table is done. Undecodable rows are dropped, as on read.
+     */
+    private String backfill(List<Object[]> rows, String updateSql, String deleteSql,
+            Function<byte[], Date> expiration, int limit) {
+        if (rows.isEmpty()) {
+            return null;
+        }
+
+        List<Object[]> updates = new ArrayList<>();
+        List<Object[]> deletes = new ArrayList<>();
+        for (Object[] row : rows) {
+            String key = (String) row[0];
+            try {
+                Date exp = expiration.apply((byte[]) row[1]);
+                if (exp != null) {
+                    updates.add(new Object[] { new Timestamp(exp.getTime()), key });
+                }
+            } catch (RuntimeException e) {
+                logger.warn("Dropping undecodable token " + key + ": " + e.getMessage());
+                deletes.add(new Object[] { key });
+            }
+        }
+
+        if (!updates.isEmpty()) {
+            jdbcTemplate.batchUpdate(updateSql, updates);
+        }
+        if (!deletes.isEmpty()) {
+            jdbcTemplate.batchUpdate(deleteSql, deletes);
+        }
+
+        return rows.size() < limit ? null : (String) rows.get(rows.size() - 1)[0];
+    }
+
+    private int purge(String selectSql, String deleteSql, Date now, int limit) {
+        Timestamp ts = new Timestamp(now.getTime());
+        List<String> keys = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(selectSql);
+            ps.setMaxRows(limit);
+            ps.setTimestamp(1, ts);
+            return ps;
+        }, (rs, rowNum) -> rs.getString(1));
+
+        if (keys.isEmpty()) {
+            return 0;
+        }
+
+        // check expiration again, other nodes could be sweeping concurrently
+        List<Object[]> args = keys.stream().map(k -> new Object[] { k, ts }).collect(Collectors.toList());
+        int[] results = jdbcTemplate.batchUpdate(deleteSql, args);
+        return Arrays.stream(results).map(r -> Math.max(r, 0)).sum();
+    }
+
+    private Timestamp toTimestamp(Date date) {
+        return date != null ? new Timestamp(date.getTime()) : null;
+    }
+
     public OAuth2AccessToken readAccessTokenForRefreshToken(String tokenValue) {
         OAuth2AccessToken accessToken = null;
 
@@ -116,6 +373,182 @@ public class AutoJdbcTokenStore extends JdbcTokenStore implements ExtTokenStore
         return accessToken;
     }
 
+    @Override
+    public boolean lockRefreshToken(String tokenValue) {
+        String key = extractTokenKey(tokenValue);
+
+        // row lock is held until the surrounding transaction ends
+        List<String> ids = jdbcTemplate.queryForList(lockRefreshTokenSql, String.class, key);
+        return !ids.isEmpty();
+    }
+
+    @Override
+    public OAuth2Authentication readAuthentication(String token) {
+        return readAuthentication(DEFAULT_SELECT_ACCESS_TOKEN_AUTHENTICATION,
+                DEFAULT_UPDATE_ACCESS_TOKEN_AUTHENTICATION, extractTokenKey(token));
+    }
+
+    @Override
+    public OAuth2Authentication readAuthenticationForRefreshToken(String value) {
+        return readAuthentication(DEFAULT_SELECT_REFRESH_TOKEN_AUTHENTICATION,
+                DEFAULT_UPDATE_REFRESH_TOKEN_AUTHENTICATION, extractTokenKey(value));
+    }
+
+    private OAuth2Authentication readAuthentication(String selectSql, String updateSql, String key) {
+        OAuth2Authentication authentication = null;
+
+        try {
+            byte[] bytes = jdbcTemplate.queryForObject(selectSql, new RowMapper<byte[]>() {
+                public byte[] mapRow(ResultSet rs, int rowNum) throws SQLException {
+                    return rs.getBytes(2);
+                }
+            }, key);
+
+            authentication = deserializeAuthentication(bytes);
+
+            if (compactEncoding && migrateOnRead && serializer.isJavaSerialized(bytes)
+                    && serializer.supports(authentication)) {
+                byte[] compact = serializer.serializeAuthentication(authentication);
+                migrate(updateSql, key, KIND_AUTHENTICATION, bytes, compact);
+            }
+        } catch (EmptyResultDataAccessException e) {
+            if (logger.isInfoEnabled()) {
+                logger.debug("Failed to find authentication for token " + key);
+            }
+        } catch (IllegalArgumentException e) {
+            logger.error("Could not extract authentication for token " + key);
+        }
+
+        return authentication;
+    }
+
+    /*
+     * Encoding
+     */
+
+    @Override
+    protected byte[] serializeAccessToken(OAuth2AccessToken token) {
+        if (compactEncoding && serializer.supports(token)) {
+            return record(KIND_ACCESS, serializer.serializeAccessToken(token));
+        }
+
+        return record(KIND_ACCESS, super.serializeAccessToken(token));
+    }
+
+    @Override
+    protected byte[] serializeRefreshToken(OAuth2RefreshToken token) {
+        if (compactEncoding) {
+            return record(KIND_REFRESH, serializer.serializeRefreshToken(token));
+        }
+
+        return record(KIND_REFRESH, super.serializeRefreshToken(token));
+    }
+
+    @Override
+    protected byte[] serializeAuthentication(OAuth2Authentication authentication) {
+        if (compactEncoding && serializer.supports(authentication)) {
+            return record(KIND_AUTHENTICATION, serializer.serializeAuthentication(authentication));
+        }
+
+        return record(KIND_AUTHENTICATION, super.serializeAuthentication(authentication));
+    }
+
+    @Override
+    protected OAuth2AccessToken deserializeAccessToken(byte[] token) {
+        long start = System.nanoTime();
+        boolean compact = serializer.isCompact(token);
+        OAuth2AccessToken accessToken = compact ? serializer.deserializeAccessToken(token)
+                : super.deserializeAccessToken(token);
+        recordDecode(KIND_ACCESS, compact, start);
+
+        if (!compact && compactEncoding && migrateOnRead && serializer.supports(accessToken)) {
+            byte[] bytes = serializer.serializeAccessToken(accessToken);
+            migrate(DEFAULT_UPDATE_ACCESS_TOKEN, extractTokenKey(accessToken.getValue()), KIND_ACCESS, token, bytes,
+                    accessToken.getExpiration());
+        }
+
+        return accessToken;
+    }
+
+    @Override
+    protected OAuth2RefreshToken deserializeRefreshToken(byte[] token) {
+        long start = System.nanoTime();
+        boolean compact = serializer.isCompact(token);
+        OAuth2RefreshToken refreshToken = compact ? serializer.deserializeRefreshToken(token)
+                : super.deserializeRefreshToken(token);
+        recordDecode(KIND_REFRESH, compact, start);
+
+        if (!compact && compactEncoding && migrateOnRead) {
+            Date expiration = null;
+            if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+                expiration = ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration();
+            }
+
+            byte[] bytes = serializer.serializeRefreshToken(refreshToken);
+            migrate(DEFAULT_UPDATE_REFRESH_TOKEN, extractTokenKey(refreshToken.getValue()), KIND_REFRESH, token,
+                    bytes, expiration);
+        }
+
+        return refreshToken;
+    }
+
+    @Override
+    protected OAuth2Authentication deserializeAuthentication(byte[] authentication) {
+        long start = System.nanoTime();
+        boolean compact = serializer.isCompact(authentication);
+        OAuth2Authentication auth = compact ? serializer.deserializeAuthentication(authentication)
+                : super.deserializeAuthentication(authentication);
+        recordDecode(KIND_AUTHENTICATION, compact, start);
+
+        return auth;
+    }
+
+    private void migrate(String updateSql, String key, String kind, byte[] legacy, byte[] compact) {
+        try {
+            jdbcTemplate.update(updateSql, new Object[] { new SqlLobValue(compact), key },
+                    new int[] { Types.BLOB, Types.VARCHAR });
+
+            if (meterRegistry != null) {
+                meterRegistry.summary(METRIC_SAVED, "kind", kind).record(legacy.length - compact.length);
+            }
+        } catch (DataAccessException e) {
+            // migration is best effort, row will be migrated on next read
+            logger.warn("Could not migrate " + kind + " for token " + key + ": " + e.getMessage());
+        }
+    }
+
+    private void migrate(String updateSql, String key, String kind, byte[] legacy, byte[] compact,
+            Date expiration) {
+        // also backfill expiration for legacy rows
+        try {
+            jdbcTemplate.update(updateSql, new Object[] { new SqlLobValue(compact), toTimestamp(expiration), key },
+                    new int[] { Types.BLOB, Types.TIMESTAMP, Types.VARCHAR });
+
+            if (meterRegistry != null) {
+                meterRegistry.summary(METRIC_SAVED, "kind", kind).record(legacy.length - compact.length);
+            }
+        } catch (DataAccessException e) {
+            // migration is best effort, row will be migrated on next read
+            logger.warn("Could not migrate " + kind + " for token " + key + ": " + e.getMessage());
+        }
+    }
+
+    private byte[] record(String kind, byte[] bytes) {
+        if (meterRegistry != null) {
+            meterRegistry.summary(METRIC_SIZE, "kind", kind, "format",
+                    serializer.isCompact(bytes) ? FORMAT_COMPACT : FORMAT_LEGACY).record(bytes.length);
+        }
+
+        return bytes;
+    }
+
+    private void recordDecode(String kind, boolean compact, long start) {
+        if (meterRegistry != null) {
+            meterRegistry.timer(METRIC_DECODE, "kind", kind, "format", compact ? FORMAT_COMPACT : FORMAT_LEGACY)
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
     @Override
     public OAuth2RefreshToken readRefreshTokenForAccessToken(String tokenValue) {
         // first we read access token and then extract refresh
@@ -0,0 +1,114 @@
+package it.smartcommunitylab.aac.oauth.store.jdbc;
+
+import java.sql.PreparedStatement;
+import java.sql.Timestamp;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import javax.sql.DataSource;
+
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.oauth.flow.WebhookDelivery;
+import it.smartcommunitylab.aac.repository.JdbcSchemaUtils;
+
+/*
+ * Outbox for webhook notifications with DB table creation on startup.
+ *
+ * Entries are claimed with a lease by a conditional update, so that with many
+ * nodes polling the same table each delivery is attempted by a single node at
+ * a time. Leases of crashed nodes simply expire.
+ *
+ * Payloads are stored as given, callers are expected to encrypt them.
+ */
+public class AutoJdbcWebhookOutboxStore {
+
+    private static final String DEFAULT_CREATE_TABLE_STATEMENT = "CREATE TABLE IF NOT EXISTS oauth_webhook_outbox (id VARCHAR(64) NOT NULL PRIMARY KEY, client_id VARCHAR(256) NOT NULL, url VARCHAR(2048) NOT NULL, payload BLOB NOT NULL, attempts INT DEFAULT 0, next_attempt TIMESTAMP NOT NULL, lease_until TIMESTAMP NULL, created_at TIMESTAMP NOT NULL);";
+    private static final String DEFAULT_INSERT_STATEMENT = "insert into oauth_webhook_outbox (id, client_id, url, payload, attempts, next_attempt, lease_until, created_at) values (?, ?, ?, ?, 0, ?, ?, ?)";
+    private static final String DEFAULT_SELECT_DUE_STATEMENT = "select id from oauth_webhook_outbox where next_attempt <= ? and (lease_until is null or lease_until < ?) order by next_attempt";
+    private static final String DEFAULT_CLAIM_STATEMENT = "update oauth_webhook_outbox set lease_until = ? where id = ? and (lease_until is null or lease_until < ?)";
+    private static final String DEFAULT_SELECT_STATEMENT = "select id, client_id, url, payload, attempts, created_at from oauth_webhook_outbox where id = ?";
+    private static final String DEFAULT_RESCHEDULE_STATEMENT = "update oauth_webhook_outbox set attempts = ?, next_attempt = ?, lease_until = null where id = ?";
+    private static final String DEFAULT_DELETE_STATEMENT = "delete from oauth_webhook_outbox where id = ?";
+    private static final String DEFAULT_COUNT_STATEMENT = "select count(*) from oauth_webhook_outbox";
+
+    private final JdbcTemplate jdbcTemplate;
+
+    private final RowMapper<WebhookDelivery> rowMapper = (rs, rowNum) -> new WebhookDelivery(
+            rs.getString("id"), rs.getString("client_id"), rs.getString("url"), rs.getBytes("payload"),
+            rs.getInt("attempts"), rs.getTimestamp("created_at").getTime());
+
+    public AutoJdbcWebhookOutboxStore(DataSource dataSource) {
+        Assert.notNull(dataSource, "DataSource required");
+        this.jdbcTemplate = new JdbcTemplate(dataSource);
+        initSchema();
+    }
+
+    protected void initSchema() {
+        jdbcTemplate.execute(DEFAULT_CREATE_TABLE_STATEMENT);
+        JdbcSchemaUtils.createIndex(jdbcTemplate, "oauth_webhook_outbox", "oauth_webhook_next_attempt_idx",
+                "next_attempt");
+    }
+
+    /*
+     * Add an entry already leased to the caller, to deliver right away
+     */
+    public WebhookDelivery add(String clientId, String url, byte[] payload, long leaseMillis) {
+        String id = UUID.randomUUID().toString();
+        long now = System.currentTimeMillis();
+        jdbcTemplate.update(DEFAULT_INSERT_STATEMENT,
+                new Object[] { id, clientId, url, payload, new Timestamp(now), new Timestamp(now + leaseMillis),
+                        new Timestamp(now) },
+                new int[] { Types.VARCHAR, Types.VARCHAR, Types.VARCHAR, Types.BLOB, Types.TIMESTAMP,
+                        Types.TIMESTAMP, Types.TIMESTAMP });
+
+        return new WebhookDelivery(id, clientId, url, payload, 0, now);
+    }
+
+    /*
+     * Claim up to limit due entries
+     */
+    public List<WebhookDelivery> claim(int limit, long leaseMillis) {
+        long now = System.currentTimeMillis();
+        Timestamp ts = new Timestamp(now);
+        List<String> ids = jdbcTemplate.query(con -> {
+            PreparedStatement ps = con.prepareStatement(DEFAULT_SELECT_DUE_STATEMENT);
+            ps.setMaxRows(limit);
+            ps.setTimestamp(1, ts);
+            ps.setTimestamp(2, ts);
+            return ps;
+        }, (rs, rowNum) -> rs.getString(1));
+
+        List<WebhookDelivery> result = new ArrayList<>();
+        Timestamp lease = new Timestamp(now + leaseMillis);
+        for (String id : ids) {
+            // another node could claim the same entry concurrently
+            if (jdbcTemplate.update(DEFAULT_CLAIM_STATEMENT, lease, id, ts) == 1) {
+                List<WebhookDelivery> list = jdbcTemplate.query(DEFAULT_SELECT_STATEMENT, rowMapper, id);
+                if (!list.isEmpty()) {
+                    result.add(list.get(0));
+                }
+            }
+        }
+
+        return result;
+    }
+
+    public void reschedule(String id, int attempts, long nextAttempt) {
+        jdbcTemplate.update(DEFAULT_RESCHEDULE_STATEMENT, attempts, new Timestamp(nextAttempt), id);
+    }
+
+    public void remove(String id) {
+        jdbcTemplate.update(DEFAULT_DELETE_STATEMENT, id);
+    }
+
+    public long count() {
+        Long count = jdbcTemplate.queryForObject(DEFAULT_COUNT_STATEMENT, Long.class);
+        return count != null ? count.longValue() : 0;
+    }
+
+}
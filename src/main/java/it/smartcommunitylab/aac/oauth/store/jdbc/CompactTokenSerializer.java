@@ -0,0 +1,695 @@
+package it.smartcommunitylab.aac.oauth.store.jdbc;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Serializable;
+import java.text.ParseException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+import org.springframework.security.core.Authentication;
+import org.springframework.security.core.GrantedAuthority;
+import org.springframework.security.core.authority.SimpleGrantedAuthority;
+import org.springframework.security.oauth2.common.DefaultExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.DefaultOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.ExpiringOAuth2RefreshToken;
+import org.springframework.security.oauth2.common.OAuth2AccessToken;
+import org.springframework.security.oauth2.common.OAuth2RefreshToken;
+import org.springframework.security.oauth2.common.util.SerializationUtils;
+import org.springframework.security.oauth2.provider.OAuth2Authentication;
+import org.springframework.security.oauth2.provider.OAuth2Request;
+import org.springframework.security.oauth2.provider.TokenRequest;
+
+import com.fasterxml.jackson.annotation.JsonInclude.Include;
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.nimbusds.jwt.JWTParser;
+
+import it.smartcommunitylab.aac.attributes.model.AbstractAttribute;
+import it.smartcommunitylab.aac.attributes.model.BooleanAttribute;
+import it.smartcommunitylab.aac.attributes.model.DateAttribute;
+import it.smartcommunitylab.aac.attributes.model.DateTimeAttribute;
+import it.smartcommunitylab.aac.attributes.model.NumberAttribute;
+import it.smartcommunitylab.aac.attributes.model.SerializableAttribute;
+import it.smartcommunitylab.aac.attributes.model.StringAttribute;
+import it.smartcommunitylab.aac.attributes.model.TimeAttribute;
+import it.smartcommunitylab.aac.core.UserDetails;
+import it.smartcommunitylab.aac.core.auth.RealmGrantedAuthority;
+import it.smartcommunitylab.aac.core.auth.StoredUserAuthenticationToken;
+import it.smartcommunitylab.aac.core.auth.UserAuthentication;
+import it.smartcommunitylab.aac.core.auth.WebAuthenticationDetails;
+import it.smartcommunitylab.aac.core.base.DefaultAccountImpl;
+import it.smartcommunitylab.aac.core.base.DefaultIdentityImpl;
+import it.smartcommunitylab.aac.core.base.DefaultUserAttributesImpl;
+import it.smartcommunitylab.aac.core.model.Attribute;
+import it.smartcommunitylab.aac.core.model.UserAccount;
+import it.smartcommunitylab.aac.core.model.UserAttributes;
+import it.smartcommunitylab.aac.core.model.UserIdentity;
+import it.smartcommunitylab.aac.core.model.UserResource;
+import it.smartcommunitylab.aac.model.AttributeType;
+import it.smartcommunitylab.aac.model.Subject;
+import it.smartcommunitylab.aac.model.SubjectStatus;
+import it.smartcommunitylab.aac.oauth.AACOAuth2AccessToken;
+
+/*
+ * Versioned compact encoding for tokens persisted in jdbc stores.
+ *
+ * Every payload starts with a 3 bytes header (magic, version, codec):
+ * - access and refresh tokens are stored as schema'd JSON with short keys,
+ * carrying only the fields needed to rebuild the token
+ * - authentications are stored as schema'd JSON, deflated when larger than a
+ * threshold: the OAuth2 request is stored as is, while the user authentication
+ * is reduced to subject, authorities, user details and web details, and
+ * restored as a StoredUserAuthenticationToken
+ *
+ * Deflated java serialization of authentications is still decoded, for rows
+ * written before the structural encoding. Payloads without header are legacy
+ * java serialized blobs and are decoded via the default strategy, letting the
+ * store migrate them on read.
+ */
+public class CompactTokenSerializer {
+
+    public static final byte MAGIC = 0x41;
+    public static final byte VERSION = 1;
+
+    public static final byte CODEC_JSON = 1;
+    // read only, for rows written by previous versions
+    public static final byte CODEC_DEFLATE_JAVA = 2;
+    public static final byte CODEC_DEFLATE_JSON = 3;
+
+    public static final int DEFLATE_THRESHOLD = 512;
+
+    private static final int HEADER_LENGTH = 3;
+
+    private final ObjectMapper mapper;
+    private final TypeReference<HashMap<String, Serializable>> serMapTypeRef = new TypeReference<HashMap<String, Serializable>>() {
+    };
+    private final TypeReference<HashMap<String, String>> strMapTypeRef = new TypeReference<HashMap<String, String>>() {
+    };
+    private final TypeReference<HashMap<String, Object>> mapTypeRef = new TypeReference<HashMap<String, Object>>() {
+    };
+
+    public CompactTokenSerializer() {
+        this.mapper = new ObjectMapper();
+        mapper.setSerializationInclusion(Include.NON_NULL);
+    }
+
+    public boolean isCompact(byte[] bytes) {
+        return bytes != null && bytes.length >= HEADER_LENGTH && bytes[0] == MAGIC;
+    }
+
+    /*
+     * Check if payload relies on java serialization, either legacy or deflated
+     */
+    public boolean isJavaSerialized(byte[] bytes) {
+        return !isCompact(bytes) || bytes[2] == CODEC_DEFLATE_JAVA;
+    }
+
+    public boolean supports(OAuth2AccessToken token) {
+        return token instanceof AACOAuth2AccessToken;
+    }
+
+    public boolean supports(OAuth2Authentication authentication) {
+        Authentication userAuth = authentication.getUserAuthentication();
+        return userAuth == null || userAuth instanceof UserAuthentication;
+    }
+
+    /*
+     * Access tokens
+     */
+    public byte[] serializeAccessToken(OAuth2AccessToken accessToken) {
+        if (!supports(accessToken)) {
+            throw new IllegalArgumentException("unsupported token type");
+        }
+
+        AACOAuth2AccessToken token = (AACOAuth2AccessToken) accessToken;
+        ObjectNode node = mapper.createObjectNode();
+        node.put("v", token.getValue());
+        if (token.getToken() != null && !token.getToken().equals(token.getValue())) {
+            node.put("t", token.getToken());
+        }
+        node.put("sub", token.getSubject());
+        node.put("azp", token.getAuthorizedParty());
+        if (token.getAudience() != null) {
+            ArrayNode aud = node.putArray("aud");
+            for (String a : token.getAudience()) {
+                aud.add(a);
+            }
+        }
+        node.put("rt", token.getResponseType());
+        node.put("realm", token.getRealm());
+        node.put("typ", token.getTokenType());
+        putDate(node, "exp", token.getExpiration());
+        putDate(node, "iat", token.getIssuedAt());
+        putDate(node, "nbf", token.getNotBeforeTime());
+
+        if (token.getScope() != null) {
+            ArrayNode scope = node.putArray("scope");
+            for (String s : token.getScope()) {
+                scope.add(s);
+            }
+        }
+
+        if (token.getRefreshToken() != null) {
+            node.set("rtk", refreshTokenToNode(token.getRefreshToken()));
+        }
+
+        if (token.getClaims() != null && !token.getClaims().isEmpty()) {
+            node.set("claims", mapper.valueToTree(token.getClaims()));
+        }
+
+        if (token.getAdditionalInformation() != null && !token.getAdditionalInformation().isEmpty()) {
+            node.set("ai", mapper.valueToTree(token.getAdditionalInformation()));
+        }
+
+        if (token.getIdToken() != null) {
+            try {
+                node.put("idt", token.getIdToken().serialize());
+            } catch (IllegalStateException e) {
+                // id token is informative only, skip
+            }
+        }
+
+        return withHeader(CODEC_JSON, writeJson(node));
+    }
+
+    public OAuth2AccessToken deserializeAccessToken(byte[] bytes) {
+        JsonNode node = readJson(bytes);
+
+        String value = node.path("v").asText();
+        String t = node.hasNonNull("t") ? node.get("t").asText() : value;
+        AACOAuth2AccessToken token = new AACOAuth2AccessToken(value, t);
+
+        token.setSubject(text(node, "sub"));
+        token.setAuthorizedParty(text(node, "azp"));
+        if (node.has("aud")) {
+            token.setAudience(mapper.convertValue(node.get("aud"), String[].class));
+        }
+        if (node.hasNonNull("rt")) {
+            token.setResponseType(node.get("rt").asText());
+        }
+        token.setRealm(text(node, "realm"));
+        if (node.hasNonNull("typ")) {
+            token.setTokenType(node.get("typ").asText());
+        }
+        token.setExpiration(date(node, "exp"));
+        token.setIssuedAt(date(node, "iat"));
+        token.setNotBeforeTime(date(node, "nbf"));
+
+        Set<String> scope = new HashSet<>();
+        if (node.has("scope")) {
+            node.get("scope").forEach(s -> scope.add(s.asText()));
+        }
+        token.setScope(scope);
+
+        if (node.has("rtk")) {
+            token.setRefreshToken(nodeToRefreshToken(node.get("rtk")));
+        }
+
+        if (node.has("claims")) {
+            token.setClaims(mapper.convertValue(node.get("claims"), serMapTypeRef));
+        }
+
+        if (node.has("ai")) {
+            token.setAdditionalInformation(mapper.convertValue(node.get("ai"), mapTypeRef));
+        }
+
+        if (node.hasNonNull("idt")) {
+            try {
+                token.setIdToken(JWTParser.parse(node.get("idt").asText()));
+            } catch (java.text.ParseException e) {
+                // id token is informative only, skip
+            }
+        }
+
+        return token;
+    }
+
+    /*
+     * Refresh tokens
+     */
+    public byte[] serializeRefreshToken(OAuth2RefreshToken refreshToken) {
+        return withHeader(CODEC_JSON, writeJson(refreshTokenToNode(refreshToken)));
+    }
+
+    public OAuth2RefreshToken deserializeRefreshToken(byte[] bytes) {
+        return nodeToRefreshToken(readJson(bytes));
+    }
+
+    /*
+     * Authentication
+     */
+    public byte[] serializeAuthentication(OAuth2Authentication authentication) {
+        if (!supports(authentication)) {
+            throw new IllegalArgumentException("unsupported user authentication type");
+        }
+
+        ObjectNode node = mapper.createObjectNode();
+        node.set("req", requestToNode(authentication.getOAuth2Request()));
+        if (authentication.getUserAuthentication() != null) {
+            node.set("user", userAuthToNode((UserAuthentication) authentication.getUserAuthentication()));
+        }
+
+        byte[] bytes = writeJson(node);
+        if (bytes.length < DEFLATE_THRESHOLD) {
+            return withHeader(CODEC_JSON, bytes);
+        }
+
+        return withHeader(CODEC_DEFLATE_JSON, deflate(bytes));
+    }
+
+    public OAuth2Authentication deserializeAuthentication(byte[] bytes) {
+        if (!isCompact(bytes)) {
+            throw new IllegalArgumentException("invalid payload");
+        }
+
+        if (bytes[2] == CODEC_DEFLATE_JAVA) {
+            checkHeader(bytes, CODEC_DEFLATE_JAVA);
+            return SerializationUtils.deserialize(inflate(bytes));
+        }
+
+        JsonNode node;
+        if (bytes[2] == CODEC_DEFLATE_JSON) {
+            checkHeader(bytes, CODEC_DEFLATE_JSON);
+            try {
+                node = mapper.readTree(inflate(bytes));
+            } catch (IOException e) {
+                throw new IllegalArgumentException(e.getMessage());
+            }
+        } else {
+            node = readJson(bytes);
+        }
+
+        OAuth2Request request = nodeToRequest(node.path("req"));
+        Authentication userAuth = node.has("user") ? nodeToUserAuth(node.get("user")) : null;
+
+        return new OAuth2Authentication(request, userAuth);
+    }
+
+    /*
+     * OAuth2 request
+     */
+    private ObjectNode requestToNode(OAuth2Request request) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("cid", request.getClientId());
+        putStrings(node, "scope", request.getScope());
+        putStrings(node, "res", request.getResourceIds());
+        putStrings(node, "rt", request.getResponseTypes());
+        putAuthorities(node, "auth", request.getAuthorities());
+        node.put("ok", request.isApproved());
+        node.put("uri", request.getRedirectUri());
+        if (request.getRequestParameters() != null && !request.getRequestParameters().isEmpty()) {
+            node.set("params", mapper.valueToTree(request.getRequestParameters()));
+        }
+        if (request.getExtensions() != null && !request.getExtensions().isEmpty()) {
+            node.set("ext", mapper.valueToTree(request.getExtensions()));
+        }
+
+        TokenRequest refresh = request.getRefreshTokenRequest();
+        if (refresh != null) {
+            ObjectNode rfr = node.putObject("rfr");
+            rfr.put("cid", refresh.getClientId());
+            rfr.put("gt", refresh.getGrantType());
+            putStrings(rfr, "scope", refresh.getScope());
+            rfr.set("params", mapper.valueToTree(refresh.getRequestParameters()));
+        }
+
+        return node;
+    }
+
+    private OAuth2Request nodeToRequest(JsonNode node) {
+        Map<String, String> params = node.has("params")
+                ? mapper.convertValue(node.get("params"), strMapTypeRef)
+                : Collections.emptyMap();
+        Map<String, Serializable> ext = node.has("ext")
+                ? mapper.convertValue(node.get("ext"), serMapTypeRef)
+                : null;
+
+        OAuth2Request request = new OAuth2Request(params, text(node, "cid"), authorities(node, "auth"),
+                node.path("ok").asBoolean(), strings(node, "scope"), strings(node, "res"), text(node, "uri"),
+                strings(node, "rt"), ext);
+
+        if (node.has("rfr")) {
+            JsonNode rfr = node.get("rfr");
+            Map<String, String> rparams = rfr.has("params")
+                    ? mapper.convertValue(rfr.get("params"), strMapTypeRef)
+                    : Collections.emptyMap();
+            request = request.refresh(new TokenRequest(rparams, text(rfr, "cid"), strings(rfr, "scope"),
+                    text(rfr, "gt")));
+        }
+
+        return request;
+    }
+
+    /*
+     * User authentication
+     */
+    private ObjectNode userAuthToNode(UserAuthentication userAuth) {
+        ObjectNode node = mapper.createObjectNode();
+        Subject subject = userAuth.getSubject();
+        node.put("sub", subject.getSubjectId());
+        node.put("realm", userAuth.getRealm());
+        node.put("name", subject.getName());
+        node.put("typ", subject.getType());
+        node.put("ok", userAuth.isAuthenticated());
+        if (userAuth.getCreatedAt() != null) {
+            node.put("iat", userAuth.getCreatedAt().toEpochMilli());
+        }
+        putAuthorities(node, "auth", userAuth.getAuthorities());
+
+        UserDetails user = userAuth.getUser();
+        if (user != null) {
+            ArrayNode ids = node.putArray("ids");
+            user.getIdentities().forEach(i -> ids.add(identityToNode(i)));
+            ArrayNode attrs = node.putArray("attrs");
+            user.getAttributeSets(true).forEach(a -> attrs.add(attributesToNode(a)));
+        }
+
+        WebAuthenticationDetails web = userAuth.getWebAuthenticationDetails();
+        if (web != null) {
+            ObjectNode wn = node.putObject("web");
+            wn.put("ip", web.getRemoteAddress());
+            wn.put("sid", web.getSessionId());
+            wn.put("ts", web.getTimestamp());
+            wn.put("scheme", web.getScheme());
+            wn.put("proto", web.getProtocol());
+            if (web.getLocale() != null) {
+                wn.put("locale", web.getLocale().toLanguageTag());
+            }
+            wn.put("ua", web.getUserAgent());
+        }
+
+        return node;
+    }
+
+    private UserAuthentication nodeToUserAuth(JsonNode node) {
+        String subjectId = text(node, "sub");
+        String realm = text(node, "realm");
+        Subject subject = new Subject(subjectId, realm, text(node, "name"), text(node, "typ"));
+        Set<GrantedAuthority> authorities = authorities(node, "auth");
+        Instant createdAt = node.hasNonNull("iat") ? Instant.ofEpochMilli(node.get("iat").asLong()) : null;
+
+        List<UserIdentity> identities = new ArrayList<>();
+        node.path("ids").forEach(i -> identities.add(nodeToIdentity(i)));
+        List<UserAttributes> attributeSets = new ArrayList<>();
+        node.path("attrs").forEach(a -> attributeSets.add(nodeToAttributes(a)));
+        UserDetails user = new UserDetails(subjectId, realm, identities, attributeSets, authorities);
+
+        WebAuthenticationDetails web = null;
+        if (node.has("web")) {
+            JsonNode wn = node.get("web");
+            Locale locale = wn.hasNonNull("locale") ? Locale.forLanguageTag(wn.get("locale").asText()) : null;
+            web = new WebAuthenticationDetails(text(wn, "ip"), text(wn, "sid"), wn.path("ts").asLong(),
+                    text(wn, "scheme"), text(wn, "proto"), locale, text(wn, "ua"));
+        }
+
+        return new StoredUserAuthenticationToken(subject, realm, authorities, node.path("ok").asBoolean(),
+                createdAt, user, web);
+    }
+
+    private ObjectNode identityToNode(UserIdentity identity) {
+        ObjectNode node = resourceToNode(identity);
+        UserAccount account = identity.getAccount();
+        if (account != null) {
+            ObjectNode an = resourceToNode(account);
+            an.put("id", account.getId());
+            an.put("uuid", account.getUuid());
+            an.put("username", account.getUsername());
+            an.put("email", account.getEmailAddress());
+            an.put("ev", account.isEmailVerified());
+            if (account.isLocked()) {
+                an.put("status", SubjectStatus.LOCKED.getValue());
+            }
+            node.set("acc", an);
+        }
+
+        if (identity.getAttributes() != null) {
+            ArrayNode attrs = node.putArray("attrs");
+            identity.getAttributes().forEach(a -> attrs.add(attributesToNode(a)));
+        }
+
+        return node;
+    }
+
+    private UserIdentity nodeToIdentity(JsonNode node) {
+        DefaultIdentityImpl identity = new DefaultIdentityImpl(text(node, "a"), text(node, "p"), text(node, "r"),
+                text(node, "u"));
+        if (node.has("acc")) {
+            JsonNode an = node.get("acc");
+            DefaultAccountImpl account = new DefaultAccountImpl(text(an, "a"), text(an, "p"), text(an, "r"));
+            account.setUserId(text(an, "u"));
+            account.setId(text(an, "id"));
+            account.setUuid(text(an, "uuid"));
+            account.setUsername(text(an, "username"));
+            account.setEmailAddress(text(an, "email"));
+            account.setEmailVerified(an.path("ev").asBoolean());
+            account.setStatus(text(an, "status"));
+            identity.setAccount(account);
+        }
+
+        List<UserAttributes> attributeSets = new ArrayList<>();
+        node.path("attrs").forEach(a -> attributeSets.add(nodeToAttributes(a)));
+        identity.setAttributes(attributeSets);
+
+        return identity;
+    }
+
+    private ObjectNode attributesToNode(UserAttributes attributeSet) {
+        ObjectNode node = resourceToNode(attributeSet);
+        node.put("id", attributeSet.getIdentifier());
+        node.put("uuid", attributeSet.getUuid());
+        node.put("n", attributeSet.getName());
+        node.put("d", attributeSet.getDescription());
+
+        ArrayNode attrs = node.putArray("attrs");
+        if (attributeSet.getAttributes() != null) {
+            for (Attribute attr : attributeSet.getAttributes()) {
+                ObjectNode an = attrs.addObject();
+                an.put("k", attr.getKey());
+                an.put("t", attr.getType() != null ? attr.getType().getValue() : null);
+                if (attr.getType() == AttributeType.OBJECT) {
+                    an.set("v", mapper.valueToTree(attr.getValue()));
+                } else {
+                    an.put("v", attr.exportValue());
+                }
+                an.put("n", attr.getName());
+                an.put("d", attr.getDescription());
+            }
+        }
+
+        return node;
+    }
+
+    private UserAttributes nodeToAttributes(JsonNode node) {
+        DefaultUserAttributesImpl attributeSet = new DefaultUserAttributesImpl(text(node, "a"), text(node, "p"),
+                text(node, "r"), text(node, "u"), text(node, "id"));
+        attributeSet.setUuid(text(node, "uuid"));
+        attributeSet.setName(text(node, "n"));
+        attributeSet.setDescription(text(node, "d"));
+
+        node.path("attrs").forEach(an -> {
+            AbstractAttribute attr = nodeToAttribute(an);
+            if (attr != null) {
+                attr.setName(text(an, "n"));
+                attr.setDescription(text(an, "d"));
+                attributeSet.addAttribute(attr);
+            }
+        });
+
+        return attributeSet;
+    }
+
+    private AbstractAttribute nodeToAttribute(JsonNode node) {
+        String key = text(node, "k");
+        AttributeType type = AttributeType.parse(text(node, "t"));
+        if (key == null || type == null || !node.hasNonNull("v")) {
+            return null;
+        }
+
+        try {
+            switch (type) {
+            case BOOLEAN:
+                return new BooleanAttribute(key, BooleanAttribute.parseValue(text(node, "v")));
+            case DATE:
+                return new DateAttribute(key, DateAttribute.parseValue(text(node, "v")));
+            case DATETIME:
+                return new DateTimeAttribute(key, DateTimeAttribute.parseValue(text(node, "v")));
+            case NUMBER:
+                return new NumberAttribute(key, NumberAttribute.parseValue(text(node, "v")));
+            case STRING:
+                return new StringAttribute(key, text(node, "v"));
+            case TIME:
+                return new TimeAttribute(key, TimeAttribute.parseValue(text(node, "v")));
+            default:
+                return new SerializableAttribute(key, mapper.convertValue(node.get("v"), Serializable.class));
+            }
+        } catch (ParseException e) {
+            // skip unreadable values, as the attribute mappers do
+            return null;
+        }
+    }
+
+    private ObjectNode resourceToNode(UserResource resource) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("a", resource.getAuthority());
+        node.put("p", resource.getProvider());
+        node.put("r", resource.getRealm());
+        node.put("u", resource.getUserId());
+        return node;
+    }
+
+    /*
+     * Helpers
+     */
+    private ObjectNode refreshTokenToNode(OAuth2RefreshToken refreshToken) {
+        ObjectNode node = mapper.createObjectNode();
+        node.put("v", refreshToken.getValue());
+        if (refreshToken instanceof ExpiringOAuth2RefreshToken) {
+            putDate(node, "exp", ((ExpiringOAuth2RefreshToken) refreshToken).getExpiration());
+        }
+        return node;
+    }
+
+    private OAuth2RefreshToken nodeToRefreshToken(JsonNode node) {
+        String value = node.path("v").asText();
+        Date exp = date(node, "exp");
+        if (exp != null) {
+            return new DefaultExpiringOAuth2RefreshToken(value, exp);
+        }
+
+        return new DefaultOAuth2RefreshToken(value);
+    }
+
+    private void putDate(ObjectNode node, String key, Date date) {
+        if (date != null) {
+            node.put(key, date.getTime());
+        }
+    }
+
+    private Date date(JsonNode node, String key) {
+        return node.hasNonNull(key) ? new Date(node.get(key).asLong()) : null;
+    }
+
+    private String text(JsonNode node, String key) {
+        return node.hasNonNull(key) ? node.get(key).asText() : null;
+    }
+
+    private void putStrings(ObjectNode node, String key, Collection<String> values) {
+        if (values != null && !values.isEmpty()) {
+            ArrayNode array = node.putArray(key);
+            values.forEach(v -> array.add(v));
+        }
+    }
+
+    private Set<String> strings(JsonNode node, String key) {
+        Set<String> values = new HashSet<>();
+        node.path(key).forEach(v -> values.add(v.asText()));
+        return values;
+    }
+
+    private void putAuthorities(ObjectNode node, String key, Collection<? extends GrantedAuthority> authorities) {
+        if (authorities == null || authorities.isEmpty()) {
+            return;
+        }
+
+        ArrayNode array = node.putArray(key);
+        for (GrantedAuthority ga : authorities) {
+            if (ga instanceof RealmGrantedAuthority) {
+                RealmGrantedAuthority rga = (RealmGrantedAuthority) ga;
+                array.addObject().put("r", rga.getRealm()).put("a", rga.getRole());
+            } else {
+                array.add(ga.getAuthority());
+            }
+        }
+    }
+
+    private Set<GrantedAuthority> authorities(JsonNode node, String key) {
+        Set<GrantedAuthority> authorities = new HashSet<>();
+        node.path(key).forEach(a -> {
+            if (a.isObject()) {
+                authorities.add(new RealmGrantedAuthority(text(a, "r"), text(a, "a")));
+            } else {
+                authorities.add(new SimpleGrantedAuthority(a.asText()));
+            }
+        });
+        return authorities;
+    }
+
+    private byte[] deflate(byte[] bytes) {
+        ByteArrayOutputStream bos = new ByteArrayOutputStream(bytes.length / 2);
+        Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+        try (DeflaterOutputStream dos = new DeflaterOutputStream(bos, deflater)) {
+            dos.write(bytes);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        } finally {
+            deflater.end();
+        }
+
+        return bos.toByteArray();
+    }
+
+    private byte[] inflate(byte[] bytes) {
+        InputStream is = new ByteArrayInputStream(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH);
+        try (InflaterInputStream iis = new InflaterInputStream(is)) {
+            return iis.readAllBytes();
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private byte[] writeJson(JsonNode node) {
+        try {
+            return mapper.writeValueAsBytes(node);
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private JsonNode readJson(byte[] bytes) {
+        checkHeader(bytes, CODEC_JSON);
+        try {
+            return mapper.readTree(new ByteArrayInputStream(bytes, HEADER_LENGTH, bytes.length - HEADER_LENGTH));
+        } catch (IOException e) {
+            throw new IllegalArgumentException(e.getMessage());
+        }
+    }
+
+    private byte[] withHeader(byte codec, byte[] payload) {
+        byte[] bytes = new byte[payload.length + HEADER_LENGTH];
+        bytes[0] = MAGIC;
+        bytes[1] = VERSION;
+        bytes[2] = codec;
+        System.arraycopy(payload, 0, bytes, HEADER_LENGTH, payload.length);
+        return bytes;
+    }
+
+    private void checkHeader(byte[] bytes, byte codec) {
+        if (!isCompact(bytes)) {
+            throw new IllegalArgumentException("invalid payload");
+        }
+        if (bytes[1] != VERSION) {
+            throw new IllegalArgumentException("unsupported version " + String.valueOf(bytes[1]));
+        }
+        if (bytes[2] != codec) {
+            throw new IllegalArgumentException("unsupported codec " + String.valueOf(bytes[2]));
+        }
+    }
+}
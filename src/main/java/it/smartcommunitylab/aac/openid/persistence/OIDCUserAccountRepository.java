@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.openid.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.stereotype.Repository;
@@ -27,4 +28,6 @@ public interface OIDCUserAccountRepository
 
     List<OIDCUserAccount> findByUserIdAndProvider(String userId, String provider);
 
+    List<OIDCUserAccount> findByUserIdInAndProvider(Collection<String> userIds, String provider);
+
 }
\ No newline at end of file
@@ -1,6 +1,7 @@
 package it.smartcommunitylab.aac.openid.provider;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -161,6 +162,16 @@ public class OIDCAccountProvider extends AbstractProvider implements AccountProv
         return accounts;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<OIDCUserAccount> listAccounts(Collection<String> userIds) {
+        List<OIDCUserAccount> accounts = accountService.findAccountByUsers(repositoryId, userIds);
+
+        // map to our authority
+        accounts.forEach(a -> a.setAuthority(getAuthority()));
+        return accounts;
+    }
+
     @Transactional(readOnly = true)
     public OIDCUserAccount getAccount(String subject) throws NoSuchUserException {
         OIDCUserAccount account = findAccountBySubject(subject);
@@ -1,5 +1,7 @@
 package it.smartcommunitylab.aac.openid.service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -18,6 +20,7 @@ import it.smartcommunitylab.aac.model.SubjectStatus;
 import it.smartcommunitylab.aac.openid.persistence.OIDCUserAccount;
 import it.smartcommunitylab.aac.openid.persistence.OIDCUserAccountId;
 import it.smartcommunitylab.aac.openid.persistence.OIDCUserAccountRepository;
+import it.smartcommunitylab.aac.repository.QueryUtils;
 
 /*
  * An internal service which handles persistence for oidc user accounts, via JPA
@@ -99,6 +102,22 @@ public class OIDCUserAccountService implements UserAccountService<OIDCUserAccoun
         }).collect(Collectors.toList());
     }
 
+    @Transactional(readOnly = true)
+    public List<OIDCUserAccount> findAccountByUsers(String repository, Collection<String> userIds) {
+        logger.debug("find account for {} users in repository {}", String.valueOf(userIds.size()),
+                String.valueOf(repository));
+
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<OIDCUserAccount> accounts = QueryUtils.findIn(userIds,
+                ids -> accountRepository.findByUserIdInAndProvider(ids, repository));
+        return accounts.stream().map(a -> {
+            return accountRepository.detach(a);
+        }).collect(Collectors.toList());
+    }
+
     @Override
     public OIDCUserAccount addAccount(String repository, String subject, OIDCUserAccount reg)
             throws RegistrationException {
@@ -0,0 +1,50 @@
+package it.smartcommunitylab.aac.openid.session;
+
+import java.util.Collection;
+
+import org.springframework.util.Assert;
+
+import it.smartcommunitylab.aac.core.store.SharedStateStore;
+import it.smartcommunitylab.aac.core.store.StateSerializer;
+import it.smartcommunitylab.aac.core.store.StateStore;
+
+/*
+ * Session state store shared between nodes, states are keyed by value
+ */
+public class SharedSessionStateStore implements SessionStateStore {
+
+    public static final String NAMESPACE = "oidc.session";
+
+    private final SharedStateStore<String> states;
+
+    public SharedSessionStateStore(StateStore store, long ttl, int nearCacheSize) {
+        StateSerializer serializer = new StateSerializer();
+        this.states = new SharedStateStore<>(NAMESPACE, store, ttl,
+                s -> serializer.serializeText(s),
+                b -> serializer.deserializeText(b),
+                nearCacheSize);
+    }
+
+    @Override
+    public String find(String state) {
+        Assert.hasText(state, "state can not be null or empty");
+        return states.find(state);
+    }
+
+    @Override
+    public Collection<String> findAll() {
+        return states.findAll();
+    }
+
+    @Override
+    public String store(String state) {
+        Assert.hasText(state, "state can not be null or empty");
+        states.store(state, state);
+        return state;
+    }
+
+    @Override
+    public void remove(String state) {
+        states.remove(state);
+    }
+}
@@ -0,0 +1,147 @@
+package it.smartcommunitylab.aac.repository;
+
+import java.sql.DatabaseMetaData;
+import java.sql.ResultSet;
+import java.util.List;
+import java.util.stream.Collectors;
+
+import org.springframework.dao.DataAccessException;
+import org.springframework.jdbc.core.ConnectionCallback;
+import org.springframework.jdbc.core.JdbcTemplate;
+
+/*
+ * Helpers for stores which manage their own schema.
+ *
+ * Lookups go through jdbc metadata so that upgrades work on dialects lacking
+ * IF NOT EXISTS support for columns and indexes.
+ */
+public final class JdbcSchemaUtils {
+
+    public static boolean hasColumn(JdbcTemplate jdbcTemplate, String table, String column) {
+        Boolean result = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            DatabaseMetaData meta = con.getMetaData();
+            for (String t : new String[] { table, table.toUpperCase(), table.toLowerCase() }) {
+                try (ResultSet rs = meta.getColumns(con.getCatalog(), null, t, null)) {
+                    while (rs.next()) {
+                        if (column.equalsIgnoreCase(rs.getString("COLUMN_NAME"))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        });
+
+        return Boolean.TRUE.equals(result);
+    }
+
+    public static boolean hasIndex(JdbcTemplate jdbcTemplate, String table, String index) {
+        Boolean result = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            DatabaseMetaData meta = con.getMetaData();
+            for (String t : new String[] { table, table.toUpperCase(), table.toLowerCase() }) {
+                try (ResultSet rs = meta.getIndexInfo(con.getCatalog(), null, t, false, true)) {
+                    while (rs.next()) {
+                        if (index.equalsIgnoreCase(rs.getString("INDEX_NAME"))) {
+                            return true;
+                        }
+                    }
+                }
+            }
+            return false;
+        });
+
+        return Boolean.TRUE.equals(result);
+    }
+
+    public static boolean hasPrimaryKey(JdbcTemplate jdbcTemplate, String table) {
+        Boolean result = jdbcTemplate.execute((ConnectionCallback<Boolean>) con -> {
+            DatabaseMetaData meta = con.getMetaData();
+            for (String t : new String[] { table, table.toUpperCase(), table.toLowerCase() }) {
+                try (ResultSet rs = meta.getPrimaryKeys(con.getCatalog(), null, t)) {
+                    if (rs.next()) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        });
+
+        return Boolean.TRUE.equals(result);
+    }
+
+    /*
+     * Add a column if missing, definition is the column type plus modifiers
+     */
+    public static void addColumn(JdbcTemplate jdbcTemplate, String table, String column, String definition)
+            throws DataAccessException {
+        if (!hasColumn(jdbcTemplate, table, column)) {
+            jdbcTemplate.execute("ALTER TABLE " + table + " ADD " + column + " " + definition);
+        }
+    }
+
+    /*
+     * Add a single column primary key if missing. Rows with a null or duplicated
+     * key are removed first: they can not be read back by key lookups anyway.
+     */
+    public static void addPrimaryKey(JdbcTemplate jdbcTemplate, String table, String column)
+            throws DataAccessException {
+        if (hasPrimaryKey(jdbcTemplate, table)) {
+            return;
+        }
+
+        jdbcTemplate.update("DELETE FROM " + table + " WHERE " + column + " IS NULL");
+        List<String> duplicates = jdbcTemplate.queryForList(
+                "SELECT " + column + " FROM " + table + " GROUP BY " + column + " HAVING COUNT(*) > 1",
+                String.class);
+        if (!duplicates.isEmpty()) {
+            jdbcTemplate.batchUpdate("DELETE FROM " + table + " WHERE " + column + " = ?",
+                    duplicates.stream().map(d -> new Object[] { d }).collect(Collectors.toList()));
+        }
+
+        jdbcTemplate.execute("ALTER TABLE " + table + " ADD PRIMARY KEY (" + column + ")");
+    }
+
+    /*
+     * Create an index if missing, columns is the comma separated list
+     */
+    public static void createIndex(JdbcTemplate jdbcTemplate, String table, String index, String columns,
+            boolean unique) throws DataAccessException {
+        if (!hasIndex(jdbcTemplate, table, index)) {
+            jdbcTemplate.execute("CREATE " + (unique ? "UNIQUE " : "") + "INDEX " + index
+                    + " ON " + table + " (" + columns + ")");
+        }
+    }
+
+    public static void createIndex(JdbcTemplate jdbcTemplate, String table, String index, String columns)
+            throws DataAccessException {
+        createIndex(jdbcTemplate, table, index, columns, false);
+    }
+
+    /*
+     * SQL expression generating a random unique string per row, for backfilling
+     * key columns of legacy rows. Null when the dialect is not known.
+     */
+    public static String randomIdExpression(JdbcTemplate jdbcTemplate) {
+        String product = jdbcTemplate.execute(
+                (ConnectionCallback<String>) con -> con.getMetaData().getDatabaseProductName());
+        if (product == null) {
+            return null;
+        }
+
+        String name = product.toLowerCase();
+        if (name.contains("h2")) {
+            return "CAST(RANDOM_UUID() AS VARCHAR(64))";
+        }
+        if (name.contains("mysql") || name.contains("mariadb")) {
+            return "UUID()";
+        }
+        if (name.contains("postgres")) {
+            return "md5(random()::text || clock_timestamp()::text)";
+        }
+
+        return null;
+    }
+
+    private JdbcSchemaUtils() {
+    }
+}
@@ -0,0 +1,34 @@
+package it.smartcommunitylab.aac.repository;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.function.Function;
+
+import com.google.common.collect.Iterables;
+
+/*
+ * Helpers for bulk lookups.
+ *
+ * IN lists are split in chunks to stay below the bind parameter limits of
+ * every supported DB (ie Oracle allows 1000 elements per list).
+ */
+public final class QueryUtils {
+
+    public static final int IN_BATCH_SIZE = 500;
+
+    /*
+     * Run the query once per chunk of values and merge results
+     */
+    public static <T, R> List<R> findIn(Collection<T> values, Function<List<T>, List<R>> query) {
+        List<R> results = new ArrayList<>();
+        for (List<T> chunk : Iterables.partition(values, IN_BATCH_SIZE)) {
+            results.addAll(query.apply(chunk));
+        }
+
+        return results;
+    }
+
+    private QueryUtils() {
+    }
+}
@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.roles.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.data.domain.Page;
@@ -14,6 +15,8 @@ public interface SpaceRoleEntityRepository extends CustomJpaRepository<SpaceRole
 
     List<SpaceRoleEntity> findBySubject(String subject);
 
+    List<SpaceRoleEntity> findBySubjectIn(Collection<String> subjects);
+
     @Query("select r from SpaceRoleEntity r where subject = ?1 and (context = ?2 or context is null and ?2 is null)")
     List<SpaceRoleEntity> findBySubjectAndContext(String subject, String context);
 
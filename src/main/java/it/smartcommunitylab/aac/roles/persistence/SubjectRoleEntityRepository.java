@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.roles.persistence;
 
+import java.util.Collection;
 import java.util.List;
 import java.util.Set;
 
@@ -26,4 +27,6 @@ public interface SubjectRoleEntityRepository extends CustomJpaRepository<Subject
 
     List<SubjectRoleEntity> findBySubjectAndRealm(String subject, String realm);
 
+    List<SubjectRoleEntity> findBySubjectInAndRealm(Collection<String> subjects, String realm);
+
 }
@@ -2,8 +2,10 @@ package it.smartcommunitylab.aac.roles.service;
 
 import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
 import java.util.Set;
 import java.util.stream.Collectors;
 
@@ -19,6 +21,7 @@ import it.smartcommunitylab.aac.model.SpaceRole;
 import it.smartcommunitylab.aac.model.SpaceRoles;
 import it.smartcommunitylab.aac.roles.persistence.SpaceRoleEntity;
 import it.smartcommunitylab.aac.roles.persistence.SpaceRoleEntityRepository;
+import it.smartcommunitylab.aac.repository.QueryUtils;
 
 @Service
 @Transactional
@@ -36,6 +39,20 @@ public class SpaceRoleService {
                 .collect(Collectors.toSet());
     }
 
+    /*
+     * Bulk lookup, subject -> roles
+     */
+    @Transactional(readOnly = true)
+    public Map<String, Set<SpaceRole>> getRoles(Collection<String> subjects) {
+        if (subjects.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return QueryUtils.findIn(subjects, ids -> roleRepository.findBySubjectIn(ids)).stream()
+                .collect(Collectors.groupingBy(r -> r.getSubject(),
+                        Collectors.mapping(r -> toRole(r), Collectors.toSet())));
+    }
+
     @Transactional(readOnly = true)
     public Collection<SpaceRole> getRoles(String subject, String context) {
         List<SpaceRoleEntity> rr = roleRepository.findBySubjectAndContext(subject, context);
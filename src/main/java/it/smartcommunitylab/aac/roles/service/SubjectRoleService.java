@@ -1,6 +1,7 @@
 package it.smartcommunitylab.aac.roles.service;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
@@ -14,6 +15,7 @@ import it.smartcommunitylab.aac.model.RealmRole;
 import it.smartcommunitylab.aac.roles.persistence.RealmRoleEntityRepository;
 import it.smartcommunitylab.aac.roles.persistence.SubjectRoleEntity;
 import it.smartcommunitylab.aac.roles.persistence.SubjectRoleEntityRepository;
+import it.smartcommunitylab.aac.repository.QueryUtils;
 
 @Service
 @Transactional
@@ -104,6 +106,20 @@ public class SubjectRoleService {
                 .collect(Collectors.toList());
     }
 
+    /*
+     * Bulk lookup, subjectId -> roles
+     */
+    @Transactional(readOnly = true)
+    public Map<String, List<RealmRole>> getRoles(Collection<String> subjectIds, String realm) {
+        if (subjectIds.isEmpty()) {
+            return Collections.emptyMap();
+        }
+
+        return QueryUtils.findIn(subjectIds, ids -> rolesRepository.findBySubjectInAndRealm(ids, realm)).stream()
+                .collect(Collectors.groupingBy(r -> r.getSubject(),
+                        Collectors.mapping(r -> toRole(r), Collectors.toList())));
+    }
+
     public Collection<RealmRole> addRoles(String subjectId, String realm, Collection<String> roles) {
 
         // fetch current roles
@@ -1,5 +1,6 @@
 package it.smartcommunitylab.aac.saml.persistence;
 
+import java.util.Collection;
 import java.util.List;
 
 import org.springframework.stereotype.Repository;
@@ -27,4 +28,6 @@ public interface SamlUserAccountRepository extends CustomJpaRepository<SamlUserA
 
     List<SamlUserAccount> findByUserIdAndProvider(String userId, String provider);
 
+    List<SamlUserAccount> findByUserIdInAndProvider(Collection<String> userIds, String provider);
+
 }
\ No newline at end of file
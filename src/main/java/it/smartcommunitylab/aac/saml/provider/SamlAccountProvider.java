@@ -1,6 +1,7 @@
 package it.smartcommunitylab.aac.saml.provider;
 
 import java.io.Serializable;
+import java.util.Collection;
 import java.util.List;
 import java.util.Map;
 import java.util.stream.Collectors;
@@ -142,6 +143,16 @@ public class SamlAccountProvider extends AbstractProvider
         return accounts;
     }
 
+    @Override
+    @Transactional(readOnly = true)
+    public List<SamlUserAccount> listAccounts(Collection<String> userIds) {
+        List<SamlUserAccount> accounts = accountService.findAccountByUsers(repositoryId, userIds);
+
+        // map to our authority
+        accounts.forEach(a -> a.setAuthority(getAuthority()));
+        return accounts;
+    }
+
     @Transactional(readOnly = true)
     public SamlUserAccount getAccount(String subjectId) throws NoSuchUserException {
         SamlUserAccount account = findAccountBySubjectId(subjectId);
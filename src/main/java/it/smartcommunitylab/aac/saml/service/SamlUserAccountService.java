@@ -1,5 +1,7 @@
 package it.smartcommunitylab.aac.saml.service;
 
+import java.util.Collection;
+import java.util.Collections;
 import java.util.List;
 import java.util.stream.Collectors;
 
@@ -17,6 +19,7 @@ import it.smartcommunitylab.aac.model.SubjectStatus;
 import it.smartcommunitylab.aac.saml.persistence.SamlUserAccount;
 import it.smartcommunitylab.aac.saml.persistence.SamlUserAccountId;
 import it.smartcommunitylab.aac.saml.persistence.SamlUserAccountRepository;
+import it.smartcommunitylab.aac.repository.QueryUtils;
 
 /*
  * An internal service which handles persistence for SAML2 user accounts, via JPA
@@ -97,6 +100,22 @@ public class SamlUserAccountService implements UserAccountService<SamlUserAccoun
         }).collect(Collectors.toList());
     }
 
+    @Transactional(readOnly = true)
+    public List<SamlUserAccount> findAccountByUsers(String repository, Collection<String> userIds) {
+        logger.debug("find account for {} users in repository {}", String.valueOf(userIds.size()),
+                String.valueOf(repository));
+
+        if (userIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+
+        List<SamlUserAccount> accounts = QueryUtils.findIn(userIds,
+                ids -> accountRepository.findByUserIdInAndProvider(ids, repository));
+        return accounts.stream().map(a -> {
+            return accountRepository.detach(a);
+        }).collect(Collectors.toList());
+    }
+
     @Override
     public SamlUserAccount addAccount(String repository, String subjectId, SamlUserAccount reg)
             throws RegistrationException {
@@ -4,7 +4,6 @@ import java.util.Collection;
 import java.util.Collections;
 import java.util.HashSet;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.stream.Collectors;
@@ -18,6 +17,10 @@ import it.smartcommunitylab.aac.common.NoSuchScopeException;
 
 /*
  * In-memory scope registry
+ *
+ * Scopes are indexed by name on registration, pointing to the exporting
+ * provider, so that lookups do not scan providers. Index updates are serialized
+ * on registration, while reads are lock free.
  */
 
 public class InMemoryScopeRegistry implements ScopeRegistry {
@@ -26,6 +29,10 @@ public class InMemoryScopeRegistry implements ScopeRegistry {
     // provider registry is a map with keys matching resourceIds
     private final Map<String, ScopeProvider> providers = new ConcurrentHashMap<>();
 
+    // scope index, keys are scope names
+    private final Map<String, ScopeEntry> scopes = new ConcurrentHashMap<>();
+    private final Object lock = new Object();
+
     // create the register and populate will all providers
     public InMemoryScopeRegistry(Collection<ScopeProvider> scopeProviders) {
 
@@ -61,9 +68,11 @@ public class InMemoryScopeRegistry implements ScopeRegistry {
             throw new IllegalArgumentException("can't register core scopes");
         }
 
-        if (providers.containsKey(resourceId)) {
+        synchronized (lock) {
             // remove if matches registration
-            providers.remove(resourceId, sp);
+            if (providers.remove(resourceId, sp)) {
+                _unindexProvider(sp);
+            }
         }
     }
 
@@ -90,13 +99,12 @@ public class InMemoryScopeRegistry implements ScopeRegistry {
 
     @Override
     public Scope findScope(String scope) {
-        ScopeProvider sp = _getProvider(scope);
-        if (sp == null) {
+        ScopeEntry e = scopes.get(scope);
+        if (e == null) {
             return null;
         }
 
-        return sp.getScopes().stream().filter(s -> s.getScope().equals(scope)).findFirst().orElse(null);
-
+        return e.scope;
     }
 
     @Override
@@ -112,16 +120,16 @@ public class InMemoryScopeRegistry implements ScopeRegistry {
     @Override
     public Collection<Scope> listScopes() {
         Set<Scope> result = new HashSet<>();
-        providers.values().stream()
-                .forEach(sp -> result.addAll(sp.getScopes()));
+        scopes.values().forEach(e -> result.add(e.scope));
 
         return result;
     }
 
     @Override
     public Collection<Scope> listScopes(String resourceId) {
-        if (providers.containsKey(resourceId)) {
-            providers.get(resourceId).getScopes();
+        ScopeProvider sp = providers.get(resourceId);
+        if (sp != null) {
+            return sp.getScopes();
         }
 
         return Collections.emptyList();
@@ -132,16 +140,12 @@ public class InMemoryScopeRegistry implements ScopeRegistry {
      */
 
     private ScopeProvider _getProvider(String scope) {
-        Optional<ScopeProvider> provider = providers.values().stream()
-                .filter(sp -> sp.getScopes()
-                        .stream().anyMatch(s -> s.getScope().equals(scope)))
-                .findFirst();
-
-        if (provider.isPresent()) {
-            return provider.get();
+        ScopeEntry e = scopes.get(scope);
+        if (e == null) {
+            return null;
         }
 
-        return null;
+        return e.provider;
     }
 
     private void _registerProvider(ScopeProvider sp) {
@@ -160,8 +164,41 @@ public class InMemoryScopeRegistry implements ScopeRegistry {
 
         String resourceId = sp.getResourceId();
         logger.debug("register scope provider " + sp.toString() + " for resource " + resourceId);
-        providers.put(resourceId, sp);
+        synchronized (lock) {
+            ScopeProvider old = providers.put(resourceId, sp);
+            if (old != null && old != sp) {
+                _unindexProvider(old);
+            }
+
+            _indexProvider(sp, scopes);
+        }
+    }
 
+    // first registered provider exporting a scope owns it
+    private void _indexProvider(ScopeProvider sp, Collection<Scope> list) {
+        for (Scope s : list) {
+            scopes.putIfAbsent(s.getScope(), new ScopeEntry(sp, s));
+        }
+    }
+
+    private void _unindexProvider(ScopeProvider sp) {
+        for (Scope s : sp.getScopes()) {
+            String scope = s.getScope();
+            ScopeEntry e = scopes.get(scope);
+            if (e != null && e.provider == sp) {
+                scopes.remove(scope, e);
+
+                // hand over to another provider exporting the same scope, if any
+                for (ScopeProvider p : providers.values()) {
+                    Scope ps = p.getScopes().stream()
+                            .filter(x -> scope.equals(x.getScope())).findFirst().orElse(null);
+                    if (ps != null) {
+                        scopes.putIfAbsent(scope, new ScopeEntry(p, ps));
+                        break;
+                    }
+                }
+            }
+        }
     }
 
     private boolean validateScope(Scope s) {
@@ -218,4 +255,14 @@ public class InMemoryScopeRegistry implements ScopeRegistry {
                 .collect(Collectors.toList());
     }
 
+    private static class ScopeEntry {
+        private final ScopeProvider provider;
+        private final Scope scope;
+
+        public ScopeEntry(ScopeProvider provider, Scope scope) {
+            this.provider = provider;
+            this.scope = scope;
+        }
+    }
+
 }
@@ -1,7 +1,7 @@
 package it.smartcommunitylab.aac.services;
 
-import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
@@ -23,6 +23,10 @@ public class ServiceScopeProvider implements ScopeProvider {
     private Resource resource;
     private Map<String, ScopeApprover> approvers = new HashMap<>();
 
+    // immutable views built once, providers are rebuilt on service changes
+    private List<Scope> scopes;
+    private Set<String> scopeNames;
+
     public ServiceScopeProvider(Service service) {
         Assert.notNull(service, "services is required");
         this.service = service;
@@ -48,13 +52,17 @@ public class ServiceScopeProvider implements ScopeProvider {
                 }
             });
         }
-        List<Scope> scopes = service.getScopes().stream()
+        List<Scope> list = service.getScopes().stream()
                 .map(s -> {
                     s.setAudience(audience);
                     return s;
                 })
                 .collect(Collectors.toList());
-        resource.setScopes(scopes);
+        resource.setScopes(list);
+
+        this.scopes = Collections.unmodifiableList(list);
+        this.scopeNames = Collections.unmodifiableSet(
+                list.stream().map(s -> s.getScope()).collect(Collectors.toSet()));
     }
 
     @Override
@@ -64,7 +72,7 @@ public class ServiceScopeProvider implements ScopeProvider {
 
     @Override
     public Collection<Scope> getScopes() {
-        return new ArrayList<>(service.getScopes());
+        return scopes;
     }
 
     @Override
@@ -87,7 +95,7 @@ public class ServiceScopeProvider implements ScopeProvider {
     }
 
     private Set<String> listScope() {
-        return service.getScopes().stream().map(s -> s.getScope()).collect(Collectors.toSet());
+        return scopeNames;
     }
 
     @Override
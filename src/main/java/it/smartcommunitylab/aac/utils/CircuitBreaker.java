@@ -0,0 +1,72 @@
+package it.smartcommunitylab.aac.utils;
+
+import org.springframework.util.Assert;
+
+/*
+ * Consecutive failures circuit breaker.
+ *
+ * Opens after threshold failures in a row, then once the open period elapses
+ * lets a single probe through (half open): success closes the breaker, failure
+ * opens it again.
+ */
+public class CircuitBreaker {
+
+    private final int threshold;
+    private final long openMillis;
+
+    private int failures = 0;
+    private long openUntil = 0;
+    private boolean probing = false;
+
+    public CircuitBreaker(int threshold, long openMillis) {
+        Assert.isTrue(threshold > 0, "threshold must be positive");
+        this.threshold = threshold;
+        this.openMillis = openMillis;
+    }
+
+    public synchronized boolean allow() {
+        if (failures < threshold) {
+            return true;
+        }
+
+        if (System.currentTimeMillis() < openUntil || probing) {
+            return false;
+        }
+
+        probing = true;
+        return true;
+    }
+
+    public synchronized boolean isOpen() {
+        return failures >= threshold;
+    }
+
+    public synchronized void success() {
+        failures = 0;
+        probing = false;
+    }
+
+    public synchronized void failure() {
+        failures++;
+        probing = false;
+        if (failures >= threshold) {
+            openUntil = System.currentTimeMillis() + openMillis;
+        }
+    }
+
+    /*
+     * Give back an allowed call without an outcome, so that a probe which did
+     * not reach the endpoint does not keep the breaker half open
+     */
+    public synchronized void release() {
+        probing = false;
+    }
+
+    /*
+     * Next instant a call may be allowed, while probing wait for the outcome
+     */
+    public synchronized long getOpenUntil() {
+        return Math.max(openUntil, System.currentTimeMillis() + openMillis / 10);
+    }
+
+}
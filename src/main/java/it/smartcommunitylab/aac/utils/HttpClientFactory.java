@@ -0,0 +1,114 @@
+package it.smartcommunitylab.aac.utils;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HeaderElement;
+import org.apache.http.HeaderElementIterator;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.config.RequestConfig;
+import org.apache.http.conn.ConnectionKeepAliveStrategy;
+import org.apache.http.impl.client.CloseableHttpClient;
+import org.apache.http.impl.client.HttpClientBuilder;
+import org.apache.http.impl.client.IdleConnectionEvictor;
+import org.apache.http.impl.conn.PoolingHttpClientConnectionManager;
+import org.apache.http.message.BasicHeaderElementIterator;
+import org.apache.http.protocol.HTTP;
+import org.apache.http.protocol.HttpContext;
+import org.springframework.beans.factory.DisposableBean;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
+import org.springframework.util.Assert;
+import org.springframework.web.client.RestTemplate;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.binder.httpcomponents.PoolingHttpClientConnectionManagerMetricsBinder;
+
+/*
+ * Shared connection pool for outbound http.
+ *
+ * Clients are cheap wrappers over a single pooling connection manager, each
+ * with its own timeouts. Idle connections are evicted in background and
+ * keep-alive follows the server hint, capped to the configured max.
+ */
+public class HttpClientFactory implements DisposableBean {
+
+    public static final int DEFAULT_MAX_TOTAL = 200;
+    public static final int DEFAULT_MAX_PER_ROUTE = 50;
+    public static final long DEFAULT_IDLE_TIMEOUT = 30000;
+    public static final long DEFAULT_KEEP_ALIVE = 60000;
+    public static final int DEFAULT_VALIDATE_AFTER_INACTIVITY = 2000;
+
+    private final PoolingHttpClientConnectionManager connectionManager;
+    private final IdleConnectionEvictor connectionEvictor;
+    private final ConnectionKeepAliveStrategy keepAliveStrategy;
+
+    public HttpClientFactory() {
+        this(DEFAULT_MAX_TOTAL, DEFAULT_MAX_PER_ROUTE, DEFAULT_IDLE_TIMEOUT, DEFAULT_KEEP_ALIVE);
+    }
+
+    public HttpClientFactory(int maxTotal, int maxPerRoute, long idleTimeout, long keepAlive) {
+        Assert.isTrue(maxTotal > 0, "max total must be positive");
+        Assert.isTrue(maxPerRoute > 0, "max per route must be positive");
+        Assert.isTrue(idleTimeout > 0, "idle timeout must be positive");
+
+        connectionManager = new PoolingHttpClientConnectionManager();
+        connectionManager.setMaxTotal(maxTotal);
+        connectionManager.setDefaultMaxPerRoute(Math.min(maxPerRoute, maxTotal));
+        connectionManager.setValidateAfterInactivity(DEFAULT_VALIDATE_AFTER_INACTIVITY);
+
+        // evictor runs on a daemon thread
+        connectionEvictor = new IdleConnectionEvictor(connectionManager, idleTimeout, TimeUnit.MILLISECONDS);
+        connectionEvictor.start();
+
+        keepAliveStrategy = (HttpResponse response, HttpContext context) -> {
+            HeaderElementIterator it = new BasicHeaderElementIterator(response.headerIterator(HTTP.CONN_KEEP_ALIVE));
+            while (it.hasNext()) {
+                HeaderElement he = it.nextElement();
+                if ("timeout".equalsIgnoreCase(he.getName()) && he.getValue() != null) {
+                    try {
+                        return Math.min(Long.parseLong(he.getValue()) * 1000, keepAlive);
+                    } catch (NumberFormatException e) {
+                        // ignore
+                    }
+                }
+            }
+            return keepAlive;
+        };
+    }
+
+    public void setMeterRegistry(MeterRegistry meterRegistry) {
+        if (meterRegistry != null) {
+            new PoolingHttpClientConnectionManagerMetricsBinder(connectionManager, "aac").bindTo(meterRegistry);
+        }
+    }
+
+    /*
+     * Build a client on the shared pool, timeout (ms) applies to connect, lease
+     * and read
+     */
+    public CloseableHttpClient createHttpClient(int timeout) {
+        RequestConfig config = RequestConfig.custom()
+                .setConnectTimeout(timeout)
+                .setConnectionRequestTimeout(timeout)
+                .setSocketTimeout(timeout)
+                .build();
+
+        return HttpClientBuilder.create()
+                .useSystemProperties()
+                .setConnectionManager(connectionManager)
+                .setConnectionManagerShared(true)
+                .setKeepAliveStrategy(keepAliveStrategy)
+                .setDefaultRequestConfig(config)
+                .build();
+    }
+
+    public RestTemplate createRestTemplate(int timeout) {
+        return new RestTemplate(new HttpComponentsClientHttpRequestFactory(createHttpClient(timeout)));
+    }
+
+    @Override
+    public void destroy() throws Exception {
+        connectionEvictor.shutdown();
+        connectionManager.shutdown();
+    }
+
+}
@@ -2,24 +2,33 @@ package it.smartcommunitylab.aac.webauthn.store;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.util.Assert;
 
 import com.yubico.webauthn.AssertionRequest;
 
+import it.smartcommunitylab.aac.core.store.ExpiringStore;
+import it.smartcommunitylab.aac.core.store.ExpiringStore.EvictionPolicy;
+
 /*
  * In memory local request store
  * 
+ * Pending requests expire after ttl, when full the oldest are evicted
  */
 public class InMemoryWebAuthnAssertionRequestStore implements WebAuthnAssertionRequestStore {
 
-    private final Map<String, AssertionRequest> requests;
+    public static final long DEFAULT_TTL = 10 * 60 * 1000L;
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private final ExpiringStore<String, AssertionRequest> requests;
 
     public InMemoryWebAuthnAssertionRequestStore() {
-        this.requests = new ConcurrentHashMap<>();
+        this(DEFAULT_TTL, DEFAULT_MAX_SIZE);
+    }
+
+    public InMemoryWebAuthnAssertionRequestStore(long ttl, int maxSize) {
+        this.requests = new ExpiringStore<>("webauthn.assertion", ttl, maxSize, EvictionPolicy.OLDEST);
     }
 
     @Override
@@ -2,24 +2,32 @@ package it.smartcommunitylab.aac.webauthn.store;
 
 import java.util.Collection;
 import java.util.Collections;
-import java.util.Map;
 import java.util.UUID;
-import java.util.concurrent.ConcurrentHashMap;
 
 import org.springframework.util.Assert;
 
+import it.smartcommunitylab.aac.core.store.ExpiringStore;
+import it.smartcommunitylab.aac.core.store.ExpiringStore.EvictionPolicy;
 import it.smartcommunitylab.aac.webauthn.model.WebAuthnRegistrationRequest;
 
 /*
  * In memory local request store
  * 
+ * Pending requests expire after ttl, when full the oldest are evicted
  */
 public class InMemoryWebAuthnRegistrationRequestStore implements WebAuthnRegistrationRequestStore {
 
-    private final Map<String, WebAuthnRegistrationRequest> requests;
+    public static final long DEFAULT_TTL = 10 * 60 * 1000L;
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private final ExpiringStore<String, WebAuthnRegistrationRequest> requests;
 
     public InMemoryWebAuthnRegistrationRequestStore() {
-        this.requests = new ConcurrentHashMap<>();
+        this(DEFAULT_TTL, DEFAULT_MAX_SIZE);
+    }
+
+    public InMemoryWebAuthnRegistrationRequestStore(long ttl, int maxSize) {
+        this.requests = new ExpiringStore<>("webauthn.registration", ttl, maxSize, EvictionPolicy.OLDEST);
     }
 
     @Override
@@ -0,0 +1,79 @@
+package it.smartcommunitylab.aac.webauthn.store;
+
+import java.util.Collection;
+import java.util.UUID;
+
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.yubico.webauthn.AssertionRequest;
+
+import it.smartcommunitylab.aac.core.store.SharedStateStore;
+import it.smartcommunitylab.aac.core.store.StateSerializer;
+import it.smartcommunitylab.aac.core.store.StateStore;
+
+/*
+ * Request store shared between nodes, requests are persisted as JSON
+ */
+public class SharedWebAuthnAssertionRequestStore implements WebAuthnAssertionRequestStore {
+
+    public static final String NAMESPACE = "webauthn.assertion";
+
+    private final StateSerializer serializer = new StateSerializer();
+    private final SharedStateStore<AssertionRequest> requests;
+
+    public SharedWebAuthnAssertionRequestStore(StateStore store, long ttl, int nearCacheSize) {
+        this.requests = new SharedStateStore<>(NAMESPACE, store, ttl, this::encode, this::decode, nearCacheSize);
+    }
+
+    @Override
+    public AssertionRequest find(String key) {
+        Assert.hasText(key, "key can not be null or empty");
+        return requests.find(key);
+    }
+
+    @Override
+    public AssertionRequest consume(String key) {
+        Assert.hasText(key, "key can not be null or empty");
+        return requests.consume(key);
+    }
+
+    @Override
+    public Collection<AssertionRequest> findAll() {
+        return requests.findAll();
+    }
+
+    @Override
+    public String store(AssertionRequest request) {
+        String key = UUID.randomUUID().toString();
+        requests.store(key, request);
+        return key;
+    }
+
+    @Override
+    public void store(AssertionRequest request, String key) {
+        requests.store(key, request);
+    }
+
+    @Override
+    public void remove(String key) {
+        requests.remove(key);
+    }
+
+    private byte[] encode(AssertionRequest request) {
+        try {
+            return serializer.serializeText(request.toJson());
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("error serializing request: " + e.getMessage());
+        }
+    }
+
+    private AssertionRequest decode(byte[] bytes) {
+        try {
+            return AssertionRequest.fromJson(serializer.deserializeText(bytes));
+        } catch (JsonProcessingException e) {
+            throw new IllegalArgumentException("error deserializing request: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,132 @@
+package it.smartcommunitylab.aac.webauthn.store;
+
+import java.io.IOException;
+import java.util.Collection;
+import java.util.UUID;
+
+import org.springframework.util.Assert;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.yubico.webauthn.data.ByteArray;
+import com.yubico.webauthn.data.PublicKeyCredentialCreationOptions;
+import com.yubico.webauthn.data.exception.Base64UrlException;
+
+import it.smartcommunitylab.aac.core.store.SharedStateStore;
+import it.smartcommunitylab.aac.core.store.StateSerializer;
+import it.smartcommunitylab.aac.core.store.StateStore;
+import it.smartcommunitylab.aac.webauthn.model.CredentialCreationInfo;
+import it.smartcommunitylab.aac.webauthn.model.WebAuthnRegistrationRequest;
+import it.smartcommunitylab.aac.webauthn.model.WebAuthnRegistrationStartRequest;
+
+/*
+ * Request store shared between nodes, requests are persisted as JSON with
+ * short keys.
+ *
+ * Only the state set when the registration starts is kept: attestation and
+ * result are produced after the request is consumed.
+ */
+public class SharedWebAuthnRegistrationRequestStore implements WebAuthnRegistrationRequestStore {
+
+    public static final String NAMESPACE = "webauthn.registration";
+
+    private final ObjectMapper mapper = new ObjectMapper();
+    private final StateSerializer serializer = new StateSerializer();
+    private final SharedStateStore<WebAuthnRegistrationRequest> requests;
+
+    public SharedWebAuthnRegistrationRequestStore(StateStore store, long ttl, int nearCacheSize) {
+        this.requests = new SharedStateStore<>(NAMESPACE, store, ttl, this::encode, this::decode, nearCacheSize);
+    }
+
+    @Override
+    public WebAuthnRegistrationRequest find(String key) {
+        Assert.hasText(key, "key can not be null or empty");
+        return requests.find(key);
+    }
+
+    @Override
+    public WebAuthnRegistrationRequest consume(String key) {
+        Assert.hasText(key, "key can not be null or empty");
+        return requests.consume(key);
+    }
+
+    @Override
+    public Collection<WebAuthnRegistrationRequest> findAll() {
+        return requests.findAll();
+    }
+
+    @Override
+    public String store(WebAuthnRegistrationRequest request) {
+        String key = UUID.randomUUID().toString();
+        requests.store(key, request);
+        return key;
+    }
+
+    @Override
+    public void store(WebAuthnRegistrationRequest request, String key) {
+        requests.store(key, request);
+    }
+
+    @Override
+    public void remove(String key) {
+        requests.remove(key);
+    }
+
+    private byte[] encode(WebAuthnRegistrationRequest request) {
+        try {
+            ObjectNode node = mapper.createObjectNode();
+            node.put("uh", request.getUserHandle());
+
+            WebAuthnRegistrationStartRequest start = request.getStartRequest();
+            if (start != null) {
+                node.put("u", start.getUsername());
+                node.put("dn", start.getDisplayName());
+            }
+
+            CredentialCreationInfo info = request.getCredentialCreationInfo();
+            if (info != null) {
+                if (info.getUserHandle() != null) {
+                    node.put("ih", info.getUserHandle().getBase64Url());
+                }
+                if (info.getOptions() != null) {
+                    node.put("o", info.getOptions().toJson());
+                }
+            }
+
+            return serializer.serializeText(mapper.writeValueAsString(node));
+        } catch (IOException e) {
+            throw new IllegalArgumentException("error serializing request: " + e.getMessage());
+        }
+    }
+
+    private WebAuthnRegistrationRequest decode(byte[] bytes) {
+        try {
+            JsonNode node = mapper.readTree(serializer.deserializeText(bytes));
+            WebAuthnRegistrationRequest request = new WebAuthnRegistrationRequest(node.get("uh").asText());
+
+            if (node.hasNonNull("u")) {
+                WebAuthnRegistrationStartRequest start = new WebAuthnRegistrationStartRequest();
+                start.setUsername(node.get("u").asText());
+                start.setDisplayName(node.hasNonNull("dn") ? node.get("dn").asText() : null);
+                request.setStartRequest(start);
+            }
+
+            if (node.hasNonNull("ih") || node.hasNonNull("o")) {
+                CredentialCreationInfo info = new CredentialCreationInfo();
+                if (node.hasNonNull("ih")) {
+                    info.setUserHandle(ByteArray.fromBase64Url(node.get("ih").asText()));
+                }
+                if (node.hasNonNull("o")) {
+                    info.setOptions(PublicKeyCredentialCreationOptions.fromJson(node.get("o").asText()));
+                }
+                request.setCredentialCreationInfo(info);
+            }
+
+            return request;
+        } catch (IOException | Base64UrlException e) {
+            throw new IllegalArgumentException("error deserializing request: " + e.getMessage());
+        }
+    }
+
+}
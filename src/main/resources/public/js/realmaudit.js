@@ -5,7 +5,7 @@ angular.module('aac.controllers.realmaudit', [])
     .service('RealmAudit', function ($q, $http) {
         var rService = {};
 
-        rService.findEvents = function (slug, type, after, before) {
+        var buildParams = function (type, after, before) {
             var params = {}
             if (type) {
                 params.type = type;
@@ -18,13 +18,34 @@ angular.module('aac.controllers.realmaudit', [])
             if (before) {
                 params.before = before.toISOString();
             }
+            return params;
+        }
+
+        rService.findEvents = function (slug, type, after, before, cursor) {
+            var params = buildParams(type, after, before);
+            if (cursor) {
+                params.cursor = cursor;
+            }
+
             return $http.get('console/dev/audit/' + slug, {
                 params: params
             }).then(function (data) {
-                return data.data;
+                return {
+                    events: data.data,
+                    next: data.headers('X-Next-Cursor')
+                };
             });
         }
 
+        rService.exportUrl = function (slug, type, after, before) {
+            var params = buildParams(type, after, before);
+            var query = Object.keys(params).map(function (k) {
+                return encodeURIComponent(k) + '=' + encodeURIComponent(params[k]);
+            }).join('&');
+
+            return 'console/dev/audit/' + slug + '/export' + (query ? '?' + query : '');
+        }
+
         return rService;
     })
     /**
@@ -33,10 +54,11 @@ angular.module('aac.controllers.realmaudit', [])
     .controller('RealmAuditController', function ($scope, $state, $stateParams, RealmAudit, Utils) {
         var slug = $stateParams.realmId;
 
-        $scope.load = function (after, before, type) {
-            RealmAudit.findEvents(slug, type, after, before)
+        $scope.load = function (after, before, type, cursor) {
+            RealmAudit.findEvents(slug, type, after, before, cursor)
                 .then(function (data) {
-                    $scope.events = data;
+                    $scope.events = cursor && $scope.events ? $scope.events.concat(data.events) : data.events;
+                    $scope.nextCursor = data.next;
                 })
                 .catch(function (err) {
                     Utils.showError('Failed to load realm audit events: ' + err.data.message);
@@ -74,6 +96,22 @@ angular.module('aac.controllers.realmaudit', [])
             $scope.load(after, before, type);
         }
 
+        $scope.loadMore = function () {
+            var after = $scope.filterAfter;
+            var before = $scope.filterBefore;
+            var type = ($scope.filterType ? $scope.filterType : null);
+
+            $scope.load(after, before, type, $scope.nextCursor);
+        }
+
+        $scope.exportEvents = function () {
+            var after = $scope.filterAfter;
+            var before = $scope.filterBefore;
+            var type = ($scope.filterType ? $scope.filterType : null);
+
+            window.open(RealmAudit.exportUrl(slug, type, after, before), '_blank');
+        }
+
         $scope.auditEventDlg = function (item) {
             $scope.modEvent = item;
             $('#auditEventModal').modal({ keyboard: false });
@@ -226,7 +226,9 @@ angular.module('aac.controllers.realmusers', [])
             page: 0,
             size: 20,
             sort: { username: 1 },
-            q: ''
+            q: '',
+            // list view needs only these sections
+            fields: 'identities,authorities,roles,groups'
         }
         $scope.keywords = '';
 